@@ -0,0 +1,240 @@
+package com.example.SunriseSunset.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Id-ordered "all" list that is loaded once and then maintained incrementally by the write path.
+ * Readers always get an immutable snapshot; a write invalidates the snapshot, which the next reader
+ * rebuilds from memory instead of reloading the table. Items invalidated by tag are refreshed
+ * individually through the reloader on the next read. A view obtained from {@link EntityCache#aggregate}
+ * is also one of the cache's entries: it is weighed at its size, and expiry or eviction resets it.
+ */
+public class AggregateView<T> {
+
+    private final Function<T, Integer> idOf;
+    private final Function<T, Collection<String>> tagsOf;
+    private final Function<Collection<Integer>, List<T>> reloader;
+    private final ReentrantLock loadLock = new ReentrantLock();
+    private final Map<String, Set<Integer>> idsByTag = new HashMap<>();
+    private final Map<Integer, Collection<String>> tagsById = new HashMap<>();
+    private final Set<Integer> staleIds = new HashSet<>();
+    private TreeMap<Integer, T> entries;
+    private List<Runnable> pendingWrites;
+    private boolean loadCancelled;
+    private volatile List<T> snapshot;
+    private volatile Runnable beforeRead = () -> { };
+    private volatile Runnable onChange = () -> { };
+
+    public AggregateView(Function<T, Integer> idOf) {
+        this(idOf, item -> Set.of(), null);
+    }
+
+    public AggregateView(Function<T, Integer> idOf, Function<T, Collection<String>> tagsOf,
+                         Function<Collection<Integer>, List<T>> reloader) {
+        this.idOf = idOf;
+        this.tagsOf = tagsOf;
+        this.reloader = reloader;
+    }
+
+    /**Returns the current snapshot, loading the view or refreshing its stale items first if needed.*/
+    public List<T> getOrLoad(Supplier<List<T>> loader) {
+        beforeRead.run();
+        List<T> current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        current = currentSnapshot();
+        if (current != null) {
+            return current;
+        }
+        loadLock.lock();
+        try {
+            Set<Integer> refreshIds;
+            synchronized (this) {
+                current = currentSnapshot();
+                if (current != null) {
+                    return current;
+                }
+                if (entries != null && reloader == null) {
+                    clearEntries();
+                }
+                refreshIds = entries == null ? null : new HashSet<>(staleIds);
+                pendingWrites = new ArrayList<>();
+                loadCancelled = false;
+            }
+            List<T> loaded;
+            try {
+                loaded = refreshIds == null ? loader.get() : reloader.apply(refreshIds);
+            } catch (RuntimeException | Error e) {
+                synchronized (this) {
+                    pendingWrites = null;
+                }
+                throw e;
+            }
+            List<T> result;
+            synchronized (this) {
+                List<Runnable> replay = pendingWrites;
+                pendingWrites = null;
+                if (loadCancelled) {
+                    if (refreshIds == null) {
+                        TreeMap<Integer, T> ordered = new TreeMap<>();
+                        loaded.forEach(item -> ordered.put(idOf.apply(item), item));
+                        return List.copyOf(ordered.values());
+                    }
+                    result = null;
+                } else {
+                    if (refreshIds == null) {
+                        entries = new TreeMap<>();
+                    }
+                    loaded.forEach(this::putEntry);
+                    if (refreshIds != null) {
+                        loaded.forEach(item -> refreshIds.remove(idOf.apply(item)));
+                        refreshIds.forEach(this::removeEntry);
+                    }
+                    replay.forEach(Runnable::run);
+                    snapshot = null;
+                    result = currentSnapshot();
+                    if (result == null) {
+                        result = List.copyOf(entries.values());
+                    }
+                }
+            }
+            if (result == null) {
+                return getOrLoad(loader);
+            }
+            onChange.run();
+            return result;
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    /**Inserts or replaces an item by id.*/
+    public void upsert(T item) {
+        apply(() -> putEntry(item));
+    }
+
+    /**Inserts or replaces several items by id.*/
+    public void upsertAll(Collection<T> items) {
+        List<T> copy = List.copyOf(items);
+        apply(() -> copy.forEach(this::putEntry));
+    }
+
+    /**Removes an item by id.*/
+    public void remove(Integer id) {
+        apply(() -> removeEntry(id));
+    }
+
+    /**Marks every item carrying one of the tags as stale so that the next reader refreshes it.*/
+    public void invalidateTags(Collection<String> tags) {
+        Set<String> copy = Set.copyOf(tags);
+        apply(() -> copy.forEach(tag -> {
+            Set<Integer> ids = idsByTag.get(tag);
+            if (ids != null) {
+                staleIds.addAll(ids);
+            }
+        }));
+    }
+
+    /**Drops the loaded state so that the next reader reloads the view.*/
+    public void reset() {
+        synchronized (this) {
+            clearEntries();
+            loadCancelled = pendingWrites != null;
+        }
+        onChange.run();
+    }
+
+    public synchronized boolean isLoaded() {
+        return entries != null;
+    }
+
+    /**Number of items held, or 0 while the view is not loaded.*/
+    public synchronized int size() {
+        return entries == null ? 0 : entries.size();
+    }
+
+    /**
+     * Attaches the hooks of the owning cache: one runs before every read, the other after every load, write or
+     * reset. Both run outside the view's lock, so the cache may take its own lock and then this one.
+     */
+    void bind(Runnable beforeRead, Runnable onChange) {
+        this.beforeRead = beforeRead;
+        this.onChange = onChange;
+    }
+
+    private void apply(Runnable write) {
+        boolean changed;
+        synchronized (this) {
+            changed = entries != null;
+            if (changed) {
+                write.run();
+                snapshot = null;
+            }
+            if (pendingWrites != null) {
+                pendingWrites.add(write);
+            }
+        }
+        if (changed) {
+            onChange.run();
+        }
+    }
+
+    /**Returns the snapshot when the view is loaded and has no stale items, rebuilding it if needed.*/
+    private synchronized List<T> currentSnapshot() {
+        if (entries == null || !staleIds.isEmpty()) {
+            return null;
+        }
+        if (snapshot == null) {
+            snapshot = List.copyOf(entries.values());
+        }
+        return snapshot;
+    }
+
+    private void putEntry(T item) {
+        Integer id = idOf.apply(item);
+        unindex(id);
+        entries.put(id, item);
+        staleIds.remove(id);
+        Collection<String> tags = tagsOf.apply(item);
+        tagsById.put(id, tags);
+        tags.forEach(tag -> idsByTag.computeIfAbsent(tag, t -> new HashSet<>()).add(id));
+    }
+
+    private void removeEntry(Integer id) {
+        unindex(id);
+        entries.remove(id);
+        staleIds.remove(id);
+    }
+
+    private void unindex(Integer id) {
+        Collection<String> tags = tagsById.remove(id);
+        if (tags == null) {
+            return;
+        }
+        tags.forEach(tag -> {
+            Set<Integer> ids = idsByTag.get(tag);
+            if (ids != null && ids.remove(id) && ids.isEmpty()) {
+                idsByTag.remove(tag);
+            }
+        });
+    }
+
+    private void clearEntries() {
+        entries = null;
+        snapshot = null;
+        idsByTag.clear();
+        tagsById.clear();
+        staleIds.clear();
+    }
+}
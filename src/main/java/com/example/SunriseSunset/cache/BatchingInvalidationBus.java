@@ -0,0 +1,122 @@
+package com.example.SunriseSunset.cache;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Base class for invalidation transports. Published keys and tags are collected for a short window and
+ * sent as one deduplicated batch; batches that come back from the transport with this node's own id
+ * are ignored, since the writer has already invalidated its local cache.
+ */
+public abstract class BatchingInvalidationBus implements InvalidationBus, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchingInvalidationBus.class);
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final long flushDelayMillis;
+    private final ScheduledExecutorService flusher;
+    private Set<String> pendingKeys = new LinkedHashSet<>();
+    private Set<String> pendingTags = new LinkedHashSet<>();
+    private boolean flushScheduled;
+
+    protected BatchingInvalidationBus(long flushDelayMillis) {
+        this.flushDelayMillis = flushDelayMillis;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cache-invalidation-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**Sends one batch to the other nodes.*/
+    protected abstract void send(InvalidationBatch batch) throws Exception;
+
+    @Override
+    public void publish(Collection<String> keys, Collection<String> tags) {
+        if (keys.isEmpty() && tags.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            pendingKeys.addAll(keys);
+            pendingTags.addAll(tags);
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        try {
+            flusher.schedule(this::flush, flushDelayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            flush();
+        }
+    }
+
+    @Override
+    public void subscribe(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public long getFlushDelayMillis() {
+        return flushDelayMillis;
+    }
+
+    /**Sends everything published so far without waiting for the batching window to close.*/
+    public void flush() {
+        InvalidationBatch batch;
+        synchronized (this) {
+            batch = new InvalidationBatch(nodeId, pendingKeys, pendingTags);
+            pendingKeys = new LinkedHashSet<>();
+            pendingTags = new LinkedHashSet<>();
+            flushScheduled = false;
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            send(batch);
+        } catch (Exception e) {
+            logger.warn("Failed to send {} cache invalidations, other nodes may stay stale until expiry",
+                    batch.getKeys().size() + batch.getTags().size(), e);
+        }
+    }
+
+    /**Hands a batch received from the transport to the listeners unless this node sent it.*/
+    protected void receive(InvalidationBatch batch) {
+        if (nodeId.equals(batch.getOrigin())) {
+            return;
+        }
+        listeners.forEach(listener -> {
+            try {
+                listener.onInvalidation(batch.getKeys(), batch.getTags());
+            } catch (RuntimeException e) {
+                logger.error("Cache invalidation listener failed", e);
+            }
+        });
+    }
+
+    /**Tells the listeners that invalidations may have been missed.*/
+    protected void messagesLost() {
+        listeners.forEach(Listener::onMessagesLost);
+    }
+
+    @Override
+    public void close() {
+        flush();
+        flusher.shutdown();
+    }
+}
@@ -1,17 +1,72 @@
 package com.example.SunriseSunset.cache;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Set;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**Configuration class for defining cache-related beans.*/
 @Configuration
+@EnableScheduling
 public class Cache {
 
-    /**Creates a HashMap to be used as an entity cache.*/
+    /**Creates the retention policy that assigns cache entries to their expiry tiers.*/
     @Bean
-    public Map<String, Object> entityCache() {
-        return new HashMap<>();
+    public RetentionPolicy retentionPolicy(
+            @Value("${cache.retention.pinned-ttl-seconds:604800}") long pinnedTtlSeconds,
+            @Value("${cache.retention.short-ttl-seconds:300}") long shortTtlSeconds,
+            @Value("${cache.retention.aggregate-ttl-seconds:60}") long aggregateTtlSeconds) {
+        return new DateAwareRetentionPolicy(Clock.systemDefaultZone(),
+                Duration.ofSeconds(pinnedTtlSeconds),
+                Duration.ofSeconds(shortTtlSeconds),
+                Duration.ofSeconds(aggregateTtlSeconds));
     }
-}
\ No newline at end of file
+
+    /**Creates the bounded, weight-aware entity cache and subscribes it to the invalidations of the other nodes.*/
+    @Bean
+    public EntityCache entityCache(@Value("${cache.entity.max-weight:100000}") long maxWeight,
+                                   RetentionPolicy retentionPolicy,
+                                   InvalidationBus invalidationBus) {
+        EntityCache entityCache = new EntityCache(maxWeight, EntityCache.collectionWeigher(),
+                retentionPolicy, System::nanoTime);
+        invalidationBus.subscribe(new InvalidationBus.Listener() {
+            @Override
+            public void onInvalidation(Set<String> keys, Set<String> tags) {
+                entityCache.invalidateTags(tags);
+                keys.forEach(entityCache::remove);
+            }
+
+            @Override
+            public void onMessagesLost() {
+                entityCache.clear();
+            }
+        });
+        return entityCache;
+    }
+
+    /**Creates the in-JVM invalidation bus used when the application runs as a single node.*/
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "cache.invalidation.transport", havingValue = "loopback", matchIfMissing = true)
+    public InvalidationBus loopbackInvalidationBus(
+            @Value("${cache.invalidation.flush-delay-millis:50}") long flushDelayMillis) {
+        return new LoopbackInvalidationBus(flushDelayMillis);
+    }
+
+    /**Creates the invalidation bus that reaches the other nodes through PostgreSQL LISTEN/NOTIFY.*/
+    @Bean(initMethod = "start", destroyMethod = "close")
+    @ConditionalOnProperty(name = "cache.invalidation.transport", havingValue = "postgres")
+    public InvalidationBus postgresInvalidationBus(
+            DataSource dataSource,
+            @Value("${spring.datasource.url}") String url,
+            @Value("${spring.datasource.username}") String username,
+            @Value("${spring.datasource.password}") String password,
+            @Value("${cache.invalidation.channel:entity_cache_invalidation}") String channel,
+            @Value("${cache.invalidation.flush-delay-millis:50}") long flushDelayMillis) {
+        return new PostgresInvalidationBus(dataSource, url, username, password, channel, flushDelayMillis);
+    }
+}
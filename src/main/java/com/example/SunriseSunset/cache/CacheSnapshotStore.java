@@ -0,0 +1,345 @@
+package com.example.SunriseSunset.cache;
+
+import com.example.SunriseSunset.dto.LocationDto;
+import com.example.SunriseSunset.dto.SunriseSunsetDto;
+import jakarta.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes the DTOs held by the entity cache to a memory-mapped snapshot file on shutdown and periodically,
+ * and maps it back in before the application starts serving requests. The snapshot records the version of the
+ * cached tables, a single row that triggers bump on every change to them, and is trusted only while that
+ * version is unchanged and its checksum matches. A save is skipped when a write of this node commits while the
+ * entries are copied, or has committed without its cache updates having run, since the copy may then hold what
+ * the write replaced under a version that already counts it.
+ */
+@Component
+@ConditionalOnProperty(name = "cache.snapshot.enabled", havingValue = "true")
+public class CacheSnapshotStore implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheSnapshotStore.class);
+    static final int MAGIC = 0x53534353;
+    static final int VERSION = 3;
+    static final int HEADER_BYTES = 40;
+    private static final byte TYPE_LOCATION = 1;
+    private static final byte TYPE_SUNRISE_SUNSET = 2;
+
+    private final EntityCache entityCache;
+    private final LongSupplier dataVersion;
+    private final Path path;
+    private final Duration maxAge;
+    private final LongSupplier clock;
+
+    @Autowired
+    public CacheSnapshotStore(EntityCache entityCache, JdbcTemplate jdbcTemplate,
+                              @Value("${cache.snapshot.path:entity-cache.snapshot}") String path,
+                              @Value("${cache.snapshot.max-age-seconds:86400}") long maxAgeSeconds) {
+        this(entityCache, () -> jdbcTemplate.queryForObject("SELECT version FROM cache_version", Long.class),
+                Paths.get(path),
+                Duration.ofSeconds(maxAgeSeconds), System::currentTimeMillis);
+    }
+
+    CacheSnapshotStore(EntityCache entityCache, LongSupplier dataVersion, Path path, Duration maxAge,
+                       LongSupplier clock) {
+        this.entityCache = entityCache;
+        this.dataVersion = dataVersion;
+        this.path = path;
+        this.maxAge = maxAge;
+        this.clock = clock;
+    }
+
+    /**Warms the cache from the snapshot once every singleton exists, before the web server starts.*/
+    @Override
+    public void afterSingletonsInstantiated() {
+        restore();
+    }
+
+    @Scheduled(initialDelayString = "${cache.snapshot.interval-millis:300000}",
+            fixedDelayString = "${cache.snapshot.interval-millis:300000}")
+    public void savePeriodically() {
+        save();
+    }
+
+    @PreDestroy
+    public void saveOnShutdown() {
+        save();
+    }
+
+    /**Loads the snapshot into the cache if it is still valid and returns the number of restored entries.*/
+    public int restore() {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        Snapshot snapshot;
+        try {
+            snapshot = read(path);
+        } catch (IOException | IllegalStateException e) {
+            logger.warn("Ignoring unreadable cache snapshot {}", path, e);
+            return 0;
+        }
+        long ageMillis = clock.getAsLong() - snapshot.createdAtMillis;
+        if (ageMillis > maxAge.toMillis()) {
+            logger.info("Ignoring cache snapshot {} written {} s ago", path, ageMillis / 1000);
+            return 0;
+        }
+        long current = dataVersion.getAsLong();
+        if (snapshot.dataVersion != current) {
+            logger.info("Ignoring cache snapshot {}: tables changed since it was written (version {} -> {})",
+                    path, snapshot.dataVersion, current);
+            return 0;
+        }
+        snapshot.entries.forEach((key, value) -> {
+            if (value instanceof LocationDto location) {
+                entityCache.put(key, location, CacheTags.forLocation(location));
+            } else if (value instanceof SunriseSunsetDto sunriseSunset) {
+                entityCache.put(key, sunriseSunset, CacheTags.forSunriseSunset(sunriseSunset));
+            }
+        });
+        logger.info("Restored {} cache entries from snapshot {}", snapshot.entries.size(), path);
+        return snapshot.entries.size();
+    }
+
+    /**
+     * Writes the cached DTOs to the snapshot file and returns the number of saved entries, or 0 when a write
+     * overlapped the copy and the previous snapshot is left in place.
+     */
+    public synchronized int save() {
+        try {
+            // Every write that the version counts has applied its cache updates before the copy if none was
+            // pending and none completed from before the first read of the version to after the second.
+            long applied = entityCache.appliedWrites();
+            boolean quiet = entityCache.pendingWrites() == 0;
+            long version = dataVersion.getAsLong();
+            Map<String, Object> entries = new LinkedHashMap<>();
+            entityCache.entrySet().forEach(entry -> {
+                if (entry.getValue() instanceof LocationDto || entry.getValue() instanceof SunriseSunsetDto) {
+                    entries.put(entry.getKey(), entry.getValue());
+                }
+            });
+            if (!quiet || dataVersion.getAsLong() != version || entityCache.appliedWrites() != applied
+                    || entityCache.pendingWrites() != 0) {
+                logger.debug("Skipped the cache snapshot {}: a write committed while it was taken", path);
+                return 0;
+            }
+            write(path, new Snapshot(version, clock.getAsLong(), entries));
+            logger.debug("Saved {} cache entries to snapshot {}", entries.size(), path);
+            return entries.size();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to write cache snapshot {}", path, e);
+            return 0;
+        }
+    }
+
+    /**Writes the snapshot next to the target through a mapped buffer and moves it into place atomically.*/
+    static void write(Path path, Snapshot snapshot) throws IOException {
+        byte[] payload = encode(snapshot.entries);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        Path absolute = path.toAbsolutePath();
+        Files.createDirectories(absolute.getParent());
+        Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + payload.length);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(snapshot.createdAtMillis).putLong(snapshot.dataVersion);
+            buffer.putInt(snapshot.entries.size()).putInt(payload.length).putLong(crc.getValue());
+            buffer.put(payload);
+            buffer.force();
+        }
+        Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**Maps the snapshot file and decodes it, failing on a foreign format or a checksum mismatch.*/
+    static Snapshot read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IllegalStateException("Cache snapshot is truncated");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IllegalStateException("Unsupported cache snapshot format");
+            }
+            long createdAtMillis = buffer.getLong();
+            long dataVersion = buffer.getLong();
+            int entryCount = buffer.getInt();
+            int payloadLength = buffer.getInt();
+            long checksum = buffer.getLong();
+            if (payloadLength < 0 || payloadLength != buffer.remaining()) {
+                throw new IllegalStateException("Cache snapshot is truncated");
+            }
+            ByteBuffer payload = buffer.slice();
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            if (crc.getValue() != checksum) {
+                throw new IllegalStateException("Cache snapshot checksum mismatch");
+            }
+            try {
+                return new Snapshot(dataVersion, createdAtMillis, decode(payload, entryCount));
+            } catch (BufferUnderflowException e) {
+                throw new IllegalStateException("Cache snapshot is truncated", e);
+            }
+        }
+    }
+
+    private static byte[] encode(Map<String, Object> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (Map.Entry<String, Object> entry : entries.entrySet()) {
+            if (entry.getValue() instanceof LocationDto location) {
+                out.writeByte(TYPE_LOCATION);
+                writeString(out, entry.getKey());
+                writeInteger(out, location.getId());
+                writeString(out, location.getName());
+                writeString(out, location.getCountry());
+                writeIds(out, location.getSunriseSunsetIds());
+            } else if (entry.getValue() instanceof SunriseSunsetDto sunriseSunset) {
+                out.writeByte(TYPE_SUNRISE_SUNSET);
+                writeString(out, entry.getKey());
+                writeInteger(out, sunriseSunset.getId());
+                out.writeLong(sunriseSunset.getDate().toEpochDay());
+                out.writeDouble(sunriseSunset.getLatitude());
+                out.writeDouble(sunriseSunset.getLongitude());
+                writeTime(out, sunriseSunset.getSunrise());
+                writeTime(out, sunriseSunset.getSunset());
+                writeIds(out, sunriseSunset.getLocationIds());
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Map<String, Object> decode(ByteBuffer in, int entryCount) {
+        Map<String, Object> entries = new LinkedHashMap<>();
+        for (int i = 0; i < entryCount; i++) {
+            byte type = in.get();
+            String key = readString(in);
+            if (type == TYPE_LOCATION) {
+                entries.put(key, new LocationDto(readInteger(in), readString(in), readString(in), readIds(in)));
+            } else if (type == TYPE_SUNRISE_SUNSET) {
+                entries.put(key, new SunriseSunsetDto(readInteger(in), LocalDate.ofEpochDay(in.getLong()),
+                        in.getDouble(), in.getDouble(), readTime(in), readTime(in), readIds(in)));
+            } else {
+                throw new IllegalStateException("Unknown cache snapshot entry type " + type);
+            }
+        }
+        return entries;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeInteger(DataOutputStream out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        out.writeInt(value != null ? value : 0);
+    }
+
+    private static Integer readInteger(ByteBuffer in) {
+        boolean present = in.get() != 0;
+        int value = in.getInt();
+        return present ? value : null;
+    }
+
+    private static void writeIds(DataOutputStream out, List<Integer> ids) throws IOException {
+        if (ids == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(ids.size());
+        for (Integer id : ids) {
+            out.writeInt(id);
+        }
+    }
+
+    private static List<Integer> readIds(ByteBuffer in) {
+        int size = in.getInt();
+        if (size < 0) {
+            return null;
+        }
+        List<Integer> ids = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ids.add(in.getInt());
+        }
+        return ids;
+    }
+
+    private static void writeTime(DataOutputStream out, OffsetDateTime time) throws IOException {
+        out.writeBoolean(time != null);
+        if (time != null) {
+            out.writeLong(time.toEpochSecond());
+            out.writeInt(time.getNano());
+            out.writeInt(time.getOffset().getTotalSeconds());
+        }
+    }
+
+    private static OffsetDateTime readTime(ByteBuffer in) {
+        if (in.get() == 0) {
+            return null;
+        }
+        long epochSecond = in.getLong();
+        int nano = in.getInt();
+        ZoneOffset offset = ZoneOffset.ofTotalSeconds(in.getInt());
+        return OffsetDateTime.ofInstant(Instant.ofEpochSecond(epochSecond, nano), offset);
+    }
+
+    static final class Snapshot {
+
+        final long dataVersion;
+        final long createdAtMillis;
+        final Map<String, Object> entries;
+
+        Snapshot(long dataVersion, long createdAtMillis, Map<String, Object> entries) {
+            this.dataVersion = dataVersion;
+            this.createdAtMillis = createdAtMillis;
+            this.entries = entries;
+        }
+    }
+}
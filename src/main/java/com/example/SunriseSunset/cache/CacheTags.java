@@ -0,0 +1,85 @@
+package com.example.SunriseSunset.cache;
+
+import com.example.SunriseSunset.dto.LocationDto;
+import com.example.SunriseSunset.dto.SunriseSunsetDto;
+import com.example.SunriseSunset.timeseries.SunTimesSeries;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**Dependency tags attached to entity cache entries so that writes can evict exactly what they affect.*/
+public final class CacheTags {
+
+    private static final String SUNRISE_PREFIX = "sunrise:";
+
+    private CacheTags() {}
+
+    public static String location(Integer id) {
+        return "location:" + id;
+    }
+
+    public static String sunriseSunset(Integer id) {
+        return SUNRISE_PREFIX + id;
+    }
+
+    /**Returns the id named by a {@link #sunriseSunset(Integer)} tag, or null for any other tag.*/
+    public static Integer sunriseSunsetIdOf(String tag) {
+        if (!tag.startsWith(SUNRISE_PREFIX)) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(tag.substring(SUNRISE_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public static String dateAndLocationName(LocalDate date, String locationName) {
+        return "date:" + date + ":location-name:" + locationName;
+    }
+
+    /**Tag shared by every date-and-name lookup, for writes that cannot tell which of them they affect.*/
+    public static String anyDateAndLocationName() {
+        return "date:*";
+    }
+
+    /**Tags a location DTO with its own id and the ids of the sunrise/sunset rows it references.*/
+    public static Set<String> forLocation(LocationDto dto) {
+        Set<String> tags = new HashSet<>();
+        tags.add(location(dto.getId()));
+        addAll(tags, dto.getSunriseSunsetIds(), CacheTags::sunriseSunset);
+        return tags;
+    }
+
+    /**Tags a sunrise/sunset DTO with its own id and the ids of the locations it references.*/
+    public static Set<String> forSunriseSunset(SunriseSunsetDto dto) {
+        Set<String> tags = new HashSet<>();
+        tags.add(sunriseSunset(dto.getId()));
+        addAll(tags, dto.getLocationIds(), CacheTags::location);
+        return tags;
+    }
+
+    /**Tags a list with the tags of every item plus the tags of the query that produced it.*/
+    public static <T> Set<String> forList(List<T> items, Function<T, Set<String>> itemTags, String... queryTags) {
+        Set<String> tags = new HashSet<>(List.of(queryTags));
+        items.forEach(item -> tags.addAll(itemTags.apply(item)));
+        return tags;
+    }
+
+    /**Tags a series with the ids of its entries and of the locations they reference, plus the query tags.*/
+    public static Set<String> forSeries(SunTimesSeries series, String... queryTags) {
+        Set<String> tags = new HashSet<>(List.of(queryTags));
+        series.ids().forEach(id -> tags.add(sunriseSunset(id)));
+        series.linkedLocationIds().forEach(id -> tags.add(location(id)));
+        return tags;
+    }
+
+    private static void addAll(Set<String> tags, Collection<Integer> ids, Function<Integer, String> tag) {
+        if (ids != null) {
+            ids.forEach(id -> tags.add(tag.apply(id)));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.SunriseSunset.cache;
+
+import com.example.SunriseSunset.dto.SunriseSunsetDto;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+/**Retention policy that pins sunrise/sunset data for past dates and expires mutable data.*/
+public class DateAwareRetentionPolicy implements RetentionPolicy {
+
+    private static final String SUNRISE_DATE_PREFIX = "SunriseSunset_Date_";
+    private static final String SUNRISE_LOCATION_PREFIX = "SunriseSunset_Location_";
+    private static final String LOCATION_SEPARATOR = "_Location_";
+    private static final String ALL_SUFFIX = "_All";
+
+    private final Clock clock;
+    private final Duration pinnedTtl;
+    private final Duration shortTtl;
+    private final Duration aggregateTtl;
+
+    public DateAwareRetentionPolicy(Clock clock, Duration pinnedTtl, Duration shortTtl, Duration aggregateTtl) {
+        this.clock = clock;
+        this.pinnedTtl = pinnedTtl;
+        this.shortTtl = shortTtl;
+        this.aggregateTtl = aggregateTtl;
+    }
+
+    @Override
+    public RetentionTier tierFor(String key, Object value) {
+        if (key.startsWith(SUNRISE_DATE_PREFIX)) {
+            LocalDate date = parseDate(key);
+            return date != null ? tierForDate(date) : RetentionTier.AGGREGATE;
+        }
+        if (key.endsWith(ALL_SUFFIX) || key.startsWith(SUNRISE_LOCATION_PREFIX)) {
+            return RetentionTier.AGGREGATE;
+        }
+        if (value instanceof SunriseSunsetDto dto && dto.getDate() != null) {
+            return tierForDate(dto.getDate());
+        }
+        return RetentionTier.DEFAULT;
+    }
+
+    @Override
+    public Duration timeToLive(RetentionTier tier) {
+        return switch (tier) {
+            case PINNED -> pinnedTtl;
+            case SHORT_LIVED -> shortTtl;
+            case AGGREGATE -> aggregateTtl;
+            case DEFAULT -> Duration.ZERO;
+        };
+    }
+
+    private RetentionTier tierForDate(LocalDate date) {
+        return date.isBefore(LocalDate.now(clock)) ? RetentionTier.PINNED : RetentionTier.SHORT_LIVED;
+    }
+
+    private LocalDate parseDate(String key) {
+        int end = key.indexOf(LOCATION_SEPARATOR, SUNRISE_DATE_PREFIX.length());
+        String date = end < 0 ? key.substring(SUNRISE_DATE_PREFIX.length())
+                : key.substring(SUNRISE_DATE_PREFIX.length(), end);
+        try {
+            return LocalDate.parse(date);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,586 @@
+package com.example.SunriseSunset.cache;
+
+import com.example.SunriseSunset.timeseries.SunTimesSeries;
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Bounded, thread-safe entity cache with segmented LRU eviction, per-entry weights, tiered expiry
+ * and a reverse index from dependency tags to the keys that carry them. Aggregate views are entries
+ * too, weighed at their current size, and are reset when they expire or are evicted.
+ */
+public class EntityCache extends AbstractMap<String, Object> {
+
+    private static final double PROTECTED_SHARE = 0.8;
+    private static final long NO_EXPIRY = Long.MAX_VALUE;
+    private static final long CLEANUP_INTERVAL_NANOS = Duration.ofSeconds(1).toNanos();
+
+    private final ConcurrentHashMap<String, Node> data = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Flight> inFlight = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AggregateView<?>> aggregates = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<AggregateView<?>> detachedViews = new ConcurrentLinkedQueue<>();
+    private final LinkedHashMap<String, Node> probation = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Node> protectedSegment = new LinkedHashMap<>();
+    private final HashMap<String, Set<String>> keysByTag = new HashMap<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final Weigher weigher;
+    private final RetentionPolicy retentionPolicy;
+    private final LongSupplier ticker;
+    private final long maxWeight;
+    private final long maxProtectedWeight;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicInteger pendingWrites = new AtomicInteger();
+    private final AtomicLong appliedWrites = new AtomicLong();
+    private long totalWeight;
+    private long protectedWeight;
+    private long lastCleanUpNanos;
+
+    /**Estimates how much of the cache budget a single entry occupies.*/
+    @FunctionalInterface
+    public interface Weigher {
+        long weigh(String key, Object value);
+    }
+
+    public EntityCache(long maxWeight, Weigher weigher) {
+        this(maxWeight, weigher, RetentionPolicy.none(), System::nanoTime);
+    }
+
+    public EntityCache(long maxWeight, Weigher weigher, RetentionPolicy retentionPolicy, LongSupplier ticker) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("Cache max weight must be positive: " + maxWeight);
+        }
+        this.maxWeight = maxWeight;
+        this.maxProtectedWeight = (long) (maxWeight * PROTECTED_SHARE);
+        this.weigher = weigher;
+        this.retentionPolicy = retentionPolicy;
+        this.ticker = ticker;
+        this.lastCleanUpNanos = ticker.getAsLong();
+    }
+
+    /**
+     * Weighs collections and aggregate views by their size so that list entries cost more than single DTOs,
+     * and series by an eighth of theirs, which is about what one of their entries takes next to a DTO.
+     */
+    public static Weigher collectionWeigher() {
+        return (key, value) -> {
+            if (value instanceof AggregateView<?> view) {
+                return 1L + view.size();
+            }
+            if (value instanceof SunTimesSeries series) {
+                return 1L + series.size() / 8;
+            }
+            if (value instanceof Collection<?> collection) {
+                return 1L + collection.size();
+            }
+            if (value instanceof Map<?, ?> map) {
+                return 1L + map.size();
+            }
+            return 1L;
+        };
+    }
+
+    @Override
+    public Object get(Object key) {
+        Node node = data.get(key);
+        if (node == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (node.isExpired(ticker.getAsLong())) {
+            expire(node);
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        recordAccess(node);
+        return node.value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        Node node = data.get(key);
+        return node != null && !node.isExpired(ticker.getAsLong());
+    }
+
+    /**
+     * Returns the cached value for the key or computes it with the loader. Concurrent misses on the
+     * same key share a single in-flight load and all receive its result (or its exception). A load
+     * that races with a put or remove of the same key is returned to its callers but not cached.
+     */
+    public <T> T getOrLoad(String key, Supplier<T> loader) {
+        return getOrLoad(key, loader, value -> Set.of());
+    }
+
+    /**Same as {@link #getOrLoad(String, Supplier)}, tagging the loaded value with the given dependency tags.*/
+    @SuppressWarnings("unchecked")
+    public <T> T getOrLoad(String key, Supplier<T> loader, Function<? super T, Set<String>> tagsOf) {
+        Object cached = get(key);
+        if (cached != null) {
+            return (T) cached;
+        }
+        Flight flight = new Flight();
+        Flight existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            return (T) existing.await();
+        }
+        try {
+            Node raced = data.get(key);
+            T value;
+            if (raced != null && !raced.isExpired(ticker.getAsLong())) {
+                value = (T) raced.value;
+            } else {
+                value = loader.get();
+                if (value != null) {
+                    store(key, value, tagsOf.apply(value), flight);
+                }
+            }
+            flight.result.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * Returns the incrementally maintained view registered under the key, creating it on first use.
+     * While loaded the view is the entry of its key, charged at its size and expiring with the tier of
+     * its key; removing the key, expiry and eviction all reset the view.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> AggregateView<T> aggregate(String key, Function<T, Integer> idOf) {
+        return (AggregateView<T>) aggregates.computeIfAbsent(key, k -> attach(k, new AggregateView<>(idOf)));
+    }
+
+    /**Same as {@link #aggregate(String, Function)} for a view whose items are tagged and reloadable by id.*/
+    @SuppressWarnings("unchecked")
+    public <T> AggregateView<T> aggregate(String key, Function<T, Integer> idOf,
+                                          Function<T, Collection<String>> tagsOf,
+                                          Function<Collection<Integer>, List<T>> reloader) {
+        return (AggregateView<T>) aggregates.computeIfAbsent(key,
+                k -> attach(k, new AggregateView<>(idOf, tagsOf, reloader)));
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        if (key == null || value == null) {
+            throw new NullPointerException("Entity cache does not accept null keys or values");
+        }
+        return store(key, value, Set.of(), null);
+    }
+
+    /**Stores an entry tagged with the dependency tags it must be evicted with.*/
+    public Object put(String key, Object value, Collection<String> tags) {
+        if (key == null || value == null) {
+            throw new NullPointerException("Entity cache does not accept null keys or values");
+        }
+        return store(key, value, tags, null);
+    }
+
+    /**
+     * Evicts every entry tagged with any of the tags and marks the matching items of every aggregate
+     * view as stale. Loads in flight are not cached, since they may have read the old state.
+     */
+    public void invalidateTags(Collection<String> tags) {
+        if (tags.isEmpty()) {
+            return;
+        }
+        evictionLock.lock();
+        try {
+            inFlight.values().forEach(flight -> flight.cancelled = true);
+            Set<String> keys = new HashSet<>();
+            tags.forEach(tag -> keys.addAll(keysByTag.getOrDefault(tag, Set.of())));
+            keys.forEach(key -> {
+                Node removed = data.remove(key);
+                if (removed != null) {
+                    unlink(removed);
+                }
+            });
+        } finally {
+            evictionLock.unlock();
+        }
+        aggregates.values().forEach(view -> view.invalidateTags(tags));
+    }
+
+    private <T> AggregateView<T> attach(String key, AggregateView<T> view) {
+        view.bind(() -> touch(key, view), () -> charge(key, view));
+        return view;
+    }
+
+    /**Expires the entry of a view whose time to live has passed, or records the read for eviction order.*/
+    private void touch(String key, AggregateView<?> view) {
+        Node node = data.get(key);
+        if (node == null || node.value != view) {
+            return;
+        }
+        if (node.isExpired(ticker.getAsLong())) {
+            expire(node);
+        } else {
+            recordAccess(node);
+        }
+    }
+
+    /**Charges a loaded view to the budget at its current size, or drops the entry of a view that was reset.*/
+    private void charge(String key, AggregateView<?> view) {
+        evictionLock.lock();
+        try {
+            Node node = data.get(key);
+            boolean present = node != null && node.value == view;
+            if (!view.isLoaded()) {
+                if (present && data.remove(key, node)) {
+                    unlink(node);
+                    detachedViews.remove(view);
+                }
+                return;
+            }
+            long weight = Math.max(1L, weigher.weigh(key, view));
+            if (present) {
+                totalWeight += weight - node.weight;
+                if (protectedSegment.get(key) == node) {
+                    protectedWeight += weight - node.weight;
+                }
+                node.weight = weight;
+            } else {
+                RetentionTier tier = retentionPolicy.tierFor(key, view);
+                Node added = new Node(key, view, weight, tier, expiresAt(tier), Set.of());
+                Node previous = data.put(key, added);
+                if (previous != null) {
+                    unlink(previous);
+                }
+                if (tier == RetentionTier.PINNED) {
+                    linkProtected(added);
+                } else {
+                    probation.put(key, added);
+                }
+                totalWeight += weight;
+            }
+            evictIfNeeded();
+        } finally {
+            evictionLock.unlock();
+        }
+        resetDetachedViews();
+    }
+
+    /**Resets the views whose entries expired or were evicted; runs outside the eviction lock.*/
+    private void resetDetachedViews() {
+        for (AggregateView<?> view = detachedViews.poll(); view != null; view = detachedViews.poll()) {
+            view.reset();
+        }
+    }
+
+    /**Stores an entry; a write from outside a load cancels the caching of any load in flight for the key.*/
+    private Object store(String key, Object value, Collection<String> tags, Flight loading) {
+        RetentionTier tier = retentionPolicy.tierFor(key, value);
+        Node node = new Node(key, value, Math.max(1L, weigher.weigh(key, value)), tier, expiresAt(tier),
+                Set.copyOf(tags));
+        evictionLock.lock();
+        try {
+            if (loading == null) {
+                cancelFlight(key);
+            } else if (loading.cancelled) {
+                return null;
+            }
+            Node previous = data.put(key, node);
+            boolean wasProtected = previous != null && unlink(previous);
+            node.tags.forEach(tag -> keysByTag.computeIfAbsent(tag, t -> new HashSet<>()).add(key));
+            if (wasProtected || tier == RetentionTier.PINNED) {
+                linkProtected(node);
+            } else {
+                probation.put(key, node);
+            }
+            totalWeight += node.weight;
+            evictIfNeeded();
+            return previous != null ? previous.value : null;
+        } finally {
+            evictionLock.unlock();
+            resetDetachedViews();
+        }
+    }
+
+    @Override
+    public Object remove(Object key) {
+        AggregateView<?> view = aggregates.get(key);
+        if (view != null) {
+            view.reset();
+        }
+        evictionLock.lock();
+        try {
+            cancelFlight(key);
+            Node removed = data.remove(key);
+            if (removed == null) {
+                return null;
+            }
+            unlink(removed);
+            if (view != null) {
+                detachedViews.remove(view);
+            }
+            return removed.value;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        aggregates.values().forEach(AggregateView::reset);
+        evictionLock.lock();
+        try {
+            data.clear();
+            keysByTag.clear();
+            probation.clear();
+            protectedSegment.clear();
+            totalWeight = 0;
+            protectedWeight = 0;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        return data.size();
+    }
+
+    /**Removes every expired entry.*/
+    public void cleanUp() {
+        evictionLock.lock();
+        try {
+            purgeExpired(ticker.getAsLong());
+        } finally {
+            evictionLock.unlock();
+            resetDetachedViews();
+        }
+    }
+
+    /**Returns a point-in-time copy of the cached entries.*/
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        long now = ticker.getAsLong();
+        return data.values().stream()
+                .filter(node -> !node.isExpired(now))
+                .map(node -> new SimpleImmutableEntry<String, Object>(node.key, node.value))
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    /**
+     * Marks a write that is committing, or has committed, while its cache updates have not run yet; a snapshot
+     * of the cache taken until the matching {@link #writeApplied()} may hold what the write replaced.
+     */
+    public void writePending() {
+        pendingWrites.incrementAndGet();
+    }
+
+    /**Marks the cache updates of a write from {@link #writePending()} as run, or the write as rolled back.*/
+    public void writeApplied() {
+        appliedWrites.incrementAndGet();
+        pendingWrites.decrementAndGet();
+    }
+
+    int pendingWrites() {
+        return pendingWrites.get();
+    }
+
+    long appliedWrites() {
+        return appliedWrites.get();
+    }
+
+    public long weightedSize() {
+        evictionLock.lock();
+        try {
+            return totalWeight;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public long hitCount() {
+        return hits.get();
+    }
+
+    public long missCount() {
+        return misses.get();
+    }
+
+    public long evictionCount() {
+        return evictions.get();
+    }
+
+    private long expiresAt(RetentionTier tier) {
+        Duration ttl = retentionPolicy.timeToLive(tier);
+        if (ttl == null || ttl.isZero() || ttl.isNegative()) {
+            return NO_EXPIRY;
+        }
+        return ticker.getAsLong() + ttl.toNanos();
+    }
+
+    private void cancelFlight(Object key) {
+        Flight flight = inFlight.get(key);
+        if (flight != null) {
+            flight.cancelled = true;
+        }
+    }
+
+    private void expire(Node node) {
+        evictionLock.lock();
+        try {
+            if (data.remove(node.key, node)) {
+                unlink(node);
+            }
+        } finally {
+            evictionLock.unlock();
+            resetDetachedViews();
+        }
+    }
+
+    private void purgeExpired(long now) {
+        lastCleanUpNanos = now;
+        for (Node node : data.values()) {
+            if (node.isExpired(now) && data.remove(node.key, node)) {
+                unlink(node);
+            }
+        }
+    }
+
+    /**Promotes an entry on access; skipped under contention so reads never block on writers.*/
+    private void recordAccess(Node node) {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            if (data.get(node.key) != node) {
+                return;
+            }
+            if (probation.remove(node.key) != null) {
+                linkProtected(node);
+            } else if (protectedSegment.remove(node.key) != null) {
+                protectedSegment.put(node.key, node);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void linkProtected(Node node) {
+        protectedSegment.put(node.key, node);
+        protectedWeight += node.weight;
+        Iterator<Node> eldest = protectedSegment.values().iterator();
+        while (protectedWeight > maxProtectedWeight && eldest.hasNext()) {
+            Node demoted = eldest.next();
+            if (demoted == node || demoted.tier == RetentionTier.PINNED) {
+                continue;
+            }
+            eldest.remove();
+            protectedWeight -= demoted.weight;
+            probation.put(demoted.key, demoted);
+        }
+    }
+
+    /**
+     * Detaches a node from its segment and returns whether it was in the protected segment. A detached view
+     * is queued to be reset once the eviction lock is released.
+     */
+    private boolean unlink(Node node) {
+        if (node.value instanceof AggregateView<?> view) {
+            detachedViews.add(view);
+        }
+        totalWeight -= node.weight;
+        node.tags.forEach(tag -> {
+            Set<String> keys = keysByTag.get(tag);
+            if (keys != null && keys.remove(node.key) && keys.isEmpty()) {
+                keysByTag.remove(tag);
+            }
+        });
+        if (protectedSegment.remove(node.key, node)) {
+            protectedWeight -= node.weight;
+            return true;
+        }
+        probation.remove(node.key, node);
+        return false;
+    }
+
+    private void evictIfNeeded() {
+        long now = ticker.getAsLong();
+        if (totalWeight > maxWeight && now - lastCleanUpNanos >= CLEANUP_INTERVAL_NANOS) {
+            purgeExpired(now);
+        }
+        while (totalWeight > maxWeight) {
+            LinkedHashMap<String, Node> segment = probation.isEmpty() ? protectedSegment : probation;
+            if (segment.isEmpty()) {
+                return;
+            }
+            Node victim = segment.values().iterator().next();
+            data.remove(victim.key, victim);
+            unlink(victim);
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static final class Node {
+        private final String key;
+        private final Object value;
+        private long weight;
+        private final RetentionTier tier;
+        private final long expiresAtNanos;
+        private final Set<String> tags;
+
+        private Node(String key, Object value, long weight, RetentionTier tier, long expiresAtNanos,
+                     Set<String> tags) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.tier = tier;
+            this.expiresAtNanos = expiresAtNanos;
+            this.tags = tags;
+        }
+
+        private boolean isExpired(long now) {
+            return expiresAtNanos != NO_EXPIRY && now - expiresAtNanos >= 0;
+        }
+    }
+
+    private static final class Flight {
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+        private volatile boolean cancelled;
+
+        private Object await() {
+            try {
+                return result.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                if (e.getCause() instanceof Error cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.SunriseSunset.cache;
+
+import java.util.Set;
+
+/**Coalesced invalidations sent by one node in a single message.*/
+public final class InvalidationBatch {
+
+    private final String origin;
+    private final Set<String> keys;
+    private final Set<String> tags;
+
+    public InvalidationBatch(String origin, Set<String> keys, Set<String> tags) {
+        this.origin = origin;
+        this.keys = Set.copyOf(keys);
+        this.tags = Set.copyOf(tags);
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public Set<String> getKeys() {
+        return keys;
+    }
+
+    public Set<String> getTags() {
+        return tags;
+    }
+
+    public boolean isEmpty() {
+        return keys.isEmpty() && tags.isEmpty();
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.SunriseSunset.cache;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**Carries entity cache invalidations from the node that wrote the data to every other node.*/
+public interface InvalidationBus {
+
+    /**Queues keys to evict and tags to invalidate on the other nodes.*/
+    void publish(Collection<String> keys, Collection<String> tags);
+
+    /**Registers a listener for invalidations published by the other nodes.*/
+    void subscribe(Listener listener);
+
+    /**Receives invalidations from the other nodes.*/
+    interface Listener {
+
+        void onInvalidation(Set<String> keys, Set<String> tags);
+
+        /**Called when the transport may have dropped messages, e.g. after a reconnect.*/
+        default void onMessagesLost() {
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.SunriseSunset.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-JVM transport: buses created with {@link #join()} share one group and see each other's batches.
+ * A lone instance is the single-node default and never delivers anything.
+ */
+public class LoopbackInvalidationBus extends BatchingInvalidationBus {
+
+    private final List<LoopbackInvalidationBus> group;
+
+    public LoopbackInvalidationBus(long flushDelayMillis) {
+        this(flushDelayMillis, new CopyOnWriteArrayList<>());
+    }
+
+    private LoopbackInvalidationBus(long flushDelayMillis, List<LoopbackInvalidationBus> group) {
+        super(flushDelayMillis);
+        this.group = group;
+        group.add(this);
+    }
+
+    /**Creates another node connected to the same group, with the same batching window.*/
+    public LoopbackInvalidationBus join() {
+        return new LoopbackInvalidationBus(getFlushDelayMillis(), group);
+    }
+
+    @Override
+    protected void send(InvalidationBatch batch) {
+        group.forEach(node -> node.receive(batch));
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        group.remove(this);
+    }
+}
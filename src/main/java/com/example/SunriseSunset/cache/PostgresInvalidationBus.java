@@ -0,0 +1,204 @@
+package com.example.SunriseSunset.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import javax.sql.DataSource;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Transport over PostgreSQL LISTEN/NOTIFY, so the nodes need nothing but the database they already share.
+ * Batches are sent with {@code pg_notify} through the pool and received on a dedicated connection; a
+ * batch larger than the NOTIFY payload limit is split into several notifications.
+ */
+public class PostgresInvalidationBus extends BatchingInvalidationBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(PostgresInvalidationBus.class);
+    private static final Pattern CHANNEL_NAME = Pattern.compile("[a-z_][a-z0-9_]{0,62}");
+    /**PostgreSQL rejects payloads of 8000 bytes or more.*/
+    static final int MAX_PAYLOAD_BYTES = 7900;
+    private static final int POLL_TIMEOUT_MILLIS = 500;
+    private static final long RECONNECT_DELAY_MILLIS = 5000;
+
+    private final DataSource dataSource;
+    private final String url;
+    private final String username;
+    private final String password;
+    private final String channel;
+    private volatile boolean running;
+    private Thread listenerThread;
+
+    public PostgresInvalidationBus(DataSource dataSource, String url, String username, String password,
+                                   String channel, long flushDelayMillis) {
+        super(flushDelayMillis);
+        if (!CHANNEL_NAME.matcher(channel).matches()) {
+            throw new IllegalArgumentException("Invalid invalidation channel name: " + channel);
+        }
+        this.dataSource = dataSource;
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.channel = channel;
+    }
+
+    /**Starts listening for the batches of the other nodes.*/
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        listenerThread = new Thread(this::listen, "cache-invalidation-listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+
+    @Override
+    protected void send(InvalidationBatch batch) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT pg_notify(?, ?)")) {
+            for (String payload : encode(batch, MAX_PAYLOAD_BYTES)) {
+                statement.setString(1, channel);
+                statement.setString(2, payload);
+                statement.executeQuery().close();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        super.close();
+        Thread thread = listenerThread;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void listen() {
+        boolean connectedBefore = false;
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(url, username, password)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + channel);
+                }
+                if (connectedBefore) {
+                    logger.info("Reconnected to invalidation channel {}, dropping possibly stale entries", channel);
+                    messagesLost();
+                }
+                connectedBefore = true;
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MILLIS);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            dispatch(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (running) {
+                    logger.warn("Lost connection to invalidation channel {}, retrying in {} ms",
+                            channel, RECONNECT_DELAY_MILLIS, e);
+                    pause();
+                }
+            }
+        }
+    }
+
+    private void dispatch(String payload) {
+        try {
+            receive(decode(payload));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Ignoring malformed cache invalidation payload", e);
+        }
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(RECONNECT_DELAY_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    /**
+     * Encodes a batch as one or more payloads of at most {@code maxBytes} UTF-8 bytes. Each payload starts
+     * with the origin line, followed by one {@code k}-prefixed key or {@code t}-prefixed tag per line.
+     */
+    static List<String> encode(InvalidationBatch batch, int maxBytes) {
+        List<String> lines = new ArrayList<>();
+        batch.getKeys().forEach(key -> lines.add("k" + escape(key)));
+        batch.getTags().forEach(tag -> lines.add("t" + escape(tag)));
+
+        List<String> payloads = new ArrayList<>();
+        int headerBytes = utf8Length(batch.getOrigin());
+        StringBuilder payload = new StringBuilder(batch.getOrigin());
+        int payloadBytes = headerBytes;
+        for (String line : lines) {
+            int lineBytes = 1 + utf8Length(line);
+            if (headerBytes + lineBytes > maxBytes) {
+                throw new IllegalArgumentException("Cache invalidation entry exceeds " + maxBytes + " bytes");
+            }
+            if (payloadBytes + lineBytes > maxBytes) {
+                payloads.add(payload.toString());
+                payload = new StringBuilder(batch.getOrigin());
+                payloadBytes = headerBytes;
+            }
+            payload.append('\n').append(line);
+            payloadBytes += lineBytes;
+        }
+        payloads.add(payload.toString());
+        return payloads;
+    }
+
+    static InvalidationBatch decode(String payload) {
+        String[] lines = payload.split("\n", -1);
+        Set<String> keys = new LinkedHashSet<>();
+        Set<String> tags = new LinkedHashSet<>();
+        for (int i = 1; i < lines.length; i++) {
+            String line = lines[i];
+            if (line.startsWith("k")) {
+                keys.add(unescape(line.substring(1)));
+            } else if (line.startsWith("t")) {
+                tags.add(unescape(line.substring(1)));
+            } else {
+                throw new IllegalArgumentException("Unknown invalidation entry: " + line);
+            }
+        }
+        return new InvalidationBatch(lines[0], keys, tags);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+
+    private static String unescape(String value) {
+        StringBuilder result = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                result.append(next == 'n' ? '\n' : next);
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    private static int utf8Length(String value) {
+        return value.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
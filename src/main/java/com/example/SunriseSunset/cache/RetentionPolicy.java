@@ -0,0 +1,28 @@
+package com.example.SunriseSunset.cache;
+
+import java.time.Duration;
+
+/**Decides the retention tier and time-to-live of entries stored in the entity cache.*/
+public interface RetentionPolicy {
+
+    /**Classifies an entry by its cache key and value.*/
+    RetentionTier tierFor(String key, Object value);
+
+    /**Returns the time-to-live of a tier, or {@link Duration#ZERO} when entries of the tier never expire.*/
+    Duration timeToLive(RetentionTier tier);
+
+    /**Policy that keeps every entry until it is evicted.*/
+    static RetentionPolicy none() {
+        return new RetentionPolicy() {
+            @Override
+            public RetentionTier tierFor(String key, Object value) {
+                return RetentionTier.DEFAULT;
+            }
+
+            @Override
+            public Duration timeToLive(RetentionTier tier) {
+                return Duration.ZERO;
+            }
+        };
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.SunriseSunset.cache;
+
+/**Retention tiers an entity cache entry can be assigned to.*/
+public enum RetentionTier {
+
+    /**Immutable data (past dates): admitted straight into the protected segment and kept long.*/
+    PINNED,
+
+    /**Data for today or the future: expires after a short time-to-live.*/
+    SHORT_LIVED,
+
+    /**List and aggregate views: expire after their own time-to-live.*/
+    AGGREGATE,
+
+    /**Everything else: bounded only by eviction.*/
+    DEFAULT
+}
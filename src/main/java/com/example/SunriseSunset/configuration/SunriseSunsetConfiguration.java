@@ -1,16 +1,161 @@
 package com.example.SunriseSunset.configuration;
 
+import com.example.SunriseSunset.repository.SunTimesStore;
+import com.example.SunriseSunset.service.StoredSunTimesProvider;
+import com.example.SunriseSunset.service.SunTimesProvider;
+import com.example.SunriseSunset.upstream.Bulkhead;
+import com.example.SunriseSunset.upstream.CircuitBreaker;
+import com.example.SunriseSunset.upstream.RequestScheduler;
+import com.example.SunriseSunset.upstream.RetryPolicy;
+import com.example.SunriseSunset.upstream.TokenBucket;
+import com.example.SunriseSunset.upstream.UpstreamClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
 /**Configuration class for defining REST client-related beans.*/
 @Configuration
 public class SunriseSunsetConfiguration {
 
-    /**Creates a RestTemplate bean for making HTTP requests.*/
+    /**Creates the connection pool shared by all upstream calls and publishes its leased/pending counts.*/
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager upstreamConnectionManager(
+            @Value("${upstream.pool.max-total:50}") int maxTotal,
+            @Value("${upstream.pool.max-per-route:20}") int maxPerRoute,
+            @Value("${upstream.connect-timeout-millis:2000}") long connectTimeoutMillis,
+            @Value("${upstream.read-timeout-millis:5000}") long readTimeoutMillis,
+            @Value("${upstream.pool.time-to-live-seconds:300}") long timeToLiveSeconds,
+            MeterRegistry registry) {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxTotal)
+                .setMaxConnPerRoute(maxPerRoute)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMillis))
+                        .setSocketTimeout(Timeout.ofMilliseconds(readTimeoutMillis))
+                        .setTimeToLive(TimeValue.ofSeconds(timeToLiveSeconds))
+                        .build())
+                .build();
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "upstream").bindTo(registry);
+        return connectionManager;
+    }
+
+    /**Creates a RestTemplate bean over the pooled HTTP client; retries are left to the upstream client.*/
+    @Bean
+    public RestTemplate restTemplate(PoolingHttpClientConnectionManager upstreamConnectionManager,
+                                     @Value("${upstream.pool.acquire-timeout-millis:1000}") long acquireTimeoutMillis,
+                                     @Value("${upstream.read-timeout-millis:5000}") long readTimeoutMillis,
+                                     @Value("${upstream.pool.idle-eviction-seconds:30}") long idleEvictionSeconds) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(acquireTimeoutMillis))
+                .setResponseTimeout(Timeout.ofMilliseconds(readTimeoutMillis))
+                .build();
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(HttpClients.custom()
+                .setConnectionManager(upstreamConnectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictIdleConnections(TimeValue.ofSeconds(idleEvictionSeconds))
+                .disableAutomaticRetries()
+                .build()));
+    }
+
+    /**Creates the guarded client for api.sunrise-sunset.org.*/
+    @Bean
+    public UpstreamClient sunApiClient(RestTemplate restTemplate, MeterRegistry registry,
+                                       @Value("${upstream.retry.max-attempts:3}") int maxAttempts,
+                                       @Value("${upstream.retry.base-delay-millis:100}") long baseDelayMillis,
+                                       @Value("${upstream.retry.max-delay-millis:2000}") long maxDelayMillis,
+                                       @Value("${upstream.circuit.window-size:20}") int windowSize,
+                                       @Value("${upstream.circuit.minimum-calls:10}") int minimumCalls,
+                                       @Value("${upstream.circuit.failure-rate-threshold:0.5}") double failureRate,
+                                       @Value("${upstream.circuit.open-seconds:30}") long openSeconds,
+                                       @Value("${upstream.bulkhead.max-concurrent-calls:16}") int maxConcurrentCalls,
+                                       @Value("${upstream.bulkhead.max-wait-millis:500}") long maxWaitMillis) {
+        return new UpstreamClient("sunrise-sunset-api", restTemplate,
+                new CircuitBreaker(windowSize, minimumCalls, failureRate, Duration.ofSeconds(openSeconds),
+                        System::nanoTime),
+                new Bulkhead(maxConcurrentCalls, Duration.ofMillis(maxWaitMillis)),
+                new RetryPolicy(maxAttempts, Duration.ofMillis(baseDelayMillis), Duration.ofMillis(maxDelayMillis),
+                        () -> ThreadLocalRandom.current().nextDouble()),
+                duration -> Thread.sleep(duration.toMillis()),
+                registry);
+    }
+
+    /**Creates the outbound rate limiter that queues calls to api.sunrise-sunset.org beyond its allowance.*/
+    @Bean(destroyMethod = "close")
+    public RequestScheduler sunApiScheduler(MeterRegistry registry,
+                                            @Value("${upstream.rate.permits-per-second:10}") double permitsPerSecond,
+                                            @Value("${upstream.rate.burst:10}") int burst,
+                                            @Value("${upstream.rate.max-queue-depth:1000}") int maxQueueDepth,
+                                            @Value("${upstream.rate.max-queue-wait-millis:30000}") long maxQueueWaitMillis,
+                                            @Value("${upstream.rate.worker-threads:16}") int workerThreads) {
+        return new RequestScheduler("sunrise-sunset-api",
+                new TokenBucket(permitsPerSecond, burst, System::nanoTime),
+                maxQueueDepth, Duration.ofMillis(maxQueueWaitMillis), workerThreads, System::nanoTime, registry);
+    }
+
+    /**Fronts the configured sun times provider with the in-memory tier and the persistent response store.*/
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    @Primary
+    @ConditionalOnProperty(name = "sun.store.enabled", havingValue = "true")
+    public SunTimesProvider storedSunTimesProvider(
+            @Qualifier("upstreamSunTimesProvider") SunTimesProvider upstreamSunTimesProvider,
+            SunTimesStore sunTimesStore,
+            MeterRegistry registry,
+            @Value("${sun.store.memory-entries:10000}") long memoryEntries,
+            @Value("${sun.store.precision-degrees:0.01}") double precisionDegrees) {
+        return new StoredSunTimesProvider(upstreamSunTimesProvider, sunTimesStore, memoryEntries, precisionDegrees,
+                registry);
+    }
+
+    /**Creates the pool for upstream sunrise/sunset lookups; its size caps the requests in flight.*/
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService sunTimesExecutor(@Value("${sun.bulk.max-in-flight:16}") int maxInFlight) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(maxInFlight, runnable -> {
+            Thread thread = new Thread(runnable, "sun-times-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**Creates the workers for background bulk import jobs; jobs beyond the queue capacity are rejected.*/
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService bulkJobExecutor(@Value("${jobs.workers:2}") int workers,
+                                           @Value("${jobs.max-queued:100}") int maxQueued) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(maxQueued),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "bulk-job-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**Creates the fork-join pool that aggregates day lengths across locations; zero means one thread per core.*/
+    @Bean(destroyMethod = "shutdown")
+    public ForkJoinPool analyticsPool(@Value("${analytics.parallelism:0}") int parallelism) {
+        return new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,43 @@
+package com.example.SunriseSunset.controller;
+
+import com.example.SunriseSunset.dto.IngestResultDto;
+import com.example.SunriseSunset.service.IngestService;
+import java.io.InputStream;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**REST controller for streaming CSV or NDJSON loads into the tables with COPY.*/
+@RestController
+@RequestMapping("/ingest")
+public class IngestController {
+
+    private static final String TEXT_CSV_VALUE = "text/csv";
+
+    private final IngestService ingestService;
+
+    public IngestController(IngestService ingestService) {
+        this.ingestService = ingestService;
+    }
+
+    @PostMapping(value = "/locations", consumes = {TEXT_CSV_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<IngestResultDto> ingestLocations(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                                           @RequestParam long maxId, InputStream body) {
+        return ResponseEntity.ok(ingestService.ingestLocations(body, IngestService.Format.fromContentType(contentType),
+                maxId));
+    }
+
+    @PostMapping(value = "/sun/times", consumes = {TEXT_CSV_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<IngestResultDto> ingestSunriseSunsets(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, @RequestParam long maxId, InputStream body) {
+        return ResponseEntity.ok(ingestService.ingestSunriseSunsets(body,
+                IngestService.Format.fromContentType(contentType), maxId));
+    }
+
+    @PostMapping(value = "/links", consumes = {TEXT_CSV_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<IngestResultDto> ingestLinks(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                                       InputStream body) {
+        return ResponseEntity.ok(ingestService.ingestLinks(body, IngestService.Format.fromContentType(contentType)));
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.SunriseSunset.controller;
+
+import com.example.SunriseSunset.dto.BulkJobDto;
+import com.example.SunriseSunset.service.BulkJobService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**REST controller for polling the progress of background bulk import jobs.*/
+@RestController
+@RequestMapping("/jobs")
+public class JobController {
+
+    private final BulkJobService bulkJobService;
+
+    public JobController(BulkJobService bulkJobService) {
+        this.bulkJobService = bulkJobService;
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<BulkJobDto> getJob(@PathVariable String id) {
+        BulkJobDto job = bulkJobService.getJob(id);
+        return job != null ? ResponseEntity.ok(job) : ResponseEntity.notFound().build();
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.SunriseSunset.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**Keyset pages and NDJSON streams for the endpoints that list a whole table.*/
+final class ListResponses {
+
+    static final int DEFAULT_LIMIT = 100;
+    static final int MAX_LIMIT = 1000;
+
+    private ListResponses() {}
+
+    static int limit(Integer requested) {
+        if (requested == null) {
+            return DEFAULT_LIMIT;
+        }
+        if (requested < 1 || requested > MAX_LIMIT) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_LIMIT);
+        }
+        return requested;
+    }
+
+    /**Responds with one page; a full page carries a Link header to the page after its last id.*/
+    static <T> ResponseEntity<List<T>> page(String path, List<T> items, int limit, Function<T, Integer> idOf) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (items.size() == limit) {
+            Integer lastId = idOf.apply(items.get(items.size() - 1));
+            response.header(HttpHeaders.LINK, "<" + path + "?after=" + lastId + "&limit=" + limit + ">; rel=\"next\"");
+        }
+        return response.body(items);
+    }
+
+    /**Responds with one JSON document per line, written as the source produces the items.*/
+    static <T> ResponseEntity<StreamingResponseBody> ndjson(ObjectMapper objectMapper, Consumer<Consumer<T>> source) {
+        StreamingResponseBody body = out -> {
+            try {
+                source.accept(item -> {
+                    try {
+                        out.write(objectMapper.writeValueAsBytes(item));
+                        out.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+}
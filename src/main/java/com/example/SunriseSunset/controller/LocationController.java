@@ -1,15 +1,22 @@
 package com.example.SunriseSunset.controller;
 
+import com.example.SunriseSunset.dto.BulkJobDto;
 import com.example.SunriseSunset.dto.LocationDto;
 import com.example.SunriseSunset.dto.SunriseSunsetDto;
+import com.example.SunriseSunset.service.BulkJobService;
 import com.example.SunriseSunset.service.LocationService;
 import com.example.SunriseSunset.service.SunriseSunsetService;
+import com.example.SunriseSunset.service.WriteBehindService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.net.URI;
 import java.util.List;
 
 @Controller
@@ -18,16 +25,24 @@ public class LocationController {
 
     private final LocationService locationService;
     private final SunriseSunsetService sunService;
+    private final BulkJobService bulkJobService;
+    private final WriteBehindService writeBehindService;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public LocationController(LocationService locationService, SunriseSunsetService sunService) {
+    public LocationController(LocationService locationService, SunriseSunsetService sunService,
+                              BulkJobService bulkJobService, WriteBehindService writeBehindService,
+                              ObjectMapper objectMapper) {
         this.locationService = locationService;
         this.sunService = sunService;
+        this.bulkJobService = bulkJobService;
+        this.writeBehindService = writeBehindService;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping
     public ResponseEntity<LocationDto> createLocation(@RequestBody LocationDto dto) {
-        return ResponseEntity.ok(locationService.createLocation(dto));
+        return ResponseEntity.ok(writeBehindService.createLocation(dto));
     }
 
     @GetMapping("/{id}")
@@ -37,8 +52,19 @@ public class LocationController {
     }
 
     @GetMapping("/all")
-    public ResponseEntity<List<LocationDto>> getAllLocationsApi() {
-        return ResponseEntity.ok(locationService.getAllLocations());
+    public ResponseEntity<List<LocationDto>> getAllLocationsApi(@RequestParam(required = false) Integer after,
+                                                                @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            return ResponseEntity.ok(locationService.getAllLocations());
+        }
+        int pageSize = ListResponses.limit(limit);
+        return ListResponses.page("/locations/all", locationService.getLocationsPage(after, pageSize), pageSize,
+                LocationDto::getId);
+    }
+
+    @GetMapping(value = "/all/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllLocations() {
+        return ListResponses.ndjson(objectMapper, locationService::streamAllLocations);
     }
 
     @PutMapping("/{id}")
@@ -58,6 +84,12 @@ public class LocationController {
         return ResponseEntity.ok(locationService.bulkCreateLocations(dtos));
     }
 
+    @PostMapping("/bulk/jobs")
+    public ResponseEntity<BulkJobDto> submitBulkCreateLocations(@RequestBody List<LocationDto> dtos) {
+        BulkJobDto job = bulkJobService.submitLocations(dtos);
+        return ResponseEntity.accepted().location(URI.create("/jobs/" + job.getId())).body(job);
+    }
+
     @GetMapping("/list")
     public String listLocations(Model model) {
         List<LocationDto> locations = locationService.getAllLocations();
@@ -1,12 +1,26 @@
 package com.example.SunriseSunset.controller;
 
+import com.example.SunriseSunset.dto.BulkItemResult;
+import com.example.SunriseSunset.dto.BulkJobDto;
+import com.example.SunriseSunset.dto.DayLengthDto;
+import com.example.SunriseSunset.dto.DayLengthSummaryDto;
 import com.example.SunriseSunset.dto.SunriseSunsetDto;
+import com.example.SunriseSunset.service.BulkJobService;
+import com.example.SunriseSunset.service.DayLengthService;
+import com.example.SunriseSunset.service.IdempotencyService;
 import com.example.SunriseSunset.service.SunriseSunsetService;
+import com.example.SunriseSunset.service.WriteBehindService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.net.URI;
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
+import java.util.LinkedHashSet;
 import java.util.List;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 /**REST controller for managing sunrise and sunset data.*/
 @RestController
@@ -14,14 +28,29 @@ import org.springframework.web.bind.annotation.*;
 public class SunriseSunsetController {
 
     private final SunriseSunsetService sunService;
+    private final BulkJobService bulkJobService;
+    private final DayLengthService dayLengthService;
+    private final IdempotencyService idempotencyService;
+    private final WriteBehindService writeBehindService;
+    private final ObjectMapper objectMapper;
 
-    public SunriseSunsetController(SunriseSunsetService sunService) {
+    public SunriseSunsetController(SunriseSunsetService sunService, BulkJobService bulkJobService,
+                                   DayLengthService dayLengthService, IdempotencyService idempotencyService,
+                                   WriteBehindService writeBehindService, ObjectMapper objectMapper) {
         this.sunService = sunService;
+        this.bulkJobService = bulkJobService;
+        this.dayLengthService = dayLengthService;
+        this.idempotencyService = idempotencyService;
+        this.writeBehindService = writeBehindService;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping
-    public ResponseEntity<SunriseSunsetDto> createSunriseSunset(@RequestBody SunriseSunsetDto dto) {
-        return ResponseEntity.ok(sunService.createSunriseSunset(dto));
+    public ResponseEntity<SunriseSunsetDto> createSunriseSunset(
+            @RequestBody SunriseSunsetDto dto,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        return ResponseEntity.ok(idempotencyService.execute("POST /sun/times", idempotencyKey, dto,
+                SunriseSunsetDto.class, () -> writeBehindService.createSunriseSunset(dto)));
     }
 
     @GetMapping("/{id}")
@@ -32,8 +61,41 @@ public class SunriseSunsetController {
 
 
     @GetMapping("/all")
-    public ResponseEntity<List<SunriseSunsetDto>> getAllSunriseSunsets() {
-        return ResponseEntity.ok(sunService.getAllSunriseSunsets());
+    public ResponseEntity<List<SunriseSunsetDto>> getAllSunriseSunsets(@RequestParam(required = false) Integer after,
+                                                                       @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            return ResponseEntity.ok(sunService.getAllSunriseSunsets());
+        }
+        int pageSize = ListResponses.limit(limit);
+        return ListResponses.page("/sun/times/all", sunService.getSunriseSunsetsPage(after, pageSize), pageSize,
+                SunriseSunsetDto::getId);
+    }
+
+    @GetMapping(value = "/all/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllSunriseSunsets() {
+        return ListResponses.ndjson(objectMapper, sunService::streamAllSunriseSunsets);
+    }
+
+    @GetMapping("/nearest")
+    public ResponseEntity<List<SunriseSunsetDto>> getNearestSunriseSunsets(
+            @RequestParam double latitude,
+            @RequestParam double longitude,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(sunService.getNearestSunriseSunsets(latitude, longitude, date,
+                ListResponses.limit(limit)));
+    }
+
+    @GetMapping("/within")
+    public ResponseEntity<List<SunriseSunsetDto>> getSunriseSunsetsWithin(
+            @RequestParam double south,
+            @RequestParam double west,
+            @RequestParam double north,
+            @RequestParam double east,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(sunService.getSunriseSunsetsWithin(south, west, north, east, date,
+                ListResponses.limit(limit)));
     }
 
     @PutMapping("/{id}")
@@ -48,9 +110,52 @@ public class SunriseSunsetController {
         return ResponseEntity.noContent().build();
     }
 
+    @PostMapping("/bulk")
+    public ResponseEntity<List<BulkItemResult<SunriseSunsetDto>>> bulkCreateSunriseSunsets(
+            @RequestBody List<SunriseSunsetDto> dtos) {
+        return ResponseEntity.ok(sunService.bulkCreateSunriseSunsets(dtos));
+    }
+
+    @PostMapping("/bulk/jobs")
+    public ResponseEntity<BulkJobDto> submitBulkCreateSunriseSunsets(@RequestBody List<SunriseSunsetDto> dtos) {
+        BulkJobDto job = bulkJobService.submitSunriseSunsets(dtos);
+        return ResponseEntity.accepted().location(URI.create("/jobs/" + job.getId())).body(job);
+    }
+
     @GetMapping("/location/{locationId}")
-    public ResponseEntity<List<SunriseSunsetDto>> getSunriseSunsetsByLocationId(@PathVariable Integer locationId) {
-        return ResponseEntity.ok(sunService.getSunriseSunsetsByLocationId(locationId));
+    public ResponseEntity<List<SunriseSunsetDto>> getSunriseSunsetsByLocationId(
+            @PathVariable Integer locationId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return ResponseEntity.ok(sunService.getSunriseSunsetsByLocationId(locationId, from, to));
+    }
+
+    @GetMapping("/location/{locationId}/range")
+    public ResponseEntity<List<DayLengthDto>> getDayLengths(
+            @PathVariable Integer locationId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return ResponseEntity.ok(dayLengthService.getDayLengths(locationId, from, to));
+    }
+
+    @GetMapping("/location/{locationId}/range/summary")
+    public ResponseEntity<DayLengthSummaryDto> getDayLengthSummary(
+            @PathVariable Integer locationId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return ResponseEntity.ok(dayLengthService.summarize(List.of(locationId), from, to).get(0));
+    }
+
+    @GetMapping("/range/summary")
+    public ResponseEntity<List<DayLengthSummaryDto>> getDayLengthSummaries(
+            @RequestParam List<Integer> locationIds,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        List<Integer> distinctIds = List.copyOf(new LinkedHashSet<>(locationIds));
+        if (distinctIds.size() > ListResponses.MAX_LIMIT) {
+            throw new IllegalArgumentException("At most " + ListResponses.MAX_LIMIT + " locations per summary");
+        }
+        return ResponseEntity.ok(dayLengthService.summarize(distinctIds, from, to));
     }
 
     @GetMapping("/by-date-and-location")
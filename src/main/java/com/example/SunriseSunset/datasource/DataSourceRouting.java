@@ -0,0 +1,79 @@
+package com.example.SunriseSunset.datasource;
+
+import com.example.SunriseSunset.cache.InvalidationBus;
+import com.zaxxer.hikari.HikariDataSource;
+import java.time.Duration;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+/**Configuration of the primary and replica pools and the data source that routes between them.*/
+@Configuration
+@ConditionalOnProperty(name = "datasource.replica.enabled", havingValue = "true")
+public class DataSourceRouting {
+
+    /**Creates the primary pool from the spring.datasource properties, as the auto-configuration would.*/
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    /**Creates the replica pool; its connections are read-only.*/
+    @Bean
+    @ConfigurationProperties("datasource.replica.hikari")
+    public HikariDataSource replicaDataSource(@Value("${datasource.replica.url}") String url,
+                                              @Value("${datasource.replica.username}") String username,
+                                              @Value("${datasource.replica.password}") String password) {
+        HikariDataSource dataSource = DataSourceBuilder.create().type(HikariDataSource.class)
+                .url(url).username(username).password(password).build();
+        dataSource.setPoolName("replica");
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    /**
+     * Creates the routing. Open-in-view must be off: a request-scoped entity manager would keep the connection
+     * of a read-only read, routed to the replica, for the writes that follow it in the same request.
+     */
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(
+            @Qualifier("primaryDataSource") HikariDataSource primaryDataSource,
+            @Qualifier("replicaDataSource") HikariDataSource replicaDataSource,
+            @Value("${datasource.replica.read-your-writes-millis:2000}") long readYourWritesMillis,
+            @Value("${spring.jpa.open-in-view:true}") boolean openInView) {
+        if (openInView) {
+            throw new IllegalStateException("spring.jpa.open-in-view must be false when datasource.replica.enabled is true");
+        }
+        return new ReplicaRoutingDataSource(primaryDataSource, replicaDataSource,
+                Duration.ofMillis(readYourWritesMillis), System::nanoTime);
+    }
+
+    /**The data source JPA, JDBC and Flyway use; connections are only taken when the first statement runs.*/
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+
+    /**
+     * Subscribes the routing to the invalidations of the other nodes once every bean exists; the postgres
+     * invalidation bus itself needs the data source.
+     */
+    @Bean
+    public SmartInitializingSingleton replicaRoutingSubscription(ReplicaRoutingDataSource replicaRoutingDataSource,
+                                                                 InvalidationBus invalidationBus) {
+        return () -> invalidationBus.subscribe(replicaRoutingDataSource);
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.SunriseSunset.datasource;
+
+import com.example.SunriseSunset.cache.InvalidationBus;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import javax.sql.DataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Sends connections of read-only transactions to the replica and everything else to the primary. For a
+ * window after a write has committed, on this node or on another one whose invalidations reach this node,
+ * read-only transactions stay on the primary as well, so the reads that refill the caches after a write
+ * cannot pick up rows the replica has not replayed yet. Must sit behind a lazy connection proxy, so that
+ * the route is chosen when the transaction's read-only flag is already known.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements InvalidationBus.Listener {
+
+    /**Target a connection is taken from.*/
+    public enum Route { PRIMARY, REPLICA }
+
+    private final long windowNanos;
+    private final LongSupplier nanoTime;
+    private final AtomicLong primaryUntil;
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, Duration readYourWritesWindow,
+                                    LongSupplier nanoTime) {
+        this.windowNanos = readYourWritesWindow.toNanos();
+        this.nanoTime = nanoTime;
+        this.primaryUntil = new AtomicLong(nanoTime.getAsLong());
+        setTargetDataSources(Map.of(Route.PRIMARY, primary, Route.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    /**Keeps reads on the primary for the window from now on.*/
+    public void markWrite() {
+        long until = nanoTime.getAsLong() + windowNanos;
+        primaryUntil.accumulateAndGet(until, (current, next) -> next - current > 0 ? next : current);
+    }
+
+    @Override
+    public void onInvalidation(Set<String> keys, Set<String> tags) {
+        markWrite();
+    }
+
+    @Override
+    public void onMessagesLost() {
+        markWrite();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            return Route.PRIMARY;
+        }
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            // The window is opened now and again once the transaction has completed, so it covers the
+            // commit however long the transaction takes.
+            markWrite();
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        markWrite();
+                    }
+                });
+            }
+            return Route.PRIMARY;
+        }
+        return nanoTime.getAsLong() - primaryUntil.get() < 0 ? Route.PRIMARY : Route.REPLICA;
+    }
+}
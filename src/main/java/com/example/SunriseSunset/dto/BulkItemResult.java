@@ -0,0 +1,41 @@
+package com.example.SunriseSunset.dto;
+
+/**Outcome of one item of a bulk request, reported at the item's position in the request.*/
+public class BulkItemResult<T> {
+
+    private int index;
+
+    private T item;
+
+    private String error;
+
+    public BulkItemResult() {}
+
+    public BulkItemResult(int index, T item, String error) {
+        this.index = index;
+        this.item = item;
+        this.error = error;
+    }
+
+    public static <T> BulkItemResult<T> success(int index, T item) {
+        return new BulkItemResult<>(index, item, null);
+    }
+
+    public static <T> BulkItemResult<T> failure(int index, String error) {
+        return new BulkItemResult<>(index, null, error);
+    }
+
+    public int getIndex() { return index; }
+
+    public void setIndex(int index) { this.index = index; }
+
+    public T getItem() { return item; }
+
+    public void setItem(T item) { this.item = item; }
+
+    public String getError() { return error; }
+
+    public void setError(String error) { this.error = error; }
+
+    public boolean isSuccess() { return error == null; }
+}
@@ -0,0 +1,82 @@
+package com.example.SunriseSunset.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+/**Progress report of an asynchronous bulk import job.*/
+public class BulkJobDto {
+
+    private String id;
+
+    private String type;
+
+    private String status;
+
+    private int totalItems;
+
+    private int processedItems;
+
+    private int succeededItems;
+
+    private int failedItems;
+
+    private double itemsPerSecond;
+
+    private Instant createdAt;
+
+    private Instant startedAt;
+
+    private Instant finishedAt;
+
+    private List<BulkItemResult<Object>> errors;
+
+    public BulkJobDto() {}
+
+    public String getId() { return id; }
+
+    public void setId(String id) { this.id = id; }
+
+    public String getType() { return type; }
+
+    public void setType(String type) { this.type = type; }
+
+    public String getStatus() { return status; }
+
+    public void setStatus(String status) { this.status = status; }
+
+    public int getTotalItems() { return totalItems; }
+
+    public void setTotalItems(int totalItems) { this.totalItems = totalItems; }
+
+    public int getProcessedItems() { return processedItems; }
+
+    public void setProcessedItems(int processedItems) { this.processedItems = processedItems; }
+
+    public int getSucceededItems() { return succeededItems; }
+
+    public void setSucceededItems(int succeededItems) { this.succeededItems = succeededItems; }
+
+    public int getFailedItems() { return failedItems; }
+
+    public void setFailedItems(int failedItems) { this.failedItems = failedItems; }
+
+    public double getItemsPerSecond() { return itemsPerSecond; }
+
+    public void setItemsPerSecond(double itemsPerSecond) { this.itemsPerSecond = itemsPerSecond; }
+
+    public Instant getCreatedAt() { return createdAt; }
+
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+
+    public Instant getStartedAt() { return startedAt; }
+
+    public void setStartedAt(Instant startedAt) { this.startedAt = startedAt; }
+
+    public Instant getFinishedAt() { return finishedAt; }
+
+    public void setFinishedAt(Instant finishedAt) { this.finishedAt = finishedAt; }
+
+    public List<BulkItemResult<Object>> getErrors() { return errors; }
+
+    public void setErrors(List<BulkItemResult<Object>> errors) { this.errors = errors; }
+}
@@ -0,0 +1,48 @@
+package com.example.SunriseSunset.dto;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+
+/**Data Transfer Object for the sun times of one entry together with the length of its day.*/
+public class DayLengthDto {
+
+    private Integer id;
+
+    private LocalDate date;
+
+    private OffsetDateTime sunrise;
+
+    private OffsetDateTime sunset;
+
+    private Long dayLengthSeconds;
+
+    public DayLengthDto() {}
+
+    public DayLengthDto(Integer id, LocalDate date, OffsetDateTime sunrise, OffsetDateTime sunset, Long dayLengthSeconds) {
+        this.id = id;
+        this.date = date;
+        this.sunrise = sunrise;
+        this.sunset = sunset;
+        this.dayLengthSeconds = dayLengthSeconds;
+    }
+
+    public Integer getId() { return id; }
+
+    public void setId(Integer id) { this.id = id; }
+
+    public LocalDate getDate() { return date; }
+
+    public void setDate(LocalDate date) { this.date = date; }
+
+    public OffsetDateTime getSunrise() { return sunrise; }
+
+    public void setSunrise(OffsetDateTime sunrise) { this.sunrise = sunrise; }
+
+    public OffsetDateTime getSunset() { return sunset; }
+
+    public void setSunset(OffsetDateTime sunset) { this.sunset = sunset; }
+
+    public Long getDayLengthSeconds() { return dayLengthSeconds; }
+
+    public void setDayLengthSeconds(Long dayLengthSeconds) { this.dayLengthSeconds = dayLengthSeconds; }
+}
@@ -0,0 +1,80 @@
+package com.example.SunriseSunset.dto;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+
+/**
+ * Data Transfer Object aggregating the entries of a location over a date range. Day length statistics
+ * count only entries with both a sunrise and a sunset; the shortest and longest days are the solstices
+ * when the range spans them.
+ */
+public class DayLengthSummaryDto {
+
+    private Integer locationId;
+
+    private int days;
+
+    private LocalDate firstDate;
+
+    private LocalDate lastDate;
+
+    private LocalDate shortestDay;
+
+    private Long shortestDayLengthSeconds;
+
+    private LocalDate longestDay;
+
+    private Long longestDayLengthSeconds;
+
+    private Double averageDayLengthSeconds;
+
+    private OffsetDateTime earliestSunrise;
+
+    private OffsetDateTime latestSunset;
+
+    public DayLengthSummaryDto() {}
+
+    public Integer getLocationId() { return locationId; }
+
+    public void setLocationId(Integer locationId) { this.locationId = locationId; }
+
+    public int getDays() { return days; }
+
+    public void setDays(int days) { this.days = days; }
+
+    public LocalDate getFirstDate() { return firstDate; }
+
+    public void setFirstDate(LocalDate firstDate) { this.firstDate = firstDate; }
+
+    public LocalDate getLastDate() { return lastDate; }
+
+    public void setLastDate(LocalDate lastDate) { this.lastDate = lastDate; }
+
+    public LocalDate getShortestDay() { return shortestDay; }
+
+    public void setShortestDay(LocalDate shortestDay) { this.shortestDay = shortestDay; }
+
+    public Long getShortestDayLengthSeconds() { return shortestDayLengthSeconds; }
+
+    public void setShortestDayLengthSeconds(Long shortestDayLengthSeconds) { this.shortestDayLengthSeconds = shortestDayLengthSeconds; }
+
+    public LocalDate getLongestDay() { return longestDay; }
+
+    public void setLongestDay(LocalDate longestDay) { this.longestDay = longestDay; }
+
+    public Long getLongestDayLengthSeconds() { return longestDayLengthSeconds; }
+
+    public void setLongestDayLengthSeconds(Long longestDayLengthSeconds) { this.longestDayLengthSeconds = longestDayLengthSeconds; }
+
+    public Double getAverageDayLengthSeconds() { return averageDayLengthSeconds; }
+
+    public void setAverageDayLengthSeconds(Double averageDayLengthSeconds) { this.averageDayLengthSeconds = averageDayLengthSeconds; }
+
+    public OffsetDateTime getEarliestSunrise() { return earliestSunrise; }
+
+    public void setEarliestSunrise(OffsetDateTime earliestSunrise) { this.earliestSunrise = earliestSunrise; }
+
+    public OffsetDateTime getLatestSunset() { return latestSunset; }
+
+    public void setLatestSunset(OffsetDateTime latestSunset) { this.latestSunset = latestSunset; }
+}
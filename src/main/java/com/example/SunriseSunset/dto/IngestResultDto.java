@@ -0,0 +1,24 @@
+package com.example.SunriseSunset.dto;
+
+/**Data Transfer Object reporting how many rows a streaming ingest loaded into a table.*/
+public class IngestResultDto {
+
+    private String table;
+
+    private long rows;
+
+    public IngestResultDto() {}
+
+    public IngestResultDto(String table, long rows) {
+        this.table = table;
+        this.rows = rows;
+    }
+
+    public String getTable() { return table; }
+
+    public void setTable(String table) { this.table = table; }
+
+    public long getRows() { return rows; }
+
+    public void setRows(long rows) { this.rows = rows; }
+}
@@ -1,5 +1,10 @@
 package com.example.SunriseSunset.exception;
 
+import com.example.SunriseSunset.service.WriteBehindUnavailableException;
+import com.example.SunriseSunset.upstream.UpstreamThrottledException;
+import com.example.SunriseSunset.upstream.UpstreamUnavailableException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -10,6 +15,7 @@ import org.springframework.web.context.request.WebRequest;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 @ControllerAdvice
 public class GlobalExceptionHandler {
@@ -24,6 +30,7 @@ public class GlobalExceptionHandler {
     private static final String CAUSE_ILLEGAL_STATE = "The request contains invalid parameters or data: %s";
     private static final String SOLUTION_ILLEGAL_STATE = "Verify the input parameters and correct them according to the API documentation.";
     private static final String CAUSE_UNEXPECTED = "An unexpected error occurred on the server: %s";
+    private static final String RETRY_AFTER_SECONDS = "30";
     private static final String SOLUTION_UNEXPECTED = "Please try again later or contact the support team with the error details.";
 
     @ExceptionHandler(MethodArgumentNotValidException.class)
@@ -54,6 +61,83 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
     }
 
+    @ExceptionHandler(UpstreamThrottledException.class)
+    public ResponseEntity<Object> handleUpstreamThrottledException(UpstreamThrottledException ex, WebRequest request) {
+        Map<String, Object> response = new HashMap<>();
+        String path = request.getDescription(false).replace("uri=", "");
+        response.put("error", String.format(ERROR_PREFIX, "too many requests", HttpStatus.TOO_MANY_REQUESTS.value(),
+                LocalDateTime.now(), path, "The external API rate limit is exhausted"));
+        response.put("cause", String.format(CAUSE_UNEXPECTED, ex.getMessage()));
+        response.put("solution", "Send fewer lookups at once or retry after the Retry-After interval.");
+        response.put("invalidExample", String.format(INVALID_EXAMPLE, "Importing thousands of dates in parallel requests"));
+        response.put("correctExample", String.format(CORRECT_EXAMPLE, "One bulk request, retried after the Retry-After interval"));
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(response);
+    }
+
+    @ExceptionHandler(UpstreamUnavailableException.class)
+    public ResponseEntity<Object> handleUpstreamUnavailableException(UpstreamUnavailableException ex,
+                                                                      WebRequest request) {
+        Map<String, Object> response = new HashMap<>();
+        String path = request.getDescription(false).replace("uri=", "");
+        response.put("error", String.format(ERROR_PREFIX, "service unavailable", HttpStatus.SERVICE_UNAVAILABLE.value(),
+                LocalDateTime.now(), path, "The external API is temporarily not being called"));
+        response.put("cause", String.format(CAUSE_UNEXPECTED, ex.getMessage()));
+        response.put("solution", "The external API is failing or overloaded; retry after the Retry-After interval.");
+        response.put("invalidExample", String.format(INVALID_EXAMPLE, "Retrying immediately in a tight loop"));
+        response.put("correctExample", String.format(CORRECT_EXAMPLE, "Retry after the interval in the Retry-After header"));
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                .body(response);
+    }
+
+    @ExceptionHandler(WriteBehindUnavailableException.class)
+    public ResponseEntity<Object> handleWriteBehindUnavailableException(WriteBehindUnavailableException ex,
+                                                                         WebRequest request) {
+        Map<String, Object> response = new HashMap<>();
+        String path = request.getDescription(false).replace("uri=", "");
+        response.put("error", String.format(ERROR_PREFIX, "service unavailable", HttpStatus.SERVICE_UNAVAILABLE.value(),
+                LocalDateTime.now(), path, "Too many creates are waiting to be written"));
+        response.put("cause", String.format(CAUSE_UNEXPECTED, ex.getMessage()));
+        response.put("solution", "Retry after the Retry-After interval; a POST /sun/times retried with the same "
+                + "Idempotency-Key is not stored twice if the first attempt was stored after all.");
+        response.put("invalidExample", String.format(INVALID_EXAMPLE, "Retrying without an Idempotency-Key in a tight loop"));
+        response.put("correctExample", String.format(CORRECT_EXAMPLE, "One retry after the interval in the Retry-After header"));
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                .body(response);
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<Object> handleRejectedExecutionException(RejectedExecutionException ex, WebRequest request) {
+        Map<String, Object> response = new HashMap<>();
+        String path = request.getDescription(false).replace("uri=", "");
+        response.put("error", String.format(ERROR_PREFIX, "service unavailable", HttpStatus.SERVICE_UNAVAILABLE.value(),
+                LocalDateTime.now(), path, "Too many background jobs are queued"));
+        response.put("cause", String.format(CAUSE_UNEXPECTED, ex.getMessage()));
+        response.put("solution", "Wait for the running jobs to finish, then submit the batch again.");
+        response.put("invalidExample", String.format(INVALID_EXAMPLE, "Submitting hundreds of small jobs at once"));
+        response.put("correctExample", String.format(CORRECT_EXAMPLE, "Submitting fewer, larger batches"));
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                .body(response);
+    }
+
+    @ExceptionHandler(DataIntegrityViolationException.class)
+    public ResponseEntity<Object> handleDataIntegrityViolationException(DataIntegrityViolationException ex,
+                                                                        WebRequest request) {
+        Map<String, Object> response = new HashMap<>();
+        String path = request.getDescription(false).replace("uri=", "");
+        response.put("error", String.format(ERROR_PREFIX, "conflict", HttpStatus.CONFLICT.value(),
+                LocalDateTime.now(), path, "The data conflicts with rows already stored"));
+        response.put("cause", String.format(CAUSE_ILLEGAL_STATE, ex.getMostSpecificCause().getMessage()));
+        response.put("solution", "Make sure ids are unique and that linked rows exist, then send the data again.");
+        response.put("invalidExample", String.format(INVALID_EXAMPLE, "Linking to location 42 that does not exist"));
+        response.put("correctExample", String.format(CORRECT_EXAMPLE, "Loading location 42 before its links"));
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+    }
+
     @ExceptionHandler(IllegalArgumentException.class)
     public ResponseEntity<Object> handleIllegalArgumentException(IllegalArgumentException ex, WebRequest request) {
         Map<String, Object> response = new HashMap<>();
@@ -11,7 +11,8 @@ public class LocationEntity {
 
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "locations_seq")
+    @SequenceGenerator(name = "locations_seq", sequenceName = "locations_seq", allocationSize = 50)
     @Column(name = "id", nullable = false)
     public Integer id;
 
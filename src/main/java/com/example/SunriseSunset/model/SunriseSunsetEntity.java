@@ -13,7 +13,8 @@ public class SunriseSunsetEntity {
 
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sunrise_and_sunset_seq")
+    @SequenceGenerator(name = "sunrise_and_sunset_seq", sequenceName = "sunrise_and_sunset_seq", allocationSize = 50)
     @Column(name = "id", nullable = false)
     public Integer id;
 
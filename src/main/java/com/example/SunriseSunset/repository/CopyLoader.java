@@ -0,0 +1,145 @@
+package com.example.SunriseSunset.repository;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.List;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Loads rows with the PostgreSQL COPY protocol on the connection of the current transaction. Rows are
+ * encoded in COPY text format and sent as they are produced, so a load holds no more than the copy buffer
+ * in memory, and nothing is visible to other sessions until the transaction commits.
+ */
+@Repository
+public class CopyLoader {
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public CopyLoader(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**Produces the rows of one COPY, writing each through the writer until its input is exhausted.*/
+    @FunctionalInterface
+    public interface RowSource {
+        void writeTo(RowWriter writer) throws IOException;
+    }
+
+    /**
+     * Copies the rows into the columns of the table and returns how many were loaded. An exception from the
+     * source cancels the COPY and is rethrown, leaving the transaction to roll back.
+     */
+    public long copy(String table, List<String> columns, RowSource rows) {
+        String sql = "COPY " + table + " (" + String.join(", ", columns) + ") FROM STDIN";
+        return jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            PGCopyOutputStream out = new PGCopyOutputStream(
+                    connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql), BUFFER_BYTES);
+            try {
+                RowWriter writer = new RowWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), columns.size());
+                rows.writeTo(writer);
+                writer.flush();
+                return out.endCopy();
+            } catch (IOException e) {
+                cancel(out);
+                throw new UncheckedIOException(e);
+            } catch (RuntimeException | Error e) {
+                cancel(out);
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Reserves the values of the sequence from its next value up to {@code maxId} and returns the first of them,
+     * so that ids loaded in that range cannot collide with values allocated by other sessions. The sequence is
+     * locked against their nextval while it is moved; call this in a short transaction of its own, since the
+     * lock is held until that transaction ends.
+     */
+    public long reserveSequenceRange(String sequence, long maxId) {
+        // A no-op ALTER takes the lock that nextval waits on; sequences cannot be named in LOCK TABLE.
+        jdbcTemplate.execute("ALTER SEQUENCE " + sequence + " NO CYCLE");
+        long minId = jdbcTemplate.queryForObject("SELECT nextval(?::regclass)", Long.class, sequence);
+        if (maxId >= minId) {
+            jdbcTemplate.queryForObject("SELECT setval(?::regclass, ?, false)", Long.class, sequence, maxId + 1);
+        }
+        return minId;
+    }
+
+    private static void cancel(PGCopyOutputStream out) {
+        if (out.isActive()) {
+            try {
+                out.cancelCopy();
+            } catch (SQLException ignored) {
+                // The transaction rolls back either way.
+            }
+        }
+    }
+
+    /**Writes rows in COPY text format: tab-separated fields, backslash escapes and {@code \N} for null.*/
+    public static final class RowWriter {
+
+        private final Writer out;
+        private final int columns;
+        private int field;
+        private long rows;
+
+        public RowWriter(Writer out, int columns) {
+            this.out = out;
+            this.columns = columns;
+        }
+
+        public RowWriter field(Object value) throws IOException {
+            if (field == columns) {
+                throw new IllegalStateException("Row already has " + columns + " fields");
+            }
+            if (field++ > 0) {
+                out.write('\t');
+            }
+            if (value == null) {
+                out.write("\\N");
+                return this;
+            }
+            String text = value.toString();
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                switch (c) {
+                    case '\\' -> out.write("\\\\");
+                    case '\t' -> out.write("\\t");
+                    case '\n' -> out.write("\\n");
+                    case '\r' -> out.write("\\r");
+                    default -> out.write(c);
+                }
+            }
+            return this;
+        }
+
+        public void endRow() throws IOException {
+            if (field != columns) {
+                throw new IllegalStateException("Row has " + field + " of " + columns + " fields");
+            }
+            out.write('\n');
+            field = 0;
+            rows++;
+        }
+
+        public long getRowCount() {
+            return rows;
+        }
+
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
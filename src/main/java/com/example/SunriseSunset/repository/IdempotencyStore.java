@@ -0,0 +1,55 @@
+package com.example.SunriseSunset.repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**Responses recorded under Idempotency-Key values, in the idempotency_keys table.*/
+@Repository
+public class IdempotencyStore {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**Hash of the request a key was first used with and the JSON of the response it got.*/
+    public static class StoredResponse {
+
+        public final String requestHash;
+        public final String response;
+
+        public StoredResponse(String requestHash, String response) {
+            this.requestHash = requestHash;
+            this.response = response;
+        }
+    }
+
+    @Autowired
+    public IdempotencyStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**Returns the response recorded under the key unless it has expired.*/
+    public Optional<StoredResponse> find(String key, Instant now) {
+        List<StoredResponse> rows = jdbcTemplate.query(
+                "SELECT request_hash, response FROM idempotency_keys WHERE idempotency_key = ? AND expires_at > ?",
+                (rs, rowNum) -> new StoredResponse(rs.getString(1), rs.getString(2)),
+                key, Timestamp.from(now));
+        return rows.stream().findFirst();
+    }
+
+    /**Records a response; an expired row under the key is replaced, a live one written concurrently wins.*/
+    public void save(String key, String requestHash, String response, Instant expiresAt) {
+        jdbcTemplate.update("INSERT INTO idempotency_keys (idempotency_key, request_hash, response, expires_at) "
+                        + "VALUES (?, ?, ?, ?) ON CONFLICT (idempotency_key) DO UPDATE SET request_hash = EXCLUDED.request_hash, "
+                        + "response = EXCLUDED.response, expires_at = EXCLUDED.expires_at "
+                        + "WHERE idempotency_keys.expires_at <= now()",
+                key, requestHash, response, Timestamp.from(expiresAt));
+    }
+
+    public int deleteExpired(Instant now) {
+        return jdbcTemplate.update("DELETE FROM idempotency_keys WHERE expires_at <= ?", Timestamp.from(now));
+    }
+}
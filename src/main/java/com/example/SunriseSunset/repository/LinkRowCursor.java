@@ -0,0 +1,80 @@
+package com.example.SunriseSunset.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.function.Consumer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Reads whole tables as link rows through a forward-only JDBC cursor. The driver fetches a bounded number
+ * of rows per round trip, so memory use does not grow with the table.
+ */
+@Repository
+public class LinkRowCursor {
+
+    private static final String LOCATION_ROWS = "SELECT l.id, l.name, l.country, sl.sunrise_sunset_id "
+            + "FROM locations l LEFT JOIN sunrise_sunset_locations sl ON sl.location_id = l.id "
+            + "ORDER BY l.id, sl.sunrise_sunset_id";
+    private static final String SUNRISE_SUNSET_ROWS = "SELECT s.id, s.date, s.latitude, s.longitude, s.sunrise, "
+            + "s.sunset, sl.location_id "
+            + "FROM sunrise_and_sunset s LEFT JOIN sunrise_sunset_locations sl ON sl.sunrise_sunset_id = s.id "
+            + "ORDER BY s.id, sl.location_id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int fetchSize;
+
+    @Autowired
+    public LinkRowCursor(JdbcTemplate jdbcTemplate, @Value("${streaming.fetch-size:500}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.fetchSize = fetchSize;
+    }
+
+    /**Passes every location link row to the action, ordered by location id.*/
+    public void forEachLocationRow(Consumer<LocationLinkRow> action) {
+        stream(LOCATION_ROWS, rs -> action.accept(new LocationLinkRow(rs.getInt(1), rs.getString(2),
+                rs.getString(3), rs.getObject(4, Integer.class))));
+    }
+
+    /**Passes every sunrise/sunset link row to the action, ordered by entry id.*/
+    public void forEachSunriseSunsetRow(Consumer<SunriseSunsetLinkRow> action) {
+        stream(SUNRISE_SUNSET_ROWS, rs -> action.accept(new SunriseSunsetLinkRow(rs.getInt(1),
+                rs.getObject(2, LocalDate.class), rs.getDouble(3), rs.getDouble(4),
+                rs.getObject(5, OffsetDateTime.class), rs.getObject(6, OffsetDateTime.class),
+                rs.getObject(7, Integer.class))));
+    }
+
+    /**
+     * Runs the query with the fetch size set. PostgreSQL only fetches in batches inside a transaction, so
+     * a connection in auto-commit mode is switched out of it for the duration of the read.
+     */
+    private void stream(String sql, RowCallbackHandler handler) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            boolean autoCommit = connection.getAutoCommit();
+            if (autoCommit) {
+                connection.setAutoCommit(false);
+            }
+            try (PreparedStatement statement = connection.prepareStatement(sql,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                statement.setFetchSize(fetchSize);
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        handler.processRow(rs);
+                    }
+                }
+            } finally {
+                if (autoCommit) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+            }
+            return null;
+        });
+    }
+}
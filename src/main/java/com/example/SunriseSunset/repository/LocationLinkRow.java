@@ -0,0 +1,20 @@
+package com.example.SunriseSunset.repository;
+
+/**
+ * One row of a location joined to one of its linked sunrise/sunset ids, or to {@code null} when it has
+ * none. A location with n links spans n consecutive rows.
+ */
+public class LocationLinkRow {
+
+    public final Integer id;
+    public final String name;
+    public final String country;
+    public final Integer sunriseSunsetId;
+
+    public LocationLinkRow(Integer id, String name, String country, Integer sunriseSunsetId) {
+        this.id = id;
+        this.name = name;
+        this.country = country;
+        this.sunriseSunsetId = sunriseSunsetId;
+    }
+}
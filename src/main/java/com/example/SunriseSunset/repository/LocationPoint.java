@@ -0,0 +1,19 @@
+package com.example.SunriseSunset.repository;
+
+import java.time.LocalDate;
+
+/**Date and coordinates of a sunrise/sunset entry as seen from one of the locations it is linked to.*/
+public class LocationPoint {
+
+    public final Integer locationId;
+    public final LocalDate date;
+    public final Double latitude;
+    public final Double longitude;
+
+    public LocationPoint(Integer locationId, LocalDate date, Double latitude, Double longitude) {
+        this.locationId = locationId;
+        this.date = date;
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+}
@@ -1,8 +1,28 @@
 package com.example.SunriseSunset.repository;
 
 import com.example.SunriseSunset.model.LocationEntity;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.util.Collection;
+import java.util.List;
 
 /**Repository interface for managing LocationEntity operations.*/
 public interface LocationRepository extends JpaRepository<LocationEntity, Integer> {
-}
\ No newline at end of file
+
+    String LINK_ROWS = "SELECT new com.example.SunriseSunset.repository.LocationLinkRow(l.id, l.name, l.country, s.id) "
+            + "FROM LocationEntity l LEFT JOIN l.sunriseSunsets s ";
+
+    /**Finds every location with its linked sunrise/sunset ids in a single query, ordered by location id.*/
+    @Query(LINK_ROWS + "ORDER BY l.id, s.id")
+    List<LocationLinkRow> findAllLinkRows();
+
+    /**Finds the given locations with their linked sunrise/sunset ids in a single query, ordered by location id.*/
+    @Query(LINK_ROWS + "WHERE l.id IN :ids ORDER BY l.id, s.id")
+    List<LocationLinkRow> findLinkRowsByIdIn(@Param("ids") Collection<Integer> ids);
+
+    /**Finds the ids after the given one in id order; keyset pagination walks the primary key index.*/
+    @Query("SELECT l.id FROM LocationEntity l WHERE l.id > :after ORDER BY l.id")
+    List<Integer> findIdsAfter(@Param("after") Integer after, Limit limit);
+}
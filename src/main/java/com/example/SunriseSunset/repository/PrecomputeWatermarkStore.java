@@ -0,0 +1,57 @@
+package com.example.SunriseSunset.repository;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**Persistent progress of the precompute pipelines, in the precompute_watermark table.*/
+@Repository
+public class PrecomputeWatermarkStore {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**Last day of the horizon being filled and the highest location id whose days are committed.*/
+    public static class Watermark {
+
+        public final LocalDate throughDate;
+        public final int lastLocationId;
+
+        public Watermark(LocalDate throughDate, int lastLocationId) {
+            this.throughDate = throughDate;
+            this.lastLocationId = lastLocationId;
+        }
+    }
+
+    @Autowired
+    public PrecomputeWatermarkStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**Creates the row of a pipeline that has never run, with no location done for the given horizon.*/
+    public void createIfMissing(String name, LocalDate throughDate) {
+        jdbcTemplate.update("INSERT INTO precompute_watermark (name, through_date, last_location_id) "
+                + "VALUES (?, ?, 0) ON CONFLICT DO NOTHING", name, Date.valueOf(throughDate));
+    }
+
+    /**
+     * Locks the row until the current transaction ends and returns it, or returns empty when another
+     * transaction holds the lock.
+     */
+    public Optional<Watermark> lock(String name) {
+        List<Watermark> rows = jdbcTemplate.query(
+                "SELECT through_date, last_location_id FROM precompute_watermark WHERE name = ? FOR UPDATE SKIP LOCKED",
+                (rs, rowNum) -> new Watermark(rs.getDate(1).toLocalDate(), rs.getInt(2)),
+                name);
+        return rows.stream().findFirst();
+    }
+
+    public void save(String name, Watermark watermark) {
+        jdbcTemplate.update("UPDATE precompute_watermark SET through_date = ?, last_location_id = ?, updated_at = now() "
+                        + "WHERE name = ?",
+                Date.valueOf(watermark.throughDate), watermark.lastLocationId, name);
+    }
+}
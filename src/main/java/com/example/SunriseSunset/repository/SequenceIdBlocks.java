@@ -0,0 +1,45 @@
+package com.example.SunriseSunset.repository;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Hands out ids from a sequence the way Hibernate's pooled-lo optimizer does: each value the sequence returns
+ * is the first id of a block of {@code blockSize} ids, and a block is used up before the sequence is called
+ * again. Writes that bypass JPA can share the sequence with Hibernate this way without spending a block per
+ * row.
+ */
+class SequenceIdBlocks {
+
+    private final int blockSize;
+    private final IntFunction<List<Integer>> nextValues;
+    private final ArrayDeque<Integer> reserved = new ArrayDeque<>();
+    private int next;
+    private int end;
+
+    /**The function returns the given number of fresh values of the sequence.*/
+    SequenceIdBlocks(int blockSize, IntFunction<List<Integer>> nextValues) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Sequence block size must be positive: " + blockSize);
+        }
+        this.blockSize = blockSize;
+        this.nextValues = nextValues;
+    }
+
+    /**Returns that many unused ids, calling the sequence once for all the blocks they need beyond the current one.*/
+    synchronized int[] next(int count) {
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            if (next == end) {
+                if (reserved.isEmpty()) {
+                    reserved.addAll(nextValues.apply((count - i + blockSize - 1) / blockSize));
+                }
+                next = reserved.poll();
+                end = next + blockSize;
+            }
+            ids[i] = next++;
+        }
+        return ids;
+    }
+}
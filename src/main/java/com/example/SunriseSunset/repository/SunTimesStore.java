@@ -0,0 +1,53 @@
+package com.example.SunriseSunset.repository;
+
+import com.example.SunriseSunset.dto.Results;
+import com.example.SunriseSunset.dto.SunriseSunsetModel;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Durable table of upstream sunrise/sunset responses keyed by grid cell and date. Cells are identified by
+ * their centre in microdegrees, so rows written under one precision are simply not found under another.
+ * The table is created by the V6 migration.
+ */
+@Repository
+@ConditionalOnProperty(name = "sun.store.enabled", havingValue = "true")
+public class SunTimesStore {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public SunTimesStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public Optional<SunriseSunsetModel> find(long latMicros, long lngMicros, LocalDate date) {
+        List<SunriseSunsetModel> rows = jdbcTemplate.query(
+                "SELECT sunrise, sunset FROM sun_times_store WHERE lat_micros = ? AND lng_micros = ? AND date = ?",
+                (rs, rowNum) -> {
+                    Results results = new Results();
+                    results.setSunrise(rs.getString(1));
+                    results.setSunset(rs.getString(2));
+                    SunriseSunsetModel model = new SunriseSunsetModel();
+                    model.setResults(results);
+                    model.setStatus("OK");
+                    return model;
+                },
+                latMicros, lngMicros, Date.valueOf(date));
+        return rows.stream().findFirst();
+    }
+
+    /**Stores a successful response; a row written concurrently by another node wins.*/
+    public void save(long latMicros, long lngMicros, LocalDate date, SunriseSunsetModel model) {
+        jdbcTemplate.update("INSERT INTO sun_times_store (lat_micros, lng_micros, date, sunrise, sunset) "
+                        + "VALUES (?, ?, ?, ?, ?) ON CONFLICT DO NOTHING",
+                latMicros, lngMicros, Date.valueOf(date),
+                model.getResults().getSunrise(), model.getResults().getSunset());
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.SunriseSunset.repository;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+
+/**
+ * One row of a sunrise/sunset entry joined to one of its linked location ids, or to {@code null} when it
+ * has none. An entry with n links spans n consecutive rows.
+ */
+public class SunriseSunsetLinkRow {
+
+    public final Integer id;
+    public final LocalDate date;
+    public final Double latitude;
+    public final Double longitude;
+    public final OffsetDateTime sunrise;
+    public final OffsetDateTime sunset;
+    public final Integer locationId;
+
+    public SunriseSunsetLinkRow(Integer id, LocalDate date, Double latitude, Double longitude,
+                                OffsetDateTime sunrise, OffsetDateTime sunset, Integer locationId) {
+        this.id = id;
+        this.date = date;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.sunrise = sunrise;
+        this.sunset = sunset;
+        this.locationId = locationId;
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.SunriseSunset.repository;
+
+import java.time.LocalDate;
+
+/**Id, coordinates and date of a sunrise/sunset entry, the part of it the spatial index holds.*/
+public class SunriseSunsetPoint {
+
+    public final Integer id;
+    public final Double latitude;
+    public final Double longitude;
+    public final LocalDate date;
+
+    public SunriseSunsetPoint(Integer id, Double latitude, Double longitude, LocalDate date) {
+        this.id = id;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.date = date;
+    }
+}
@@ -1,20 +1,87 @@
 package com.example.SunriseSunset.repository;
 
 import com.example.SunriseSunset.model.SunriseSunsetEntity;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 /**Repository interface for managing SunriseSunsetEntity operations.*/
 public interface SunriseSunsetRepository extends JpaRepository<SunriseSunsetEntity, Integer> {
 
-    /**Finds sunrise and sunset entities by location ID.*/
-    @Query("SELECT s FROM SunriseSunsetEntity s JOIN s.locations l WHERE l.id = :locationId")
-    List<SunriseSunsetEntity> findByLocationId(@Param("locationId") Integer locationId);
+    String POINTS = "SELECT new com.example.SunriseSunset.repository.SunriseSunsetPoint("
+            + "s.id, s.latitude, s.longitude, s.date) FROM SunriseSunsetEntity s ";
 
-    /**Finds sunrise and sunset entities by date and location name.*/
-    @Query("SELECT s FROM SunriseSunsetEntity s JOIN s.locations l WHERE s.date = :date AND l.name = :locationName")
-    List<SunriseSunsetEntity> findByDateAndLocationName(@Param("date") LocalDate date, @Param("locationName") String locationName);
-}
\ No newline at end of file
+    String LINK_ROWS = "SELECT new com.example.SunriseSunset.repository.SunriseSunsetLinkRow("
+            + "s.id, s.date, s.latitude, s.longitude, s.sunrise, s.sunset, l.id) "
+            + "FROM SunriseSunsetEntity s LEFT JOIN s.locations l ";
+
+    String LOCATION_POINTS = "SELECT new com.example.SunriseSunset.repository.LocationPoint("
+            + "l.id, s.date, s.latitude, s.longitude) FROM SunriseSunsetEntity s JOIN s.locations l ";
+
+    /**Finds every entry with its linked location ids in a single query, ordered by entry id.*/
+    @Query(LINK_ROWS + "ORDER BY s.id, l.id")
+    List<SunriseSunsetLinkRow> findAllLinkRows();
+
+    /**Finds the given entries with their linked location ids in a single query, ordered by entry id.*/
+    @Query(LINK_ROWS + "WHERE s.id IN :ids ORDER BY s.id, l.id")
+    List<SunriseSunsetLinkRow> findLinkRowsByIdIn(@Param("ids") Collection<Integer> ids);
+
+    /**Finds the entries linked to the location with all of their location ids in a single query.*/
+    @Query(LINK_ROWS + "WHERE s.id IN (SELECT s2.id FROM SunriseSunsetEntity s2 JOIN s2.locations l2 "
+            + "WHERE l2.id = :locationId) ORDER BY s.id, l.id")
+    List<SunriseSunsetLinkRow> findLinkRowsByLocationId(@Param("locationId") Integer locationId);
+
+    /**Finds the entries linked to any of the locations with all of their location ids in a single query.*/
+    @Query(LINK_ROWS + "WHERE s.id IN (SELECT s2.id FROM SunriseSunsetEntity s2 JOIN s2.locations l2 "
+            + "WHERE l2.id IN :locationIds) ORDER BY s.id, l.id")
+    List<SunriseSunsetLinkRow> findLinkRowsByLocationIdIn(@Param("locationIds") Collection<Integer> locationIds);
+
+    /**Finds the latest-dated entries of each of the locations, ordered by location id and entry id.*/
+    @Query(LOCATION_POINTS + "WHERE l.id IN :locationIds AND s.date = (SELECT MAX(s2.date) FROM SunriseSunsetEntity s2 "
+            + "JOIN s2.locations l2 WHERE l2.id = l.id) ORDER BY l.id, s.id")
+    List<LocationPoint> findLatestPointsByLocationIdIn(@Param("locationIds") Collection<Integer> locationIds);
+
+    /**Finds the entries of the locations dated within the range, both inclusive.*/
+    @Query(LOCATION_POINTS + "WHERE l.id IN :locationIds AND s.date BETWEEN :from AND :to")
+    List<LocationPoint> findPointsByLocationIdInAndDateBetween(@Param("locationIds") Collection<Integer> locationIds,
+                                                               @Param("from") LocalDate from,
+                                                               @Param("to") LocalDate to);
+
+    /**Finds the entries of the date linked to a location of that name with all of their location ids.*/
+    @Query(LINK_ROWS + "WHERE s.id IN (SELECT s2.id FROM SunriseSunsetEntity s2 JOIN s2.locations l2 "
+            + "WHERE s2.date = :date AND l2.name = :locationName) ORDER BY s.id, l.id")
+    List<SunriseSunsetLinkRow> findLinkRowsByDateAndLocationName(@Param("date") LocalDate date,
+                                                                 @Param("locationName") String locationName);
+
+    /**Finds the ids after the given one in id order; keyset pagination walks the primary key index.*/
+    @Query("SELECT s.id FROM SunriseSunsetEntity s WHERE s.id > :after ORDER BY s.id")
+    List<Integer> findIdsAfter(@Param("after") Integer after, Limit limit);
+
+    /**Finds the coordinates and date of every entry.*/
+    @Query(POINTS)
+    List<SunriseSunsetPoint> findAllPoints();
+
+    /**Finds the coordinates and date of the given entries; ids without an entry are left out.*/
+    @Query(POINTS + "WHERE s.id IN :ids")
+    List<SunriseSunsetPoint> findPointsByIdIn(@Param("ids") Collection<Integer> ids);
+
+    /**Finds the id of the entry stored under the natural key; the unique index makes it a single probe.*/
+    @Query("SELECT s.id FROM SunriseSunsetEntity s WHERE s.date = :date AND s.latitude = :latitude "
+            + "AND s.longitude = :longitude")
+    Optional<Integer> findIdByDateAndCoordinates(@Param("date") LocalDate date, @Param("latitude") Double latitude,
+                                                 @Param("longitude") Double longitude);
+
+    /**
+     * Finds the entries on any of the dates at any combination of the coordinates; callers keep the exact
+     * (date, latitude, longitude) matches.
+     */
+    @Query(POINTS + "WHERE s.date IN :dates AND s.latitude IN :latitudes AND s.longitude IN :longitudes")
+    List<SunriseSunsetPoint> findPointsByDateInAndCoordinatesIn(@Param("dates") Collection<LocalDate> dates,
+                                                                @Param("latitudes") Collection<Double> latitudes,
+                                                                @Param("longitudes") Collection<Double> longitudes);
+}
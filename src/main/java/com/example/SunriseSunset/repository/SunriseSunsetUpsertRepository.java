@@ -0,0 +1,161 @@
+package com.example.SunriseSunset.repository;
+
+import com.example.SunriseSunset.dto.SunriseSunsetDto;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Writes sunrise/sunset entries by their natural key, (date, latitude, longitude), with INSERT ... ON CONFLICT,
+ * so that concurrent creates of the same entry end up as one row carrying every requested link. Batches are
+ * sent as arrays and unnested on the server, one statement for the entries and one for their links. New rows
+ * get ids from blocks of the entity's pooled sequence, reserved here as Hibernate does, rather than from the
+ * column default, which would spend a whole block of the sequence on every row.
+ */
+@Repository
+public class SunriseSunsetUpsertRepository {
+
+    /**Increment of sunrise_and_sunset_seq, which must match allocationSize on SunriseSunsetEntity.*/
+    static final int ID_BLOCK_SIZE = 50;
+
+    private static final String NEXT_BLOCKS_SQL = "SELECT nextval('sunrise_and_sunset_seq') FROM generate_series(1, ?)";
+
+    private static final String UPSERT_SQL = "INSERT INTO sunrise_and_sunset (id, date, latitude, longitude, sunrise, sunset) "
+            + "SELECT e.id, e.date::date, e.latitude, e.longitude, e.sunrise::timestamptz, e.sunset::timestamptz "
+            + "FROM unnest(?::int[], ?::text[], ?::float8[], ?::float8[], ?::text[], ?::text[]) "
+            + "AS e(id, date, latitude, longitude, sunrise, sunset) "
+            + "ON CONFLICT (date, latitude, longitude) DO UPDATE SET sunrise = EXCLUDED.sunrise, sunset = EXCLUDED.sunset "
+            + "RETURNING id, latitude, longitude, date";
+
+    private static final String LINK_SQL = "INSERT INTO sunrise_sunset_locations (sunrise_sunset_id, location_id) "
+            + "SELECT k.sunrise_sunset_id, k.location_id FROM unnest(?::int[], ?::int[]) AS k(sunrise_sunset_id, location_id) "
+            + "JOIN locations l ON l.id = k.location_id ON CONFLICT DO NOTHING";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SequenceIdBlocks idBlocks;
+
+    @Autowired
+    public SunriseSunsetUpsertRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.idBlocks = new SequenceIdBlocks(ID_BLOCK_SIZE,
+                blocks -> jdbcTemplate.queryForList(NEXT_BLOCKS_SQL, Integer.class, blocks));
+    }
+
+    /**Upserts the entry and links it as {@link #upsertAll} does, returning its id.*/
+    @Transactional
+    public int upsert(SunriseSunsetDto entry) {
+        return upsertAll(List.of(entry)).get(0);
+    }
+
+    /**
+     * Inserts the entries, or updates the times of those already stored under their keys, links each to those
+     * of its locations that exist, and returns their ids in the order given. The keys must be distinct. An id
+     * reserved for an entry that turns out to be stored already is left unused.
+     */
+    @Transactional
+    public List<Integer> upsertAll(List<SunriseSunsetDto> entries) {
+        if (entries.isEmpty()) {
+            return List.of();
+        }
+        int size = entries.size();
+        Integer[] newIds = Arrays.stream(idBlocks.next(size)).boxed().toArray(Integer[]::new);
+        String[] dates = new String[size];
+        Double[] latitudes = new Double[size];
+        Double[] longitudes = new Double[size];
+        String[] sunrises = new String[size];
+        String[] sunsets = new String[size];
+        for (int i = 0; i < size; i++) {
+            SunriseSunsetDto entry = entries.get(i);
+            dates[i] = entry.getDate().toString();
+            latitudes[i] = entry.getLatitude();
+            longitudes[i] = entry.getLongitude();
+            sunrises[i] = text(entry.getSunrise());
+            sunsets[i] = text(entry.getSunset());
+        }
+        Map<List<Object>, Integer> idsByKey = new HashMap<>();
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            List<Array> arrays = List.of(array(connection, "integer", newIds), array(connection, "text", dates),
+                    array(connection, "float8", latitudes), array(connection, "float8", longitudes),
+                    array(connection, "text", sunrises), array(connection, "text", sunsets));
+            try {
+                jdbcTemplate.query(UPSERT_SQL, (RowCallbackHandler) rs -> idsByKey.put(
+                        naturalKey(rs.getObject(4, LocalDate.class), rs.getDouble(2), rs.getDouble(3)), rs.getInt(1)),
+                        arrays.toArray());
+                return null;
+            } finally {
+                for (Array array : arrays) {
+                    array.free();
+                }
+            }
+        });
+        List<Integer> ids = new ArrayList<>(size);
+        Map<Integer, List<Integer>> links = new HashMap<>();
+        for (SunriseSunsetDto entry : entries) {
+            Integer id = idsByKey.get(naturalKey(entry.getDate(), entry.getLatitude(), entry.getLongitude()));
+            ids.add(id);
+            if (entry.getLocationIds() != null) {
+                links.put(id, entry.getLocationIds());
+            }
+        }
+        linkAll(links);
+        return ids;
+    }
+
+    /**Links each entry to those of its locations that exist and are not linked yet; returns how many were.*/
+    @Transactional
+    public int linkAll(Map<Integer, ? extends Collection<Integer>> locationIdsByEntry) {
+        List<Integer> entryIds = new ArrayList<>();
+        List<Integer> locationIds = new ArrayList<>();
+        locationIdsByEntry.forEach((entryId, ids) -> {
+            if (ids != null) {
+                ids.forEach(locationId -> {
+                    entryIds.add(entryId);
+                    locationIds.add(locationId);
+                });
+            }
+        });
+        if (entryIds.isEmpty()) {
+            return 0;
+        }
+        return jdbcTemplate.execute((ConnectionCallback<Integer>) connection -> {
+            Array entries = array(connection, "integer", entryIds.toArray());
+            Array locations = array(connection, "integer", locationIds.toArray());
+            try {
+                return jdbcTemplate.update(LINK_SQL, entries, locations);
+            } finally {
+                entries.free();
+                locations.free();
+            }
+        });
+    }
+
+    /**
+     * Returns the natural key of an entry as a map key. Postgres compares -0.0 equal to 0.0, so the sign of
+     * a zero coordinate is dropped to match.
+     */
+    public static List<Object> naturalKey(LocalDate date, double latitude, double longitude) {
+        return List.of(date, latitude + 0.0, longitude + 0.0);
+    }
+
+    private static Array array(Connection connection, String type, Object[] values) throws SQLException {
+        return connection.createArrayOf(type, values);
+    }
+
+    private static String text(OffsetDateTime time) {
+        return time != null ? time.toString() : null;
+    }
+}
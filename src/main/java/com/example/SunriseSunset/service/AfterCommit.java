@@ -0,0 +1,52 @@
+package com.example.SunriseSunset.service;
+
+import com.example.SunriseSunset.cache.EntityCache;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Defers the cache updates of a write to the commit of the transaction it runs in, so that neither the caches
+ * of this node nor the invalidations sent to the others can expose rows that are rolled back, and the other
+ * nodes only reload once the rows are visible. Outside a transaction the write has committed already and the
+ * updates run at once. From the start of the commit until the updates have run the write counts as pending
+ * in the cache, which keeps a snapshot taken in between from being trusted.
+ */
+final class AfterCommit {
+
+    private AfterCommit() {
+    }
+
+    static void run(EntityCache entityCache, Runnable updates) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            entityCache.writePending();
+            try {
+                updates.run();
+            } finally {
+                entityCache.writeApplied();
+            }
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private boolean pending;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                entityCache.writePending();
+                pending = true;
+            }
+
+            @Override
+            public void afterCommit() {
+                updates.run();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (pending) {
+                    pending = false;
+                    entityCache.writeApplied();
+                }
+            }
+        });
+    }
+}
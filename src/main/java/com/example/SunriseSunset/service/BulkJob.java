@@ -0,0 +1,89 @@
+package com.example.SunriseSunset.service;
+
+import com.example.SunriseSunset.dto.BulkItemResult;
+import com.example.SunriseSunset.dto.BulkJobDto;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**Mutable state of one bulk import job, updated by its worker after every chunk and read by pollers.*/
+public class BulkJob {
+
+    /**Lifecycle of a job; COMPLETED jobs may still contain failed items.*/
+    public enum Status { QUEUED, RUNNING, COMPLETED, FAILED }
+
+    private final String id;
+    private final String type;
+    private final int totalItems;
+    private final int maxErrors;
+    private final Instant createdAt;
+    private final List<BulkItemResult<Object>> errors = new ArrayList<>();
+    private Status status = Status.QUEUED;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private int succeededItems;
+    private int failedItems;
+
+    public BulkJob(String id, String type, int totalItems, int maxErrors, Instant createdAt) {
+        this.id = id;
+        this.type = type;
+        this.totalItems = totalItems;
+        this.maxErrors = maxErrors;
+        this.createdAt = createdAt;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public synchronized Status getStatus() {
+        return status;
+    }
+
+    public synchronized Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    synchronized void start(Instant now) {
+        status = Status.RUNNING;
+        startedAt = now;
+    }
+
+    synchronized void recordSuccesses(int count) {
+        succeededItems += count;
+    }
+
+    /**Counts a failed item; only the first {@code maxErrors} messages are kept.*/
+    synchronized void recordFailure(int index, String error) {
+        failedItems++;
+        if (errors.size() < maxErrors) {
+            errors.add(BulkItemResult.failure(index, error));
+        }
+    }
+
+    synchronized void finish(Instant now, Status finalStatus) {
+        status = finalStatus;
+        finishedAt = now;
+    }
+
+    public synchronized BulkJobDto toDto(Instant now) {
+        BulkJobDto dto = new BulkJobDto();
+        dto.setId(id);
+        dto.setType(type);
+        dto.setStatus(status.name());
+        dto.setTotalItems(totalItems);
+        dto.setProcessedItems(succeededItems + failedItems);
+        dto.setSucceededItems(succeededItems);
+        dto.setFailedItems(failedItems);
+        dto.setCreatedAt(createdAt);
+        dto.setStartedAt(startedAt);
+        dto.setFinishedAt(finishedAt);
+        dto.setErrors(new ArrayList<>(errors));
+        if (startedAt != null) {
+            long elapsedMillis = Duration.between(startedAt, finishedAt != null ? finishedAt : now).toMillis();
+            dto.setItemsPerSecond(elapsedMillis > 0 ? (succeededItems + failedItems) * 1000.0 / elapsedMillis : 0);
+        }
+        return dto;
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.SunriseSunset.service;
+
+import com.example.SunriseSunset.dto.BulkItemResult;
+import com.example.SunriseSunset.dto.BulkJobDto;
+import com.example.SunriseSunset.dto.LocationDto;
+import com.example.SunriseSunset.dto.SunriseSunsetDto;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Runs bulk imports in the background. A submitted batch is split into chunks that the services create and
+ * commit one transaction at a time, so a failing chunk only fails its own items and progress is visible while
+ * the job runs. The services do a chunk's upstream lookups before they open its transaction and update the
+ * caches once it has committed. Jobs are kept in memory until their retention has elapsed.
+ */
+@Service
+public class BulkJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkJobService.class);
+    static final String TYPE_LOCATIONS = "locations";
+    static final String TYPE_SUNRISE_SUNSETS = "sunrise-sunsets";
+
+    private final LocationService locationService;
+    private final SunriseSunsetService sunriseSunsetService;
+    private final Executor bulkJobExecutor;
+    private final Clock clock;
+    private final int chunkSize;
+    private final int maxErrors;
+    private final Duration retention;
+    private final Map<String, BulkJob> jobs = new ConcurrentHashMap<>();
+
+    @Autowired
+    public BulkJobService(LocationService locationService,
+                          SunriseSunsetService sunriseSunsetService,
+                          @Qualifier("bulkJobExecutor") Executor bulkJobExecutor,
+                          @Value("${jobs.chunk-size:200}") int chunkSize,
+                          @Value("${jobs.max-errors:1000}") int maxErrors,
+                          @Value("${jobs.retention-minutes:60}") long retentionMinutes) {
+        this(locationService, sunriseSunsetService, bulkJobExecutor, Clock.systemUTC(),
+                chunkSize, maxErrors, Duration.ofMinutes(retentionMinutes));
+    }
+
+    BulkJobService(LocationService locationService, SunriseSunsetService sunriseSunsetService,
+                   Executor bulkJobExecutor, Clock clock, int chunkSize, int maxErrors, Duration retention) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Job chunk size must be positive: " + chunkSize);
+        }
+        this.locationService = locationService;
+        this.sunriseSunsetService = sunriseSunsetService;
+        this.bulkJobExecutor = bulkJobExecutor;
+        this.clock = clock;
+        this.chunkSize = chunkSize;
+        this.maxErrors = maxErrors;
+        this.retention = retention;
+    }
+
+    public BulkJobDto submitLocations(List<LocationDto> dtos) {
+        return submit(TYPE_LOCATIONS, dtos, chunk -> locationService.bulkCreateLocations(chunk).stream()
+                .map(dto -> BulkItemResult.<Object>success(0, dto))
+                .collect(Collectors.toList()));
+    }
+
+    public BulkJobDto submitSunriseSunsets(List<SunriseSunsetDto> dtos) {
+        return submit(TYPE_SUNRISE_SUNSETS, dtos, chunk -> sunriseSunsetService.bulkCreateSunriseSunsets(chunk)
+                .stream()
+                .map(result -> new BulkItemResult<Object>(result.getIndex(), result.getItem(), result.getError()))
+                .collect(Collectors.toList()));
+    }
+
+    public BulkJobDto getJob(String id) {
+        BulkJob job = jobs.get(id);
+        return job != null ? job.toDto(clock.instant()) : null;
+    }
+
+    /**Forgets finished jobs once their retention has elapsed.*/
+    @Scheduled(fixedDelayString = "${jobs.cleanup-interval-millis:60000}")
+    public void removeExpiredJobs() {
+        Instant cutoff = clock.instant().minus(retention);
+        jobs.values().removeIf(job -> job.getFinishedAt() != null && job.getFinishedAt().isBefore(cutoff));
+    }
+
+    /**
+     * Registers the job and queues it. The chunk function writes its chunk in one transaction and must return
+     * one result per item of its chunk, in order; the index of a result is ignored and replaced by the item's
+     * position in the whole batch.
+     */
+    private <T> BulkJobDto submit(String type, List<T> items, Function<List<T>, List<BulkItemResult<Object>>> chunkFn) {
+        List<T> batch = List.copyOf(items);
+        BulkJob job = new BulkJob(UUID.randomUUID().toString(), type, batch.size(), maxErrors, clock.instant());
+        jobs.put(job.getId(), job);
+        try {
+            bulkJobExecutor.execute(() -> run(job, batch, chunkFn));
+        } catch (RuntimeException e) {
+            jobs.remove(job.getId());
+            throw e;
+        }
+        logger.info("Queued {} job {} with {} items", type, job.getId(), batch.size());
+        return job.toDto(clock.instant());
+    }
+
+    private <T> void run(BulkJob job, List<T> batch, Function<List<T>, List<BulkItemResult<Object>>> chunkFn) {
+        job.start(clock.instant());
+        try {
+            for (int from = 0; from < batch.size(); from += chunkSize) {
+                int to = Math.min(from + chunkSize, batch.size());
+                runChunk(job, batch.subList(from, to), from, chunkFn);
+            }
+            job.finish(clock.instant(), BulkJob.Status.COMPLETED);
+            logger.info("Finished job {}", job.getId());
+        } catch (RuntimeException | Error e) {
+            job.finish(clock.instant(), BulkJob.Status.FAILED);
+            logger.error("Job {} failed", job.getId(), e);
+            throw e;
+        }
+    }
+
+    private <T> void runChunk(BulkJob job, List<T> chunk, int offset,
+                              Function<List<T>, List<BulkItemResult<Object>>> chunkFn) {
+        List<BulkItemResult<Object>> results;
+        try {
+            results = chunkFn.apply(chunk);
+        } catch (RuntimeException e) {
+            String error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            logger.warn("Job {} chunk at {} rolled back: {}", job.getId(), offset, error);
+            for (int i = 0; i < chunk.size(); i++) {
+                job.recordFailure(offset + i, error);
+            }
+            return;
+        }
+        int succeeded = 0;
+        for (int i = 0; i < chunk.size(); i++) {
+            BulkItemResult<Object> result = results != null && i < results.size() ? results.get(i) : null;
+            if (result == null) {
+                job.recordFailure(offset + i, "No result");
+            } else if (result.isSuccess()) {
+                succeeded++;
+            } else {
+                job.recordFailure(offset + i, result.getError());
+            }
+        }
+        job.recordSuccesses(succeeded);
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.SunriseSunset.service;
+
+import com.example.SunriseSunset.dto.DayLengthDto;
+import com.example.SunriseSunset.dto.DayLengthSummaryDto;
+import com.example.SunriseSunset.timeseries.SunTimesSeries;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+/**
+ * Day lengths and their aggregates over date ranges, computed from the cached per-location series. Summaries
+ * of many locations are split across the analytics fork-join pool.
+ */
+@Service
+public class DayLengthService {
+
+    /**Entries below which a summary task aggregates its locations itself rather than splitting further.*/
+    static final int SEQUENTIAL_ENTRIES = 8192;
+
+    private final SunriseSunsetService sunriseSunsetService;
+    private final ForkJoinPool analyticsPool;
+
+    @Autowired
+    public DayLengthService(SunriseSunsetService sunriseSunsetService,
+                            @Qualifier("analyticsPool") ForkJoinPool analyticsPool) {
+        this.sunriseSunsetService = sunriseSunsetService;
+        this.analyticsPool = analyticsPool;
+    }
+
+    /**Returns the sun times and day length of each entry linked to the location in the range, by date.*/
+    public List<DayLengthDto> getDayLengths(Integer locationId, LocalDate from, LocalDate to) {
+        return sunriseSunsetService.getSeries(locationId).dayLengthsBetween(from, to);
+    }
+
+    /**Returns a summary of the range for each of the locations, in the order given.*/
+    public List<DayLengthSummaryDto> summarize(List<Integer> locationIds, LocalDate from, LocalDate to) {
+        List<Map.Entry<Integer, SunTimesSeries>> series = List.copyOf(
+                sunriseSunsetService.getSeries(locationIds).entrySet());
+        return analyticsPool.invoke(new SummaryTask(series, from, to));
+    }
+
+    /**Splits the locations in halves until a part holds few enough entries to aggregate in one go.*/
+    private static final class SummaryTask extends RecursiveTask<List<DayLengthSummaryDto>> {
+
+        private final List<Map.Entry<Integer, SunTimesSeries>> series;
+        private final LocalDate from;
+        private final LocalDate to;
+
+        SummaryTask(List<Map.Entry<Integer, SunTimesSeries>> series, LocalDate from, LocalDate to) {
+            this.series = series;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<DayLengthSummaryDto> compute() {
+            long entries = series.stream().mapToLong(entry -> entry.getValue().size()).sum();
+            if (series.size() < 2 || entries <= SEQUENTIAL_ENTRIES) {
+                List<DayLengthSummaryDto> summaries = new ArrayList<>(series.size());
+                series.forEach(entry -> {
+                    DayLengthSummaryDto summary = entry.getValue().summarize(from, to);
+                    summary.setLocationId(entry.getKey());
+                    summaries.add(summary);
+                });
+                return summaries;
+            }
+            int middle = series.size() / 2;
+            SummaryTask left = new SummaryTask(series.subList(0, middle), from, to);
+            SummaryTask right = new SummaryTask(series.subList(middle, series.size()), from, to);
+            left.fork();
+            List<DayLengthSummaryDto> summaries = new ArrayList<>(series.size());
+            List<DayLengthSummaryDto> rightSummaries = right.compute();
+            summaries.addAll(left.join());
+            summaries.addAll(rightSummaries);
+            return summaries;
+        }
+    }
+}
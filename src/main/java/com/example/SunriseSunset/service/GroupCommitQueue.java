@@ -0,0 +1,283 @@
+package com.example.SunriseSunset.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Queues writes for a flusher thread that hands them to the writer in groups, so that many writes share one
+ * transaction and one commit. A group is written once it holds the maximum number of items or once its
+ * oldest item has waited the maximum delay. Callers block until their group has been written and get their
+ * own result from it, for no longer than the write timeout. A full queue makes callers wait up to the offer
+ * timeout and then rejects them. If a group fails, its items are written again one at a time so that only the
+ * failing ones fail; the flusher itself never dies on a failure, it fails the group and goes on. Closing stops
+ * new writes and lets the flusher write everything already queued.
+ */
+public class GroupCommitQueue<T, R> implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(GroupCommitQueue.class);
+
+    private final String name;
+    private final int capacity;
+    private final int maxGroupSize;
+    private final long maxDelayNanos;
+    private final long offerTimeoutNanos;
+    private final long writeTimeoutNanos;
+    private final Duration drainTimeout;
+    private final Function<List<T>, List<R>> writer;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final ArrayDeque<Pending<T, R>> queue = new ArrayDeque<>();
+    private final Thread flusher;
+    private final Counter written;
+    private final Counter failed;
+    private final Counter rejected;
+    private final Counter timedOut;
+    private final DistributionSummary groupSizes;
+    private boolean accepting = true;
+
+    /**A queued write and the caller waiting for its result.*/
+    private static final class Pending<T, R> {
+        final T item;
+        final long enqueuedAt;
+        final CompletableFuture<R> result = new CompletableFuture<>();
+
+        Pending(T item, long enqueuedAt) {
+            this.item = item;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    /**
+     * Starts the flusher. The writer gets the items of a group in the order they were queued and returns one
+     * result per item in the same order.
+     */
+    public GroupCommitQueue(String name, int capacity, int maxGroupSize, Duration maxDelay, Duration offerTimeout,
+                            Duration writeTimeout, Duration drainTimeout, Function<List<T>, List<R>> writer,
+                            MeterRegistry registry) {
+        if (capacity < 1 || maxGroupSize < 1) {
+            throw new IllegalArgumentException("Write-behind capacity and group size must be positive: " + capacity
+                    + ", " + maxGroupSize);
+        }
+        this.name = name;
+        this.capacity = capacity;
+        this.maxGroupSize = maxGroupSize;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.offerTimeoutNanos = offerTimeout.toNanos();
+        this.writeTimeoutNanos = writeTimeout.toNanos();
+        this.drainTimeout = drainTimeout;
+        this.writer = writer;
+        this.written = outcomeCounter(registry, "written");
+        this.failed = outcomeCounter(registry, "failed");
+        this.rejected = outcomeCounter(registry, "rejected");
+        this.timedOut = outcomeCounter(registry, "timed-out");
+        this.groupSizes = DistributionSummary.builder("write-behind.group.size").tag("queue", name).register(registry);
+        Gauge.builder("write-behind.queue.depth", this, GroupCommitQueue::getQueueDepth)
+                .tag("queue", name)
+                .register(registry);
+        this.flusher = new Thread(this::flush, name + "-group-commit");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Queues the item and returns its result once its group has been written. A caller that waits longer than
+     * the write timeout gets a {@link WriteBehindUnavailableException}; its item is taken back off the queue if
+     * it is still there, otherwise it may yet be written.
+     */
+    public R submit(T item) {
+        Pending<T, R> pending;
+        lock.lock();
+        try {
+            long wait = offerTimeoutNanos;
+            while (accepting && queue.size() >= capacity) {
+                if (wait <= 0) {
+                    rejected.increment();
+                    throw new WriteBehindUnavailableException("Write-behind queue " + name + " is full");
+                }
+                wait = notFull.awaitNanos(wait);
+            }
+            if (!accepting) {
+                rejected.increment();
+                throw new WriteBehindUnavailableException("Write-behind queue " + name + " is shutting down");
+            }
+            pending = new Pending<>(item, System.nanoTime());
+            queue.addLast(pending);
+            if (queue.size() == 1 || queue.size() >= maxGroupSize) {
+                notEmpty.signal();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WriteBehindUnavailableException("Interrupted while waiting for room in write-behind queue "
+                    + name);
+        } finally {
+            lock.unlock();
+        }
+        try {
+            return pending.result.get(writeTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            timedOut.increment();
+            Duration timeout = Duration.ofNanos(writeTimeoutNanos);
+            throw new WriteBehindUnavailableException(abandon(pending)
+                    ? "Write-behind queue " + name + " did not get to the write within " + timeout
+                    : "Write-behind queue " + name + " did not finish the write within " + timeout
+                            + "; it may still be stored");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandon(pending);
+            throw new WriteBehindUnavailableException("Interrupted while waiting for write-behind queue " + name);
+        }
+    }
+
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**Stops accepting writes and waits up to the drain timeout for the queued ones to be written.*/
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            accepting = false;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join(drainTimeout.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (flusher.isAlive()) {
+            logger.warn("Write-behind queue {} still holds {} writes after {}", name, getQueueDepth(), drainTimeout);
+        }
+    }
+
+    /**Takes the item back off the queue and returns true if the flusher has not taken it yet.*/
+    private boolean abandon(Pending<T, R> pending) {
+        lock.lock();
+        try {
+            if (queue.remove(pending)) {
+                notFull.signalAll();
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flush() {
+        List<Pending<T, R>> group;
+        while ((group = nextGroup()) != null) {
+            try {
+                groupSizes.record(group.size());
+                write(group);
+            } catch (RuntimeException | Error e) {
+                logger.error("Write-behind queue {} failed a group of {} writes", name, group.size(), e);
+                group.forEach(pending -> pending.result.completeExceptionally(e));
+            }
+        }
+    }
+
+    /**
+     * Waits for a group to fill or for its oldest item to reach the delay, and takes it off the queue. Once
+     * closed, groups are taken without waiting, and null is returned when the queue is empty.
+     */
+    private List<Pending<T, R>> nextGroup() {
+        lock.lock();
+        try {
+            while (queue.isEmpty()) {
+                if (!accepting) {
+                    return null;
+                }
+                notEmpty.awaitUninterruptibly();
+            }
+            long deadline = queue.peekFirst().enqueuedAt + maxDelayNanos;
+            long remaining;
+            while (accepting && queue.size() < maxGroupSize && (remaining = deadline - System.nanoTime()) > 0) {
+                try {
+                    notEmpty.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    // Only close() stops the flusher; an interrupt just writes the group early.
+                    break;
+                }
+            }
+            List<Pending<T, R>> group = new ArrayList<>(Math.min(queue.size(), maxGroupSize));
+            while (group.size() < maxGroupSize && !queue.isEmpty()) {
+                group.add(queue.pollFirst());
+            }
+            notFull.signalAll();
+            return group;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void write(List<Pending<T, R>> group) {
+        List<T> items = new ArrayList<>(group.size());
+        group.forEach(pending -> items.add(pending.item));
+        List<R> results;
+        try {
+            results = writer.apply(items);
+        } catch (RuntimeException | Error e) {
+            if (group.size() == 1) {
+                failed.increment();
+                group.get(0).result.completeExceptionally(e);
+                return;
+            }
+            logger.warn("Group of {} writes in {} failed, writing them one at a time: {}", group.size(), name,
+                    e.getMessage());
+            group.forEach(pending -> write(List.of(pending)));
+            return;
+        }
+        if (results == null || results.size() != group.size()) {
+            // The group has committed, so writing it again one at a time would store it twice.
+            failed.increment(group.size());
+            IllegalStateException e = new IllegalStateException("Write-behind writer for " + name + " returned "
+                    + (results == null ? "no" : results.size()) + " results for " + group.size() + " items");
+            group.forEach(pending -> pending.result.completeExceptionally(e));
+            return;
+        }
+        written.increment(group.size());
+        for (int i = 0; i < group.size(); i++) {
+            group.get(i).result.complete(results.get(i));
+        }
+    }
+
+    private Counter outcomeCounter(MeterRegistry registry, String outcome) {
+        return Counter.builder("write-behind.writes")
+                .tag("queue", name)
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+}
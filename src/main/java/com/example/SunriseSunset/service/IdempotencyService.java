@@ -0,0 +1,113 @@
+package com.example.SunriseSunset.service;
+
+import com.example.SunriseSunset.repository.IdempotencyStore;
+import com.example.SunriseSunset.repository.IdempotencyStore.StoredResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Answers a retried request with the response its Idempotency-Key was first answered with, for as long as the
+ * key is kept. A key is bound to the endpoint and to a hash of the request body it came with, and reusing it
+ * for a different request is rejected. Two first uses of a key that race both run and the first response
+ * recorded wins, so the action must itself be safe to repeat.
+ */
+@Service
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+    static final int MAX_KEY_LENGTH = 200;
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyService.class);
+
+    private final IdempotencyStore store;
+    private final ObjectMapper objectMapper;
+    private final Clock clock;
+    private final Duration ttl;
+
+    @Autowired
+    public IdempotencyService(IdempotencyStore store, ObjectMapper objectMapper,
+                              @Value("${idempotency.ttl-seconds:86400}") long ttlSeconds) {
+        this(store, objectMapper, Clock.systemUTC(), Duration.ofSeconds(ttlSeconds));
+    }
+
+    IdempotencyService(IdempotencyStore store, ObjectMapper objectMapper, Clock clock, Duration ttl) {
+        this.store = store;
+        this.objectMapper = objectMapper;
+        this.clock = clock;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Runs the action and records its response under the key, or returns the response recorded for the key.
+     * Without a key the action just runs.
+     */
+    public <T> T execute(String endpoint, String key, Object request, Class<T> responseType, Supplier<T> action) {
+        if (key == null) {
+            return action.get();
+        }
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException(HEADER + " must be 1 to " + MAX_KEY_LENGTH + " characters");
+        }
+        String scopedKey = endpoint + " " + key;
+        String requestHash = hash(endpoint + " " + toJson(request));
+        Optional<StoredResponse> stored = store.find(scopedKey, clock.instant());
+        if (stored.isPresent()) {
+            if (!stored.get().requestHash.equals(requestHash)) {
+                throw new IllegalArgumentException(HEADER + " " + key + " was already used with a different request");
+            }
+            logger.debug("Replaying the response recorded for {} {}", HEADER, key);
+            return fromJson(stored.get().response, responseType);
+        }
+        T response = action.get();
+        store.save(scopedKey, requestHash, toJson(response), clock.instant().plus(ttl));
+        return response;
+    }
+
+    @Scheduled(fixedDelayString = "${idempotency.cleanup-interval-millis:600000}")
+    public void purgeExpired() {
+        int purged = store.deleteExpired(clock.instant());
+        if (purged > 0) {
+            logger.debug("Purged {} expired idempotency keys", purged);
+        }
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize " + value.getClass().getSimpleName(), e);
+        }
+    }
+
+    private <T> T fromJson(String json, Class<T> type) {
+        try {
+            return objectMapper.readValue(json, type);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to read the recorded " + type.getSimpleName(), e);
+        }
+    }
+
+    private static String hash(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
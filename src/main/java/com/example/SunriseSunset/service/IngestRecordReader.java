@@ -0,0 +1,122 @@
+package com.example.SunriseSunset.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads an ingest body one record at a time, either as CSV whose first line names the fields or as NDJSON
+ * with one flat object per line. Blank lines are skipped; quoted CSV fields may not span lines.
+ */
+class IngestRecordReader {
+
+    private final BufferedReader reader;
+    private final IngestService.Format format;
+    private final ObjectMapper objectMapper;
+    private List<String> header;
+    private long lineNumber;
+
+    IngestRecordReader(InputStream body, IngestService.Format format, ObjectMapper objectMapper) {
+        this.reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        this.format = format;
+        this.objectMapper = objectMapper;
+    }
+
+    /**Returns the next record by field name, with null for empty or missing values, or null at the end.*/
+    Map<String, String> next() throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            if (line == null) {
+                return null;
+            }
+            lineNumber++;
+        } while (line.isBlank());
+
+        if (format == IngestService.Format.NDJSON) {
+            return parseJson(line);
+        }
+        if (header == null) {
+            header = parseCsv(line);
+            return next();
+        }
+        List<String> values = parseCsv(line);
+        if (values.size() != header.size()) {
+            throw invalid("expected " + header.size() + " fields but found " + values.size());
+        }
+        Map<String, String> record = new HashMap<>();
+        for (int i = 0; i < values.size(); i++) {
+            String value = values.get(i);
+            record.put(header.get(i), value.isEmpty() ? null : value);
+        }
+        return record;
+    }
+
+    IllegalArgumentException invalid(String message) {
+        return new IllegalArgumentException("Line " + lineNumber + ": " + message);
+    }
+
+    private Map<String, String> parseJson(String line) {
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(line);
+        } catch (JsonProcessingException e) {
+            throw invalid("malformed JSON");
+        }
+        if (!node.isObject()) {
+            throw invalid("expected a JSON object");
+        }
+        Map<String, String> record = new HashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode value = field.getValue();
+            if (value.isContainerNode()) {
+                throw invalid("field " + field.getKey() + " must be a scalar");
+            }
+            record.put(field.getKey(), value.isNull() ? null : value.asText());
+        }
+        return record;
+    }
+
+    private List<String> parseCsv(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        if (quoted) {
+            throw invalid("unterminated quoted field");
+        }
+        values.add(value.toString());
+        return values;
+    }
+}
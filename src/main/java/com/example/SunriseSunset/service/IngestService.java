@@ -0,0 +1,193 @@
+package com.example.SunriseSunset.service;
+
+import com.example.SunriseSunset.dto.IngestResultDto;
+import com.example.SunriseSunset.repository.CopyLoader;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Streams CSV or NDJSON bodies into the tables with COPY, for loads too large for the JPA write path.
+ * Each body is loaded in one transaction. Ids are supplied by the caller so links can refer to them; the caller
+ * declares the highest of them, and the sequence range up to it is reserved before the COPY starts, so creates
+ * running alongside the load never draw an id inside it. Loaded ids must lie in that range. Rows that repeat
+ * the natural key of an entry or a link already stored fail the whole load. The caches are updated only once
+ * the load has committed.
+ */
+@Service
+public class IngestService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestService.class);
+    static final String TABLE_LOCATIONS = "locations";
+    static final String TABLE_SUNRISE_SUNSETS = "sunrise_and_sunset";
+    static final String TABLE_LINKS = "sunrise_sunset_locations";
+    private static final String LOCATION_SEQUENCE = "locations_seq";
+    private static final String SUNRISE_SUNSET_SEQUENCE = "sunrise_and_sunset_seq";
+    private static final List<String> LOCATION_COLUMNS = List.of("id", "name", "country");
+    private static final List<String> SUNRISE_SUNSET_COLUMNS =
+            List.of("id", "date", "latitude", "longitude", "sunrise", "sunset");
+    private static final List<String> LINK_COLUMNS = List.of("sunrise_sunset_id", "location_id");
+
+    /**Body formats accepted by the ingest endpoints.*/
+    public enum Format {
+        CSV, NDJSON;
+
+        public static Format fromContentType(String contentType) {
+            String mediaType = contentType == null ? "" : contentType.split(";")[0].trim().toLowerCase();
+            return switch (mediaType) {
+                case "text/csv" -> CSV;
+                case "application/x-ndjson" -> NDJSON;
+                default -> throw new IllegalArgumentException("Unsupported ingest content type: " + contentType
+                        + ", expected text/csv or application/x-ndjson");
+            };
+        }
+    }
+
+    private final CopyLoader copyLoader;
+    private final TransactionTemplate transactionTemplate;
+    private final LocationService locationService;
+    private final SunriseSunsetService sunriseSunsetService;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public IngestService(CopyLoader copyLoader, TransactionTemplate transactionTemplate,
+                         LocationService locationService, SunriseSunsetService sunriseSunsetService,
+                         ObjectMapper objectMapper) {
+        this.copyLoader = copyLoader;
+        this.transactionTemplate = transactionTemplate;
+        this.locationService = locationService;
+        this.sunriseSunsetService = sunriseSunsetService;
+        this.objectMapper = objectMapper;
+    }
+
+    /**Loads locations with the fields id, name and country and ids up to {@code maxId}.*/
+    public IngestResultDto ingestLocations(InputStream body, Format format, long maxId) {
+        long rows = copyWithIds(TABLE_LOCATIONS, LOCATION_COLUMNS, LOCATION_SEQUENCE, maxId, body, format,
+                (record, reader) -> new Object[] {
+                    required(record, "name", reader),
+                    record.get("country")
+                }, () -> locationService.evictIngested(Set.of()));
+        return new IngestResultDto(TABLE_LOCATIONS, rows);
+    }
+
+    /**Loads sunrise/sunset rows with the fields id, date, latitude, longitude, sunrise and sunset and ids up to {@code maxId}.*/
+    public IngestResultDto ingestSunriseSunsets(InputStream body, Format format, long maxId) {
+        long rows = copyWithIds(TABLE_SUNRISE_SUNSETS, SUNRISE_SUNSET_COLUMNS, SUNRISE_SUNSET_SEQUENCE, maxId, body,
+                format,
+                (record, reader) -> new Object[] {
+                    parse(required(record, "date", reader), LocalDate::parse, "date", reader),
+                    coordinate(required(record, "latitude", reader), 90, "latitude", reader),
+                    coordinate(required(record, "longitude", reader), 180, "longitude", reader),
+                    timestamp(record.get("sunrise"), "sunrise", reader),
+                    timestamp(record.get("sunset"), "sunset", reader)
+                }, () -> sunriseSunsetService.evictIngested(Set.of()));
+        return new IngestResultDto(TABLE_SUNRISE_SUNSETS, rows);
+    }
+
+    /**Loads links between existing rows with the fields sunriseSunsetId and locationId.*/
+    public IngestResultDto ingestLinks(InputStream body, Format format) {
+        Set<Integer> sunriseSunsetIds = new HashSet<>();
+        Set<Integer> locationIds = new HashSet<>();
+        long rows = transactionTemplate.execute(status -> {
+            long copied = copyLoader.copy(TABLE_LINKS, LINK_COLUMNS, writer -> {
+                IngestRecordReader reader = new IngestRecordReader(body, format, objectMapper);
+                for (Map<String, String> record = reader.next(); record != null; record = reader.next()) {
+                    int sunriseSunsetId = id(required(record, "sunriseSunsetId", reader), "sunriseSunsetId", reader);
+                    int locationId = id(required(record, "locationId", reader), "locationId", reader);
+                    writer.field(sunriseSunsetId).field(locationId).endRow();
+                    sunriseSunsetIds.add(sunriseSunsetId);
+                    locationIds.add(locationId);
+                }
+            });
+            locationService.evictIngested(locationIds);
+            sunriseSunsetService.evictIngested(sunriseSunsetIds);
+            return copied;
+        });
+        logger.info("Ingested {} rows into {}", rows, TABLE_LINKS);
+        return new IngestResultDto(TABLE_LINKS, rows);
+    }
+
+    /**Maps a record to the values of the columns after id.*/
+    @FunctionalInterface
+    private interface RowMapper {
+        Object[] map(Map<String, String> record, IngestRecordReader reader);
+    }
+
+    private long copyWithIds(String table, List<String> columns, String sequence, long maxId, InputStream body,
+                             Format format, RowMapper mapper, Runnable evict) {
+        // Reserved in a transaction of its own: the sequence stays locked against other creates until it commits.
+        long minId = transactionTemplate.execute(status -> copyLoader.reserveSequenceRange(sequence, maxId));
+        if (maxId < minId) {
+            throw new IllegalArgumentException("maxId " + maxId + " is below the id sequence, use ids from " + minId);
+        }
+        long rows = transactionTemplate.execute(status -> {
+            long copied = copyLoader.copy(table, columns, writer -> {
+                IngestRecordReader reader = new IngestRecordReader(body, format, objectMapper);
+                for (Map<String, String> record = reader.next(); record != null; record = reader.next()) {
+                    int id = id(required(record, "id", reader), "id", reader);
+                    if (id < minId || id > maxId) {
+                        throw reader.invalid("id " + id + " is outside the reserved range " + minId + " to " + maxId);
+                    }
+                    writer.field(id);
+                    for (Object value : mapper.map(record, reader)) {
+                        writer.field(value);
+                    }
+                    writer.endRow();
+                }
+            });
+            // The eviction registers with this transaction and runs once the load has committed.
+            evict.run();
+            return copied;
+        });
+        logger.info("Ingested {} rows into {}", rows, table);
+        return rows;
+    }
+
+    private static String required(Map<String, String> record, String field, IngestRecordReader reader) {
+        String value = record.get(field);
+        if (value == null) {
+            throw reader.invalid("missing " + field);
+        }
+        return value;
+    }
+
+    private static int id(String value, String field, IngestRecordReader reader) {
+        int id = parse(value, Integer::parseInt, field, reader);
+        if (id < 1) {
+            throw reader.invalid(field + " must be positive");
+        }
+        return id;
+    }
+
+    private static double coordinate(String value, double limit, String field, IngestRecordReader reader) {
+        double coordinate = parse(value, Double::parseDouble, field, reader);
+        if (!(Math.abs(coordinate) <= limit)) {
+            throw reader.invalid(field + " must be between -" + limit + " and " + limit);
+        }
+        return coordinate;
+    }
+
+    private static OffsetDateTime timestamp(String value, String field, IngestRecordReader reader) {
+        return value == null ? null : parse(value, OffsetDateTime::parse, field, reader);
+    }
+
+    private static <T> T parse(String value, Function<String, T> parser, String field, IngestRecordReader reader) {
+        try {
+            return parser.apply(value);
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw reader.invalid("invalid " + field + ": " + value);
+        }
+    }
+}
@@ -1,16 +1,31 @@
 package com.example.SunriseSunset.service;
 
+import com.example.SunriseSunset.cache.AggregateView;
+import com.example.SunriseSunset.cache.CacheTags;
+import com.example.SunriseSunset.cache.EntityCache;
+import com.example.SunriseSunset.cache.InvalidationBus;
 import com.example.SunriseSunset.dto.LocationDto;
 import com.example.SunriseSunset.model.LocationEntity;
+import com.example.SunriseSunset.model.SunriseSunsetEntity;
+import com.example.SunriseSunset.repository.LinkRowCursor;
+import com.example.SunriseSunset.repository.LocationLinkRow;
 import com.example.SunriseSunset.repository.LocationRepository;
 import com.example.SunriseSunset.repository.SunriseSunsetRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 import java.util.ArrayList;
 
@@ -24,21 +39,43 @@ public class LocationService {
 
     private final LocationRepository locationRepository;
     private final SunriseSunsetRepository sunriseSunsetRepository;
-    private final Map<String, Object> entityCache;
+    private final LinkRowCursor linkRowCursor;
+    private final EntityCache entityCache;
+    private final InvalidationBus invalidationBus;
+    private final AggregateView<LocationDto> allLocations;
     private final RequestCounterService requestCounterService;
 
     @Autowired
     public LocationService(LocationRepository locationRepository,
                            SunriseSunsetRepository sunriseSunsetRepository,
-                           Map<String, Object> entityCache) {
+                           LinkRowCursor linkRowCursor,
+                           EntityCache entityCache,
+                           InvalidationBus invalidationBus) {
         this.locationRepository = locationRepository;
         this.sunriseSunsetRepository = sunriseSunsetRepository;
+        this.linkRowCursor = linkRowCursor;
         this.entityCache = entityCache;
+        this.invalidationBus = invalidationBus;
+        this.allLocations = entityCache.aggregate(CACHE_KEY_ALL, LocationDto::getId,
+                CacheTags::forLocation, this::reloadLocations);
         this.requestCounterService = new RequestCounterService();
     }
 
+    @Transactional
     public LocationDto createLocation(LocationDto dto) {
+        return createLocation(dto, this::saveLocation);
+    }
+
+    /**
+     * Counts the request and hands the location to the writer, which stores it as {@link #writeLocations} does
+     * in a transaction of its own. Not transactional itself, since the writer may wait for a group commit.
+     */
+    public LocationDto createLocation(LocationDto dto, UnaryOperator<LocationDto> writer) {
         requestCounterService.increment();
+        return writer.apply(dto);
+    }
+
+    private LocationDto saveLocation(LocationDto dto) {
         LocationEntity entity = new LocationEntity();
         entity.name = dto.getName();
         entity.country = dto.getCountry();
@@ -51,65 +88,79 @@ public class LocationService {
         LocationDto savedDto = convertToDTO(savedEntity);
 
         logger.info("Caching {} {} after creation", CACHE_PREFIX_LOCATION, savedEntity.id);
-        entityCache.put(CACHE_PREFIX_LOCATION + savedEntity.id, savedDto);
-        entityCache.remove(CACHE_KEY_ALL);
+        Set<String> affectedTags = writeTags(savedEntity);
+        AfterCommit.run(entityCache, () -> {
+            entityCache.invalidateTags(affectedTags);
+            invalidationBus.publish(List.of(CACHE_PREFIX_LOCATION + savedEntity.id, CACHE_KEY_ALL), affectedTags);
+            cache(savedDto);
+            allLocations.upsert(savedDto);
+        });
 
         return savedDto;
     }
 
+    @Transactional(readOnly = true)
     public LocationDto getLocationById(Integer id) {
         requestCounterService.increment();
-        String cacheKey = CACHE_PREFIX_LOCATION + id;
-        if (entityCache.containsKey(cacheKey)) {
-            logger.debug("Cache hit for {} {}", CACHE_PREFIX_LOCATION, id);
-            return (LocationDto) entityCache.get(cacheKey);
-        }
-
-        logger.debug("Cache miss for {} {}, querying database", CACHE_PREFIX_LOCATION, id);
-        LocationEntity entity = locationRepository.findById(id)
-                .orElseThrow(() -> new IllegalArgumentException("Location not found with id: " + id));
-
-        LocationDto dto = convertToDTO(entity);
-        entityCache.put(cacheKey, dto);
-
-        return dto;
+        return entityCache.getOrLoad(CACHE_PREFIX_LOCATION + id, () -> {
+            logger.debug("Cache miss for {} {}, querying database", CACHE_PREFIX_LOCATION, id);
+            List<LocationDto> found = toDtos(locationRepository.findLinkRowsByIdIn(List.of(id)));
+            if (found.isEmpty()) {
+                throw new IllegalArgumentException("Location not found with id: " + id);
+            }
+            return found.get(0);
+        }, CacheTags::forLocation);
     }
 
+    @Transactional(readOnly = true)
     public List<LocationDto> getLocationsByIds(List<Integer> ids) {
         requestCounterService.increment();
-        List<LocationEntity> entities = locationRepository.findAllById(ids);
-        List<LocationDto> dtos = entities.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
-
-        dtos.forEach(dto -> entityCache.put(CACHE_PREFIX_LOCATION + dto.getId(), dto));
+        List<LocationDto> dtos = reloadLocations(ids);
+        dtos.forEach(this::cache);
         return dtos;
     }
 
+    @Transactional(readOnly = true)
     public List<LocationDto> getAllLocations() {
         requestCounterService.increment();
-        if (entityCache.containsKey(CACHE_KEY_ALL)) {
-            logger.debug("Cache hit for all Locations");
-            return (List<LocationDto>) entityCache.get(CACHE_KEY_ALL);
-        }
-
-        logger.debug("Cache miss for all Locations, querying database");
-        List<LocationEntity> entities = locationRepository.findAll();
-        List<LocationDto> dtos = entities.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        return allLocations.getOrLoad(() -> {
+            logger.debug("Cache miss for all Locations, querying database");
+            List<LocationDto> dtos = toDtos(locationRepository.findAllLinkRows());
+            dtos.forEach(this::cache);
+            return dtos;
+        });
+    }
 
-        dtos.forEach(dto -> entityCache.put(CACHE_PREFIX_LOCATION + dto.getId(), dto));
-        entityCache.put(CACHE_KEY_ALL, dtos);
+    /**Returns up to {@code limit} locations with ids after {@code after}, in id order.*/
+    @Transactional(readOnly = true)
+    public List<LocationDto> getLocationsPage(Integer after, int limit) {
+        requestCounterService.increment();
+        return reloadLocations(locationRepository.findIdsAfter(after != null ? after : 0, Limit.of(limit)));
+    }
 
-        return dtos;
+    /**
+     * Hands every location to the sink in id order while the table is read through a cursor, so neither
+     * the rows nor the DTOs of the whole table are held in memory.
+     */
+    @Transactional(readOnly = true)
+    public void streamAllLocations(Consumer<LocationDto> sink) {
+        requestCounterService.increment();
+        RowFolder<LocationLinkRow, LocationDto> folder = folder(sink);
+        linkRowCursor.forEachLocationRow(folder);
+        folder.finish();
     }
 
+    /**
+     * Reads and writes the location in one read-write transaction, so that both go to the primary and the
+     * update cannot merge a row read from a lagging replica.
+     */
+    @Transactional
     public LocationDto updateLocation(Integer id, LocationDto dto) {
         requestCounterService.increment();
         LocationEntity entity = locationRepository.findById(id)
                 .orElseThrow(() -> new IllegalArgumentException("Location not found with id: " + id));
 
+        Set<String> affectedTags = writeTags(entity);
         entity.name = dto.getName();
         entity.country = dto.getCountry();
 
@@ -122,12 +173,18 @@ public class LocationService {
         LocationEntity updatedEntity = locationRepository.save(entity);
         LocationDto updatedDto = convertToDTO(updatedEntity);
 
-        entityCache.put(CACHE_PREFIX_LOCATION + id, updatedDto);
-        entityCache.remove(CACHE_KEY_ALL);
+        affectedTags.addAll(writeTags(updatedEntity));
+        AfterCommit.run(entityCache, () -> {
+            entityCache.invalidateTags(affectedTags);
+            invalidationBus.publish(List.of(CACHE_PREFIX_LOCATION + id), affectedTags);
+            cache(updatedDto);
+            allLocations.upsert(updatedDto);
+        });
 
         return updatedDto;
     }
 
+    @Transactional
     public void deleteLocation(Integer id) {
         requestCounterService.increment();
         if (!locationRepository.existsById(id)) {
@@ -135,8 +192,36 @@ public class LocationService {
         }
 
         locationRepository.deleteById(id);
-        entityCache.remove(CACHE_PREFIX_LOCATION + id);
-        entityCache.remove(CACHE_KEY_ALL);
+        Set<String> affectedTags = Set.of(CacheTags.location(id));
+        AfterCommit.run(entityCache, () -> {
+            entityCache.invalidateTags(affectedTags);
+            entityCache.remove(CACHE_PREFIX_LOCATION + id);
+            invalidationBus.publish(List.of(CACHE_PREFIX_LOCATION + id), affectedTags);
+            allLocations.remove(id);
+        });
+    }
+
+    /**
+     * Folds the rows of a link query, which are ordered by location id, into one DTO per location. Reading
+     * the ids from the join avoids loading each entity's lazy collection with a query of its own.
+     */
+    private List<LocationDto> toDtos(List<LocationLinkRow> rows) {
+        List<LocationDto> dtos = new ArrayList<>();
+        RowFolder<LocationLinkRow, LocationDto> folder = folder(dtos::add);
+        rows.forEach(folder);
+        folder.finish();
+        return dtos;
+    }
+
+    private static RowFolder<LocationLinkRow, LocationDto> folder(Consumer<LocationDto> sink) {
+        return new RowFolder<>(row -> row.id,
+                row -> new LocationDto(row.id, row.name, row.country, new ArrayList<>()),
+                (dto, row) -> {
+                    if (row.sunriseSunsetId != null) {
+                        dto.getSunriseSunsetIds().add(row.sunriseSunsetId);
+                    }
+                },
+                sink);
     }
 
     protected LocationDto convertToDTO(LocationEntity entity) {
@@ -146,15 +231,59 @@ public class LocationService {
         return new LocationDto(entity.id, entity.name, entity.country, sunriseSunsetIds);
     }
 
+    private void cache(LocationDto dto) {
+        entityCache.put(CACHE_PREFIX_LOCATION + dto.getId(), dto, CacheTags.forLocation(dto));
+    }
+
+    private List<LocationDto> reloadLocations(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return toDtos(locationRepository.findLinkRowsByIdIn(ids));
+    }
+
+    /**
+     * Tags of the cached entries a write of the location makes stale: everything that references the
+     * location, plus the sunrise/sunset rows it links to and their date-and-name lookups.
+     */
+    private Set<String> writeTags(LocationEntity entity) {
+        Set<String> tags = new HashSet<>();
+        tags.add(CacheTags.location(entity.id));
+        entity.sunriseSunsets.forEach(sunriseSunset -> {
+            tags.add(CacheTags.sunriseSunset(sunriseSunset.id));
+            tags.add(CacheTags.dateAndLocationName(sunriseSunset.date, entity.name));
+        });
+        return tags;
+    }
+
+    /**
+     * Creates the locations of a bulk request in one transaction. The linked sunrise/sunset rows are loaded
+     * with one query for the whole batch, and the inserts go out in JDBC batches thanks to the pooled sequence
+     * ids.
+     */
+    @Transactional
     public List<LocationDto> bulkCreateLocations(List<LocationDto> dtos) {
         requestCounterService.increment();
+        return writeLocations(dtos);
+    }
+
+    /**
+     * Stores the locations with batched inserts in one transaction, updates the caches once it has committed,
+     * and returns the stored locations in order.
+     */
+    @Transactional
+    public List<LocationDto> writeLocations(List<LocationDto> dtos) {
+        Map<Integer, SunriseSunsetEntity> sunriseSunsetsById = findSunriseSunsetsById(dtos);
         List<LocationEntity> entities = new ArrayList<>();
         dtos.forEach(dto -> {
             LocationEntity entity = new LocationEntity();
             entity.name = dto.getName();
             entity.country = dto.getCountry();
-            if (dto.getSunriseSunsetIds() != null && !dto.getSunriseSunsetIds().isEmpty()) {
-                entity.sunriseSunsets = sunriseSunsetRepository.findAllById(dto.getSunriseSunsetIds());
+            if (dto.getSunriseSunsetIds() != null) {
+                dto.getSunriseSunsetIds().stream()
+                        .map(sunriseSunsetsById::get)
+                        .filter(Objects::nonNull)
+                        .forEach(entity.sunriseSunsets::add);
             }
             entities.add(entity);
         });
@@ -164,12 +293,52 @@ public class LocationService {
                 .map(this::convertToDTO)
                 .collect(Collectors.toList());
 
-        savedDtos.forEach(dto -> entityCache.put(CACHE_PREFIX_LOCATION + dto.getId(), dto));
-        entityCache.remove(CACHE_KEY_ALL);
+        Set<String> affectedTags = new HashSet<>();
+        savedEntities.forEach(saved -> affectedTags.addAll(writeTags(saved)));
+        List<String> affectedKeys = new ArrayList<>();
+        savedEntities.forEach(saved -> affectedKeys.add(CACHE_PREFIX_LOCATION + saved.id));
+        affectedKeys.add(CACHE_KEY_ALL);
+        AfterCommit.run(entityCache, () -> {
+            entityCache.invalidateTags(affectedTags);
+            invalidationBus.publish(affectedKeys, affectedTags);
+            savedDtos.forEach(this::cache);
+            allLocations.upsertAll(savedDtos);
+        });
 
         return savedDtos;
     }
 
+    private Map<Integer, SunriseSunsetEntity> findSunriseSunsetsById(List<LocationDto> dtos) {
+        Set<Integer> ids = new HashSet<>();
+        dtos.forEach(dto -> {
+            if (dto.getSunriseSunsetIds() != null) {
+                ids.addAll(dto.getSunriseSunsetIds());
+            }
+        });
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+        return sunriseSunsetRepository.findAllById(new ArrayList<>(ids)).stream()
+                .collect(Collectors.toMap(sunriseSunset -> sunriseSunset.id, sunriseSunset -> sunriseSunset,
+                        (a, b) -> a));
+    }
+
+    /**
+     * Evicts what a load that bypassed JPA made stale, once its transaction has committed: the given locations,
+     * whose links changed, and the list of all locations.
+     */
+    public void evictIngested(Collection<Integer> ids) {
+        Set<String> affectedTags = ids.stream().map(CacheTags::location).collect(Collectors.toSet());
+        List<String> affectedKeys = ids.stream().map(id -> CACHE_PREFIX_LOCATION + id).collect(Collectors.toList());
+        affectedKeys.add(CACHE_KEY_ALL);
+        AfterCommit.run(entityCache, () -> {
+            entityCache.invalidateTags(affectedTags);
+            affectedKeys.forEach(entityCache::remove);
+            invalidationBus.publish(affectedKeys, affectedTags);
+        });
+    }
+
+    @Transactional
     public void bulkDeleteLocations(List<Integer> ids) {
         requestCounterService.increment();
         List<LocationEntity> locations = locationRepository.findAllById(ids);
@@ -179,8 +348,16 @@ public class LocationService {
         });
         locationRepository.saveAll(locations);
         locationRepository.deleteAllById(ids);
-        ids.forEach(id -> entityCache.remove(CACHE_PREFIX_LOCATION + id));
-        entityCache.remove(CACHE_KEY_ALL);
+        Set<String> affectedTags = ids.stream().map(CacheTags::location).collect(Collectors.toSet());
+        AfterCommit.run(entityCache, () -> {
+            entityCache.invalidateTags(affectedTags);
+            ids.forEach(id -> {
+                entityCache.remove(CACHE_PREFIX_LOCATION + id);
+                allLocations.remove(id);
+            });
+            invalidationBus.publish(ids.stream().map(id -> CACHE_PREFIX_LOCATION + id).collect(Collectors.toList()),
+                    affectedTags);
+        });
     }
 
     public long getRequestCount() {
@@ -0,0 +1,240 @@
+package com.example.SunriseSunset.service;
+
+import com.example.SunriseSunset.dto.BulkItemResult;
+import com.example.SunriseSunset.dto.SunriseSunsetDto;
+import com.example.SunriseSunset.repository.LocationPoint;
+import com.example.SunriseSunset.repository.LocationRepository;
+import com.example.SunriseSunset.repository.PrecomputeWatermarkStore;
+import com.example.SunriseSunset.repository.PrecomputeWatermarkStore.Watermark;
+import com.example.SunriseSunset.repository.SunriseSunsetRepository;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Fills in the coming days of every location ahead of the requests for them. Locations carry no coordinates
+ * of their own, so each is filled at the coordinates of its latest entry, and locations without entries are
+ * skipped. Locations are walked in id order a batch at a time: a short transaction holding the watermark
+ * plans the days a batch is missing, the lookups run with no transaction or lock held, and a second short
+ * transaction moves the watermark past the batch, provided no other node has moved it in between. The rows
+ * themselves are upserted by their natural key, so a batch repeated after a restart or by another node
+ * creates nothing twice. The watermark stops before the first location whose lookups failed and the run
+ * ends there, so the next run retries it. Once the horizon is done later runs only visit locations created
+ * since, and the next day moves the horizon and starts the walk over.
+ */
+@Service
+@ConditionalOnProperty(name = "precompute.enabled", havingValue = "true")
+public class PrecomputeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PrecomputeService.class);
+    static final String WATERMARK = "sun-times";
+
+    private final LocationRepository locationRepository;
+    private final SunriseSunsetRepository sunriseSunsetRepository;
+    private final SunriseSunsetService sunriseSunsetService;
+    private final PrecomputeWatermarkStore watermarkStore;
+    private final TransactionTemplate transactionTemplate;
+    private final Clock clock;
+    private final int days;
+    private final int batchSize;
+
+    /**Locations of the next batch after the watermark they were read at, and the entries they are missing.*/
+    private static final class Plan {
+
+        final Watermark watermark;
+        final int after;
+        final List<Integer> locationIds;
+        final List<SunriseSunsetDto> missing;
+
+        Plan(Watermark watermark, int after, List<Integer> locationIds, List<SunriseSunsetDto> missing) {
+            this.watermark = watermark;
+            this.after = after;
+            this.locationIds = locationIds;
+            this.missing = missing;
+        }
+    }
+
+    /**Locations of a committed batch and what became of their lookups.*/
+    private static final class Batch {
+
+        final List<Integer> locationIds;
+        final int created;
+        final int failed;
+
+        Batch(List<Integer> locationIds, int created, int failed) {
+            this.locationIds = locationIds;
+            this.created = created;
+            this.failed = failed;
+        }
+    }
+
+    @Autowired
+    public PrecomputeService(LocationRepository locationRepository,
+                             SunriseSunsetRepository sunriseSunsetRepository,
+                             SunriseSunsetService sunriseSunsetService,
+                             PrecomputeWatermarkStore watermarkStore,
+                             TransactionTemplate transactionTemplate,
+                             @Value("${precompute.days:2}") int days,
+                             @Value("${precompute.batch-size:100}") int batchSize) {
+        this(locationRepository, sunriseSunsetRepository, sunriseSunsetService, watermarkStore, transactionTemplate,
+                Clock.systemUTC(), days, batchSize);
+    }
+
+    PrecomputeService(LocationRepository locationRepository, SunriseSunsetRepository sunriseSunsetRepository,
+                      SunriseSunsetService sunriseSunsetService, PrecomputeWatermarkStore watermarkStore,
+                      TransactionTemplate transactionTemplate, Clock clock, int days, int batchSize) {
+        if (days < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("Precompute days and batch size must be positive: " + days + ", "
+                    + batchSize);
+        }
+        this.locationRepository = locationRepository;
+        this.sunriseSunsetRepository = sunriseSunsetRepository;
+        this.sunriseSunsetService = sunriseSunsetService;
+        this.watermarkStore = watermarkStore;
+        this.transactionTemplate = transactionTemplate;
+        this.clock = clock;
+        this.days = days;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Runs batches until every location is done for the horizon, a batch has failed lookups, or another node
+     * holds or has moved the watermark.
+     */
+    @Scheduled(initialDelayString = "${precompute.initial-delay-millis:60000}",
+            fixedDelayString = "${precompute.interval-millis:900000}")
+    public void precompute() {
+        LocalDate from = LocalDate.now(clock);
+        LocalDate through = from.plusDays(days - 1);
+        watermarkStore.createIfMissing(WATERMARK, through);
+        int locations = 0;
+        int created = 0;
+        int failed = 0;
+        Plan plan;
+        while ((plan = transactionTemplate.execute(status -> plan(from, through))) != null) {
+            Batch batch = runBatch(plan, through);
+            if (batch == null) {
+                break;
+            }
+            sunriseSunsetService.getSeries(batch.locationIds);
+            locations += batch.locationIds.size();
+            created += batch.created;
+            failed += batch.failed;
+            if (batch.failed > 0) {
+                break;
+            }
+        }
+        if (locations > 0) {
+            logger.info("Precomputed {} to {} for {} locations: {} entries created, {} lookups failed",
+                    from, through, locations, created, failed);
+        }
+    }
+
+    /**Reads the next batch after the watermark and the days it is missing, or returns null when there is none.*/
+    private Plan plan(LocalDate from, LocalDate through) {
+        Optional<Watermark> watermark = watermarkStore.lock(WATERMARK);
+        if (watermark.isEmpty()) {
+            logger.debug("Precompute watermark is held by another node");
+            return null;
+        }
+        int after = watermark.get().throughDate.equals(through) ? watermark.get().lastLocationId : 0;
+        List<Integer> locationIds = locationRepository.findIdsAfter(after, Limit.of(batchSize));
+        if (locationIds.isEmpty()) {
+            if (after == 0) {
+                watermarkStore.save(WATERMARK, new Watermark(through, 0));
+            }
+            return null;
+        }
+        return new Plan(watermark.get(), after, locationIds, missingDays(locationIds, from, through));
+    }
+
+    /**
+     * Looks up and creates the missing days of a planned batch outside any transaction, then moves the watermark
+     * up to the first location with a failed lookup. Returns null when another node moved the watermark first.
+     */
+    private Batch runBatch(Plan plan, LocalDate through) {
+        int created = 0;
+        int firstFailed = Integer.MAX_VALUE;
+        if (!plan.missing.isEmpty()) {
+            List<BulkItemResult<SunriseSunsetDto>> results = sunriseSunsetService.bulkCreateSunriseSunsets(plan.missing);
+            for (int i = 0; i < results.size(); i++) {
+                if (results.get(i).getError() == null) {
+                    created++;
+                } else {
+                    for (Integer locationId : plan.missing.get(i).getLocationIds()) {
+                        firstFailed = Math.min(firstFailed, locationId);
+                    }
+                }
+            }
+        }
+        int done = plan.after;
+        for (Integer locationId : plan.locationIds) {
+            if (locationId < firstFailed) {
+                done = locationId;
+            }
+        }
+        Watermark next = new Watermark(through, done);
+        Boolean moved = transactionTemplate.execute(status -> {
+            Optional<Watermark> current = watermarkStore.lock(WATERMARK);
+            if (current.isEmpty() || !current.get().throughDate.equals(plan.watermark.throughDate)
+                    || current.get().lastLocationId != plan.watermark.lastLocationId) {
+                return false;
+            }
+            watermarkStore.save(WATERMARK, next);
+            return true;
+        });
+        if (!Boolean.TRUE.equals(moved)) {
+            logger.debug("Precompute watermark was moved by another node");
+            return null;
+        }
+        return new Batch(plan.locationIds, created, plan.missing.size() - created);
+    }
+
+    /**
+     * Returns an entry to create for each day in the range that a location has none for, at the coordinates
+     * of the location's latest entry. Locations that share those coordinates share the entry.
+     */
+    private List<SunriseSunsetDto> missingDays(List<Integer> locationIds, LocalDate from, LocalDate through) {
+        Map<Integer, LocationPoint> anchors = new HashMap<>();
+        sunriseSunsetRepository.findLatestPointsByLocationIdIn(locationIds)
+                .forEach(point -> anchors.putIfAbsent(point.locationId, point));
+        Map<Integer, Set<LocalDate>> filled = new HashMap<>();
+        sunriseSunsetRepository.findPointsByLocationIdInAndDateBetween(locationIds, from, through)
+                .forEach(point -> filled.computeIfAbsent(point.locationId, id -> new HashSet<>()).add(point.date));
+        Map<List<Object>, SunriseSunsetDto> entries = new LinkedHashMap<>();
+        for (Integer locationId : locationIds) {
+            LocationPoint anchor = anchors.get(locationId);
+            if (anchor == null) {
+                continue;
+            }
+            Set<LocalDate> filledDates = filled.getOrDefault(locationId, Set.of());
+            for (LocalDate date = from; !date.isAfter(through); date = date.plusDays(1)) {
+                if (!filledDates.contains(date)) {
+                    LocalDate day = date;
+                    entries.computeIfAbsent(List.of(anchor.latitude, anchor.longitude, day), key -> {
+                        SunriseSunsetDto dto = new SunriseSunsetDto(day, anchor.latitude, anchor.longitude);
+                        dto.setLocationIds(new ArrayList<>());
+                        return dto;
+                    }).getLocationIds().add(locationId);
+                }
+            }
+        }
+        return new ArrayList<>(entries.values());
+    }
+}
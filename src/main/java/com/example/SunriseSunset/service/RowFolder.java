@@ -0,0 +1,45 @@
+package com.example.SunriseSunset.service;
+
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Folds join rows ordered by entity id into one item per entity. Each item is handed to the sink as soon
+ * as a row of the next entity shows that it is complete, so rows can be folded while they are read.
+ */
+final class RowFolder<R, T> implements Consumer<R> {
+
+    private final Function<R, Integer> idOf;
+    private final Function<R, T> start;
+    private final BiConsumer<T, R> add;
+    private final Consumer<T> sink;
+    private Integer currentId;
+    private T current;
+
+    RowFolder(Function<R, Integer> idOf, Function<R, T> start, BiConsumer<T, R> add, Consumer<T> sink) {
+        this.idOf = idOf;
+        this.start = start;
+        this.add = add;
+        this.sink = sink;
+    }
+
+    @Override
+    public void accept(R row) {
+        Integer id = idOf.apply(row);
+        if (current == null || !currentId.equals(id)) {
+            finish();
+            current = start.apply(row);
+            currentId = id;
+        }
+        add.accept(current, row);
+    }
+
+    /**Hands the last item to the sink; called once after the final row.*/
+    void finish() {
+        if (current != null) {
+            sink.accept(current);
+            current = null;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.SunriseSunset.service;
+
+import com.example.SunriseSunset.dto.Results;
+import com.example.SunriseSunset.dto.SunriseSunsetModel;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+/**
+ * Computes sunrise and sunset in process with the NOAA solar calculator (after Meeus, Astronomical
+ * Algorithms). Times are for the standard 90.833 degree zenith, which accounts for refraction and the
+ * solar disc, and agree with api.sunrise-sunset.org to within about a minute outside the polar circles.
+ */
+@Service
+@Qualifier("upstreamSunTimesProvider")
+@ConditionalOnProperty(name = "sun.provider", havingValue = "solar")
+public class SolarSunTimesProvider implements SunTimesProvider {
+
+    private static final double SUNRISE_ZENITH = 90.833;
+    private static final double JULIAN_DAY_UNIX_EPOCH = 2440587.5;
+    private static final double MINUTES_PER_DAY = 1440.0;
+    private static final DateTimeFormatter API_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssxxx");
+
+    @Override
+    public SunriseSunsetModel getSunTimes(double latitude, double longitude, LocalDate date) {
+        double sunrise = eventMinutes(true, latitude, longitude, date);
+        double sunset = eventMinutes(false, latitude, longitude, date);
+        Results results = new Results();
+        if (Double.isNaN(sunrise) || Double.isNaN(sunset)) {
+            results.setSunrise(NO_EVENT);
+            results.setSunset(NO_EVENT);
+        } else {
+            results.setSunrise(format(date, sunrise));
+            results.setSunset(format(date, sunset));
+        }
+        SunriseSunsetModel model = new SunriseSunsetModel();
+        model.setResults(results);
+        model.setStatus("OK");
+        return model;
+    }
+
+    /**
+     * Minutes after 00:00 UTC of the date at which the sun rises or sets, or NaN during polar day or night.
+     * The first estimate uses the sun's position at midnight; the second refines it at the estimated time.
+     */
+    static double eventMinutes(boolean rise, double latitude, double longitude, LocalDate date) {
+        double julianDay = date.toEpochDay() + JULIAN_DAY_UNIX_EPOCH;
+        double estimate = eventMinutesAt(rise, julianDay, latitude, longitude);
+        if (Double.isNaN(estimate)) {
+            return Double.NaN;
+        }
+        return eventMinutesAt(rise, julianDay + estimate / MINUTES_PER_DAY, latitude, longitude);
+    }
+
+    private static double eventMinutesAt(boolean rise, double julianDay, double latitude, double longitude) {
+        double t = (julianDay - 2451545.0) / 36525.0;
+        double hourAngle = hourAngle(latitude, declination(t));
+        if (Double.isNaN(hourAngle)) {
+            return Double.NaN;
+        }
+        double delta = longitude + Math.toDegrees(rise ? hourAngle : -hourAngle);
+        return 720.0 - 4.0 * delta - equationOfTime(t);
+    }
+
+    private static double hourAngle(double latitude, double declination) {
+        double latitudeRad = Math.toRadians(latitude);
+        double declinationRad = Math.toRadians(declination);
+        double cosine = Math.cos(Math.toRadians(SUNRISE_ZENITH)) / (Math.cos(latitudeRad) * Math.cos(declinationRad))
+                - Math.tan(latitudeRad) * Math.tan(declinationRad);
+        return cosine < -1.0 || cosine > 1.0 ? Double.NaN : Math.acos(cosine);
+    }
+
+    private static double declination(double t) {
+        double sine = Math.sin(Math.toRadians(obliquityCorrection(t))) * Math.sin(Math.toRadians(apparentLongitude(t)));
+        return Math.toDegrees(Math.asin(sine));
+    }
+
+    /**Equation of time in minutes.*/
+    private static double equationOfTime(double t) {
+        double y = Math.pow(Math.tan(Math.toRadians(obliquityCorrection(t)) / 2.0), 2);
+        double meanLongitude = Math.toRadians(geometricMeanLongitude(t));
+        double meanAnomaly = Math.toRadians(geometricMeanAnomaly(t));
+        double eccentricity = eccentricity(t);
+        double value = y * Math.sin(2.0 * meanLongitude)
+                - 2.0 * eccentricity * Math.sin(meanAnomaly)
+                + 4.0 * eccentricity * y * Math.sin(meanAnomaly) * Math.cos(2.0 * meanLongitude)
+                - 0.5 * y * y * Math.sin(4.0 * meanLongitude)
+                - 1.25 * eccentricity * eccentricity * Math.sin(2.0 * meanAnomaly);
+        return Math.toDegrees(value) * 4.0;
+    }
+
+    private static double geometricMeanLongitude(double t) {
+        double longitude = (280.46646 + t * (36000.76983 + t * 0.0003032)) % 360.0;
+        return longitude < 0 ? longitude + 360.0 : longitude;
+    }
+
+    private static double geometricMeanAnomaly(double t) {
+        return 357.52911 + t * (35999.05029 - 0.0001537 * t);
+    }
+
+    private static double eccentricity(double t) {
+        return 0.016708634 - t * (0.000042037 + 0.0000001267 * t);
+    }
+
+    private static double equationOfCenter(double t) {
+        double m = Math.toRadians(geometricMeanAnomaly(t));
+        return Math.sin(m) * (1.914602 - t * (0.004817 + 0.000014 * t))
+                + Math.sin(2.0 * m) * (0.019993 - 0.000101 * t)
+                + Math.sin(3.0 * m) * 0.000289;
+    }
+
+    private static double apparentLongitude(double t) {
+        double trueLongitude = geometricMeanLongitude(t) + equationOfCenter(t);
+        double omega = 125.04 - 1934.136 * t;
+        return trueLongitude - 0.00569 - 0.00478 * Math.sin(Math.toRadians(omega));
+    }
+
+    private static double obliquityCorrection(double t) {
+        double seconds = 21.448 - t * (46.8150 + t * (0.00059 - t * 0.001813));
+        double meanObliquity = 23.0 + (26.0 + seconds / 60.0) / 60.0;
+        double omega = 125.04 - 1934.136 * t;
+        return meanObliquity + 0.00256 * Math.cos(Math.toRadians(omega));
+    }
+
+    private static String format(LocalDate date, double minutes) {
+        long seconds = Math.round(minutes * 60.0);
+        return date.atStartOfDay().atOffset(ZoneOffset.UTC).plusSeconds(seconds).format(API_FORMAT);
+    }
+}
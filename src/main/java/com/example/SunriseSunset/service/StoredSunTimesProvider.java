@@ -0,0 +1,108 @@
+package com.example.SunriseSunset.service;
+
+import com.example.SunriseSunset.cache.EntityCache;
+import com.example.SunriseSunset.dto.SunriseSunsetModel;
+import com.example.SunriseSunset.repository.SunTimesStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.LocalDate;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+
+/**
+ * Answers lookups from an in-memory tier, then the {@link SunTimesStore} table, and only then the upstream
+ * provider. Coordinates are snapped to the centre of a grid cell of the configured size before any tier is
+ * consulted, so nearby points on the same date share one upstream call. Concurrent misses on the same cell
+ * share a single load.
+ */
+public class StoredSunTimesProvider implements SunTimesProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(StoredSunTimesProvider.class);
+    private static final double MICROS_PER_DEGREE = 1_000_000.0;
+
+    private final SunTimesProvider upstream;
+    private final SunTimesStore store;
+    private final EntityCache memory;
+    private final double precisionDegrees;
+    private final Counter memoryHits;
+    private final Counter storeHits;
+    private final Counter misses;
+
+    public StoredSunTimesProvider(SunTimesProvider upstream, SunTimesStore store, long memoryEntries,
+                                  double precisionDegrees, MeterRegistry registry) {
+        if (!(precisionDegrees > 0)) {
+            throw new IllegalArgumentException("Sun times precision must be positive: " + precisionDegrees);
+        }
+        this.upstream = upstream;
+        this.store = store;
+        this.memory = new EntityCache(memoryEntries, (key, value) -> 1);
+        this.precisionDegrees = precisionDegrees;
+        this.memoryHits = lookupCounter(registry, "memory");
+        this.storeHits = lookupCounter(registry, "store");
+        this.misses = lookupCounter(registry, "upstream");
+    }
+
+    @Override
+    public SunriseSunsetModel getSunTimes(double latitude, double longitude, LocalDate date) {
+        long latMicros = cellCentreMicros(latitude);
+        long lngMicros = cellCentreMicros(longitude);
+        String key = latMicros + "_" + lngMicros + "_" + date;
+        SunriseSunsetModel cached = (SunriseSunsetModel) memory.get(key);
+        if (cached != null) {
+            memoryHits.increment();
+            return cached;
+        }
+        SunriseSunsetModel model = memory.getOrLoad(key, () -> load(latMicros, lngMicros, date));
+        if (!isStorable(model)) {
+            memory.remove(key);
+        }
+        return model;
+    }
+
+    private SunriseSunsetModel load(long latMicros, long lngMicros, LocalDate date) {
+        Optional<SunriseSunsetModel> stored = findStored(latMicros, lngMicros, date);
+        if (stored.isPresent()) {
+            storeHits.increment();
+            return stored.get();
+        }
+        misses.increment();
+        SunriseSunsetModel model = upstream.getSunTimes(latMicros / MICROS_PER_DEGREE, lngMicros / MICROS_PER_DEGREE,
+                date);
+        if (isStorable(model)) {
+            try {
+                store.save(latMicros, lngMicros, date, model);
+            } catch (DataAccessException e) {
+                logger.warn("Could not store sun times for {},{} on {}", latMicros, lngMicros, date, e);
+            }
+        }
+        return model;
+    }
+
+    /**A store that is down only costs the upstream call it would have saved.*/
+    private Optional<SunriseSunsetModel> findStored(long latMicros, long lngMicros, LocalDate date) {
+        try {
+            return store.find(latMicros, lngMicros, date);
+        } catch (DataAccessException e) {
+            logger.warn("Could not read stored sun times for {},{} on {}", latMicros, lngMicros, date, e);
+            return Optional.empty();
+        }
+    }
+
+    long cellCentreMicros(double degrees) {
+        return Math.round(Math.round(degrees / precisionDegrees) * precisionDegrees * MICROS_PER_DEGREE);
+    }
+
+    private static boolean isStorable(SunriseSunsetModel model) {
+        return model != null && "OK".equals(model.getStatus()) && model.getResults() != null
+                && model.getResults().getSunrise() != null && model.getResults().getSunset() != null;
+    }
+
+    private static Counter lookupCounter(MeterRegistry registry, String tier) {
+        return Counter.builder("sun.store.lookups")
+                .description("Sun times lookups by the tier that answered them; upstream counts external calls")
+                .tag("tier", tier)
+                .register(registry);
+    }
+}
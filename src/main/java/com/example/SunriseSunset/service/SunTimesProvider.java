@@ -0,0 +1,14 @@
+package com.example.SunriseSunset.service;
+
+import com.example.SunriseSunset.dto.SunriseSunsetModel;
+import java.time.LocalDate;
+
+/**Source of sunrise and sunset times, selected with the {@code sun.provider} property.*/
+public interface SunTimesProvider {
+
+    /**Time returned for both sunrise and sunset on days the sun never rises or never sets.*/
+    String NO_EVENT = "1970-01-01T00:00:01+00:00";
+
+    /**Returns the UTC sunrise and sunset for the given coordinates and date in the sunrise-sunset.org format.*/
+    SunriseSunsetModel getSunTimes(double latitude, double longitude, LocalDate date);
+}
@@ -0,0 +1,165 @@
+package com.example.SunriseSunset.service;
+
+import com.example.SunriseSunset.cache.CacheTags;
+import com.example.SunriseSunset.cache.InvalidationBus;
+import com.example.SunriseSunset.dto.SunriseSunsetDto;
+import com.example.SunriseSunset.repository.SunriseSunsetPoint;
+import com.example.SunriseSunset.repository.SunriseSunsetRepository;
+import com.example.SunriseSunset.spatial.GridIndex;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Grid index over the coordinates and dates of the sunrise/sunset entries. It is loaded from the table on
+ * first use and then kept in step with the writes: this node's writes are applied directly, entries named
+ * by the invalidations of other nodes are re-read on the next query, and an invalidation of the list of all
+ * entries, which is how inserts that bypass JPA are announced, reloads the whole index. Writes made while
+ * a load is running are replayed on top of what it read, as in the aggregate views of the entity cache.
+ */
+@Component
+public class SunTimesSpatialIndex {
+
+    private final SunriseSunsetRepository sunriseSunsetRepository;
+    private final GridIndex index;
+    private final ReentrantLock loadLock = new ReentrantLock();
+    private final Set<Integer> staleIds = new HashSet<>();
+    private boolean loaded;
+    private List<Consumer<GridIndex>> pendingWrites;
+    private boolean loadCancelled;
+
+    @Autowired
+    public SunTimesSpatialIndex(SunriseSunsetRepository sunriseSunsetRepository, InvalidationBus invalidationBus,
+                                @Value("${spatial.cell-degrees:1.0}") double cellDegrees) {
+        this.sunriseSunsetRepository = sunriseSunsetRepository;
+        this.index = new GridIndex(cellDegrees);
+        invalidationBus.subscribe(new InvalidationBus.Listener() {
+            @Override
+            public void onInvalidation(Set<String> keys, Set<String> tags) {
+                if (keys.contains(SunriseSunsetService.CACHE_KEY_ALL)) {
+                    reset();
+                } else {
+                    markStale(tags.stream().map(CacheTags::sunriseSunsetIdOf).filter(Objects::nonNull).toList());
+                }
+            }
+
+            @Override
+            public void onMessagesLost() {
+                reset();
+            }
+        });
+    }
+
+    /**Returns the ids of the entries nearest to the point, nearest first, optionally only those of a date.*/
+    public int[] nearest(double latitude, double longitude, LocalDate date, int limit) {
+        ensureCurrent();
+        return index.nearest(latitude, longitude, day(date), limit);
+    }
+
+    /**Returns the ids of the entries inside the box in id order, optionally only those of a date.*/
+    public int[] within(double south, double west, double north, double east, LocalDate date, int limit) {
+        ensureCurrent();
+        return index.within(south, west, north, east, day(date), limit);
+    }
+
+    public void upsert(SunriseSunsetDto dto) {
+        apply(grid -> put(grid, dto.getId(), dto.getLatitude(), dto.getLongitude(), dto.getDate()));
+    }
+
+    public void upsertAll(Collection<SunriseSunsetDto> dtos) {
+        List<SunriseSunsetDto> copy = List.copyOf(dtos);
+        apply(grid -> copy.forEach(dto -> put(grid, dto.getId(), dto.getLatitude(), dto.getLongitude(),
+                dto.getDate())));
+    }
+
+    public void remove(Integer id) {
+        apply(grid -> grid.remove(id));
+    }
+
+    /**Drops the loaded state so that the next query reloads the index.*/
+    public synchronized void reset() {
+        loaded = false;
+        loadCancelled = pendingWrites != null;
+    }
+
+    /**Marks entries whose coordinates or date may have changed elsewhere, to be re-read on the next query.*/
+    synchronized void markStale(Collection<Integer> ids) {
+        staleIds.addAll(ids);
+    }
+
+    private void ensureCurrent() {
+        synchronized (this) {
+            if (loaded && staleIds.isEmpty()) {
+                return;
+            }
+        }
+        loadLock.lock();
+        try {
+            Set<Integer> refreshIds;
+            synchronized (this) {
+                if (loaded && staleIds.isEmpty()) {
+                    return;
+                }
+                refreshIds = loaded ? new HashSet<>(staleIds) : null;
+                staleIds.clear();
+                pendingWrites = new ArrayList<>();
+                loadCancelled = false;
+            }
+            List<SunriseSunsetPoint> points;
+            try {
+                points = refreshIds == null ? sunriseSunsetRepository.findAllPoints()
+                        : sunriseSunsetRepository.findPointsByIdIn(refreshIds);
+            } catch (RuntimeException | Error e) {
+                synchronized (this) {
+                    pendingWrites = null;
+                    if (refreshIds != null) {
+                        staleIds.addAll(refreshIds);
+                    }
+                }
+                throw e;
+            }
+            synchronized (this) {
+                List<Consumer<GridIndex>> replay = pendingWrites;
+                pendingWrites = null;
+                if (refreshIds == null) {
+                    index.clear();
+                } else {
+                    refreshIds.forEach(index::remove);
+                }
+                points.forEach(point -> put(index, point.id, point.latitude, point.longitude, point.date));
+                replay.forEach(write -> write.accept(index));
+                if (refreshIds == null && !loadCancelled) {
+                    loaded = true;
+                }
+            }
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    private synchronized void apply(Consumer<GridIndex> write) {
+        if (loaded) {
+            write.accept(index);
+        }
+        if (pendingWrites != null) {
+            pendingWrites.add(write);
+        }
+    }
+
+    private static void put(GridIndex grid, Integer id, double latitude, double longitude, LocalDate date) {
+        grid.put(id, latitude, longitude, day(date));
+    }
+
+    private static int day(LocalDate date) {
+        return date == null ? GridIndex.ANY_DAY : (int) date.toEpochDay();
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.SunriseSunset.service;
+
+import com.example.SunriseSunset.dto.SunriseSunsetModel;
+import com.example.SunriseSunset.upstream.RequestScheduler;
+import com.example.SunriseSunset.upstream.UpstreamClient;
+import java.time.LocalDate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
+
+/**Fetches sunrise and sunset times from api.sunrise-sunset.org.*/
+@Service
+@Qualifier("upstreamSunTimesProvider")
+@ConditionalOnProperty(name = "sun.provider", havingValue = "api", matchIfMissing = true)
+public class SunriseSunsetApiProvider implements SunTimesProvider {
+
+    private static final String SUN_API_URL = "https://api.sunrise-sunset.org/json";
+
+    private final UpstreamClient sunApiClient;
+    private final RequestScheduler sunApiScheduler;
+
+    @Autowired
+    public SunriseSunsetApiProvider(UpstreamClient sunApiClient, RequestScheduler sunApiScheduler) {
+        this.sunApiClient = sunApiClient;
+        this.sunApiScheduler = sunApiScheduler;
+    }
+
+    @Override
+    public SunriseSunsetModel getSunTimes(double latitude, double longitude, LocalDate date) {
+        String url = String.format("%s?lat=%f&lng=%f&date=%s&formatted=0", SUN_API_URL, latitude, longitude, date);
+        try {
+            return sunApiClient.get(url, SunriseSunsetModel.class, sunApiScheduler);
+        } catch (RestClientException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to fetch sunrise/sunset data: " + e.getMessage());
+        }
+    }
+}
@@ -1,21 +1,43 @@
 package com.example.SunriseSunset.service;
 
+import com.example.SunriseSunset.cache.AggregateView;
+import com.example.SunriseSunset.cache.CacheTags;
+import com.example.SunriseSunset.cache.EntityCache;
+import com.example.SunriseSunset.cache.InvalidationBus;
+import com.example.SunriseSunset.dto.BulkItemResult;
 import com.example.SunriseSunset.dto.SunriseSunsetDto;
-import com.example.SunriseSunset.model.LocationEntity;
 import com.example.SunriseSunset.model.SunriseSunsetEntity;
 import com.example.SunriseSunset.dto.SunriseSunsetModel;
+import com.example.SunriseSunset.repository.LinkRowCursor;
 import com.example.SunriseSunset.repository.LocationRepository;
+import com.example.SunriseSunset.repository.SunriseSunsetLinkRow;
 import com.example.SunriseSunset.repository.SunriseSunsetRepository;
+import com.example.SunriseSunset.repository.SunriseSunsetUpsertRepository;
+import com.example.SunriseSunset.timeseries.SunTimesSeries;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import java.time.LocalDate;
 import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 import java.util.ArrayList;
 
@@ -23,102 +45,171 @@ import java.util.ArrayList;
 public class SunriseSunsetService {
 
     private static final Logger logger = LoggerFactory.getLogger(SunriseSunsetService.class);
-    private static final String SUN_API_URL = "https://api.sunrise-sunset.org/json";
     private static final String CACHE_PREFIX_SUNRISE = "SunriseSunset_";
-    private static final String CACHE_KEY_ALL = "SunriseSunset_All";
+    static final String CACHE_KEY_ALL = "SunriseSunset_All";
     private static final String CACHE_KEY_LOCATION = "SunriseSunset_Location_";
     private static final String CACHE_KEY_DATE_LOCATION = "SunriseSunset_Date_";
 
-    private final RestTemplate restTemplate;
+    private final SunTimesProvider sunTimesProvider;
+    private final Executor sunTimesExecutor;
     private final SunriseSunsetRepository sunriseSunsetRepository;
+    private final SunriseSunsetUpsertRepository upsertRepository;
     private final LocationRepository locationRepository;
-    private final Map<String, Object> entityCache;
+    private final LinkRowCursor linkRowCursor;
+    private final SunTimesSpatialIndex spatialIndex;
+    private final EntityCache entityCache;
+    private final InvalidationBus invalidationBus;
+    private final TransactionTemplate transactionTemplate;
+    private final AggregateView<SunriseSunsetDto> allSunriseSunsets;
 
     @Autowired
-    public SunriseSunsetService(RestTemplate restTemplate,
+    public SunriseSunsetService(SunTimesProvider sunTimesProvider,
                                 SunriseSunsetRepository sunriseSunsetRepository,
+                                SunriseSunsetUpsertRepository upsertRepository,
                                 LocationRepository locationRepository,
-                                Map<String, Object> entityCache) {
-        this.restTemplate = restTemplate;
+                                LinkRowCursor linkRowCursor,
+                                SunTimesSpatialIndex spatialIndex,
+                                EntityCache entityCache,
+                                InvalidationBus invalidationBus,
+                                TransactionTemplate transactionTemplate,
+                                @Qualifier("sunTimesExecutor") Executor sunTimesExecutor) {
+        this.sunTimesProvider = sunTimesProvider;
         this.sunriseSunsetRepository = sunriseSunsetRepository;
+        this.upsertRepository = upsertRepository;
         this.locationRepository = locationRepository;
+        this.linkRowCursor = linkRowCursor;
+        this.spatialIndex = spatialIndex;
         this.entityCache = entityCache;
+        this.invalidationBus = invalidationBus;
+        this.transactionTemplate = transactionTemplate;
+        this.sunTimesExecutor = sunTimesExecutor;
+        this.allSunriseSunsets = entityCache.aggregate(CACHE_KEY_ALL, SunriseSunsetDto::getId,
+                CacheTags::forSunriseSunset, this::reloadSunriseSunsets);
     }
 
+    /**
+     * Creates the entry of the date and coordinates, or adds the requested links to the one stored under
+     * that key. A repeat finds the entry with one lookup on the natural key and is answered without calling
+     * the upstream API; it only writes when it asks for locations the entry is not linked to yet. The write
+     * runs in a read-write transaction of its own, opened once the upstream lookup has returned.
+     */
     public SunriseSunsetDto createSunriseSunset(SunriseSunsetDto dto) {
-        SunriseSunsetModel sunData = getSunriseSunset(dto.getLatitude(), dto.getLongitude(), dto.getDate().toString());
-        SunriseSunsetEntity entity = new SunriseSunsetEntity();
-        entity.date = dto.getDate();
-        entity.latitude = dto.getLatitude();
-        entity.longitude = dto.getLongitude();
-        entity.sunrise = OffsetDateTime.parse(sunData.getResults().getSunrise());
-        entity.sunset = OffsetDateTime.parse(sunData.getResults().getSunset());
-
-        if (dto.getLocationIds() != null && !dto.getLocationIds().isEmpty()) {
-            entity.locations = locationRepository.findAllById(dto.getLocationIds());
-        }
-
-        SunriseSunsetEntity savedEntity = sunriseSunsetRepository.save(entity);
-        SunriseSunsetDto savedDto = convertToDTO(savedEntity);
-
-
-        logger.info("Caching {} {} after creation", CACHE_PREFIX_SUNRISE, savedEntity.id);
-        entityCache.put(CACHE_PREFIX_SUNRISE + savedEntity.id, savedDto);
-        entityCache.remove(CACHE_KEY_ALL);
-
-        return savedDto;
+        return createSunriseSunset(dto, entry -> transactionTemplate.execute(status ->
+                afterWrite(List.of(upsertRepository.upsert(entry))).get(0)));
     }
 
-    public SunriseSunsetDto getSunriseSunsetById(Integer id) {
-        String cacheKey = CACHE_PREFIX_SUNRISE + id;
-        if (entityCache.containsKey(cacheKey)) {
-            logger.debug("Cache hit for {} {}", CACHE_PREFIX_SUNRISE, id);
-            return (SunriseSunsetDto) entityCache.get(cacheKey);
+    /**
+     * Creates the entry as {@link #createSunriseSunset(SunriseSunsetDto)} does, but hands a new entry, once its
+     * sun times are looked up, to the writer, which stores it as {@link #writeSunriseSunsets} does and may
+     * batch it with others. Not transactional itself, so that no connection is held during the lookup or
+     * while the writer waits for a group commit.
+     */
+    public SunriseSunsetDto createSunriseSunset(SunriseSunsetDto dto, UnaryOperator<SunriseSunsetDto> writer) {
+        List<Integer> locationIds = dto.getLocationIds() != null ? dto.getLocationIds() : List.of();
+        Optional<Integer> existingId = sunriseSunsetRepository.findIdByDateAndCoordinates(dto.getDate(),
+                dto.getLatitude(), dto.getLongitude());
+        if (existingId.isPresent()) {
+            SunriseSunsetDto existing = getSunriseSunsetById(existingId.get());
+            if (existing != null && existing.getLocationIds().containsAll(locationIds)) {
+                logger.debug("{} {} already exists with the requested links", CACHE_PREFIX_SUNRISE, existing.getId());
+                return existing;
+            }
+            return transactionTemplate.execute(status ->
+                    upsertRepository.linkAll(Map.of(existingId.get(), locationIds)) == 0 && existing != null
+                            ? existing
+                            : afterWrite(List.of(existingId.get())).get(0));
         }
+        SunriseSunsetDto created = writer.apply(withSunTimes(dto));
+        logger.info("Caching {} {} after creation", CACHE_PREFIX_SUNRISE, created.getId());
+        return created;
+    }
 
-        Optional<SunriseSunsetEntity> entity = sunriseSunsetRepository.findById(id);
-        if (entity.isPresent()) {
-            SunriseSunsetDto dto = convertToDTO(entity.get());
-            entityCache.put(cacheKey, dto);
-            return dto;
+    /**
+     * Stores entries that carry their sun times with one upsert in one transaction, updates the caches once
+     * it has committed, and returns the stored entry of each, in order. Entries sharing a natural key are
+     * stored once, with the links of all of them.
+     */
+    @Transactional
+    public List<SunriseSunsetDto> writeSunriseSunsets(List<SunriseSunsetDto> entries) {
+        Map<List<Object>, SunriseSunsetDto> merged = new LinkedHashMap<>();
+        entries.forEach(entry -> {
+            SunriseSunsetDto first = merged.computeIfAbsent(key(entry), k -> new SunriseSunsetDto(null, entry.getDate(),
+                    entry.getLatitude(), entry.getLongitude(), entry.getSunrise(), entry.getSunset(), new ArrayList<>()));
+            if (entry.getLocationIds() != null) {
+                entry.getLocationIds().stream()
+                        .filter(locationId -> !first.getLocationIds().contains(locationId))
+                        .forEach(first.getLocationIds()::add);
+            }
+        });
+        List<SunriseSunsetDto> distinct = new ArrayList<>(merged.values());
+        List<Integer> ids = upsertRepository.upsertAll(distinct);
+        Map<List<Object>, Integer> idsByKey = new HashMap<>();
+        for (int i = 0; i < distinct.size(); i++) {
+            idsByKey.put(key(distinct.get(i)), ids.get(i));
         }
-        return null;
+        Map<Integer, SunriseSunsetDto> saved = new HashMap<>();
+        afterWrite(ids).forEach(dto -> saved.put(dto.getId(), dto));
+        return entries.stream().map(entry -> saved.get(idsByKey.get(key(entry)))).collect(Collectors.toList());
     }
 
-    public List<SunriseSunsetDto> getSunriseSunsetsByIds(List<Integer> ids) {
-        List<SunriseSunsetEntity> entities = sunriseSunsetRepository.findAllById(ids);
-        List<SunriseSunsetDto> dtos = entities.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+    @Transactional(readOnly = true)
+    public SunriseSunsetDto getSunriseSunsetById(Integer id) {
+        return entityCache.getOrLoad(CACHE_PREFIX_SUNRISE + id, () -> {
+            logger.debug("Cache miss for {} {}, querying database", CACHE_PREFIX_SUNRISE, id);
+            List<SunriseSunsetDto> found = toDtos(sunriseSunsetRepository.findLinkRowsByIdIn(List.of(id)));
+            return found.isEmpty() ? null : found.get(0);
+        }, CacheTags::forSunriseSunset);
+    }
 
-        dtos.forEach(dto -> entityCache.put(CACHE_PREFIX_SUNRISE + dto.getId(), dto));
+    @Transactional(readOnly = true)
+    public List<SunriseSunsetDto> getSunriseSunsetsByIds(List<Integer> ids) {
+        List<SunriseSunsetDto> dtos = reloadSunriseSunsets(ids);
+        dtos.forEach(this::cache);
         return dtos;
     }
 
+    @Transactional(readOnly = true)
     public List<SunriseSunsetDto> getAllSunriseSunsets() {
-        if (entityCache.containsKey(CACHE_KEY_ALL)) {
-            logger.debug("Cache hit for all SunriseSunsets");
-            return (List<SunriseSunsetDto>) entityCache.get(CACHE_KEY_ALL);
-        }
+        return allSunriseSunsets.getOrLoad(() -> {
+            logger.debug("Cache miss for all SunriseSunsets, querying database");
+            return cacheEach(sunriseSunsetRepository.findAllLinkRows());
+        });
+    }
 
-        List<SunriseSunsetEntity> entities = sunriseSunsetRepository.findAll();
-        List<SunriseSunsetDto> dtos = entities.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
-        dtos.forEach(dto -> entityCache.put(CACHE_PREFIX_SUNRISE + dto.getId(), dto));
-        entityCache.put(CACHE_KEY_ALL, dtos);
+    /**Returns up to {@code limit} entries with ids after {@code after}, in id order.*/
+    @Transactional(readOnly = true)
+    public List<SunriseSunsetDto> getSunriseSunsetsPage(Integer after, int limit) {
+        return reloadSunriseSunsets(sunriseSunsetRepository.findIdsAfter(after != null ? after : 0, Limit.of(limit)));
+    }
 
-        return dtos;
+    /**
+     * Hands every entry to the sink in id order while the table is read through a cursor, so neither the
+     * rows nor the DTOs of the whole table are held in memory.
+     */
+    @Transactional(readOnly = true)
+    public void streamAllSunriseSunsets(Consumer<SunriseSunsetDto> sink) {
+        RowFolder<SunriseSunsetLinkRow, SunriseSunsetDto> folder = folder(sink);
+        linkRowCursor.forEachSunriseSunsetRow(folder);
+        folder.finish();
     }
 
+    /**
+     * Looks up the sun times of the new date and coordinates, then reads and writes the row in one read-write
+     * transaction, so that both go to the primary and the update cannot merge a row read from a lagging
+     * replica. The lookup runs before the transaction is opened.
+     */
     public SunriseSunsetDto updateSunriseSunset(Integer id, SunriseSunsetDto dto) {
-        Optional<SunriseSunsetEntity> existing = sunriseSunsetRepository.findById(id);
-        if (existing.isPresent()) {
+        SunriseSunsetModel sunData = sunTimesProvider.getSunTimes(dto.getLatitude(), dto.getLongitude(), dto.getDate());
+        return transactionTemplate.execute(status -> {
+            Optional<SunriseSunsetEntity> existing = sunriseSunsetRepository.findById(id);
+            if (existing.isEmpty()) {
+                return null;
+            }
             SunriseSunsetEntity entity = existing.get();
+            Set<String> affectedTags = writeTags(entity);
             entity.date = dto.getDate();
             entity.latitude = dto.getLatitude();
             entity.longitude = dto.getLongitude();
-            SunriseSunsetModel sunData = getSunriseSunset(dto.getLatitude(), dto.getLongitude(), dto.getDate().toString());
             entity.sunrise = OffsetDateTime.parse(sunData.getResults().getSunrise());
             entity.sunset = OffsetDateTime.parse(sunData.getResults().getSunset());
 
@@ -130,53 +221,258 @@ public class SunriseSunsetService {
 
             SunriseSunsetEntity updatedEntity = sunriseSunsetRepository.save(entity);
             SunriseSunsetDto updatedDto = convertToDTO(updatedEntity);
-            entityCache.put(CACHE_PREFIX_SUNRISE + id, updatedDto);
-            entityCache.remove(CACHE_KEY_ALL);
+            affectedTags.addAll(writeTags(updatedEntity));
+            AfterCommit.run(entityCache, () -> {
+                entityCache.invalidateTags(affectedTags);
+                invalidationBus.publish(List.of(CACHE_PREFIX_SUNRISE + id), affectedTags);
+                cache(updatedDto);
+                allSunriseSunsets.upsert(updatedDto);
+                spatialIndex.upsert(updatedDto);
+            });
             return updatedDto;
-        }
-        return null;
+        });
     }
 
+    @Transactional
     public void deleteSunriseSunset(Integer id) {
         sunriseSunsetRepository.deleteById(id);
-        entityCache.remove(CACHE_PREFIX_SUNRISE + id);
-        entityCache.remove(CACHE_KEY_ALL);
+        Set<String> affectedTags = Set.of(CacheTags.sunriseSunset(id));
+        AfterCommit.run(entityCache, () -> {
+            entityCache.invalidateTags(affectedTags);
+            entityCache.remove(CACHE_PREFIX_SUNRISE + id);
+            allSunriseSunsets.remove(id);
+            spatialIndex.remove(id);
+            invalidationBus.publish(List.of(CACHE_PREFIX_SUNRISE + id), affectedTags);
+        });
     }
 
+    @Transactional(readOnly = true)
     public List<SunriseSunsetDto> getSunriseSunsetsByLocationId(Integer locationId) {
-        String cacheKey = CACHE_KEY_LOCATION + locationId;
-        if (entityCache.containsKey(cacheKey)) {
-            logger.debug("Cache hit for SunriseSunsets by Location ID {}", locationId);
-            return (List<SunriseSunsetDto>) entityCache.get(cacheKey);
-        }
+        return getSeries(locationId).all();
+    }
 
-        List<SunriseSunsetEntity> entities = sunriseSunsetRepository.findByLocationId(locationId);
-        List<SunriseSunsetDto> dtos = entities.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
-        dtos.forEach(dto -> entityCache.put(CACHE_PREFIX_SUNRISE + dto.getId(), dto));
-        entityCache.put(cacheKey, dtos);
+    /**Returns the entries linked to the location dated from {@code from} to {@code to}; a null bound is open.*/
+    @Transactional(readOnly = true)
+    public List<SunriseSunsetDto> getSunriseSunsetsByLocationId(Integer locationId, LocalDate from, LocalDate to) {
+        return getSeries(locationId).between(from, to);
+    }
 
-        return dtos;
+    /**
+     * Returns the entries linked to the location as a series. They are cached as that one primitive series
+     * rather than as DTOs, and not entry by entry, since a location accumulates an entry per day for years.
+     */
+    @Transactional(readOnly = true)
+    public SunTimesSeries getSeries(Integer locationId) {
+        return entityCache.getOrLoad(CACHE_KEY_LOCATION + locationId, () -> {
+            logger.debug("Cache miss for SunriseSunsets by Location ID {}", locationId);
+            return toSeries(sunriseSunsetRepository.findLinkRowsByLocationId(locationId));
+        }, series -> CacheTags.forSeries(series, CacheTags.location(locationId)));
     }
 
+    /**
+     * Returns the series of each of the locations, in the order given, reading the ones that are not cached
+     * in a single query and caching them.
+     */
+    @Transactional(readOnly = true)
+    public Map<Integer, SunTimesSeries> getSeries(Collection<Integer> locationIds) {
+        Map<Integer, SunTimesSeries> found = new HashMap<>();
+        Map<Integer, SunTimesSeries.Builder> missing = new HashMap<>();
+        for (Integer locationId : locationIds) {
+            if (entityCache.get(CACHE_KEY_LOCATION + locationId) instanceof SunTimesSeries series) {
+                found.put(locationId, series);
+            } else {
+                missing.put(locationId, SunTimesSeries.builder());
+            }
+        }
+        if (!missing.isEmpty()) {
+            logger.debug("Cache miss for SunriseSunsets by Location IDs {}", missing.keySet());
+            RowFolder<SunriseSunsetLinkRow, SunriseSunsetDto> folder = folder(dto -> dto.getLocationIds().forEach(id -> {
+                SunTimesSeries.Builder builder = missing.get(id);
+                if (builder != null) {
+                    builder.add(dto.getId(), dto.getDate(), dto.getLatitude(), dto.getLongitude(), dto.getSunrise(),
+                            dto.getSunset());
+                    dto.getLocationIds().forEach(builder::link);
+                }
+            }));
+            sunriseSunsetRepository.findLinkRowsByLocationIdIn(missing.keySet()).forEach(folder);
+            folder.finish();
+            missing.forEach((locationId, builder) -> {
+                SunTimesSeries series = builder.build();
+                entityCache.put(CACHE_KEY_LOCATION + locationId, series,
+                        CacheTags.forSeries(series, CacheTags.location(locationId)));
+                found.put(locationId, series);
+            });
+        }
+        Map<Integer, SunTimesSeries> ordered = new LinkedHashMap<>();
+        locationIds.forEach(locationId -> ordered.put(locationId, found.get(locationId)));
+        return ordered;
+    }
+
+    @Transactional(readOnly = true)
     public List<SunriseSunsetDto> getSunriseSunsetsByDateAndLocationName(LocalDate date, String locationName) {
         String cacheKey = CACHE_KEY_DATE_LOCATION + date + "_Location_" + locationName;
-        if (entityCache.containsKey(cacheKey)) {
-            logger.debug("Cache hit for SunriseSunsets by Date {} and Location {}", date, locationName);
-            return (List<SunriseSunsetDto>) entityCache.get(cacheKey);
+        return entityCache.getOrLoad(cacheKey, () -> {
+            logger.debug("Cache miss for SunriseSunsets by Date {} and Location {}", date, locationName);
+            return cacheEach(sunriseSunsetRepository.findLinkRowsByDateAndLocationName(date, locationName));
+        }, list -> CacheTags.forList(list, CacheTags::forSunriseSunset,
+                CacheTags.dateAndLocationName(date, locationName), CacheTags.anyDateAndLocationName()));
+    }
+
+    /**
+     * Evicts what a load that bypassed JPA made stale, once its transaction has committed: the given rows, whose
+     * links changed, every date-and-name lookup when there are such rows, and the list of all rows.
+     */
+    public void evictIngested(Collection<Integer> ids) {
+        Set<String> affectedTags = ids.stream().map(CacheTags::sunriseSunset).collect(Collectors.toSet());
+        if (!ids.isEmpty()) {
+            affectedTags.add(CacheTags.anyDateAndLocationName());
         }
+        List<String> affectedKeys = ids.stream().map(id -> CACHE_PREFIX_SUNRISE + id).collect(Collectors.toList());
+        affectedKeys.add(CACHE_KEY_ALL);
+        AfterCommit.run(entityCache, () -> {
+            entityCache.invalidateTags(affectedTags);
+            affectedKeys.forEach(entityCache::remove);
+            spatialIndex.reset();
+            invalidationBus.publish(affectedKeys, affectedTags);
+        });
+    }
 
-        List<SunriseSunsetEntity> entities = sunriseSunsetRepository.findByDateAndLocationName(date, locationName);
-        List<SunriseSunsetDto> dtos = entities.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
-        dtos.forEach(dto -> entityCache.put(CACHE_PREFIX_SUNRISE + dto.getId(), dto));
-        entityCache.put(cacheKey, dtos);
+    /**Returns the entries nearest to the point, nearest first, optionally only those of the date.*/
+    @Transactional(readOnly = true)
+    public List<SunriseSunsetDto> getNearestSunriseSunsets(double latitude, double longitude, LocalDate date,
+                                                           int limit) {
+        return getCachedOrLoad(spatialIndex.nearest(latitude, longitude, date, limit));
+    }
+
+    /**
+     * Returns the entries inside the box in id order, optionally only those of the date. A box whose west
+     * edge is east of its east edge crosses the antimeridian.
+     */
+    @Transactional(readOnly = true)
+    public List<SunriseSunsetDto> getSunriseSunsetsWithin(double south, double west, double north, double east,
+                                                          LocalDate date, int limit) {
+        return getCachedOrLoad(spatialIndex.within(south, west, north, east, date, limit));
+    }
+
+    /**Returns the entries in the order of the ids, loading the ones not cached with a single query.*/
+    private List<SunriseSunsetDto> getCachedOrLoad(int[] ids) {
+        Map<Integer, SunriseSunsetDto> found = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        for (int id : ids) {
+            if (entityCache.get(CACHE_PREFIX_SUNRISE + id) instanceof SunriseSunsetDto dto) {
+                found.put(id, dto);
+            } else {
+                missing.add(id);
+            }
+        }
+        reloadSunriseSunsets(missing).forEach(dto -> {
+            cache(dto);
+            found.put(dto.getId(), dto);
+        });
+        List<SunriseSunsetDto> dtos = new ArrayList<>();
+        for (int id : ids) {
+            SunriseSunsetDto dto = found.get(id);
+            if (dto != null) {
+                dtos.add(dto);
+            }
+        }
+        return dtos;
+    }
+
+    private List<SunriseSunsetDto> cacheEach(List<SunriseSunsetLinkRow> rows) {
+        List<SunriseSunsetDto> dtos = toDtos(rows);
+        dtos.forEach(this::cache);
+        return dtos;
+    }
+
+    private static SunTimesSeries toSeries(List<SunriseSunsetLinkRow> rows) {
+        SunTimesSeries.Builder builder = SunTimesSeries.builder();
+        Integer currentId = null;
+        for (SunriseSunsetLinkRow row : rows) {
+            if (!row.id.equals(currentId)) {
+                builder.add(row.id, row.date, row.latitude, row.longitude, row.sunrise, row.sunset);
+                currentId = row.id;
+            }
+            if (row.locationId != null) {
+                builder.link(row.locationId);
+            }
+        }
+        return builder.build();
+    }
+
+    private void cache(SunriseSunsetDto dto) {
+        entityCache.put(CACHE_PREFIX_SUNRISE + dto.getId(), dto, CacheTags.forSunriseSunset(dto));
+    }
+
+    private List<SunriseSunsetDto> reloadSunriseSunsets(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return toDtos(sunriseSunsetRepository.findLinkRowsByIdIn(ids));
+    }
+
+    /**
+     * Tags of the cached entries a write of the row makes stale: everything that references the row,
+     * plus the lookups of the locations it links to, by id and by date and name.
+     */
+    private Set<String> writeTags(SunriseSunsetEntity entity) {
+        Set<String> tags = new HashSet<>();
+        tags.add(CacheTags.sunriseSunset(entity.id));
+        entity.locations.forEach(location -> {
+            tags.add(CacheTags.location(location.id));
+            tags.add(CacheTags.dateAndLocationName(entity.date, location.name));
+        });
+        return tags;
+    }
 
+    /**
+     * Tags of the cached entries a write of the entries makes stale, as for an entity, with the names of
+     * their locations loaded in one query.
+     */
+    private Set<String> writeTags(List<SunriseSunsetDto> dtos) {
+        Set<Integer> locationIds = new HashSet<>();
+        dtos.forEach(dto -> locationIds.addAll(dto.getLocationIds()));
+        Map<Integer, String> names = new HashMap<>();
+        if (!locationIds.isEmpty()) {
+            locationRepository.findAllById(locationIds).forEach(location -> names.put(location.id, location.name));
+        }
+        Set<String> tags = new HashSet<>();
+        dtos.forEach(dto -> {
+            tags.add(CacheTags.sunriseSunset(dto.getId()));
+            dto.getLocationIds().forEach(locationId -> {
+                tags.add(CacheTags.location(locationId));
+                if (names.containsKey(locationId)) {
+                    tags.add(CacheTags.dateAndLocationName(dto.getDate(), names.get(locationId)));
+                }
+            });
+        });
+        return tags;
+    }
+
+    /**
+     * Folds the rows of a link query, which are ordered by entry id, into one DTO per entry. Reading the ids
+     * from the join avoids loading each entity's lazy locations collection with a query of its own.
+     */
+    private List<SunriseSunsetDto> toDtos(List<SunriseSunsetLinkRow> rows) {
+        List<SunriseSunsetDto> dtos = new ArrayList<>();
+        RowFolder<SunriseSunsetLinkRow, SunriseSunsetDto> folder = folder(dtos::add);
+        rows.forEach(folder);
+        folder.finish();
         return dtos;
     }
 
+    private static RowFolder<SunriseSunsetLinkRow, SunriseSunsetDto> folder(Consumer<SunriseSunsetDto> sink) {
+        return new RowFolder<>(row -> row.id,
+                row -> new SunriseSunsetDto(row.id, row.date, row.latitude, row.longitude,
+                        row.sunrise, row.sunset, new ArrayList<>()),
+                (dto, row) -> {
+                    if (row.locationId != null) {
+                        dto.getLocationIds().add(row.locationId);
+                    }
+                },
+                sink);
+    }
+
     protected SunriseSunsetDto convertToDTO(SunriseSunsetEntity entity) {
         List<Integer> locationIds = entity.locations.stream()
                 .map(location -> location.id)
@@ -187,40 +483,140 @@ public class SunriseSunsetService {
         );
     }
 
-    private SunriseSunsetModel getSunriseSunset(double lat, double lng, String date) {
-        String url = String.format("%s?lat=%f&lng=%f&date=%s&formatted=0", SUN_API_URL, lat, lng, date);
-        try {
-            return restTemplate.getForObject(url, SunriseSunsetModel.class);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to fetch sunrise/sunset data: " + e.getMessage());
+    /**
+     * Creates the rows of a bulk request. Items are grouped by natural key: keys already stored are looked up
+     * with one query and only get the links they miss, and every other key gets one upstream lookup, run
+     * concurrently on the sun times executor, and is upserted with the others in one statement. Items sharing
+     * a key share its entry and its links. Items whose lookup fails are reported as failures at their position
+     * instead of failing the batch. The lookups all finish before the write transaction is opened, so no
+     * connection is held while they wait on the upstream rate limit; the batch is written in that one
+     * transaction and the caches are updated once it has committed.
+     */
+    public List<BulkItemResult<SunriseSunsetDto>> bulkCreateSunriseSunsets(List<SunriseSunsetDto> dtos) {
+        Map<List<Object>, SunriseSunsetDto> requests = new LinkedHashMap<>();
+        Map<List<Object>, List<Integer>> indexesByKey = new HashMap<>();
+        for (int i = 0; i < dtos.size(); i++) {
+            SunriseSunsetDto dto = dtos.get(i);
+            List<Object> key = key(dto);
+            SunriseSunsetDto request = requests.computeIfAbsent(key, k -> new SunriseSunsetDto(null, dto.getDate(),
+                    dto.getLatitude(), dto.getLongitude(), null, null, new ArrayList<>()));
+            if (dto.getLocationIds() != null) {
+                dto.getLocationIds().stream()
+                        .filter(locationId -> !request.getLocationIds().contains(locationId))
+                        .forEach(request.getLocationIds()::add);
+            }
+            indexesByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
         }
-    }
 
-    public List<SunriseSunsetDto> bulkCreateSunriseSunsets(List<SunriseSunsetDto> dtos) {
-        List<SunriseSunsetEntity> entities = new ArrayList<>();
-        dtos.forEach(dto -> {
-            SunriseSunsetModel sunData = getSunriseSunset(dto.getLatitude(), dto.getLongitude(), dto.getDate().toString());
-            SunriseSunsetEntity entity = new SunriseSunsetEntity();
-            entity.date = dto.getDate();
-            entity.latitude = dto.getLatitude();
-            entity.longitude = dto.getLongitude();
-            entity.sunrise = OffsetDateTime.parse(sunData.getResults().getSunrise());
-            entity.sunset = OffsetDateTime.parse(sunData.getResults().getSunset());
-            if (dto.getLocationIds() != null && !dto.getLocationIds().isEmpty()) {
-                entity.locations = locationRepository.findAllById(dto.getLocationIds());
+        Map<List<Object>, Integer> existingIds = findExistingIds(requests.values());
+        Map<Integer, SunriseSunsetDto> existing = new HashMap<>();
+        getCachedOrLoad(existingIds.values().stream().mapToInt(Integer::intValue).toArray())
+                .forEach(dto -> existing.put(dto.getId(), dto));
+        Map<Integer, List<Integer>> missingLinks = new HashMap<>();
+        Map<List<Object>, CompletableFuture<SunriseSunsetDto>> lookups = new LinkedHashMap<>();
+        requests.forEach((key, request) -> {
+            Integer id = existingIds.get(key);
+            if (id == null) {
+                lookups.put(key, CompletableFuture.supplyAsync(() -> withSunTimes(request), sunTimesExecutor));
+            } else if (!existing.containsKey(id) || !existing.get(id).getLocationIds().containsAll(request.getLocationIds())) {
+                missingLinks.put(id, request.getLocationIds());
             }
-            entities.add(entity);
         });
 
-        List<SunriseSunsetEntity> savedEntities = sunriseSunsetRepository.saveAll(entities);
-        List<SunriseSunsetDto> savedDtos = savedEntities.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        List<BulkItemResult<SunriseSunsetDto>> results = new ArrayList<>(Collections.nCopies(dtos.size(), null));
+        List<List<Object>> newKeys = new ArrayList<>();
+        List<SunriseSunsetDto> newEntries = new ArrayList<>();
+        lookups.forEach((key, lookup) -> {
+            try {
+                newEntries.add(lookup.join());
+                newKeys.add(key);
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                String error = cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+                indexesByKey.get(key).forEach(index -> {
+                    logger.warn("Bulk item {} failed: {}", index, error);
+                    results.set(index, BulkItemResult.failure(index, error));
+                });
+            }
+        });
+
+        return transactionTemplate.execute(status -> {
+            List<Integer> newIds = upsertRepository.upsertAll(newEntries);
+            Map<List<Object>, Integer> ids = new HashMap<>(existingIds);
+            for (int i = 0; i < newKeys.size(); i++) {
+                ids.put(newKeys.get(i), newIds.get(i));
+            }
+            upsertRepository.linkAll(missingLinks);
+            List<Integer> writtenIds = new ArrayList<>(newIds);
+            writtenIds.addAll(missingLinks.keySet());
+            Map<Integer, SunriseSunsetDto> saved = new HashMap<>(existing);
+            if (!writtenIds.isEmpty()) {
+                afterWrite(writtenIds).forEach(dto -> saved.put(dto.getId(), dto));
+            }
+            ids.forEach((key, id) -> {
+                SunriseSunsetDto dto = saved.get(id);
+                if (dto != null) {
+                    indexesByKey.get(key).forEach(index -> results.set(index, BulkItemResult.success(index, dto)));
+                }
+            });
+            return results;
+        });
+    }
 
-        savedDtos.forEach(dto -> entityCache.put(CACHE_PREFIX_SUNRISE + dto.getId(), dto));
-        entityCache.remove(CACHE_KEY_ALL);
+    /**Returns the ids of the requests whose natural key is stored already, with one query for all of them.*/
+    private Map<List<Object>, Integer> findExistingIds(Collection<SunriseSunsetDto> requests) {
+        if (requests.isEmpty()) {
+            return Map.of();
+        }
+        Set<LocalDate> dates = new HashSet<>();
+        Set<Double> latitudes = new HashSet<>();
+        Set<Double> longitudes = new HashSet<>();
+        requests.forEach(request -> {
+            dates.add(request.getDate());
+            latitudes.add(request.getLatitude());
+            longitudes.add(request.getLongitude());
+        });
+        Set<List<Object>> keys = requests.stream().map(SunriseSunsetService::key).collect(Collectors.toSet());
+        Map<List<Object>, Integer> ids = new HashMap<>();
+        sunriseSunsetRepository.findPointsByDateInAndCoordinatesIn(dates, latitudes, longitudes).forEach(point -> {
+            List<Object> key = SunriseSunsetUpsertRepository.naturalKey(point.date, point.latitude, point.longitude);
+            if (keys.contains(key)) {
+                ids.put(key, point.id);
+            }
+        });
+        return ids;
+    }
+
+    private static List<Object> key(SunriseSunsetDto dto) {
+        return SunriseSunsetUpsertRepository.naturalKey(dto.getDate(), dto.getLatitude(), dto.getLongitude());
+    }
 
-        return savedDtos;
+    /**Returns a copy of the request with the sun times of its date and coordinates from the upstream API.*/
+    private SunriseSunsetDto withSunTimes(SunriseSunsetDto dto) {
+        SunriseSunsetModel sunData = sunTimesProvider.getSunTimes(dto.getLatitude(), dto.getLongitude(), dto.getDate());
+        return new SunriseSunsetDto(null, dto.getDate(), dto.getLatitude(), dto.getLongitude(),
+                OffsetDateTime.parse(sunData.getResults().getSunrise()), OffsetDateTime.parse(sunData.getResults().getSunset()),
+                dto.getLocationIds());
     }
 
-}
\ No newline at end of file
+    /**
+     * Reloads entries an upsert wrote within its transaction and, once that has committed, evicts what the
+     * write made stale here and on the other nodes and puts the fresh DTOs in the cache, the loaded list of
+     * all entries and the spatial index.
+     */
+    private List<SunriseSunsetDto> afterWrite(Collection<Integer> ids) {
+        List<SunriseSunsetDto> dtos = reloadSunriseSunsets(ids);
+        Set<String> affectedTags = writeTags(dtos);
+        List<String> affectedKeys = new ArrayList<>();
+        ids.forEach(id -> affectedKeys.add(CACHE_PREFIX_SUNRISE + id));
+        affectedKeys.add(CACHE_KEY_ALL);
+        AfterCommit.run(entityCache, () -> {
+            entityCache.invalidateTags(affectedTags);
+            invalidationBus.publish(affectedKeys, affectedTags);
+            dtos.forEach(this::cache);
+            allSunriseSunsets.upsertAll(dtos);
+            spatialIndex.upsertAll(dtos);
+        });
+        return dtos;
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.SunriseSunset.service;
+
+import com.example.SunriseSunset.dto.LocationDto;
+import com.example.SunriseSunset.dto.SunriseSunsetDto;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Single creates of sunrise/sunset entries and locations. With write-behind enabled, the writes go through
+ * group-commit queues, so that a burst of creates shares a few transactions instead of committing one each;
+ * the upstream lookup of an entry still runs on the caller's thread before it is queued. Otherwise creates
+ * write directly. Either way the caller gets the stored row, with its id, once it has committed.
+ */
+@Service
+public class WriteBehindService {
+
+    private final SunriseSunsetService sunriseSunsetService;
+    private final LocationService locationService;
+    private final GroupCommitQueue<SunriseSunsetDto, SunriseSunsetDto> sunriseSunsetQueue;
+    private final GroupCommitQueue<LocationDto, LocationDto> locationQueue;
+
+    @Autowired
+    public WriteBehindService(SunriseSunsetService sunriseSunsetService,
+                              LocationService locationService,
+                              MeterRegistry registry,
+                              @Value("${write-behind.enabled:false}") boolean enabled,
+                              @Value("${write-behind.capacity:10000}") int capacity,
+                              @Value("${write-behind.max-group-size:200}") int maxGroupSize,
+                              @Value("${write-behind.max-delay-millis:5}") long maxDelayMillis,
+                              @Value("${write-behind.offer-timeout-millis:100}") long offerTimeoutMillis,
+                              @Value("${write-behind.write-timeout-millis:10000}") long writeTimeoutMillis,
+                              @Value("${write-behind.drain-timeout-millis:30000}") long drainTimeoutMillis) {
+        this.sunriseSunsetService = sunriseSunsetService;
+        this.locationService = locationService;
+        if (enabled) {
+            Duration maxDelay = Duration.ofMillis(maxDelayMillis);
+            Duration offerTimeout = Duration.ofMillis(offerTimeoutMillis);
+            Duration writeTimeout = Duration.ofMillis(writeTimeoutMillis);
+            Duration drainTimeout = Duration.ofMillis(drainTimeoutMillis);
+            this.sunriseSunsetQueue = new GroupCommitQueue<>("sunrise-sunsets", capacity, maxGroupSize, maxDelay,
+                    offerTimeout, writeTimeout, drainTimeout, sunriseSunsetService::writeSunriseSunsets, registry);
+            this.locationQueue = new GroupCommitQueue<>("locations", capacity, maxGroupSize, maxDelay,
+                    offerTimeout, writeTimeout, drainTimeout, locationService::writeLocations, registry);
+        } else {
+            this.sunriseSunsetQueue = null;
+            this.locationQueue = null;
+        }
+    }
+
+    public SunriseSunsetDto createSunriseSunset(SunriseSunsetDto dto) {
+        if (sunriseSunsetQueue == null) {
+            return sunriseSunsetService.createSunriseSunset(dto);
+        }
+        return sunriseSunsetService.createSunriseSunset(dto, sunriseSunsetQueue::submit);
+    }
+
+    public LocationDto createLocation(LocationDto dto) {
+        if (locationQueue == null) {
+            return locationService.createLocation(dto);
+        }
+        return locationService.createLocation(dto, locationQueue::submit);
+    }
+
+    /**Writes what is still queued before the services and the data source shut down.*/
+    @PreDestroy
+    public void close() {
+        if (sunriseSunsetQueue != null) {
+            sunriseSunsetQueue.close();
+            locationQueue.close();
+        }
+    }
+}
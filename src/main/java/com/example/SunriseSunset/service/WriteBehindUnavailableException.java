@@ -0,0 +1,9 @@
+package com.example.SunriseSunset.service;
+
+/**Thrown when a write-behind queue is full or closing, or does not write a queued item within the write timeout.*/
+public class WriteBehindUnavailableException extends RuntimeException {
+
+    public WriteBehindUnavailableException(String message) {
+        super(message);
+    }
+}
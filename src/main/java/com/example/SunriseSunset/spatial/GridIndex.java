@@ -0,0 +1,403 @@
+package com.example.SunriseSunset.spatial;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Points on the globe bucketed into a fixed grid of latitude/longitude cells. Coordinates, days and ids are
+ * kept in primitive arrays indexed by slot, and each cell holds the slots of its points, so queries visit
+ * only the cells that can contain a match. Points carry a day (epoch day) to filter on. Thread-safe: queries
+ * share a read lock and writes take the write lock.
+ */
+public class GridIndex {
+
+    /**Day filter that matches every point.*/
+    public static final int ANY_DAY = Integer.MIN_VALUE;
+
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+    private static final int[] NO_SLOTS = new int[0];
+
+    private final double cellDegrees;
+    private final int rows;
+    private final int columns;
+    private final int[][] cells;
+    private final int[] cellSizes;
+    private final Map<Integer, Integer> slotById = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private int[] ids = new int[64];
+    private double[] latitudes = new double[64];
+    private double[] longitudes = new double[64];
+    private int[] days = new int[64];
+    private int[] cellOfSlot = new int[64];
+    private int[] positionInCell = new int[64];
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    private int slotCount;
+
+    public GridIndex(double cellDegrees) {
+        if (!(cellDegrees >= 0.1 && cellDegrees <= 10)) {
+            throw new IllegalArgumentException("cellDegrees must be between 0.1 and 10");
+        }
+        this.cellDegrees = cellDegrees;
+        this.rows = (int) Math.ceil(180 / cellDegrees);
+        this.columns = (int) Math.ceil(360 / cellDegrees);
+        this.cells = new int[rows * columns][];
+        this.cellSizes = new int[rows * columns];
+    }
+
+    /**Adds a point or moves it to new coordinates and day.*/
+    public void put(int id, double latitude, double longitude, int day) {
+        checkCoordinates(latitude, longitude);
+        lock.writeLock().lock();
+        try {
+            Integer existing = slotById.get(id);
+            int slot;
+            if (existing != null) {
+                slot = existing;
+                removeFromCell(slot);
+            } else {
+                slot = allocateSlot();
+                slotById.put(id, slot);
+            }
+            ids[slot] = id;
+            latitudes[slot] = latitude;
+            longitudes[slot] = longitude;
+            days[slot] = day;
+            addToCell(slot, cellOf(row(latitude), column(longitude)));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slotById.remove(id);
+            if (slot != null) {
+                removeFromCell(slot);
+                if (freeCount == freeSlots.length) {
+                    freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+                }
+                freeSlots[freeCount++] = slot;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            slotById.clear();
+            Arrays.fill(cells, null);
+            Arrays.fill(cellSizes, 0);
+            freeCount = 0;
+            slotCount = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slotById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the ids of up to {@code limit} points inside the box, in id order. A box whose west edge is
+     * east of its east edge crosses the antimeridian.
+     */
+    public int[] within(double south, double west, double north, double east, int day, int limit) {
+        checkCoordinates(south, west);
+        checkCoordinates(north, east);
+        if (south > north) {
+            throw new IllegalArgumentException("south must not be greater than north");
+        }
+        checkLimit(limit);
+        lock.readLock().lock();
+        try {
+            int[] found = new int[16];
+            int count = 0;
+            for (int row = row(south); row <= row(north); row++) {
+                for (int column : columnsBetween(west, east)) {
+                    int cell = cellOf(row, column);
+                    int[] slots = cells[cell] != null ? cells[cell] : NO_SLOTS;
+                    for (int i = 0; i < cellSizes[cell]; i++) {
+                        int slot = slots[i];
+                        double latitude = latitudes[slot];
+                        double longitude = longitudes[slot];
+                        boolean inside = latitude >= south && latitude <= north
+                                && (west <= east ? longitude >= west && longitude <= east
+                                        : longitude >= west || longitude <= east);
+                        if (inside && matches(slot, day)) {
+                            if (count == found.length) {
+                                found = Arrays.copyOf(found, count * 2);
+                            }
+                            found[count++] = ids[slot];
+                        }
+                    }
+                }
+            }
+            Arrays.sort(found, 0, count);
+            return Arrays.copyOf(found, Math.min(count, limit));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the ids of the {@code limit} points nearest to the given one by great-circle distance, nearest
+     * first. Rings of cells around the point are searched until they hold enough points; the farthest of
+     * those bounds the distance, and every cell within that distance is then checked.
+     */
+    public int[] nearest(double latitude, double longitude, int day, int limit) {
+        checkCoordinates(latitude, longitude);
+        checkLimit(limit);
+        lock.readLock().lock();
+        try {
+            int centerRow = row(latitude);
+            int centerColumn = column(longitude);
+            Nearest candidates = new Nearest(limit);
+            int maxRing = Math.max(rows, columns / 2 + 1);
+            for (int ring = 0; ring <= maxRing && !candidates.isFull(); ring++) {
+                for (int row = Math.max(0, centerRow - ring); row <= Math.min(rows - 1, centerRow + ring); row++) {
+                    if (Math.abs(row - centerRow) == ring) {
+                        int from = 2 * ring + 1 >= columns ? 0 : centerColumn - ring;
+                        int to = 2 * ring + 1 >= columns ? columns - 1 : centerColumn + ring;
+                        for (int column = from; column <= to; column++) {
+                            offer(candidates, cellOf(row, Math.floorMod(column, columns)), latitude, longitude, day);
+                        }
+                    } else if (2 * ring < columns) {
+                        offer(candidates, cellOf(row, Math.floorMod(centerColumn - ring, columns)),
+                                latitude, longitude, day);
+                        offer(candidates, cellOf(row, Math.floorMod(centerColumn + ring, columns)),
+                                latitude, longitude, day);
+                    } else if (2 * ring == columns) {
+                        offer(candidates, cellOf(row, Math.floorMod(centerColumn + ring, columns)),
+                                latitude, longitude, day);
+                    }
+                }
+            }
+            if (!candidates.isFull()) {
+                return candidates.sortedIds();
+            }
+
+            double radius = candidates.farthest() / EARTH_RADIUS_KM * (1 + 1e-9);
+            double latitudeDelta = Math.toDegrees(radius);
+            double south = latitude - latitudeDelta;
+            double north = latitude + latitudeDelta;
+            double west = -180;
+            double east = 180;
+            if (south > -90 && north < 90) {
+                double sine = Math.sin(radius) / Math.cos(Math.toRadians(latitude));
+                if (sine < 1) {
+                    double longitudeDelta = Math.toDegrees(Math.asin(sine));
+                    west = wrap(longitude - longitudeDelta);
+                    east = wrap(longitude + longitudeDelta);
+                }
+            }
+            Nearest nearest = new Nearest(limit);
+            for (int row = row(Math.max(-90, south)); row <= row(Math.min(90, north)); row++) {
+                for (int column : columnsBetween(west, east)) {
+                    offer(nearest, cellOf(row, column), latitude, longitude, day);
+                }
+            }
+            return nearest.sortedIds();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**Great-circle distance in kilometres.*/
+    public static double distanceKm(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double latitudeSine = Math.sin(Math.toRadians(latitude2 - latitude1) / 2);
+        double longitudeSine = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+        double a = latitudeSine * latitudeSine + Math.cos(Math.toRadians(latitude1))
+                * Math.cos(Math.toRadians(latitude2)) * longitudeSine * longitudeSine;
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private void offer(Nearest nearest, int cell, double latitude, double longitude, int day) {
+        int[] slots = cells[cell];
+        for (int i = 0; i < cellSizes[cell]; i++) {
+            int slot = slots[i];
+            if (matches(slot, day)) {
+                nearest.offer(ids[slot], distanceKm(latitude, longitude, latitudes[slot], longitudes[slot]));
+            }
+        }
+    }
+
+    private boolean matches(int slot, int day) {
+        return day == ANY_DAY || days[slot] == day;
+    }
+
+    private int[] columnsBetween(double west, double east) {
+        int first = column(west);
+        int last = column(east);
+        if (west <= east) {
+            int[] range = new int[last - first + 1];
+            Arrays.setAll(range, i -> first + i);
+            return range;
+        }
+        if (last >= first) {
+            int[] all = new int[columns];
+            Arrays.setAll(all, i -> i);
+            return all;
+        }
+        int[] range = new int[columns - first + last + 1];
+        Arrays.setAll(range, i -> (first + i) % columns);
+        return range;
+    }
+
+    private int row(double latitude) {
+        return Math.min(rows - 1, (int) ((latitude + 90) / cellDegrees));
+    }
+
+    private int column(double longitude) {
+        return Math.min(columns - 1, (int) ((longitude + 180) / cellDegrees));
+    }
+
+    private int cellOf(int row, int column) {
+        return row * columns + column;
+    }
+
+    private int allocateSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (slotCount == ids.length) {
+            int capacity = slotCount * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            latitudes = Arrays.copyOf(latitudes, capacity);
+            longitudes = Arrays.copyOf(longitudes, capacity);
+            days = Arrays.copyOf(days, capacity);
+            cellOfSlot = Arrays.copyOf(cellOfSlot, capacity);
+            positionInCell = Arrays.copyOf(positionInCell, capacity);
+        }
+        return slotCount++;
+    }
+
+    private void addToCell(int slot, int cell) {
+        int[] slots = cells[cell];
+        int size = cellSizes[cell];
+        if (slots == null) {
+            slots = new int[4];
+        } else if (size == slots.length) {
+            slots = Arrays.copyOf(slots, size * 2);
+        }
+        slots[size] = slot;
+        cells[cell] = slots;
+        cellSizes[cell] = size + 1;
+        cellOfSlot[slot] = cell;
+        positionInCell[slot] = size;
+    }
+
+    /**Removes the slot from its cell by moving the cell's last slot into its place.*/
+    private void removeFromCell(int slot) {
+        int cell = cellOfSlot[slot];
+        int last = cells[cell][--cellSizes[cell]];
+        int position = positionInCell[slot];
+        cells[cell][position] = last;
+        positionInCell[last] = position;
+    }
+
+    private static double wrap(double longitude) {
+        return longitude < -180 ? longitude + 360 : longitude > 180 ? longitude - 360 : longitude;
+    }
+
+    private static void checkCoordinates(double latitude, double longitude) {
+        if (!(Math.abs(latitude) <= 90)) {
+            throw new IllegalArgumentException("latitude must be between -90 and 90");
+        }
+        if (!(Math.abs(longitude) <= 180)) {
+            throw new IllegalArgumentException("longitude must be between -180 and 180");
+        }
+    }
+
+    private static void checkLimit(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+    }
+
+    /**The {@code limit} nearest points offered so far, kept in a max-heap on distance.*/
+    private static final class Nearest {
+
+        private final int[] ids;
+        private final double[] distances;
+        private int size;
+
+        Nearest(int limit) {
+            this.ids = new int[limit];
+            this.distances = new double[limit];
+        }
+
+        boolean isFull() {
+            return size == ids.length;
+        }
+
+        double farthest() {
+            return distances[0];
+        }
+
+        void offer(int id, double distance) {
+            if (!isFull()) {
+                ids[size] = id;
+                distances[size] = distance;
+                siftUp(size++);
+            } else if (size > 0 && distance < distances[0]) {
+                ids[0] = id;
+                distances[0] = distance;
+                siftDown(0);
+            }
+        }
+
+        int[] sortedIds() {
+            Integer[] order = new Integer[size];
+            Arrays.setAll(order, i -> i);
+            Arrays.sort(order, (a, b) -> distances[a] != distances[b]
+                    ? Double.compare(distances[a], distances[b]) : Integer.compare(ids[a], ids[b]));
+            int[] sorted = new int[size];
+            Arrays.setAll(sorted, i -> ids[order[i]]);
+            return sorted;
+        }
+
+        private void siftUp(int i) {
+            while (i > 0 && distances[(i - 1) / 2] < distances[i]) {
+                swap(i, (i - 1) / 2);
+                i = (i - 1) / 2;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int largest = i;
+                for (int child = 2 * i + 1; child <= 2 * i + 2 && child < size; child++) {
+                    if (distances[child] > distances[largest]) {
+                        largest = child;
+                    }
+                }
+                if (largest == i) {
+                    return;
+                }
+                swap(i, largest);
+                i = largest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int id = ids[a];
+            ids[a] = ids[b];
+            ids[b] = id;
+            double distance = distances[a];
+            distances[a] = distances[b];
+            distances[b] = distance;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.example.SunriseSunset.timeseries;
+
+import com.example.SunriseSunset.dto.DayLengthDto;
+import com.example.SunriseSunset.dto.DayLengthSummaryDto;
+import com.example.SunriseSunset.dto.SunriseSunsetDto;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Sun times of a set of entries, ordered by date and then id, in primitive columns: the epoch day, sunrise
+ * and sunset as seconds from the UTC midnight of the date, the coordinates in microdegrees, and the linked
+ * location ids of all entries in one shared array. That is about 30 bytes per entry against well over 200
+ * for a list of DTOs. Reads hand out list views whose DTOs are created one at a time as they are read, which
+ * for the controllers is while the response is serialized. Immutable once built.
+ */
+public final class SunTimesSeries {
+
+    private static final int NO_TIME = Integer.MIN_VALUE;
+    private static final double MICROS_PER_DEGREE = 1_000_000.0;
+    private static final long SECONDS_PER_DAY = 86_400L;
+
+    private final int[] ids;
+    private final int[] days;
+    private final int[] sunrises;
+    private final int[] sunsets;
+    private final int[] latitudes;
+    private final int[] longitudes;
+    private final int[] linkStarts;
+    private final int[] linkedLocationIds;
+
+    private SunTimesSeries(int[] ids, int[] days, int[] sunrises, int[] sunsets, int[] latitudes, int[] longitudes,
+                           int[] linkStarts, int[] linkedLocationIds) {
+        this.ids = ids;
+        this.days = days;
+        this.sunrises = sunrises;
+        this.sunsets = sunsets;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.linkStarts = linkStarts;
+        this.linkedLocationIds = linkedLocationIds;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public IntStream ids() {
+        return Arrays.stream(ids);
+    }
+
+    /**Returns the location ids linked to any of the entries, with repeats.*/
+    public IntStream linkedLocationIds() {
+        return Arrays.stream(linkedLocationIds);
+    }
+
+    public List<SunriseSunsetDto> all() {
+        return new View<>(0, ids.length, this::toDto);
+    }
+
+    /**Returns the entries dated from {@code from} to {@code to}, both inclusive; a null bound is open.*/
+    public List<SunriseSunsetDto> between(LocalDate from, LocalDate to) {
+        int start = startOf(from);
+        return new View<>(start, endOf(start, to), this::toDto);
+    }
+
+    /**Returns the sun times and day lengths of the entries in the range, as {@link #between} selects them.*/
+    public List<DayLengthDto> dayLengthsBetween(LocalDate from, LocalDate to) {
+        int start = startOf(from);
+        return new View<>(start, endOf(start, to), this::toDayLength);
+    }
+
+    /**
+     * Aggregates the entries in the range, as {@link #between} selects them, in one scan of the columns. The
+     * earliest sunrise and latest sunset compare times of day, in UTC, across the dates of the range.
+     */
+    public DayLengthSummaryDto summarize(LocalDate from, LocalDate to) {
+        int start = startOf(from);
+        int end = endOf(start, to);
+        int shortest = -1;
+        int longest = -1;
+        int earliest = -1;
+        int latest = -1;
+        int counted = 0;
+        long totalLength = 0;
+        for (int i = start; i < end; i++) {
+            if (sunrises[i] != NO_TIME && (earliest < 0 || sunrises[i] < sunrises[earliest])) {
+                earliest = i;
+            }
+            if (sunsets[i] != NO_TIME && (latest < 0 || sunsets[i] > sunsets[latest])) {
+                latest = i;
+            }
+            if (sunrises[i] == NO_TIME || sunsets[i] == NO_TIME) {
+                continue;
+            }
+            long length = dayLength(i);
+            counted++;
+            totalLength += length;
+            if (shortest < 0 || length < dayLength(shortest)) {
+                shortest = i;
+            }
+            if (longest < 0 || length > dayLength(longest)) {
+                longest = i;
+            }
+        }
+        DayLengthSummaryDto summary = new DayLengthSummaryDto();
+        summary.setDays(end - start);
+        if (end > start) {
+            summary.setFirstDate(LocalDate.ofEpochDay(days[start]));
+            summary.setLastDate(LocalDate.ofEpochDay(days[end - 1]));
+        }
+        if (counted > 0) {
+            summary.setShortestDay(LocalDate.ofEpochDay(days[shortest]));
+            summary.setShortestDayLengthSeconds(dayLength(shortest));
+            summary.setLongestDay(LocalDate.ofEpochDay(days[longest]));
+            summary.setLongestDayLengthSeconds(dayLength(longest));
+            summary.setAverageDayLengthSeconds((double) totalLength / counted);
+        }
+        if (earliest >= 0) {
+            summary.setEarliestSunrise(time(days[earliest], sunrises[earliest]));
+        }
+        if (latest >= 0) {
+            summary.setLatestSunset(time(days[latest], sunsets[latest]));
+        }
+        return summary;
+    }
+
+    private int startOf(LocalDate from) {
+        return from == null ? 0 : firstIndexOnOrAfter(from.toEpochDay());
+    }
+
+    private int endOf(int start, LocalDate to) {
+        return to == null ? ids.length : Math.max(start, firstIndexOnOrAfter(to.toEpochDay() + 1));
+    }
+
+    private int firstIndexOnOrAfter(long day) {
+        if (day > Integer.MAX_VALUE) {
+            return days.length;
+        }
+        if (day < Integer.MIN_VALUE) {
+            return 0;
+        }
+        int low = 0;
+        int high = days.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (days[middle] < day) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private SunriseSunsetDto toDto(int index) {
+        List<Integer> locationIds = new ArrayList<>(linkStarts[index + 1] - linkStarts[index]);
+        for (int link = linkStarts[index]; link < linkStarts[index + 1]; link++) {
+            locationIds.add(linkedLocationIds[link]);
+        }
+        int day = days[index];
+        return new SunriseSunsetDto(ids[index], LocalDate.ofEpochDay(day), latitudes[index] / MICROS_PER_DEGREE,
+                longitudes[index] / MICROS_PER_DEGREE, time(day, sunrises[index]), time(day, sunsets[index]),
+                locationIds);
+    }
+
+    private DayLengthDto toDayLength(int index) {
+        int day = days[index];
+        Long length = sunrises[index] == NO_TIME || sunsets[index] == NO_TIME ? null : dayLength(index);
+        return new DayLengthDto(ids[index], LocalDate.ofEpochDay(day), time(day, sunrises[index]),
+                time(day, sunsets[index]), length);
+    }
+
+    private long dayLength(int index) {
+        return (long) sunsets[index] - sunrises[index];
+    }
+
+    private static OffsetDateTime time(int day, int seconds) {
+        if (seconds == NO_TIME) {
+            return null;
+        }
+        return OffsetDateTime.ofInstant(Instant.ofEpochSecond(day * SECONDS_PER_DAY + seconds), ZoneOffset.UTC);
+    }
+
+    /**Read-only view of a range of the series that creates the DTO of an entry on each read.*/
+    private static final class View<T> extends AbstractList<T> implements RandomAccess {
+
+        private final int start;
+        private final int end;
+        private final IntFunction<T> toDto;
+
+        View(int start, int end, IntFunction<T> toDto) {
+            this.start = start;
+            this.end = end;
+            this.toDto = toDto;
+        }
+
+        @Override
+        public T get(int index) {
+            if (index < 0 || index >= end - start) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + (end - start));
+            }
+            return toDto.apply(start + index);
+        }
+
+        @Override
+        public int size() {
+            return end - start;
+        }
+    }
+
+    /**
+     * Collects entries one at a time, each followed by its linked location ids, and sorts them by date on
+     * {@link #build()}. Entries should be added in id order so that entries of the same date stay in id order.
+     */
+    public static final class Builder {
+
+        private int count;
+        private int linkCount;
+        private int[] ids = new int[16];
+        private int[] days = new int[16];
+        private int[] sunrises = new int[16];
+        private int[] sunsets = new int[16];
+        private int[] latitudes = new int[16];
+        private int[] longitudes = new int[16];
+        private int[] linkStarts = new int[17];
+        private int[] links = new int[16];
+
+        private Builder() {}
+
+        public Builder add(int id, LocalDate date, double latitude, double longitude,
+                           OffsetDateTime sunrise, OffsetDateTime sunset) {
+            if (count == ids.length) {
+                int capacity = count * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                days = Arrays.copyOf(days, capacity);
+                sunrises = Arrays.copyOf(sunrises, capacity);
+                sunsets = Arrays.copyOf(sunsets, capacity);
+                latitudes = Arrays.copyOf(latitudes, capacity);
+                longitudes = Arrays.copyOf(longitudes, capacity);
+                linkStarts = Arrays.copyOf(linkStarts, capacity + 1);
+            }
+            int day = Math.toIntExact(date.toEpochDay());
+            ids[count] = id;
+            days[count] = day;
+            sunrises[count] = seconds(day, sunrise);
+            sunsets[count] = seconds(day, sunset);
+            latitudes[count] = (int) Math.round(latitude * MICROS_PER_DEGREE);
+            longitudes[count] = (int) Math.round(longitude * MICROS_PER_DEGREE);
+            count++;
+            linkStarts[count] = linkCount;
+            return this;
+        }
+
+        /**Links the entry added last to a location.*/
+        public Builder link(int locationId) {
+            if (count == 0) {
+                throw new IllegalStateException("No entry to link");
+            }
+            if (linkCount == links.length) {
+                links = Arrays.copyOf(links, linkCount * 2);
+            }
+            links[linkCount++] = locationId;
+            linkStarts[count] = linkCount;
+            return this;
+        }
+
+        public SunTimesSeries build() {
+            // Date in the high half and insertion order in the low half, so one sort of longs orders by
+            // date and keeps entries of the same date in the order they were added.
+            long[] order = new long[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = (long) days[i] << 32 | i;
+            }
+            Arrays.sort(order);
+            int[] sortedIds = new int[count];
+            int[] sortedDays = new int[count];
+            int[] sortedSunrises = new int[count];
+            int[] sortedSunsets = new int[count];
+            int[] sortedLatitudes = new int[count];
+            int[] sortedLongitudes = new int[count];
+            int[] sortedLinkStarts = new int[count + 1];
+            int[] sortedLinks = new int[linkCount];
+            int linkPosition = 0;
+            for (int i = 0; i < count; i++) {
+                int from = (int) order[i];
+                sortedIds[i] = ids[from];
+                sortedDays[i] = days[from];
+                sortedSunrises[i] = sunrises[from];
+                sortedSunsets[i] = sunsets[from];
+                sortedLatitudes[i] = latitudes[from];
+                sortedLongitudes[i] = longitudes[from];
+                int linksOfEntry = linkStarts[from + 1] - linkStarts[from];
+                System.arraycopy(links, linkStarts[from], sortedLinks, linkPosition, linksOfEntry);
+                linkPosition += linksOfEntry;
+                sortedLinkStarts[i + 1] = linkPosition;
+            }
+            return new SunTimesSeries(sortedIds, sortedDays, sortedSunrises, sortedSunsets, sortedLatitudes,
+                    sortedLongitudes, sortedLinkStarts, sortedLinks);
+        }
+
+        private static int seconds(int day, OffsetDateTime time) {
+            if (time == null) {
+                return NO_TIME;
+            }
+            return Math.toIntExact(time.toEpochSecond() - day * SECONDS_PER_DAY);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.SunriseSunset.upstream;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**Caps the number of concurrent upstream calls; callers wait a bounded time for a free slot.*/
+public class Bulkhead {
+
+    private final int maxConcurrentCalls;
+    private final Duration maxWait;
+    private final Semaphore permits;
+
+    public Bulkhead(int maxConcurrentCalls, Duration maxWait) {
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.maxWait = maxWait;
+        this.permits = new Semaphore(maxConcurrentCalls, true);
+    }
+
+    /**Takes a slot, returning false if none became free within the maximum wait.*/
+    public boolean tryAcquire() {
+        try {
+            return permits.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int getAvailableSlots() {
+        return permits.availablePermits();
+    }
+
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+}
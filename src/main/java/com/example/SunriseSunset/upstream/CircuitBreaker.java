@@ -0,0 +1,112 @@
+package com.example.SunriseSunset.upstream;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Count-based circuit breaker. It opens when the failure rate over the last {@code windowSize} calls
+ * reaches the threshold, rejects calls while open, and after the open duration lets a single trial call
+ * through: success closes it again, failure reopens it.
+ */
+public class CircuitBreaker {
+
+    /**Breaker states; the ordinal is exported as the state gauge.*/
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openNanos;
+    private final LongSupplier ticker;
+    private final boolean[] outcomes;
+    private int recorded;
+    private int next;
+    private int failures;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    public CircuitBreaker(int windowSize, int minimumCalls, double failureRateThreshold, Duration openDuration,
+                          LongSupplier ticker) {
+        this.windowSize = windowSize;
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.openNanos = openDuration.toNanos();
+        this.ticker = ticker;
+        this.outcomes = new boolean[windowSize];
+    }
+
+    /**Returns whether a call may proceed; every permitted call must be followed by a record call.*/
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN && ticker.getAsLong() - openedAt >= openNanos) {
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.HALF_OPEN && !trialInFlight) {
+            trialInFlight = true;
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized void recordSuccess() {
+        if (state == State.HALF_OPEN) {
+            reset(State.CLOSED);
+            return;
+        }
+        record(false);
+    }
+
+    public synchronized void recordFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        record(true);
+        if (recorded >= minimumCalls && failures >= failureRateThreshold * recorded) {
+            open();
+        }
+    }
+
+    /**Returns a permit that was not used for a call, so a half-open breaker can admit another trial.*/
+    public synchronized void releaseUnused() {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void record(boolean failure) {
+        if (recorded == windowSize) {
+            if (outcomes[next]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+        outcomes[next] = failure;
+        if (failure) {
+            failures++;
+        }
+        next = (next + 1) % windowSize;
+    }
+
+    private void open() {
+        reset(State.OPEN);
+        openedAt = ticker.getAsLong();
+    }
+
+    private void reset(State newState) {
+        state = newState;
+        trialInFlight = false;
+        recorded = 0;
+        next = 0;
+        failures = 0;
+    }
+}
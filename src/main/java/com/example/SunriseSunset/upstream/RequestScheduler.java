@@ -0,0 +1,282 @@
+package com.example.SunriseSunset.upstream;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Admits upstream calls at the rate of a {@link TokenBucket}. Calls beyond the current allowance wait in a
+ * FIFO queue of bounded depth, and a call still queued when its deadline passes fails instead of being sent
+ * late. A call whose key matches one that is queued or running joins it rather than queueing again. The
+ * callers block until their call has run; the calls themselves run on the scheduler's worker threads.
+ */
+public class RequestScheduler implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestScheduler.class);
+
+    private final String name;
+    private final TokenBucket bucket;
+    private final int maxQueueDepth;
+    private final long maxQueueWaitNanos;
+    private final LongSupplier ticker;
+    private final ExecutorService workers;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final ArrayDeque<Pending<?>> queue = new ArrayDeque<>();
+    private final Map<String, Pending<?>> pendingByKey = new HashMap<>();
+    private final Thread dispatcher;
+    private final Counter dispatched;
+    private final Counter deduplicated;
+    private final Counter rejected;
+    private final Counter expired;
+    private final Timer queueWait;
+    private volatile boolean running = true;
+
+    /**A queued or running call and the callers waiting for it.*/
+    private static final class Pending<T> {
+        final String key;
+        final Supplier<T> call;
+        final long enqueuedAt;
+        final long deadline;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        Pending(String key, Supplier<T> call, long enqueuedAt, long deadline) {
+            this.key = key;
+            this.call = call;
+            this.enqueuedAt = enqueuedAt;
+            this.deadline = deadline;
+        }
+    }
+
+    public RequestScheduler(String name, TokenBucket bucket, int maxQueueDepth, Duration maxQueueWait, int workerThreads,
+                            LongSupplier ticker, MeterRegistry registry) {
+        this.name = name;
+        this.bucket = bucket;
+        this.maxQueueDepth = maxQueueDepth;
+        this.maxQueueWaitNanos = maxQueueWait.toNanos();
+        this.ticker = ticker;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerThreads, runnable -> {
+            Thread thread = new Thread(runnable, name + "-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.dispatched = outcomeCounter(registry, "dispatched");
+        this.deduplicated = outcomeCounter(registry, "deduplicated");
+        this.rejected = outcomeCounter(registry, "queue_full");
+        this.expired = outcomeCounter(registry, "expired");
+        this.queueWait = Timer.builder("upstream.scheduler.queue.wait").tag("upstream", name).register(registry);
+        Gauge.builder("upstream.scheduler.queue.depth", this, RequestScheduler::getQueueDepth)
+                .tag("upstream", name)
+                .register(registry);
+        Gauge.builder("upstream.scheduler.tokens", bucket, TokenBucket::getAvailableTokens)
+                .tag("upstream", name)
+                .register(registry);
+        this.dispatcher = new Thread(this::dispatch, name + "-dispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**Runs the call once the rate limit admits it, or joins the identical call that is already pending.*/
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> call) {
+        Pending<T> pending;
+        lock.lock();
+        try {
+            if (!running) {
+                throw new UpstreamUnavailableException("Scheduler for " + name + " is closed");
+            }
+            pending = (Pending<T>) pendingByKey.get(key);
+            if (pending != null) {
+                deduplicated.increment();
+            } else {
+                if (queue.size() >= maxQueueDepth) {
+                    rejected.increment();
+                    throw new UpstreamThrottledException("Too many calls to " + name + " are waiting for the rate limit",
+                            retryAfterSeconds(queue.size()));
+                }
+                long now = ticker.getAsLong();
+                pending = new Pending<>(key, call, now, now + maxQueueWaitNanos);
+                pendingByKey.put(key, pending);
+                queue.addLast(pending);
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+        try {
+            return pending.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        dispatcher.interrupt();
+        workers.shutdown();
+        lock.lock();
+        try {
+            for (Pending<?> pending : queue) {
+                pending.result.completeExceptionally(
+                        new UpstreamUnavailableException("Scheduler for " + name + " is closed"));
+            }
+            queue.clear();
+            pendingByKey.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void dispatch() {
+        while (running) {
+            try {
+                awaitWork();
+                long wait = bucket.nanosUntilAvailable();
+                if (wait > 0) {
+                    LockSupport.parkNanos(this, wait);
+                    continue;
+                }
+                // Find a live call before taking the token, so calls that expired in the queue do not spend it.
+                Pending<?> next = pollLive();
+                if (next == null) {
+                    continue;
+                }
+                if (bucket.tryAcquire()) {
+                    start(next);
+                } else {
+                    requeue(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                logger.error("Scheduler for {} failed to dispatch a call", name, e);
+            }
+        }
+    }
+
+    private void awaitWork() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (queue.isEmpty()) {
+                notEmpty.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**Takes the oldest call whose deadline has not passed, failing the expired ones ahead of it.*/
+    private Pending<?> pollLive() {
+        lock.lock();
+        try {
+            long now = ticker.getAsLong();
+            Pending<?> head;
+            while ((head = queue.pollFirst()) != null) {
+                if (now - head.deadline <= 0) {
+                    return head;
+                }
+                pendingByKey.remove(head.key, head);
+                expired.increment();
+                head.result.completeExceptionally(new UpstreamThrottledException(
+                        "Call to " + name + " waited longer than " + Duration.ofNanos(maxQueueWaitNanos)
+                                + " for the rate limit", retryAfterSeconds(queue.size())));
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**Puts a call taken by {@link #pollLive()} back at the head of the queue, or fails it once closed.*/
+    private void requeue(Pending<?> pending) {
+        lock.lock();
+        try {
+            if (running) {
+                queue.addFirst(pending);
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        finish(pending);
+        pending.result.completeExceptionally(new UpstreamUnavailableException("Scheduler for " + name + " is closed"));
+    }
+
+    private <T> void start(Pending<T> pending) {
+        queueWait.record(ticker.getAsLong() - pending.enqueuedAt, TimeUnit.NANOSECONDS);
+        dispatched.increment();
+        try {
+            workers.execute(() -> run(pending));
+        } catch (RejectedExecutionException e) {
+            finish(pending);
+            pending.result.completeExceptionally(new UpstreamUnavailableException("Scheduler for " + name
+                    + " is closed"));
+        }
+    }
+
+    private <T> void run(Pending<T> pending) {
+        try {
+            T value = pending.call.get();
+            finish(pending);
+            pending.result.complete(value);
+        } catch (RuntimeException | Error e) {
+            finish(pending);
+            pending.result.completeExceptionally(e);
+        }
+    }
+
+    /**Stops new callers from joining a call that has produced its result.*/
+    private void finish(Pending<?> pending) {
+        lock.lock();
+        try {
+            pendingByKey.remove(pending.key, pending);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long retryAfterSeconds(int queued) {
+        return Math.max(1, (long) Math.ceil((queued + 1) / bucket.getTokensPerSecond()));
+    }
+
+    private Counter outcomeCounter(MeterRegistry registry, String outcome) {
+        return Counter.builder("upstream.scheduler.requests")
+                .tag("upstream", name)
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.SunriseSunset.upstream;
+
+import java.time.Duration;
+import java.util.function.DoubleSupplier;
+
+/**Exponential backoff with full jitter: the delay before retry n (from 1) is uniform in [0, min(max, base * 2^(n-1))).*/
+public class RetryPolicy {
+
+    private final int maxAttempts;
+    private final long baseDelayNanos;
+    private final long maxDelayNanos;
+    private final DoubleSupplier random;
+
+    public RetryPolicy(int maxAttempts, Duration baseDelay, Duration maxDelay, DoubleSupplier random) {
+        this.maxAttempts = maxAttempts;
+        this.baseDelayNanos = baseDelay.toNanos();
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.random = random;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**Returns the delay before the given retry, counting the first retry as 1.*/
+    public Duration delayBefore(int retry) {
+        long ceiling = baseDelayNanos << Math.min(retry - 1, 30);
+        if (ceiling <= 0 || ceiling > maxDelayNanos) {
+            ceiling = maxDelayNanos;
+        }
+        return Duration.ofNanos((long) (random.getAsDouble() * ceiling));
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.SunriseSunset.upstream;
+
+import java.util.function.LongSupplier;
+
+/**Token bucket refilled continuously at a fixed rate up to its burst capacity; it starts full.*/
+public class TokenBucket {
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    private final double tokensPerNano;
+    private final double capacity;
+    private final LongSupplier ticker;
+    private double tokens;
+    private long refilledAt;
+
+    public TokenBucket(double tokensPerSecond, int burst, LongSupplier ticker) {
+        if (!(tokensPerSecond > 0) || burst < 1) {
+            throw new IllegalArgumentException("Token bucket needs a positive rate and burst: "
+                    + tokensPerSecond + ", " + burst);
+        }
+        this.tokensPerNano = tokensPerSecond / NANOS_PER_SECOND;
+        this.capacity = burst;
+        this.ticker = ticker;
+        this.tokens = burst;
+        this.refilledAt = ticker.getAsLong();
+    }
+
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    /**Returns how long until a token is available, or 0 if one is available now.*/
+    public synchronized long nanosUntilAvailable() {
+        refill();
+        return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / tokensPerNano);
+    }
+
+    public synchronized double getAvailableTokens() {
+        refill();
+        return tokens;
+    }
+
+    public double getTokensPerSecond() {
+        return tokensPerNano * NANOS_PER_SECOND;
+    }
+
+    private void refill() {
+        long now = ticker.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+        refilledAt = now;
+    }
+}
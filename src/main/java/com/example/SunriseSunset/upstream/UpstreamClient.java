@@ -0,0 +1,153 @@
+package com.example.SunriseSunset.upstream;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Idempotent GETs against one upstream service. Each attempt must pass the circuit breaker and then the
+ * bulkhead before it reaches the pooled {@link RestTemplate}; I/O errors, timeouts, 429 and 5xx responses
+ * are retried with jittered backoff, while other client errors and local rejections fail at once. When the
+ * calls are rate limited, every attempt goes through the {@link RequestScheduler}, so a retry waits for and
+ * spends its own token and the retries cannot push the upstream past the configured rate.
+ */
+public class UpstreamClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamClient.class);
+
+    /**Pauses the calling thread between attempts; replaced in tests.*/
+    @FunctionalInterface
+    public interface Sleeper {
+        void sleep(Duration duration) throws InterruptedException;
+    }
+
+    private final String name;
+    private final RestTemplate restTemplate;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    private final RetryPolicy retryPolicy;
+    private final Sleeper sleeper;
+    private final Timer callTimer;
+    private final Counter successes;
+    private final Counter failures;
+    private final Counter circuitRejections;
+    private final Counter bulkheadRejections;
+    private final Counter retries;
+
+    public UpstreamClient(String name, RestTemplate restTemplate, CircuitBreaker circuitBreaker, Bulkhead bulkhead,
+                          RetryPolicy retryPolicy, Sleeper sleeper, MeterRegistry registry) {
+        this.name = name;
+        this.restTemplate = restTemplate;
+        this.circuitBreaker = circuitBreaker;
+        this.bulkhead = bulkhead;
+        this.retryPolicy = retryPolicy;
+        this.sleeper = sleeper;
+        this.callTimer = Timer.builder("upstream.call.duration").tag("upstream", name).register(registry);
+        this.successes = outcomeCounter(registry, "success");
+        this.failures = outcomeCounter(registry, "failure");
+        this.circuitRejections = outcomeCounter(registry, "circuit_open");
+        this.bulkheadRejections = outcomeCounter(registry, "bulkhead_full");
+        this.retries = Counter.builder("upstream.retries").tag("upstream", name).register(registry);
+        Gauge.builder("upstream.circuit.state", circuitBreaker, breaker -> breaker.getState().ordinal())
+                .description("0 closed, 1 open, 2 half-open")
+                .tag("upstream", name)
+                .register(registry);
+        Gauge.builder("upstream.bulkhead.available", bulkhead, Bulkhead::getAvailableSlots)
+                .tag("upstream", name)
+                .register(registry);
+    }
+
+    public <T> T get(String url, Class<T> responseType) {
+        return get(url, responseType, null);
+    }
+
+    /**Like {@link #get(String, Class)}, but each attempt must first be admitted by the scheduler, keyed by url.*/
+    public <T> T get(String url, Class<T> responseType, RequestScheduler scheduler) {
+        RestClientException lastFailure = null;
+        for (int attempt = 1; attempt <= retryPolicy.getMaxAttempts(); attempt++) {
+            if (attempt > 1) {
+                retries.increment();
+                backOff(attempt - 1);
+            }
+            try {
+                return scheduler == null ? attempt(url, responseType)
+                        : scheduler.execute(url, () -> attempt(url, responseType));
+            } catch (RestClientException e) {
+                if (!isRetryable(e)) {
+                    throw e;
+                }
+                lastFailure = e;
+                logger.debug("Attempt {} of {} to {} failed: {}", attempt, retryPolicy.getMaxAttempts(), name,
+                        e.getMessage());
+            }
+        }
+        throw lastFailure;
+    }
+
+    private <T> T attempt(String url, Class<T> responseType) {
+        if (!circuitBreaker.tryAcquire()) {
+            circuitRejections.increment();
+            throw new UpstreamUnavailableException("Circuit breaker for " + name + " is open");
+        }
+        if (!bulkhead.tryAcquire()) {
+            circuitBreaker.releaseUnused();
+            bulkheadRejections.increment();
+            throw new UpstreamUnavailableException("Too many concurrent calls to " + name);
+        }
+        long start = System.nanoTime();
+        try {
+            T response = restTemplate.getForObject(url, responseType);
+            circuitBreaker.recordSuccess();
+            successes.increment();
+            return response;
+        } catch (RestClientException e) {
+            if (countsAsFailure(e)) {
+                circuitBreaker.recordFailure();
+            } else {
+                circuitBreaker.recordSuccess();
+            }
+            failures.increment();
+            throw e;
+        } finally {
+            callTimer.record(Duration.ofNanos(System.nanoTime() - start));
+            bulkhead.release();
+        }
+    }
+
+    private void backOff(int retry) {
+        try {
+            sleeper.sleep(retryPolicy.delayBefore(retry));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UpstreamUnavailableException("Interrupted while waiting to retry " + name);
+        }
+    }
+
+    /**Client errors other than 429 are the caller's fault and say nothing about the upstream's health.*/
+    private static boolean countsAsFailure(RestClientException e) {
+        if (e instanceof HttpStatusCodeException) {
+            int status = ((HttpStatusCodeException) e).getStatusCode().value();
+            return status == 429 || status >= 500;
+        }
+        return true;
+    }
+
+    private static boolean isRetryable(RestClientException e) {
+        if (e instanceof UpstreamUnavailableException) {
+            return false;
+        }
+        return e instanceof ResourceAccessException || countsAsFailure(e) && e instanceof HttpStatusCodeException;
+    }
+
+    private Counter outcomeCounter(MeterRegistry registry, String outcome) {
+        return Counter.builder("upstream.calls").tag("upstream", name).tag("outcome", outcome).register(registry);
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.SunriseSunset.upstream;
+
+/**Thrown when an upstream call cannot be admitted by the outbound rate limit within its queueing deadline.*/
+public class UpstreamThrottledException extends UpstreamUnavailableException {
+
+    private final long retryAfterSeconds;
+
+    public UpstreamThrottledException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.SunriseSunset.upstream;
+
+import org.springframework.web.client.RestClientException;
+
+/**Thrown without calling the upstream when its circuit is open or its bulkhead is full.*/
+public class UpstreamUnavailableException extends RestClientException {
+
+    public UpstreamUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,21 @@
+-- Schema as it stood before migrations were introduced. Databases created earlier are baselined at this
+-- version and skip it.
+CREATE TABLE IF NOT EXISTS locations (
+    id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name VARCHAR(255) NOT NULL,
+    country VARCHAR(255)
+);
+
+CREATE TABLE IF NOT EXISTS sunrise_and_sunset (
+    id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    date DATE NOT NULL,
+    latitude DOUBLE PRECISION NOT NULL,
+    longitude DOUBLE PRECISION NOT NULL,
+    sunrise TIMESTAMP(6) WITH TIME ZONE,
+    sunset TIMESTAMP(6) WITH TIME ZONE
+);
+
+CREATE TABLE IF NOT EXISTS sunrise_sunset_locations (
+    sunrise_sunset_id INTEGER NOT NULL REFERENCES sunrise_and_sunset (id),
+    location_id INTEGER NOT NULL REFERENCES locations (id)
+);
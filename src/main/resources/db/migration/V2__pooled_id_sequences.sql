@@ -0,0 +1,15 @@
+-- Ids move from per-row identity columns to sequences that hand out blocks of 50, so Hibernate can batch
+-- inserts. The increment must match allocationSize on the entities. Each sequence starts past the current
+-- maximum id, and the column default draws from it as well so plain SQL inserts cannot collide with a
+-- block held by the application.
+CREATE SEQUENCE IF NOT EXISTS locations_seq INCREMENT BY 50;
+SELECT setval('locations_seq', (SELECT COALESCE(MAX(id), 0) + 1 FROM locations), false);
+ALTER TABLE locations ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE locations ALTER COLUMN id SET DEFAULT nextval('locations_seq');
+ALTER SEQUENCE locations_seq OWNED BY locations.id;
+
+CREATE SEQUENCE IF NOT EXISTS sunrise_and_sunset_seq INCREMENT BY 50;
+SELECT setval('sunrise_and_sunset_seq', (SELECT COALESCE(MAX(id), 0) + 1 FROM sunrise_and_sunset), false);
+ALTER TABLE sunrise_and_sunset ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE sunrise_and_sunset ALTER COLUMN id SET DEFAULT nextval('sunrise_and_sunset_seq');
+ALTER SEQUENCE sunrise_and_sunset_seq OWNED BY sunrise_and_sunset.id;
@@ -0,0 +1,14 @@
+-- Indexes for the repository queries. The join table had none, so every lookup through it scanned the
+-- whole table: (sunrise_sunset_id, location_id) serves joins from an entry to its locations and
+-- (location_id, sunrise_sunset_id) the lookups by location. locations.name and sunrise_and_sunset.date
+-- serve the date-and-location-name lookup from either side.
+--
+-- The indexes are built CONCURRENTLY so writes continue during the build; Flyway runs this script outside
+-- a transaction for that reason. A build that fails leaves an INVALID index behind, which must be dropped
+-- before the migration is repaired and rerun.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS sunrise_sunset_locations_sunrise_sunset_id_location_id_idx
+    ON sunrise_sunset_locations (sunrise_sunset_id, location_id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS sunrise_sunset_locations_location_id_sunrise_sunset_id_idx
+    ON sunrise_sunset_locations (location_id, sunrise_sunset_id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS locations_name_idx ON locations (name);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS sunrise_and_sunset_date_idx ON sunrise_and_sunset (date);
@@ -0,0 +1,10 @@
+-- Progress of the scheduled precompute of upcoming sun times, one row per pipeline. through_date is the last
+-- day of the horizon being filled and last_location_id the highest location id whose days are committed, so
+-- a restart resumes after that location. The row is locked while a batch runs, which keeps nodes sharing
+-- the database from filling the same locations twice.
+CREATE TABLE IF NOT EXISTS precompute_watermark (
+    name VARCHAR(64) PRIMARY KEY,
+    through_date DATE NOT NULL,
+    last_location_id INTEGER NOT NULL,
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now()
+);
@@ -0,0 +1,32 @@
+-- Entries are identified by their date and coordinates, so creates can upsert on that key instead of adding
+-- a row per request. Existing duplicates are merged into the lowest id first, carrying their links over.
+-- The join table gets a primary key so links can be merged with ON CONFLICT as well; it replaces the
+-- (sunrise_sunset_id, location_id) index from V3.
+UPDATE sunrise_sunset_locations l
+SET sunrise_sunset_id = d.keeper_id
+FROM (SELECT id, MIN(id) OVER (PARTITION BY date, latitude, longitude) AS keeper_id FROM sunrise_and_sunset) d
+WHERE l.sunrise_sunset_id = d.id AND d.id <> d.keeper_id;
+
+DELETE FROM sunrise_and_sunset s
+USING (SELECT id, MIN(id) OVER (PARTITION BY date, latitude, longitude) AS keeper_id FROM sunrise_and_sunset) d
+WHERE s.id = d.id AND d.id <> d.keeper_id;
+
+DELETE FROM sunrise_sunset_locations a
+USING sunrise_sunset_locations b
+WHERE a.sunrise_sunset_id = b.sunrise_sunset_id AND a.location_id = b.location_id AND a.ctid > b.ctid;
+
+ALTER TABLE sunrise_and_sunset
+    ADD CONSTRAINT sunrise_and_sunset_date_latitude_longitude_key UNIQUE (date, latitude, longitude);
+ALTER TABLE sunrise_sunset_locations
+    ADD CONSTRAINT sunrise_sunset_locations_pkey PRIMARY KEY (sunrise_sunset_id, location_id);
+DROP INDEX IF EXISTS sunrise_sunset_locations_sunrise_sunset_id_location_id_idx;
+
+-- Responses to requests sent with an Idempotency-Key header, kept until they expire so that a retry is
+-- answered with the original response.
+CREATE TABLE IF NOT EXISTS idempotency_keys (
+    idempotency_key VARCHAR(255) PRIMARY KEY,
+    request_hash VARCHAR(64) NOT NULL,
+    response TEXT NOT NULL,
+    expires_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+CREATE INDEX IF NOT EXISTS idempotency_keys_expires_at_idx ON idempotency_keys (expires_at);
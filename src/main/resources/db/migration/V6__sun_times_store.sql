@@ -0,0 +1,11 @@
+-- Durable store of upstream sunrise/sunset responses, keyed by grid cell centre in microdegrees and date.
+-- Earlier versions created the table at startup when sun.store.enabled was set, hence IF NOT EXISTS.
+CREATE TABLE IF NOT EXISTS sun_times_store (
+    lat_micros BIGINT NOT NULL,
+    lng_micros BIGINT NOT NULL,
+    date DATE NOT NULL,
+    sunrise VARCHAR(32) NOT NULL,
+    sunset VARCHAR(32) NOT NULL,
+    fetched_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now(),
+    PRIMARY KEY (lat_micros, lng_micros, date)
+);
@@ -0,0 +1,29 @@
+-- Version of the data held in the entity cache: one row, bumped by every statement that changes a cached table.
+-- The cache snapshot records it and is restored only while it is unchanged, which takes a single-row read where
+-- comparing the tables themselves would scan them. The bump is part of the writing transaction, so readers see
+-- the new version exactly when they see the rows that caused it.
+CREATE TABLE IF NOT EXISTS cache_version (
+    id BOOLEAN PRIMARY KEY DEFAULT TRUE CHECK (id),
+    version BIGINT NOT NULL
+);
+
+INSERT INTO cache_version (id, version) VALUES (TRUE, 0) ON CONFLICT (id) DO NOTHING;
+
+CREATE OR REPLACE FUNCTION bump_cache_version() RETURNS trigger AS $$
+BEGIN
+    UPDATE cache_version SET version = version + 1;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER locations_cache_version
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON locations
+    FOR EACH STATEMENT EXECUTE FUNCTION bump_cache_version();
+
+CREATE TRIGGER sunrise_and_sunset_cache_version
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON sunrise_and_sunset
+    FOR EACH STATEMENT EXECUTE FUNCTION bump_cache_version();
+
+CREATE TRIGGER sunrise_sunset_locations_cache_version
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON sunrise_sunset_locations
+    FOR EACH STATEMENT EXECUTE FUNCTION bump_cache_version();
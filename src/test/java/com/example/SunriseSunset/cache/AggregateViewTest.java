@@ -0,0 +1,75 @@
+package com.example.SunriseSunset.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AggregateViewTest {
+
+    private AggregateView<Integer> view;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        view = new AggregateView<>(value -> value);
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    void loadsOnceAndKeepsIdOrder() {
+        assertEquals(List.of(1, 2, 3), view.getOrLoad(() -> load(3, 1, 2)));
+        assertEquals(List.of(1, 2, 3), view.getOrLoad(() -> load(9)));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void writesAreAppliedWithoutReload() {
+        view.getOrLoad(() -> load(1, 3));
+        view.upsert(2);
+        view.remove(3);
+        view.upsertAll(List.of(5, 4));
+        assertEquals(List.of(1, 2, 4, 5), view.getOrLoad(() -> load(9)));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void writesBeforeFirstLoadAreIgnored() {
+        view.upsert(7);
+        assertFalse(view.isLoaded());
+        assertEquals(List.of(1), view.getOrLoad(() -> load(1)));
+    }
+
+    @Test
+    void writesDuringLoadAreReplayedOntoLoadedList() {
+        List<Integer> result = view.getOrLoad(() -> {
+            view.upsert(5);
+            view.remove(1);
+            return load(1, 2);
+        });
+        assertEquals(List.of(2, 5), result);
+    }
+
+    @Test
+    void resetDuringLoadDiscardsLoadedList() {
+        view.getOrLoad(() -> {
+            view.reset();
+            return load(1);
+        });
+        assertFalse(view.isLoaded());
+        assertEquals(List.of(2), view.getOrLoad(() -> load(2)));
+    }
+
+    @Test
+    void snapshotsAreImmutable() {
+        List<Integer> snapshot = view.getOrLoad(() -> load(1));
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.add(2));
+    }
+
+    private List<Integer> load(Integer... values) {
+        loads.incrementAndGet();
+        return List.of(values);
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.SunriseSunset.cache;
+
+import com.example.SunriseSunset.dto.LocationDto;
+import com.example.SunriseSunset.dto.SunriseSunsetDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheSnapshotStoreTest {
+
+    private static final Duration MAX_AGE = Duration.ofHours(1);
+
+    @TempDir
+    Path directory;
+
+    private Path snapshotPath;
+    private AtomicLong dataVersion;
+    private AtomicLong clock;
+    private EntityCache source;
+
+    @BeforeEach
+    void setUp() {
+        snapshotPath = directory.resolve("entity-cache.snapshot");
+        dataVersion = new AtomicLong(41);
+        clock = new AtomicLong(1_000_000);
+        source = new EntityCache(100, EntityCache.collectionWeigher());
+        source.put("Location_1", new LocationDto(1, "Minsk", "Belarus", List.of(7)));
+        source.put("Location_2", new LocationDto(2, "Brest", null, List.of()));
+        source.put("SunriseSunset_7", new SunriseSunsetDto(7, LocalDate.of(2024, 6, 21), 53.9, 27.56,
+                OffsetDateTime.of(2024, 6, 21, 1, 39, 45, 0, ZoneOffset.UTC),
+                OffsetDateTime.of(2024, 6, 21, 19, 1, 2, 0, ZoneOffset.ofHours(3)), List.of(1)));
+        source.put("Location_All", List.of(1, 2));
+    }
+
+    @Test
+    void savedDtosAreRestoredIntoAnEmptyCache() {
+        assertEquals(3, store(source).save());
+        EntityCache restored = new EntityCache(100, EntityCache.collectionWeigher());
+        assertEquals(3, store(restored).restore());
+
+        LocationDto location = (LocationDto) restored.get("Location_1");
+        assertEquals("Minsk", location.getName());
+        assertEquals(List.of(7), location.getSunriseSunsetIds());
+        assertNull(((LocationDto) restored.get("Location_2")).getCountry());
+        SunriseSunsetDto sunTimes = (SunriseSunsetDto) restored.get("SunriseSunset_7");
+        SunriseSunsetDto original = (SunriseSunsetDto) source.get("SunriseSunset_7");
+        assertEquals(original.getSunrise(), sunTimes.getSunrise());
+        assertEquals(original.getSunset(), sunTimes.getSunset());
+        assertEquals(original.getDate(), sunTimes.getDate());
+        assertNull(restored.get("Location_All"));
+    }
+
+    @Test
+    void restoredEntriesKeepTheirDependencyTags() {
+        store(source).save();
+        EntityCache restored = new EntityCache(100, EntityCache.collectionWeigher());
+        store(restored).restore();
+        restored.invalidateTags(List.of(CacheTags.location(1)));
+        assertNull(restored.get("Location_1"));
+        assertNull(restored.get("SunriseSunset_7"));
+        assertNotNull(restored.get("Location_2"));
+    }
+
+    @Test
+    void snapshotIsIgnoredWhenTablesChanged() {
+        store(source).save();
+        dataVersion.incrementAndGet();
+        EntityCache restored = new EntityCache(100, EntityCache.collectionWeigher());
+        assertEquals(0, store(restored).restore());
+        assertEquals(0, restored.size());
+    }
+
+    @Test
+    void saveIsSkippedWhileAWriteHasNotAppliedItsCacheUpdates() {
+        source.writePending();
+        assertEquals(0, store(source).save());
+        assertFalse(Files.exists(snapshotPath));
+        source.writeApplied();
+        assertEquals(3, store(source).save());
+    }
+
+    @Test
+    void saveIsSkippedWhenAWriteCommitsWhileTheEntriesAreCopied() throws IOException {
+        assertEquals(3, store(source).save());
+        // The version moves after the first read, as when a write commits and applies its updates meanwhile.
+        AtomicLong reads = new AtomicLong();
+        CacheSnapshotStore store = new CacheSnapshotStore(source, () -> {
+            if (reads.incrementAndGet() == 2) {
+                source.writePending();
+                source.writeApplied();
+                dataVersion.incrementAndGet();
+            }
+            return dataVersion.get();
+        }, snapshotPath, MAX_AGE, clock::get);
+        assertEquals(0, store.save());
+        assertEquals(41, CacheSnapshotStore.read(snapshotPath).dataVersion);
+    }
+
+    @Test
+    void snapshotIsIgnoredWhenTooOld() {
+        store(source).save();
+        clock.addAndGet(MAX_AGE.toMillis() + 1);
+        assertEquals(0, store(new EntityCache(100, EntityCache.collectionWeigher())).restore());
+    }
+
+    @Test
+    void corruptedSnapshotIsIgnored() throws IOException {
+        store(source).save();
+        byte[] bytes = Files.readAllBytes(snapshotPath);
+        bytes[bytes.length - 3] ^= 0x5A;
+        Files.write(snapshotPath, bytes);
+        assertThrows(IllegalStateException.class, () -> CacheSnapshotStore.read(snapshotPath));
+        assertEquals(0, store(new EntityCache(100, EntityCache.collectionWeigher())).restore());
+    }
+
+    @Test
+    void missingSnapshotRestoresNothing() {
+        assertEquals(0, store(new EntityCache(100, EntityCache.collectionWeigher())).restore());
+    }
+
+    private CacheSnapshotStore store(EntityCache cache) {
+        return new CacheSnapshotStore(cache, dataVersion::get, snapshotPath, MAX_AGE, clock::get);
+    }
+}
@@ -0,0 +1,286 @@
+package com.example.SunriseSunset.cache;
+
+import com.example.SunriseSunset.dto.SunriseSunsetDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EntityCacheTest {
+
+    private static final long MAX_WEIGHT = 10;
+    private static final LocalDate TODAY = LocalDate.of(2024, 6, 21);
+    private static final Duration PINNED_TTL = Duration.ofDays(7);
+    private static final Duration SHORT_TTL = Duration.ofMinutes(5);
+    private static final Duration AGGREGATE_TTL = Duration.ofMinutes(1);
+
+    private EntityCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new EntityCache(MAX_WEIGHT, EntityCache.collectionWeigher());
+    }
+
+    @Test
+    void putGetRemoveBehaveLikeMap() {
+        assertNull(cache.put("Location_1", "first"));
+        assertEquals("first", cache.put("Location_1", "second"));
+        assertEquals("second", cache.get("Location_1"));
+        assertTrue(cache.containsKey("Location_1"));
+        assertEquals("second", cache.remove("Location_1"));
+        assertNull(cache.get("Location_1"));
+        assertEquals(0, cache.weightedSize());
+    }
+
+    @Test
+    void listsWeighMoreThanSingleEntries() {
+        cache.put("Location_All", List.of(1, 2, 3, 4));
+        cache.put("Location_1", "dto");
+        assertEquals(6, cache.weightedSize());
+    }
+
+    @Test
+    void evictsWhenMaxWeightExceeded() {
+        for (int i = 0; i < 25; i++) {
+            cache.put("Location_" + i, "dto" + i);
+        }
+        assertTrue(cache.weightedSize() <= MAX_WEIGHT);
+        assertEquals(MAX_WEIGHT, cache.size());
+        assertEquals(15, cache.evictionCount());
+    }
+
+    @Test
+    void frequentlyReadEntriesSurviveScan() {
+        cache.put("Location_hot", "hot");
+        cache.get("Location_hot");
+        for (int i = 0; i < 100; i++) {
+            cache.put("Location_" + i, "dto" + i);
+        }
+        assertEquals("hot", cache.get("Location_hot"));
+    }
+
+    @Test
+    void oversizedEntryIsNotRetained() {
+        List<Integer> big = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            big.add(i);
+        }
+        cache.put("Location_All", big);
+        assertNull(cache.get("Location_All"));
+        assertEquals(0, cache.weightedSize());
+    }
+
+    @Test
+    void rejectsNullValues() {
+        assertThrows(NullPointerException.class, () -> cache.put("Location_1", null));
+    }
+
+    @Test
+    void concurrentWritersKeepWeightConsistent() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            int thread = t;
+            executor.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    String key = "Location_" + ((thread * 31 + i) % 40);
+                    cache.put(key, "dto" + i);
+                    cache.get(key);
+                    if (i % 7 == 0) {
+                        cache.remove(key);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        assertTrue(cache.weightedSize() <= MAX_WEIGHT);
+        assertEquals(cache.size(), cache.weightedSize());
+    }
+
+    @Test
+    void retentionPolicyClassifiesKeysByDate() {
+        RetentionPolicy policy = datePolicy();
+        assertEquals(RetentionTier.PINNED, policy.tierFor("SunriseSunset_Date_2024-06-20_Location_Minsk", List.of()));
+        assertEquals(RetentionTier.SHORT_LIVED, policy.tierFor("SunriseSunset_Date_2024-06-21_Location_Minsk", List.of()));
+        assertEquals(RetentionTier.AGGREGATE, policy.tierFor("SunriseSunset_All", List.of()));
+        assertEquals(RetentionTier.AGGREGATE, policy.tierFor("SunriseSunset_Location_1", List.of()));
+        assertEquals(RetentionTier.PINNED, policy.tierFor("SunriseSunset_1", sunTimes(TODAY.minusDays(1))));
+        assertEquals(RetentionTier.SHORT_LIVED, policy.tierFor("SunriseSunset_2", sunTimes(TODAY.plusDays(1))));
+        assertEquals(RetentionTier.DEFAULT, policy.tierFor("Location_1", "dto"));
+    }
+
+    @Test
+    void entriesExpireAfterTheirTierTimeToLive() {
+        AtomicLong ticker = new AtomicLong();
+        EntityCache expiring = new EntityCache(MAX_WEIGHT, EntityCache.collectionWeigher(), datePolicy(), ticker::get);
+        expiring.put("SunriseSunset_All", List.of(1));
+        expiring.put("SunriseSunset_1", sunTimes(TODAY));
+        expiring.put("SunriseSunset_2", sunTimes(TODAY.minusDays(1)));
+
+        ticker.addAndGet(AGGREGATE_TTL.toNanos());
+        assertNull(expiring.get("SunriseSunset_All"));
+        assertNotNull(expiring.get("SunriseSunset_1"));
+
+        ticker.addAndGet(SHORT_TTL.toNanos());
+        assertNull(expiring.get("SunriseSunset_1"));
+        assertNotNull(expiring.get("SunriseSunset_2"));
+        assertEquals(1, expiring.weightedSize());
+    }
+
+    @Test
+    void pinnedEntriesSurviveWriteChurn() {
+        EntityCache pinned = new EntityCache(MAX_WEIGHT, EntityCache.collectionWeigher(), datePolicy(), System::nanoTime);
+        pinned.put("SunriseSunset_1", sunTimes(TODAY.minusDays(30)));
+        for (int i = 0; i < 100; i++) {
+            pinned.put("Location_" + i, "dto" + i);
+        }
+        assertNotNull(pinned.get("SunriseSunset_1"));
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loaderStarted = new CountDownLatch(1);
+        CountDownLatch releaseLoader = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<List<Integer>>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(() -> cache.getOrLoad("Location_All", () -> {
+                loads.incrementAndGet();
+                loaderStarted.countDown();
+                await(releaseLoader);
+                return List.of(1, 2);
+            })));
+        }
+        assertTrue(loaderStarted.await(10, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        releaseLoader.countDown();
+        for (Future<List<Integer>> result : results) {
+            assertEquals(List.of(1, 2), result.get(10, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        assertEquals(1, loads.get());
+        assertEquals(List.of(1, 2), cache.get("Location_All"));
+    }
+
+    @Test
+    void loaderExceptionReachesCallerAndIsNotCached() {
+        assertThrows(IllegalArgumentException.class, () -> cache.getOrLoad("Location_1", () -> {
+            throw new IllegalArgumentException("Location not found with id: 1");
+        }));
+        assertEquals("dto", cache.getOrLoad("Location_1", () -> "dto"));
+    }
+
+    @Test
+    void writeDuringLoadIsNotOverwrittenByStaleResult() {
+        Object loaded = cache.getOrLoad("Location_1", () -> {
+            cache.put("Location_1", "fresh");
+            return "stale";
+        });
+        assertEquals("stale", loaded);
+        assertEquals("fresh", cache.get("Location_1"));
+    }
+
+    @Test
+    void invalidateTagsEvictsOnlyDependentEntries() {
+        cache.put("SunriseSunset_Location_1", List.of(1), Set.of("location:1", "sunrise:1"));
+        cache.put("SunriseSunset_Location_2", List.of(2), Set.of("location:2", "sunrise:2"));
+        cache.put("Location_1", "dto", Set.of("location:1"));
+        cache.invalidateTags(Set.of("location:1"));
+        assertNull(cache.get("SunriseSunset_Location_1"));
+        assertNull(cache.get("Location_1"));
+        assertEquals(List.of(2), cache.get("SunriseSunset_Location_2"));
+    }
+
+    @Test
+    void replacedEntryDropsItsOldTags() {
+        cache.put("Location_1", "old", Set.of("sunrise:1"));
+        cache.put("Location_1", "new", Set.of("sunrise:2"));
+        cache.invalidateTags(Set.of("sunrise:1"));
+        assertEquals("new", cache.get("Location_1"));
+    }
+
+    @Test
+    void invalidateTagsRefreshesOnlyStaleAggregateItems() {
+        AtomicInteger reloads = new AtomicInteger();
+        AggregateView<Integer> view = cache.aggregate("Location_All", id -> id,
+                id -> Set.of("location:" + id),
+                ids -> {
+                    reloads.addAndGet(ids.size());
+                    return List.copyOf(ids);
+                });
+        assertEquals(List.of(1, 2, 3), view.getOrLoad(() -> List.of(1, 2, 3)));
+        cache.invalidateTags(Set.of("location:2"));
+        assertEquals(List.of(1, 2, 3), view.getOrLoad(() -> fail("full reload")));
+        assertEquals(1, reloads.get());
+    }
+
+    @Test
+    void aggregateViewsAreChargedAtTheirSizeAndEvictedLikeEntries() {
+        AggregateView<Integer> view = cache.aggregate("Location_All", id -> id);
+        view.getOrLoad(() -> List.of(1, 2, 3));
+        assertEquals(4, cache.weightedSize());
+        view.upsert(4);
+        assertEquals(5, cache.weightedSize());
+
+        for (int i = 0; i < MAX_WEIGHT; i++) {
+            cache.put("Location_" + i, "dto" + i);
+        }
+        assertFalse(view.isLoaded());
+        assertTrue(cache.weightedSize() <= MAX_WEIGHT);
+    }
+
+    @Test
+    void aggregateViewsExpireAfterTheAggregateTimeToLive() {
+        AtomicLong ticker = new AtomicLong();
+        EntityCache expiring = new EntityCache(MAX_WEIGHT, EntityCache.collectionWeigher(), datePolicy(), ticker::get);
+        AggregateView<Integer> view = expiring.aggregate("Location_All", id -> id);
+        AtomicInteger loads = new AtomicInteger();
+        view.getOrLoad(() -> List.of(loads.incrementAndGet()));
+        assertEquals(List.of(1), view.getOrLoad(() -> fail("reload before expiry")));
+
+        ticker.addAndGet(AGGREGATE_TTL.toNanos());
+        assertEquals(List.of(2), view.getOrLoad(() -> List.of(loads.incrementAndGet())));
+        assertEquals(2, expiring.weightedSize());
+    }
+
+    @Test
+    void removingTheKeyOfAViewReleasesItsWeight() {
+        AggregateView<Integer> view = cache.aggregate("Location_All", id -> id);
+        view.getOrLoad(() -> List.of(1, 2));
+        cache.remove("Location_All");
+        assertFalse(view.isLoaded());
+        assertEquals(0, cache.weightedSize());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private RetentionPolicy datePolicy() {
+        Clock clock = Clock.fixed(TODAY.atStartOfDay().toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+        return new DateAwareRetentionPolicy(clock, PINNED_TTL, SHORT_TTL, AGGREGATE_TTL);
+    }
+
+    private SunriseSunsetDto sunTimes(LocalDate date) {
+        return new SunriseSunsetDto(date, 53.9, 27.56);
+    }
+}
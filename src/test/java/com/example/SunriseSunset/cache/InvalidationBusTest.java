@@ -0,0 +1,146 @@
+package com.example.SunriseSunset.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.postgresql.ds.PGSimpleDataSource;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InvalidationBusTest {
+
+    private static final long FLUSH_DELAY_MILLIS = 10_000;
+
+    private LoopbackInvalidationBus writer;
+    private LoopbackInvalidationBus reader;
+    private EntityCache readerCache;
+    private List<InvalidationBatch> received;
+
+    @BeforeEach
+    void setUp() {
+        writer = new LoopbackInvalidationBus(FLUSH_DELAY_MILLIS);
+        reader = writer.join();
+        readerCache = new EntityCache(100, EntityCache.collectionWeigher());
+        received = Collections.synchronizedList(new ArrayList<>());
+        reader.subscribe((keys, tags) -> {
+            received.add(new InvalidationBatch("", keys, tags));
+            readerCache.invalidateTags(tags);
+            keys.forEach(readerCache::remove);
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        writer.close();
+        reader.close();
+    }
+
+    @Test
+    void publishedInvalidationsReachOtherNodes() {
+        readerCache.put("Location_1", "stale");
+        readerCache.put("SunriseSunset_Location_1", List.of(1), Set.of("location:1"));
+        writer.publish(List.of("Location_1"), Set.of("location:1"));
+        writer.flush();
+        assertNull(readerCache.get("Location_1"));
+        assertNull(readerCache.get("SunriseSunset_Location_1"));
+    }
+
+    @Test
+    void invalidationsWithinOneWindowAreCoalesced() {
+        writer.publish(List.of("Location_1"), Set.of("location:1"));
+        writer.publish(List.of("Location_1", "Location_2"), Set.of("location:1"));
+        assertTrue(received.isEmpty());
+        writer.flush();
+        assertEquals(1, received.size());
+        assertEquals(Set.of("Location_1", "Location_2"), received.get(0).getKeys());
+        assertEquals(Set.of("location:1"), received.get(0).getTags());
+    }
+
+    @Test
+    void ownInvalidationsAreNotDeliveredBack() {
+        List<Set<String>> own = new ArrayList<>();
+        writer.subscribe((keys, tags) -> own.add(keys));
+        writer.publish(List.of("Location_1"), Set.of());
+        writer.flush();
+        assertTrue(own.isEmpty());
+        assertEquals(1, received.size());
+    }
+
+    @Test
+    void batchingWindowFlushesOnItsOwn() throws InterruptedException {
+        LoopbackInvalidationBus fast = new LoopbackInvalidationBus(10);
+        LoopbackInvalidationBus peer = fast.join();
+        CountDownLatch delivered = new CountDownLatch(1);
+        peer.subscribe((keys, tags) -> delivered.countDown());
+        fast.publish(List.of("Location_1"), Set.of());
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        fast.close();
+        peer.close();
+    }
+
+    @Test
+    void postgresPayloadsRoundTripAndSplitAtTheLimit() {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            keys.add("SunriseSunset_Date_2024-06-21_Location_Minsk\nline\\" + i);
+        }
+        InvalidationBatch batch = new InvalidationBatch("node-1", Set.copyOf(keys), Set.of("location:1"));
+        List<String> payloads = PostgresInvalidationBus.encode(batch, 500);
+        assertTrue(payloads.size() > 1);
+
+        Set<String> decodedKeys = new HashSet<>();
+        Set<String> decodedTags = new HashSet<>();
+        for (String payload : payloads) {
+            assertTrue(payload.getBytes(StandardCharsets.UTF_8).length <= 500);
+            InvalidationBatch decoded = PostgresInvalidationBus.decode(payload);
+            assertEquals("node-1", decoded.getOrigin());
+            decodedKeys.addAll(decoded.getKeys());
+            decodedTags.addAll(decoded.getTags());
+        }
+        assertEquals(batch.getKeys(), decodedKeys);
+        assertEquals(batch.getTags(), decodedTags);
+    }
+
+    @Test
+    @EnabledIfEnvironmentVariable(named = "CACHE_BUS_PG_URL", matches = ".+")
+    void postgresTransportDeliversBetweenNodes() throws InterruptedException {
+        String url = System.getenv("CACHE_BUS_PG_URL");
+        String username = System.getenv().getOrDefault("CACHE_BUS_PG_USER", "postgres");
+        String password = System.getenv().getOrDefault("CACHE_BUS_PG_PASSWORD", "");
+        PGSimpleDataSource dataSource = new PGSimpleDataSource();
+        dataSource.setURL(url);
+        dataSource.setUser(username);
+        dataSource.setPassword(password);
+
+        PostgresInvalidationBus first = new PostgresInvalidationBus(dataSource, url, username, password,
+                "entity_cache_invalidation_test", 10);
+        PostgresInvalidationBus second = new PostgresInvalidationBus(dataSource, url, username, password,
+                "entity_cache_invalidation_test", 10);
+        CountDownLatch delivered = new CountDownLatch(1);
+        List<Set<String>> keys = Collections.synchronizedList(new ArrayList<>());
+        second.subscribe((batchKeys, tags) -> {
+            keys.add(batchKeys);
+            delivered.countDown();
+        });
+        first.start();
+        second.start();
+        try {
+            Thread.sleep(1000);
+            first.publish(List.of("Location_1"), Set.of("location:1"));
+            assertTrue(delivered.await(10, TimeUnit.SECONDS));
+            assertEquals(List.of(Set.of("Location_1")), keys);
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.SunriseSunset.datasource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**Routes between two in-memory databases that each name themselves in a one-row table.*/
+class ReplicaRoutingDataSourceTest {
+
+    private static final Duration WINDOW = Duration.ofSeconds(2);
+
+    private final AtomicLong now = new AtomicLong();
+    private ReplicaRoutingDataSource routing;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate writeTransaction;
+    private TransactionTemplate readOnlyTransaction;
+
+    @BeforeEach
+    void setUp() {
+        routing = new ReplicaRoutingDataSource(database("primary"), database("replica"), WINDOW, now::get);
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routing);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        writeTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
+
+    @Test
+    void readOnlyTransactionsUseTheReplica() {
+        assertEquals("replica", readOnlyTransaction.execute(status -> servedBy()));
+        assertEquals("primary", writeTransaction.execute(status -> servedBy()));
+        assertEquals("primary", servedBy());
+    }
+
+    @Test
+    void readsStayOnThePrimaryForTheWindowAfterAWrite() {
+        writeTransaction.executeWithoutResult(status ->
+                jdbcTemplate.update("UPDATE route SET writes = writes + 1"));
+        now.addAndGet(WINDOW.toNanos() - 1);
+        assertEquals("primary", readOnlyTransaction.execute(status -> servedBy()));
+        now.incrementAndGet();
+        assertEquals("replica", readOnlyTransaction.execute(status -> servedBy()));
+    }
+
+    @Test
+    void theWindowRunsFromTheEndOfTheWritingTransaction() {
+        writeTransaction.executeWithoutResult(status -> {
+            jdbcTemplate.update("UPDATE route SET writes = writes + 1");
+            now.addAndGet(WINDOW.toNanos() * 5);
+        });
+        now.addAndGet(WINDOW.toNanos() / 2);
+        assertEquals("primary", readOnlyTransaction.execute(status -> servedBy()));
+    }
+
+    @Test
+    void invalidationsFromOtherNodesOpenTheWindow() {
+        routing.onInvalidation(Set.of("SunriseSunset_1"), Set.of());
+        assertEquals("primary", readOnlyTransaction.execute(status -> servedBy()));
+        now.addAndGet(WINDOW.toNanos());
+        assertEquals("replica", readOnlyTransaction.execute(status -> servedBy()));
+    }
+
+    @Test
+    void anUpdateReadsAndWritesThePrimaryInOneTransaction() {
+        // As in a @Transactional service update: the repository's read-only find joins the read-write
+        // transaction, so the row is read from the primary, on the connection the write then uses.
+        String readFrom = writeTransaction.execute(status -> {
+            String name = readOnlyTransaction.execute(inner -> servedBy());
+            jdbcTemplate.update("UPDATE route SET writes = writes + 1");
+            return name;
+        });
+
+        assertEquals("primary", readFrom);
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT writes FROM route", Integer.class));
+        now.addAndGet(WINDOW.toNanos());
+        assertEquals(Integer.valueOf(0), readOnlyTransaction.execute(status ->
+                jdbcTemplate.queryForObject("SELECT writes FROM route", Integer.class)));
+    }
+
+    private String servedBy() {
+        return jdbcTemplate.queryForObject("SELECT name FROM route", String.class);
+    }
+
+    private static DataSource database(String name) {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:routing-" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS route (name VARCHAR(16), writes INT)");
+        jdbcTemplate.update("DELETE FROM route");
+        jdbcTemplate.update("INSERT INTO route (name, writes) VALUES (?, 0)", name);
+        return dataSource;
+    }
+}
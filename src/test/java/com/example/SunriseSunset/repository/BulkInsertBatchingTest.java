@@ -0,0 +1,87 @@
+package com.example.SunriseSunset.repository;
+
+import com.example.SunriseSunset.model.LocationEntity;
+import com.example.SunriseSunset.model.SunriseSunsetEntity;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = {"spring.flyway.enabled=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true"})
+class BulkInsertBatchingTest {
+
+    private static final int ROWS = 120;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private LocationRepository locationRepository;
+
+    @Autowired
+    private SunriseSunsetRepository sunriseSunsetRepository;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void bulkSavesGoOutInJdbcBatches() {
+        List<LocationEntity> locations = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            LocationEntity location = new LocationEntity();
+            location.name = "Location " + i;
+            locations.add(location);
+        }
+        locations = locationRepository.saveAll(locations);
+
+        List<SunriseSunsetEntity> entries = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            SunriseSunsetEntity entry = new SunriseSunsetEntity();
+            entry.date = LocalDate.of(2024, 6, 21).plusDays(i);
+            entry.latitude = 53.9;
+            entry.longitude = 27.56;
+            entry.locations.add(locations.get(i));
+            entries.add(entry);
+        }
+        sunriseSunsetRepository.saveAll(entries);
+        entityManager.flush();
+
+        assertEquals(2 * ROWS, statistics.getEntityInsertCount());
+        // 3 batches for each of the two tables and the link table, plus a few sequence calls; one statement
+        // per row would be 3 * ROWS.
+        assertTrue(statistics.getPrepareStatementCount() < 30,
+                "prepared statements: " + statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void sequenceIdsAreUniqueAcrossBlocks() {
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < ROWS; i++) {
+            LocationEntity location = new LocationEntity();
+            location.name = "Location " + i;
+            ids.add(locationRepository.save(location).id);
+        }
+        assertEquals(ROWS, ids.size());
+        assertFalse(ids.contains(null));
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.SunriseSunset.repository;
+
+import com.example.SunriseSunset.model.LocationEntity;
+import com.example.SunriseSunset.model.SunriseSunsetEntity;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Rows per second for a 10k-row bulk create through the repositories, with the entity mappings and the
+ * Hibernate settings of application.properties (pooled-lo sequence ids, JDBC batches of 50, ordered inserts)
+ * and the driver rewriting batches into multi-row INSERTs, as the application's datasource URL asks for.
+ * The baseline saves the same rows with a flush after each one, which sends them one statement at a time the
+ * way identity ids did. The schema comes from the migrations, in a scratch schema of the database named by
+ * BULK_INSERT_BENCH_PG_URL; the rows are rolled back with the test transaction.
+ */
+@EnabledIfEnvironmentVariable(named = "BULK_INSERT_BENCH_PG_URL", matches = ".+")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@DataJpaTest(properties = {
+        "spring.datasource.url=${BULK_INSERT_BENCH_PG_URL}",
+        "spring.datasource.username=${BULK_INSERT_BENCH_PG_USER:postgres}",
+        "spring.datasource.password=${BULK_INSERT_BENCH_PG_PASSWORD:}",
+        "spring.datasource.hikari.data-source-properties.reWriteBatchedInserts=true",
+        "spring.flyway.schemas=" + BulkInsertBenchmarkTest.SCHEMA,
+        "spring.flyway.default-schema=" + BulkInsertBenchmarkTest.SCHEMA,
+        "spring.jpa.hibernate.ddl-auto=none",
+        "spring.jpa.properties.hibernate.default_schema=" + BulkInsertBenchmarkTest.SCHEMA,
+        "spring.jpa.properties.hibernate.generate_statistics=true"})
+class BulkInsertBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkInsertBenchmarkTest.class);
+    static final String SCHEMA = "bulk_insert_bench";
+    private static final int ROWS = 10_000;
+    private static final int WARM_UP_ROWS = 1_000;
+    private static final int LOCATIONS = 100;
+    private static final LocalDate DATE = LocalDate.of(2024, 6, 21);
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private LocationRepository locationRepository;
+
+    @Autowired
+    private SunriseSunsetRepository sunriseSunsetRepository;
+
+    @Test
+    void batchedSaveAllOutrunsOneStatementPerRow() {
+        List<LocationEntity> locations = new ArrayList<>();
+        for (int i = 0; i < LOCATIONS; i++) {
+            LocationEntity location = new LocationEntity();
+            location.name = "Location " + i;
+            locations.add(location);
+        }
+        locations = locationRepository.saveAll(locations);
+        entityManager.flush();
+        batched(entries(locations, 0, WARM_UP_ROWS));
+        oneByOne(entries(locations, 1, WARM_UP_ROWS));
+        entityManager.clear();
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        List<SunriseSunsetEntity> batchedEntries = entries(locations, 2, ROWS);
+        double batchedRate = ROWS / seconds(() -> batched(batchedEntries));
+        long batchedStatements = statistics.getPrepareStatementCount();
+        entityManager.clear();
+        List<SunriseSunsetEntity> oneByOneEntries = entries(locations, 3, ROWS);
+        double oneByOneRate = ROWS / seconds(() -> oneByOne(oneByOneEntries));
+
+        logger.info("Bulk create of {} rows: {} rows/s in batches ({} statements), {} rows/s one by one",
+                ROWS, Math.round(batchedRate), batchedStatements, Math.round(oneByOneRate));
+        assertEquals(2L * ROWS, statistics.getEntityInsertCount());
+        // A batch of 50 entries, a batch of their links and a sequence call per 50 rows; a mapping or setting
+        // that stopped batching would prepare a statement per row and per link.
+        assertTrue(batchedStatements < ROWS / 10, "prepared statements: " + batchedStatements);
+        assertTrue(batchedRate > oneByOneRate);
+    }
+
+    private void batched(List<SunriseSunsetEntity> entries) {
+        sunriseSunsetRepository.saveAll(entries);
+        entityManager.flush();
+    }
+
+    private void oneByOne(List<SunriseSunsetEntity> entries) {
+        for (SunriseSunsetEntity entry : entries) {
+            sunriseSunsetRepository.save(entry);
+            entityManager.flush();
+        }
+    }
+
+    /**Builds entries with natural keys of their own per run, each linked to one of the locations.*/
+    private static List<SunriseSunsetEntity> entries(List<LocationEntity> locations, int run, int rows) {
+        List<SunriseSunsetEntity> entries = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            SunriseSunsetEntity entry = new SunriseSunsetEntity();
+            entry.date = DATE.plusDays(i % 365);
+            entry.latitude = -80.0 + run * 40 + i / 365 * 0.01;
+            entry.longitude = 27.56;
+            entry.locations.add(locations.get(i % locations.size()));
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    private static double seconds(Runnable run) {
+        long start = System.nanoTime();
+        run.run();
+        return (System.nanoTime() - start) / 1e9;
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.SunriseSunset.repository;
+
+import com.example.SunriseSunset.model.LocationEntity;
+import com.example.SunriseSunset.model.SunriseSunsetEntity;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Limit;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = {"spring.flyway.enabled=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true"})
+class LinkRowQueryTest {
+
+    private static final int LOCATIONS = 5;
+    private static final LocalDate DATE = LocalDate.of(2024, 6, 21);
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private LocationRepository locationRepository;
+
+    @Autowired
+    private SunriseSunsetRepository sunriseSunsetRepository;
+
+    private final List<LocationEntity> locations = new ArrayList<>();
+    private final List<SunriseSunsetEntity> entries = new ArrayList<>();
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < LOCATIONS; i++) {
+            LocationEntity location = new LocationEntity();
+            location.name = "Location " + i;
+            location.country = "Belarus";
+            locations.add(entityManager.persist(location));
+        }
+        // Each entry is linked to its own location and the next one, so every location has two entries.
+        for (int i = 0; i < LOCATIONS; i++) {
+            SunriseSunsetEntity entry = new SunriseSunsetEntity();
+            entry.date = DATE.plusDays(i % 2);
+            entry.latitude = 53.9 + i;
+            entry.longitude = 27.56;
+            entry.locations.add(locations.get(i));
+            entry.locations.add(locations.get((i + 1) % LOCATIONS));
+            entries.add(entityManager.persist(entry));
+        }
+        entityManager.flush();
+        entityManager.clear();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void walkingLazyCollectionsIssuesOneQueryPerLocation() {
+        List<LocationEntity> loaded = locationRepository.findAll();
+        loaded.forEach(location -> location.sunriseSunsets.size());
+        assertEquals(1 + LOCATIONS, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void allLocationLinkRowsAreReadInOneQuery() {
+        List<LocationLinkRow> rows = locationRepository.findAllLinkRows();
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(2 * LOCATIONS, rows.size());
+        assertEquals(List.of(entries.get(0).id, entries.get(LOCATIONS - 1).id),
+                sunriseSunsetIdsOf(rows, locations.get(0).id));
+    }
+
+    @Test
+    void locationLinkRowsByIdAreReadInOneQuery() {
+        List<LocationLinkRow> rows = locationRepository.findLinkRowsByIdIn(
+                List.of(locations.get(1).id, locations.get(2).id));
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(4, rows.size());
+        assertEquals(List.of(entries.get(0).id, entries.get(1).id), sunriseSunsetIdsOf(rows, locations.get(1).id));
+    }
+
+    @Test
+    void locationWithoutEntriesStillHasARow() {
+        LocationEntity lonely = new LocationEntity();
+        lonely.name = "Lonely";
+        Integer id = entityManager.persistAndFlush(lonely).id;
+        statistics.clear();
+
+        List<LocationLinkRow> rows = locationRepository.findLinkRowsByIdIn(List.of(id));
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(1, rows.size());
+        assertNull(rows.get(0).sunriseSunsetId);
+    }
+
+    @Test
+    void allSunriseSunsetLinkRowsAreReadInOneQuery() {
+        List<SunriseSunsetLinkRow> rows = sunriseSunsetRepository.findAllLinkRows();
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(2 * LOCATIONS, rows.size());
+        assertEquals(List.of(locations.get(0).id, locations.get(1).id), locationIdsOf(rows, entries.get(0).id));
+    }
+
+    @Test
+    void entriesOfALocationKeepAllTheirLocationIds() {
+        List<SunriseSunsetLinkRow> rows = sunriseSunsetRepository.findLinkRowsByLocationId(locations.get(2).id);
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(4, rows.size());
+        assertEquals(List.of(locations.get(1).id, locations.get(2).id), locationIdsOf(rows, entries.get(1).id));
+        assertEquals(List.of(locations.get(2).id, locations.get(3).id), locationIdsOf(rows, entries.get(2).id));
+    }
+
+    @Test
+    void entriesOfADateAndLocationNameAreReadInOneQuery() {
+        List<SunriseSunsetLinkRow> rows = sunriseSunsetRepository.findLinkRowsByDateAndLocationName(
+                DATE, locations.get(2).name);
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(2, rows.size());
+        assertEquals(List.of(locations.get(2).id, locations.get(3).id), locationIdsOf(rows, entries.get(2).id));
+    }
+
+    @Test
+    void idsAfterTheCursorComeInIdOrderUpToTheLimit() {
+        List<Integer> firstPage = locationRepository.findIdsAfter(0, Limit.of(2));
+        assertEquals(List.of(locations.get(0).id, locations.get(1).id), firstPage);
+        assertEquals(List.of(locations.get(2).id, locations.get(3).id),
+                locationRepository.findIdsAfter(firstPage.get(1), Limit.of(2)));
+        assertEquals(List.of(entries.get(LOCATIONS - 1).id),
+                sunriseSunsetRepository.findIdsAfter(entries.get(LOCATIONS - 2).id, Limit.of(2)));
+    }
+
+    private static List<Integer> sunriseSunsetIdsOf(List<LocationLinkRow> rows, Integer locationId) {
+        return rows.stream().filter(row -> row.id.equals(locationId))
+                .map(row -> row.sunriseSunsetId).collect(Collectors.toList());
+    }
+
+    private static List<Integer> locationIdsOf(List<SunriseSunsetLinkRow> rows, Integer sunriseSunsetId) {
+        return rows.stream().filter(row -> row.id.equals(sunriseSunsetId))
+                .map(row -> row.locationId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.SunriseSunset.repository;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs EXPLAIN on the SQL Hibernate generates for each selective repository query and fails on a sequential
+ * scan. The schema comes from the migrations, in a scratch schema of the database named by QUERY_PLAN_PG_URL;
+ * the fixture rows are inserted and analyzed inside the test transaction and rolled back afterwards. Queries
+ * that read whole tables are left out, since a sequential scan is the right plan for them.
+ */
+@EnabledIfEnvironmentVariable(named = "QUERY_PLAN_PG_URL", matches = ".+")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@DataJpaTest(properties = {
+        "spring.datasource.url=${QUERY_PLAN_PG_URL}",
+        "spring.datasource.username=${QUERY_PLAN_PG_USER:postgres}",
+        "spring.datasource.password=${QUERY_PLAN_PG_PASSWORD:}",
+        "spring.flyway.schemas=" + QueryPlanTest.SCHEMA,
+        "spring.flyway.default-schema=" + QueryPlanTest.SCHEMA,
+        "spring.jpa.hibernate.ddl-auto=none",
+        "spring.jpa.properties.hibernate.default_schema=" + QueryPlanTest.SCHEMA,
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+                + "com.example.SunriseSunset.repository.QueryPlanTest$LastStatement"})
+class QueryPlanTest {
+
+    static final String SCHEMA = "query_plan_test";
+    private static final int LOCATIONS = 20_000;
+    private static final int ENTRIES = 200_000;
+    private static final LocalDate FIRST_DATE = LocalDate.of(2024, 1, 1);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private LocationRepository locationRepository;
+
+    @Autowired
+    private SunriseSunsetRepository sunriseSunsetRepository;
+
+    /**Remembers the last SQL statement Hibernate prepared, so the test can explain exactly that statement.*/
+    public static class LastStatement implements StatementInspector {
+
+        static volatile String sql;
+
+        @Override
+        public String inspect(String statement) {
+            sql = statement;
+            return statement;
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        // One location per name, one entry per day of the year at each of many points, and every entry
+        // linked to two locations. The longitude is nudged per block of 360 entries to keep the natural
+        // keys distinct.
+        jdbcTemplate.update("INSERT INTO " + SCHEMA + ".locations (id, name, country) "
+                + "SELECT i, 'Location ' || i, 'Country ' || (i % 50) FROM generate_series(1, ?) i", LOCATIONS);
+        jdbcTemplate.update("INSERT INTO " + SCHEMA + ".sunrise_and_sunset (id, date, latitude, longitude) "
+                + "SELECT i, ?::date + (i % 366), (i % 180) - 90, (i % 360) - 180 + (i / 360) * 0.0001 "
+                + "FROM generate_series(1, ?) i",
+                FIRST_DATE, ENTRIES);
+        jdbcTemplate.update("INSERT INTO " + SCHEMA + ".sunrise_sunset_locations (sunrise_sunset_id, location_id) "
+                + "SELECT i, i % ? + 1 FROM generate_series(1, ?) i "
+                + "UNION ALL SELECT i, (i + 1) % ? + 1 FROM generate_series(1, ?) i",
+                LOCATIONS, ENTRIES, LOCATIONS, ENTRIES);
+        jdbcTemplate.execute("ANALYZE " + SCHEMA + ".locations, " + SCHEMA + ".sunrise_and_sunset, "
+                + SCHEMA + ".sunrise_sunset_locations");
+    }
+
+    @Test
+    void locationLinkRowsByIdUseIndexes() {
+        locationRepository.findLinkRowsByIdIn(List.of(10, 20));
+        assertNoSequentialScan(10, 20);
+    }
+
+    @Test
+    void locationIdsAfterTheCursorUseTheIndex() {
+        locationRepository.findIdsAfter(LOCATIONS - 500, Limit.of(100));
+        assertNoSequentialScan(LOCATIONS - 500, 100);
+    }
+
+    @Test
+    void sunriseSunsetLinkRowsByIdUseIndexes() {
+        sunriseSunsetRepository.findLinkRowsByIdIn(List.of(10, 20));
+        assertNoSequentialScan(10, 20);
+    }
+
+    @Test
+    void sunriseSunsetLinkRowsByLocationUseIndexes() {
+        sunriseSunsetRepository.findLinkRowsByLocationId(42);
+        assertNoSequentialScan(42);
+    }
+
+    @Test
+    void sunriseSunsetLinkRowsBySeveralLocationsUseIndexes() {
+        sunriseSunsetRepository.findLinkRowsByLocationIdIn(List.of(42, 43));
+        assertNoSequentialScan(42, 43);
+    }
+
+    @Test
+    void latestPointsOfLocationsUseIndexes() {
+        sunriseSunsetRepository.findLatestPointsByLocationIdIn(List.of(42, 43));
+        assertNoSequentialScan(42, 43);
+    }
+
+    @Test
+    void pointsOfLocationsInADateRangeUseIndexes() {
+        sunriseSunsetRepository.findPointsByLocationIdInAndDateBetween(List.of(42, 43), FIRST_DATE, FIRST_DATE.plusDays(1));
+        assertNoSequentialScan(42, 43, FIRST_DATE, FIRST_DATE.plusDays(1));
+    }
+
+    @Test
+    void sunriseSunsetLinkRowsByDateAndLocationNameUseIndexes() {
+        sunriseSunsetRepository.findLinkRowsByDateAndLocationName(FIRST_DATE.plusDays(42), "Location 42");
+        assertNoSequentialScan(FIRST_DATE.plusDays(42), "Location 42");
+    }
+
+    @Test
+    void sunriseSunsetIdsAfterTheCursorUseTheIndex() {
+        sunriseSunsetRepository.findIdsAfter(ENTRIES - 500, Limit.of(100));
+        assertNoSequentialScan(ENTRIES - 500, 100);
+    }
+
+    @Test
+    void idOfANaturalKeyUsesTheUniqueIndex() {
+        sunriseSunsetRepository.findIdByDateAndCoordinates(FIRST_DATE.plusDays(42), -48.0, -138.0);
+        assertNoSequentialScan(FIRST_DATE.plusDays(42), -48.0, -138.0);
+    }
+
+    @Test
+    void pointsOfNaturalKeysUseTheUniqueIndex() {
+        sunriseSunsetRepository.findPointsByDateInAndCoordinatesIn(List.of(FIRST_DATE.plusDays(42)), List.of(-48.0),
+                List.of(-138.0));
+        assertNoSequentialScan(FIRST_DATE.plusDays(42), -48.0, -138.0);
+    }
+
+    /**Explains the statement the repository just ran, bound to the same values, and checks its plan.*/
+    private void assertNoSequentialScan(Object... parameters) {
+        String sql = LastStatement.sql;
+        assertEquals(parameters.length, sql.chars().filter(c -> c == '?').count(), sql);
+        String plan = String.join("\n", jdbcTemplate.queryForList("EXPLAIN " + sql, String.class, parameters));
+        assertFalse(plan.contains("Seq Scan"), sql + "\n" + plan);
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.SunriseSunset.repository;
+
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SequenceIdBlocksTest {
+
+    private final List<Integer> calls = new ArrayList<>();
+    private int sequence = 1;
+
+    @Test
+    void consecutiveRequestsGetConsecutiveIdsFromOneBlock() {
+        SequenceIdBlocks ids = new SequenceIdBlocks(50, this::nextValues);
+
+        assertArrayEquals(new int[] {1}, ids.next(1));
+        assertArrayEquals(new int[] {2}, ids.next(1));
+        assertArrayEquals(new int[] {3, 4, 5}, ids.next(3));
+        assertEquals(List.of(1), calls);
+    }
+
+    @Test
+    void aRequestBeyondTheBlockFetchesEveryBlockItNeedsInOneCall() {
+        SequenceIdBlocks ids = new SequenceIdBlocks(50, this::nextValues);
+        ids.next(40);
+
+        int[] next = ids.next(70);
+
+        assertArrayEquals(IntStream.range(41, 111).toArray(), next);
+        assertEquals(List.of(1, 2), calls);
+        assertEquals(111, ids.next(1)[0]);
+        assertEquals(List.of(1, 2), calls);
+    }
+
+    @Test
+    void blocksHandedOutToOthersInBetweenAreSkipped() {
+        SequenceIdBlocks ids = new SequenceIdBlocks(50, this::nextValues);
+        ids.next(50);
+        sequence += 50;
+
+        assertEquals(101, ids.next(1)[0]);
+    }
+
+    /**Stands in for a sequence with INCREMENT BY 50, starting at 1.*/
+    private List<Integer> nextValues(int count) {
+        calls.add(count);
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            values.add(sequence);
+            sequence += 50;
+        }
+        return values;
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.SunriseSunset.repository;
+
+import com.example.SunriseSunset.dto.SunriseSunsetDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Upserts into temporary copies of the entry tables and their pooled sequence, which shadow the real ones on
+ * the test's connection. Runs when UPSERT_PG_URL is set.
+ */
+@EnabledIfEnvironmentVariable(named = "UPSERT_PG_URL", matches = ".+")
+class SunriseSunsetUpsertRepositoryTest {
+
+    private static final LocalDate DATE = LocalDate.of(2024, 6, 21);
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private SunriseSunsetUpsertRepository repository;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        PGSimpleDataSource postgres = new PGSimpleDataSource();
+        postgres.setURL(System.getenv("UPSERT_PG_URL"));
+        postgres.setUser(System.getenv().getOrDefault("UPSERT_PG_USER", "postgres"));
+        postgres.setPassword(System.getenv().getOrDefault("UPSERT_PG_PASSWORD", ""));
+        dataSource = new SingleConnectionDataSource(postgres.getConnection(), true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TEMP SEQUENCE sunrise_and_sunset_seq INCREMENT BY "
+                + SunriseSunsetUpsertRepository.ID_BLOCK_SIZE);
+        jdbcTemplate.execute("CREATE TEMP TABLE locations (id INTEGER PRIMARY KEY, name VARCHAR(255) NOT NULL, "
+                + "country VARCHAR(255))");
+        jdbcTemplate.execute("CREATE TEMP TABLE sunrise_and_sunset (id INTEGER PRIMARY KEY "
+                + "DEFAULT nextval('sunrise_and_sunset_seq'), date DATE NOT NULL, latitude DOUBLE PRECISION NOT NULL, "
+                + "longitude DOUBLE PRECISION NOT NULL, sunrise TIMESTAMP(6) WITH TIME ZONE, "
+                + "sunset TIMESTAMP(6) WITH TIME ZONE, UNIQUE (date, latitude, longitude))");
+        jdbcTemplate.execute("CREATE TEMP TABLE sunrise_sunset_locations (sunrise_sunset_id INTEGER NOT NULL, "
+                + "location_id INTEGER NOT NULL, PRIMARY KEY (sunrise_sunset_id, location_id))");
+        repository = new SunriseSunsetUpsertRepository(jdbcTemplate);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.destroy();
+    }
+
+    @Test
+    void consecutiveUpsertsGetConsecutiveIds() {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ids.add(repository.upsert(entry(i)));
+        }
+        ids.addAll(repository.upsertAll(List.of(entry(3), entry(4))));
+
+        int first = ids.get(0);
+        assertEquals(List.of(first, first + 1, first + 2, first + 3, first + 4), ids);
+        assertEquals(first, jdbcTemplate.queryForObject("SELECT last_value FROM sunrise_and_sunset_seq", Integer.class));
+    }
+
+    @Test
+    void anUpsertOfAStoredKeyKeepsItsId() {
+        int stored = repository.upsert(entry(0));
+
+        assertEquals(stored, repository.upsert(entry(0)));
+        assertEquals(List.of(stored + 2, stored), repository.upsertAll(List.of(entry(1), entry(0))));
+        assertEquals(2, jdbcTemplate.queryForObject("SELECT count(*) FROM sunrise_and_sunset", Integer.class));
+    }
+
+    private static SunriseSunsetDto entry(int day) {
+        return new SunriseSunsetDto(null, DATE.plusDays(day), 53.9, 27.56, null, null, List.of());
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.SunriseSunset.service;
+
+import com.example.SunriseSunset.dto.BulkItemResult;
+import com.example.SunriseSunset.dto.BulkJobDto;
+import com.example.SunriseSunset.dto.LocationDto;
+import com.example.SunriseSunset.dto.SunriseSunsetDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class BulkJobServiceTest {
+
+    private static final Instant NOW = Instant.parse("2024-06-21T12:00:00Z");
+
+    @Mock
+    private LocationService locationService;
+
+    @Mock
+    private SunriseSunsetService sunriseSunsetService;
+
+    private List<Runnable> queued;
+    private BulkJobService bulkJobService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        queued = new ArrayList<>();
+        bulkJobService = new BulkJobService(locationService, sunriseSunsetService, queued::add,
+                Clock.fixed(NOW, ZoneOffset.UTC), 2, 10, Duration.ofMinutes(60));
+    }
+
+    @Test
+    void submittedJobIsQueuedUntilAWorkerRunsIt() {
+        BulkJobDto submitted = bulkJobService.submitLocations(locations(5));
+
+        assertEquals("QUEUED", submitted.getStatus());
+        assertEquals(5, submitted.getTotalItems());
+        verifyNoInteractions(locationService);
+        assertEquals(1, queued.size());
+    }
+
+    @Test
+    void itemsAreCreatedInChunksWithOneServiceCallEach() {
+        when(locationService.bulkCreateLocations(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+        String id = bulkJobService.submitLocations(locations(5)).getId();
+
+        queued.forEach(Runnable::run);
+
+        verify(locationService, times(2)).bulkCreateLocations(argThat(chunk -> chunk.size() == 2));
+        verify(locationService).bulkCreateLocations(argThat(chunk -> chunk.size() == 1));
+        BulkJobDto job = bulkJobService.getJob(id);
+        assertEquals("COMPLETED", job.getStatus());
+        assertEquals(5, job.getProcessedItems());
+        assertEquals(5, job.getSucceededItems());
+        assertTrue(job.getErrors().isEmpty());
+    }
+
+    @Test
+    void failedChunkOnlyFailsItsOwnItems() {
+        when(locationService.bulkCreateLocations(anyList()))
+                .thenAnswer(invocation -> invocation.getArgument(0))
+                .thenThrow(new IllegalStateException("duplicate key"))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        String id = bulkJobService.submitLocations(locations(5)).getId();
+
+        queued.forEach(Runnable::run);
+
+        BulkJobDto job = bulkJobService.getJob(id);
+        assertEquals("COMPLETED", job.getStatus());
+        assertEquals(3, job.getSucceededItems());
+        assertEquals(2, job.getFailedItems());
+        assertEquals(List.of(2, 3), job.getErrors().stream().map(BulkItemResult::getIndex).collect(Collectors.toList()));
+        assertEquals("duplicate key", job.getErrors().get(0).getError());
+    }
+
+    @Test
+    void itemFailuresAreReportedAtTheirPositionInTheWholeBatch() {
+        when(sunriseSunsetService.bulkCreateSunriseSunsets(anyList())).thenAnswer(invocation -> {
+            List<SunriseSunsetDto> chunk = invocation.getArgument(0);
+            List<BulkItemResult<SunriseSunsetDto>> results = new ArrayList<>();
+            for (int i = 0; i < chunk.size(); i++) {
+                results.add(chunk.get(i).getLatitude() < 0
+                        ? BulkItemResult.failure(i, "rate limited")
+                        : BulkItemResult.success(i, chunk.get(i)));
+            }
+            return results;
+        });
+        List<SunriseSunsetDto> dtos = List.of(sunTimes(1), sunTimes(2), sunTimes(-3), sunTimes(4));
+        String id = bulkJobService.submitSunriseSunsets(dtos).getId();
+
+        queued.forEach(Runnable::run);
+
+        BulkJobDto job = bulkJobService.getJob(id);
+        assertEquals(3, job.getSucceededItems());
+        assertEquals(1, job.getErrors().size());
+        assertEquals(2, job.getErrors().get(0).getIndex());
+        assertEquals("rate limited", job.getErrors().get(0).getError());
+    }
+
+    @Test
+    void unknownJobIsNotFound() {
+        assertNull(bulkJobService.getJob("missing"));
+    }
+
+    @Test
+    void finishedJobsAreRemovedAfterTheirRetention() {
+        MutableClock clock = new MutableClock(NOW);
+        BulkJobService service = new BulkJobService(locationService, sunriseSunsetService, Runnable::run, clock, 2,
+                10, Duration.ofMinutes(60));
+        when(locationService.bulkCreateLocations(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+        String id = service.submitLocations(locations(1)).getId();
+
+        clock.now = NOW.plus(Duration.ofMinutes(59));
+        service.removeExpiredJobs();
+        assertNotNull(service.getJob(id));
+        clock.now = NOW.plus(Duration.ofMinutes(61));
+        service.removeExpiredJobs();
+        assertNull(service.getJob(id));
+    }
+
+    private static List<LocationDto> locations(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> new LocationDto(null, "City " + i, "Country", List.of()))
+                .collect(Collectors.toList());
+    }
+
+    private static SunriseSunsetDto sunTimes(double latitude) {
+        SunriseSunsetDto dto = new SunriseSunsetDto();
+        dto.setLatitude(latitude);
+        dto.setLongitude(27.56);
+        dto.setDate(LocalDate.of(2024, 6, 21));
+        return dto;
+    }
+
+    /**Clock whose time is set by the test.*/
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
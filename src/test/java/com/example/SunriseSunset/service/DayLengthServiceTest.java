@@ -0,0 +1,87 @@
+package com.example.SunriseSunset.service;
+
+import com.example.SunriseSunset.dto.DayLengthSummaryDto;
+import com.example.SunriseSunset.timeseries.SunTimesSeries;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class DayLengthServiceTest {
+
+    private static final LocalDate FIRST_DAY = LocalDate.of(2024, 1, 1);
+
+    @Mock
+    private SunriseSunsetService sunriseSunsetService;
+
+    private ForkJoinPool pool;
+    private DayLengthService dayLengthService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        pool = new ForkJoinPool(4);
+        dayLengthService = new DayLengthService(sunriseSunsetService, pool);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    void summariesOfManyLocationsComeBackInTheOrderAsked() {
+        // Enough entries in total that the task splits the locations across the pool.
+        List<Integer> locationIds = IntStream.rangeClosed(1, 40).map(i -> 41 - i).boxed().toList();
+        Map<Integer, SunTimesSeries> series = new LinkedHashMap<>();
+        locationIds.forEach(locationId -> series.put(locationId, yearOfDays(locationId)));
+        when(sunriseSunsetService.getSeries(locationIds)).thenReturn(series);
+
+        List<DayLengthSummaryDto> summaries = dayLengthService.summarize(locationIds, FIRST_DAY, FIRST_DAY.plusDays(99));
+
+        assertEquals(locationIds, summaries.stream().map(DayLengthSummaryDto::getLocationId).toList());
+        for (DayLengthSummaryDto summary : summaries) {
+            int locationId = summary.getLocationId();
+            assertEquals(100, summary.getDays());
+            assertEquals(FIRST_DAY, summary.getShortestDay());
+            assertEquals(8 * 3600L + locationId, summary.getShortestDayLengthSeconds());
+            assertEquals(FIRST_DAY.plusDays(99), summary.getLongestDay());
+            assertEquals(8 * 3600L + locationId + 99 * 60, summary.getLongestDayLengthSeconds());
+        }
+    }
+
+    @Test
+    void locationsWithoutEntriesGetAnEmptySummary() {
+        when(sunriseSunsetService.getSeries(List.of(7))).thenReturn(Map.of(7, SunTimesSeries.builder().build()));
+
+        DayLengthSummaryDto summary = dayLengthService.summarize(List.of(7), null, null).get(0);
+
+        assertEquals(7, summary.getLocationId());
+        assertEquals(0, summary.getDays());
+        assertNull(summary.getAverageDayLengthSeconds());
+    }
+
+    /**A year of entries whose days grow by a minute a day from eight hours plus a second per location id.*/
+    private static SunTimesSeries yearOfDays(int locationId) {
+        SunTimesSeries.Builder builder = SunTimesSeries.builder();
+        for (int i = 0; i < 365; i++) {
+            LocalDate date = FIRST_DAY.plusDays(i);
+            OffsetDateTime sunrise = date.atTime(8, 0).atOffset(ZoneOffset.UTC);
+            builder.add(locationId * 1000 + i, date, 50, 10, sunrise, sunrise.plusSeconds(8 * 3600L + locationId + i * 60L))
+                    .link(locationId);
+        }
+        return builder.build();
+    }
+}
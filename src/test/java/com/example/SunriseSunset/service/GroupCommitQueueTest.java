@@ -0,0 +1,179 @@
+package com.example.SunriseSunset.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GroupCommitQueueTest {
+
+    private static final Duration LONG = Duration.ofSeconds(30);
+
+    private final List<List<Integer>> groups = new CopyOnWriteArrayList<>();
+    private SimpleMeterRegistry registry;
+    private ExecutorService callers;
+    private GroupCommitQueue<Integer, String> queue;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        callers = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (queue != null) {
+            queue.close();
+        }
+        callers.shutdownNow();
+    }
+
+    @Test
+    void writesSubmittedTogetherShareAGroupAndGetTheirOwnResults() throws Exception {
+        queue = queue(100, 4, LONG, LONG, this::record);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            int item = i;
+            results.add(callers.submit(() -> queue.submit(item)));
+        }
+        for (int i = 0; i < 4; i++) {
+            assertEquals("stored-" + i, results.get(i).get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, groups.size());
+        assertEquals(4, groups.get(0).size());
+    }
+
+    @Test
+    void aPartialGroupIsWrittenOnceItsOldestWriteHasWaitedTheDelay() {
+        queue = queue(100, 50, Duration.ofMillis(20), LONG, this::record);
+        assertEquals("stored-7", queue.submit(7));
+        assertEquals(List.of(List.of(7)), groups);
+    }
+
+    @Test
+    void aFailedGroupIsWrittenAgainOneAtATime() throws Exception {
+        queue = queue(100, 3, LONG, LONG, items -> {
+            if (items.contains(13)) {
+                throw new IllegalStateException("cannot store 13");
+            }
+            return record(items);
+        });
+        Future<String> first = callers.submit(() -> queue.submit(1));
+        Future<String> failing = callers.submit(() -> queue.submit(13));
+        Future<String> last = callers.submit(() -> queue.submit(3));
+
+        assertEquals("stored-1", first.get(5, TimeUnit.SECONDS));
+        assertEquals("stored-3", last.get(5, TimeUnit.SECONDS));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> failing.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        assertEquals(2, groups.size());
+        assertEquals(1.0, registry.get("write-behind.writes").tag("outcome", "failed").counter().count());
+    }
+
+    @Test
+    void aFullQueueRejectsOnceTheOfferTimeoutPasses() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch writing = new CountDownLatch(1);
+        queue = queue(1, 1, LONG, Duration.ofMillis(50), items -> {
+            writing.countDown();
+            await(release);
+            return record(items);
+        });
+        Future<String> held = callers.submit(() -> queue.submit(1));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        Future<String> queued = callers.submit(() -> queue.submit(2));
+        while (queue.getQueueDepth() < 1) {
+            Thread.sleep(1);
+        }
+
+        assertThrows(WriteBehindUnavailableException.class, () -> queue.submit(3));
+        release.countDown();
+        assertEquals("stored-1", held.get(5, TimeUnit.SECONDS));
+        assertEquals("stored-2", queued.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void aWriterReturningTooFewResultsFailsItsGroupAndTheFlusherGoesOn() throws Exception {
+        queue = queue(100, 2, LONG, LONG, items -> items.contains(1) ? List.of("stored") : record(items));
+        Future<String> first = callers.submit(() -> queue.submit(1));
+        Future<String> second = callers.submit(() -> queue.submit(2));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+        Future<String> third = callers.submit(() -> queue.submit(3));
+        Future<String> fourth = callers.submit(() -> queue.submit(4));
+        assertEquals("stored-3", third.get(5, TimeUnit.SECONDS));
+        assertEquals("stored-4", fourth.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void aCallerWaitsNoLongerThanTheWriteTimeout() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch writing = new CountDownLatch(1);
+        queue = new GroupCommitQueue<>("test", 100, 1, LONG, LONG, Duration.ofMillis(50), Duration.ofSeconds(5),
+                items -> {
+                    writing.countDown();
+                    await(release);
+                    return record(items);
+                }, registry);
+        Future<String> stuck = callers.submit(() -> queue.submit(1));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        assertThrows(WriteBehindUnavailableException.class, () -> queue.submit(2));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> stuck.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(WriteBehindUnavailableException.class, e.getCause());
+        release.countDown();
+        queue.close();
+        assertEquals(List.of(List.of(1)), groups);
+    }
+
+    @Test
+    void closeWritesWhatIsQueuedAndRejectsLaterWrites() throws Exception {
+        queue = queue(100, 50, LONG, LONG, this::record);
+        Future<String> first = callers.submit(() -> queue.submit(1));
+        Future<String> second = callers.submit(() -> queue.submit(2));
+        while (queue.getQueueDepth() < 2) {
+            Thread.sleep(1);
+        }
+
+        queue.close();
+
+        assertEquals("stored-1", first.get(5, TimeUnit.SECONDS));
+        assertEquals("stored-2", second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, groups.size());
+        assertThrows(WriteBehindUnavailableException.class, () -> queue.submit(3));
+    }
+
+    private GroupCommitQueue<Integer, String> queue(int capacity, int maxGroupSize, Duration maxDelay,
+                                                    Duration offerTimeout, Function<List<Integer>, List<String>> writer) {
+        return new GroupCommitQueue<>("test", capacity, maxGroupSize, maxDelay, offerTimeout, LONG,
+                Duration.ofSeconds(5), writer, registry);
+    }
+
+    private List<String> record(List<Integer> items) {
+        groups.add(List.copyOf(items));
+        return items.stream().map(item -> "stored-" + item).toList();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
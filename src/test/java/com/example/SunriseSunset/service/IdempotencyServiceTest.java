@@ -0,0 +1,94 @@
+package com.example.SunriseSunset.service;
+
+import com.example.SunriseSunset.dto.SunriseSunsetDto;
+import com.example.SunriseSunset.repository.IdempotencyStore;
+import com.example.SunriseSunset.repository.IdempotencyStore.StoredResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class IdempotencyServiceTest {
+
+    private static final String ENDPOINT = "POST /sun/times";
+    private static final Instant NOW = Instant.parse("2024-06-21T12:00:00Z");
+    private static final LocalDate DATE = LocalDate.of(2024, 6, 21);
+
+    @Mock
+    private IdempotencyStore store;
+
+    private IdempotencyService idempotencyService;
+    private final AtomicInteger runs = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        idempotencyService = new IdempotencyService(store, new ObjectMapper().findAndRegisterModules(),
+                Clock.fixed(NOW, ZoneOffset.UTC), Duration.ofHours(1));
+    }
+
+    @Test
+    void aRetryIsAnsweredWithTheRecordedResponseWithoutRunningAgain() {
+        SunriseSunsetDto request = new SunriseSunsetDto(DATE, 53.9, 27.56);
+        SunriseSunsetDto first = idempotencyService.execute(ENDPOINT, "key-1", request, SunriseSunsetDto.class,
+                this::create);
+        ArgumentCaptor<String> hash = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<String> response = ArgumentCaptor.forClass(String.class);
+        verify(store).save(eq(ENDPOINT + " key-1"), hash.capture(), response.capture(), eq(NOW.plusSeconds(3600)));
+        when(store.find(ENDPOINT + " key-1", NOW))
+                .thenReturn(Optional.of(new StoredResponse(hash.getValue(), response.getValue())));
+
+        SunriseSunsetDto replayed = idempotencyService.execute(ENDPOINT, "key-1",
+                new SunriseSunsetDto(DATE, 53.9, 27.56), SunriseSunsetDto.class, this::create);
+
+        assertEquals(1, runs.get());
+        assertEquals(first.getId(), replayed.getId());
+        assertEquals(first.getLocationIds(), replayed.getLocationIds());
+        assertEquals(DATE, replayed.getDate());
+        verify(store, times(1)).save(anyString(), anyString(), anyString(), any());
+    }
+
+    @Test
+    void aKeyReusedForAnotherRequestIsRejected() {
+        idempotencyService.execute(ENDPOINT, "key-1", new SunriseSunsetDto(DATE, 53.9, 27.56), SunriseSunsetDto.class,
+                this::create);
+        ArgumentCaptor<String> hash = ArgumentCaptor.forClass(String.class);
+        verify(store).save(anyString(), hash.capture(), anyString(), any());
+        when(store.find(ENDPOINT + " key-1", NOW)).thenReturn(Optional.of(new StoredResponse(hash.getValue(), "{}")));
+
+        assertThrows(IllegalArgumentException.class, () -> idempotencyService.execute(ENDPOINT, "key-1",
+                new SunriseSunsetDto(DATE.plusDays(1), 53.9, 27.56), SunriseSunsetDto.class, this::create));
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void withoutAKeyTheActionJustRuns() {
+        idempotencyService.execute(ENDPOINT, null, new SunriseSunsetDto(DATE, 53.9, 27.56), SunriseSunsetDto.class,
+                this::create);
+
+        assertEquals(1, runs.get());
+        verifyNoInteractions(store);
+        assertThrows(IllegalArgumentException.class, () -> idempotencyService.execute(ENDPOINT, " ",
+                new SunriseSunsetDto(DATE, 53.9, 27.56), SunriseSunsetDto.class, this::create));
+    }
+
+    private SunriseSunsetDto create() {
+        runs.incrementAndGet();
+        return new SunriseSunsetDto(7, DATE, 53.9, 27.56, null, null, List.of(1, 2));
+    }
+}
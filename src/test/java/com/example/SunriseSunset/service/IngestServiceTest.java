@@ -0,0 +1,140 @@
+package com.example.SunriseSunset.service;
+
+import com.example.SunriseSunset.dto.IngestResultDto;
+import com.example.SunriseSunset.repository.CopyLoader;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class IngestServiceTest {
+
+    @Mock
+    private CopyLoader copyLoader;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private LocationService locationService;
+
+    @Mock
+    private SunriseSunsetService sunriseSunsetService;
+
+    private StringWriter copied;
+    private IngestService ingestService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        copied = new StringWriter();
+        when(copyLoader.copy(anyString(), anyList(), any())).thenAnswer(invocation -> {
+            CopyLoader.RowWriter writer = new CopyLoader.RowWriter(copied, invocation.<List<?>>getArgument(1).size());
+            invocation.<CopyLoader.RowSource>getArgument(2).writeTo(writer);
+            writer.flush();
+            return writer.getRowCount();
+        });
+        when(copyLoader.reserveSequenceRange(anyString(), anyLong())).thenReturn(100L);
+        ingestService = new IngestService(copyLoader, transactionTemplate, locationService, sunriseSunsetService,
+                new ObjectMapper());
+    }
+
+    @Test
+    void csvLocationsAreCopiedIntoARangeReservedBeforeTheCopy() {
+        IngestResultDto result = ingestService.ingestLocations(body("id,name,country\n"
+                + "100,Minsk,Belarus\n"
+                + "\n"
+                + "105,\"Brest, \"\"West\"\"\",\n"), IngestService.Format.CSV, 105);
+
+        assertEquals(2, result.getRows());
+        assertEquals("100\tMinsk\tBelarus\n105\tBrest, \"West\"\t\\N\n", copied.toString());
+        InOrder inOrder = inOrder(copyLoader);
+        inOrder.verify(copyLoader).reserveSequenceRange("locations_seq", 105);
+        inOrder.verify(copyLoader).copy(anyString(), anyList(), any());
+        verify(transactionTemplate, times(2)).execute(any());
+        verify(locationService).evictIngested(Set.of());
+    }
+
+    @Test
+    void ndjsonSunriseSunsetsAreValidatedAndEscaped() {
+        IngestResultDto result = ingestService.ingestSunriseSunsets(body(
+                "{\"id\":100,\"date\":\"2024-06-21\",\"latitude\":53.9,\"longitude\":27.56,"
+                        + "\"sunrise\":\"2024-06-21T01:39:45Z\",\"sunset\":null}\n"), IngestService.Format.NDJSON, 100);
+
+        assertEquals(1, result.getRows());
+        assertEquals("100\t2024-06-21\t53.9\t27.56\t2024-06-21T01:39:45Z\t\\N\n", copied.toString());
+        verify(sunriseSunsetService).evictIngested(Set.of());
+    }
+
+    @Test
+    void linksEvictTheRowsTheyTouchAfterTheCopy() {
+        ingestService.ingestLinks(body("sunriseSunsetId,locationId\n1,2\n3,2\n"), IngestService.Format.CSV);
+
+        assertEquals("1\t2\n3\t2\n", copied.toString());
+        verify(locationService).evictIngested(Set.of(2));
+        verify(sunriseSunsetService).evictIngested(Set.of(1, 3));
+    }
+
+    @Test
+    void idsOutsideTheReservedRangeAreRejected() {
+        IllegalArgumentException below = assertThrows(IllegalArgumentException.class, () -> ingestService
+                .ingestLocations(body("id,name,country\n7,Minsk,Belarus\n"), IngestService.Format.CSV, 120));
+        IllegalArgumentException above = assertThrows(IllegalArgumentException.class, () -> ingestService
+                .ingestLocations(body("id,name,country\n121,Minsk,Belarus\n"), IngestService.Format.CSV, 120));
+
+        assertTrue(below.getMessage().startsWith("Line 2:"));
+        assertTrue(above.getMessage().startsWith("Line 2:"));
+        verify(locationService, never()).evictIngested(anyCollection());
+    }
+
+    @Test
+    void aDeclaredMaximumBelowTheSequenceIsRejectedBeforeTheCopy() {
+        assertThrows(IllegalArgumentException.class, () -> ingestService
+                .ingestLocations(body("id,name,country\n7,Minsk,Belarus\n"), IngestService.Format.CSV, 7));
+
+        verify(copyLoader, never()).copy(anyString(), anyList(), any());
+    }
+
+    @Test
+    void malformedRecordsReportTheirLine() {
+        assertThrows(IllegalArgumentException.class, () -> ingestService.ingestSunriseSunsets(
+                body("id,date,latitude,longitude,sunrise,sunset\n100,2024-06-21,91,27.56,,\n"),
+                IngestService.Format.CSV, 100));
+        assertThrows(IllegalArgumentException.class, () -> ingestService.ingestLinks(
+                body("sunriseSunsetId,locationId\n1\n"), IngestService.Format.CSV));
+        assertThrows(IllegalArgumentException.class, () -> ingestService.ingestLinks(
+                body("{\"sunriseSunsetId\":1,\n"), IngestService.Format.NDJSON));
+        verify(sunriseSunsetService, never()).evictIngested(anyCollection());
+    }
+
+    @Test
+    void formatFollowsTheContentType() {
+        assertEquals(IngestService.Format.CSV, IngestService.Format.fromContentType("text/csv; charset=UTF-8"));
+        assertEquals(IngestService.Format.NDJSON, IngestService.Format.fromContentType("application/x-ndjson"));
+        assertThrows(IllegalArgumentException.class, () -> IngestService.Format.fromContentType("application/json"));
+    }
+
+    private static InputStream body(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
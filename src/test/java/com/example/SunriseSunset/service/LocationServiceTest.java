@@ -1,8 +1,12 @@
 package com.example.SunriseSunset.service;
 
+import com.example.SunriseSunset.cache.EntityCache;
+import com.example.SunriseSunset.cache.InvalidationBus;
 import com.example.SunriseSunset.dto.LocationDto;
 import com.example.SunriseSunset.model.LocationEntity;
 import com.example.SunriseSunset.model.SunriseSunsetEntity;
+import com.example.SunriseSunset.repository.LinkRowCursor;
+import com.example.SunriseSunset.repository.LocationLinkRow;
 import com.example.SunriseSunset.repository.LocationRepository;
 import com.example.SunriseSunset.repository.SunriseSunsetRepository;
 import org.junit.jupiter.api.BeforeEach;
@@ -10,10 +14,14 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.data.domain.Limit;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -35,17 +43,22 @@ class LocationServiceTest {
     private SunriseSunsetRepository sunriseSunsetRepository;
 
     @Mock
-    private Map<String, Object> entityCache;
+    private LinkRowCursor linkRowCursor;
 
-    @Mock
-    private LocationDto locationDto;
+    @Spy
+    private EntityCache entityCache = new EntityCache(1000, EntityCache.collectionWeigher());
 
     @Mock
-    private LocationEntity locationEntity;
+    private InvalidationBus invalidationBus;
 
     @Mock
-    private SunriseSunsetEntity sunriseSunsetEntity;
+    private LocationDto locationDto;
+
+    private final LocationEntity locationEntity = new LocationEntity();
 
+    private final SunriseSunsetEntity sunriseSunsetEntity = new SunriseSunsetEntity();
+
+    @Spy
     @InjectMocks
     private LocationService locationService;
 
@@ -56,20 +69,20 @@ class LocationServiceTest {
         when(locationDto.getName()).thenReturn(TEST_CITY);
         when(locationDto.getCountry()).thenReturn(TEST_COUNTRY);
         when(locationDto.getSunriseSunsetIds()).thenReturn(TEST_SUNRISE_SUNSET_IDS);
-        when(locationService.convertToDTO(any(LocationEntity.class))).thenReturn(locationDto);
+        doReturn(locationDto).when(locationService).convertToDTO(any(LocationEntity.class));
     }
 
     @Test
     void createLocationWithSunriseSunsetIdsSavesAndCaches() {
-        List<SunriseSunsetEntity> sunriseSunsets = List.of(mock(SunriseSunsetEntity.class), mock(SunriseSunsetEntity.class));
+        List<SunriseSunsetEntity> sunriseSunsets = List.of(new SunriseSunsetEntity(), new SunriseSunsetEntity());
         when(sunriseSunsetRepository.findAllById(anyList())).thenReturn(sunriseSunsets);
         when(locationRepository.save(any(LocationEntity.class))).thenReturn(locationEntity);
         LocationDto result = locationService.createLocation(locationDto);
         assertNotNull(result);
         assertEquals(TEST_CITY, result.getName());
         verify(locationRepository).save(any(LocationEntity.class));
-        verify(entityCache).put(CACHE_KEY_PREFIX + "1", result);
-        verify(entityCache).remove(CACHE_KEY_ALL);
+        verify(entityCache).put(eq(CACHE_KEY_PREFIX + "1"), eq(result), anyCollection());
+        verify(entityCache, never()).remove(CACHE_KEY_ALL);
     }
 
     @Test
@@ -80,75 +93,75 @@ class LocationServiceTest {
         assertNotNull(result);
         assertEquals(TEST_CITY, result.getName());
         verify(locationRepository).save(any(LocationEntity.class));
-        verify(entityCache).put(CACHE_KEY_PREFIX + "1", result);
-        verify(entityCache).remove(CACHE_KEY_ALL);
+        verify(entityCache).put(eq(CACHE_KEY_PREFIX + "1"), eq(result), anyCollection());
+        verify(entityCache, never()).remove(CACHE_KEY_ALL);
     }
 
     @Test
     void getLocationByIdCacheHitReturnsCached() {
-        when(entityCache.containsKey(CACHE_KEY_PREFIX + "1")).thenReturn(true);
-        when(entityCache.get(CACHE_KEY_PREFIX + "1")).thenReturn(locationDto);
+        entityCache.put(CACHE_KEY_PREFIX + "1", locationDto);
         LocationDto result = locationService.getLocationById(1);
         assertNotNull(result);
         assertEquals(TEST_CITY, result.getName());
-        verify(entityCache).containsKey(CACHE_KEY_PREFIX + "1");
         verify(entityCache).get(CACHE_KEY_PREFIX + "1");
-        verify(locationRepository, never()).findById(anyInt());
+        verify(locationRepository, never()).findLinkRowsByIdIn(any());
     }
 
     @Test
     void getLocationByIdCacheMissReturnsAndCaches() {
-        when(locationRepository.findById(1)).thenReturn(Optional.of(locationEntity));
+        when(locationRepository.findLinkRowsByIdIn(List.of(1))).thenReturn(List.of(row(1, 1), row(1, 2)));
         LocationDto result = locationService.getLocationById(1);
         assertNotNull(result);
         assertEquals(TEST_CITY, result.getName());
-        verify(locationRepository).findById(1);
-        verify(entityCache).put(CACHE_KEY_PREFIX + "1", result);
+        assertEquals(TEST_SUNRISE_SUNSET_IDS, result.getSunriseSunsetIds());
+        verify(locationRepository).findLinkRowsByIdIn(List.of(1));
+        verify(locationRepository, never()).findById(anyInt());
+        assertSame(result, entityCache.get(CACHE_KEY_PREFIX + "1"));
     }
 
     @Test
     void getLocationByIdNotFoundThrowsException() {
-        when(locationRepository.findById(1)).thenReturn(Optional.empty());
+        when(locationRepository.findLinkRowsByIdIn(List.of(1))).thenReturn(List.of());
         assertThrows(IllegalArgumentException.class, () -> locationService.getLocationById(1));
-        verify(locationRepository).findById(1);
+        verify(locationRepository).findLinkRowsByIdIn(List.of(1));
     }
 
     @Test
     void getLocationsByIdsReturnsListAndCaches() {
         List<Integer> ids = List.of(1, 2);
-        List<LocationEntity> entities = List.of(mock(LocationEntity.class), mock(LocationEntity.class));
-        when(locationRepository.findAllById(ids)).thenReturn(entities);
+        when(locationRepository.findLinkRowsByIdIn(ids)).thenReturn(List.of(row(1, 1), row(1, 2), row(2, null)));
         List<LocationDto> result = locationService.getLocationsByIds(ids);
         assertNotNull(result);
         assertEquals(2, result.size());
-        verify(locationRepository).findAllById(ids);
-        verify(entityCache).put(CACHE_KEY_PREFIX + "1", locationDto);
-        verify(entityCache).put(CACHE_KEY_PREFIX + "2", locationDto);
+        assertEquals(TEST_SUNRISE_SUNSET_IDS, result.get(0).getSunriseSunsetIds());
+        assertTrue(result.get(1).getSunriseSunsetIds().isEmpty());
+        verify(locationRepository).findLinkRowsByIdIn(ids);
+        verify(locationRepository, never()).findAllById(any());
+        verify(entityCache).put(eq(CACHE_KEY_PREFIX + "1"), any(LocationDto.class), anyCollection());
+        verify(entityCache).put(eq(CACHE_KEY_PREFIX + "2"), any(LocationDto.class), anyCollection());
     }
 
     @Test
     void getAllLocationsCacheHitReturnsCached() {
-        List<LocationDto> cachedList = List.of(locationDto);
-        when(entityCache.containsKey(CACHE_KEY_ALL)).thenReturn(true);
-        when(entityCache.get(CACHE_KEY_ALL)).thenReturn(cachedList);
+        when(locationRepository.findAllLinkRows()).thenReturn(List.of(row(1, 1)));
+        locationService.getAllLocations();
         List<LocationDto> result = locationService.getAllLocations();
         assertNotNull(result);
         assertEquals(1, result.size());
-        verify(entityCache).containsKey(CACHE_KEY_ALL);
-        verify(entityCache).get(CACHE_KEY_ALL);
-        verify(locationRepository, never()).findAll();
+        verify(locationRepository, times(1)).findAllLinkRows();
     }
 
     @Test
     void getAllLocationsCacheMissReturnsAndCaches() {
-        List<LocationEntity> entities = List.of(mock(LocationEntity.class));
-        when(locationRepository.findAll()).thenReturn(entities);
+        when(locationRepository.findAllLinkRows()).thenReturn(List.of(row(1, 1), row(1, 2)));
         List<LocationDto> result = locationService.getAllLocations();
         assertNotNull(result);
         assertEquals(1, result.size());
-        verify(locationRepository).findAll();
-        verify(entityCache).put(CACHE_KEY_ALL, result);
-        verify(entityCache).put(CACHE_KEY_PREFIX + "0", locationDto);
+        assertEquals(TEST_SUNRISE_SUNSET_IDS, result.get(0).getSunriseSunsetIds());
+        verify(locationRepository).findAllLinkRows();
+        verify(locationRepository, never()).findAll();
+        assertThrows(UnsupportedOperationException.class, () -> result.add(locationDto));
+        verify(entityCache).put(eq(CACHE_KEY_PREFIX + "1"), any(LocationDto.class), anyCollection());
     }
 
     @Test
@@ -159,8 +172,29 @@ class LocationServiceTest {
         assertNotNull(result);
         assertEquals(TEST_CITY, result.getName());
         verify(locationRepository).save(any(LocationEntity.class));
-        verify(entityCache).put(CACHE_KEY_PREFIX + "1", result);
-        verify(entityCache).remove(CACHE_KEY_ALL);
+        verify(entityCache).put(eq(CACHE_KEY_PREFIX + "1"), eq(result), anyCollection());
+        verify(entityCache, never()).remove(CACHE_KEY_ALL);
+    }
+
+    @Test
+    void createLocationUpdatesLoadedListWithoutReload() {
+        when(locationRepository.findAllLinkRows()).thenReturn(Collections.emptyList());
+        when(locationRepository.save(any(LocationEntity.class))).thenReturn(locationEntity);
+        assertTrue(locationService.getAllLocations().isEmpty());
+        locationService.createLocation(locationDto);
+        List<LocationDto> result = locationService.getAllLocations();
+        assertEquals(List.of(locationDto), result);
+        verify(locationRepository, times(1)).findAllLinkRows();
+    }
+
+    @Test
+    void deleteLocationRemovesFromLoadedListWithoutReload() {
+        when(locationRepository.findAllLinkRows()).thenReturn(List.of(row(1, 1)));
+        when(locationRepository.existsById(1)).thenReturn(true);
+        assertEquals(1, locationService.getAllLocations().size());
+        locationService.deleteLocation(1);
+        assertTrue(locationService.getAllLocations().isEmpty());
+        verify(locationRepository, times(1)).findAllLinkRows();
     }
 
     @Test
@@ -176,7 +210,8 @@ class LocationServiceTest {
         locationService.deleteLocation(1);
         verify(locationRepository).deleteById(1);
         verify(entityCache).remove(CACHE_KEY_PREFIX + "1");
-        verify(entityCache).remove(CACHE_KEY_ALL);
+        verify(invalidationBus).publish(List.of(CACHE_KEY_PREFIX + "1"), Set.of("location:1"));
+        verify(entityCache, never()).remove(CACHE_KEY_ALL);
     }
 
     @Test
@@ -189,20 +224,20 @@ class LocationServiceTest {
     @Test
     void bulkCreateLocationsSavesAndCaches() {
         List<LocationDto> dtos = List.of(locationDto);
-        List<LocationEntity> entities = List.of(mock(LocationEntity.class));
+        List<LocationEntity> entities = List.of(new LocationEntity());
         when(locationRepository.saveAll(anyList())).thenReturn(entities);
         List<LocationDto> result = locationService.bulkCreateLocations(dtos);
         assertNotNull(result);
         assertEquals(1, result.size());
         verify(locationRepository).saveAll(anyList());
-        verify(entityCache).put(CACHE_KEY_PREFIX + "0", locationDto);
-        verify(entityCache).remove(CACHE_KEY_ALL);
+        verify(entityCache).put(eq(CACHE_KEY_PREFIX + "1"), eq(locationDto), anyCollection());
+        verify(entityCache, never()).remove(CACHE_KEY_ALL);
     }
 
     @Test
     void bulkDeleteLocationsSuccessfullyDeletesAndClearsCache() {
         List<Integer> ids = List.of(1, 2);
-        List<LocationEntity> locations = List.of(mock(LocationEntity.class), mock(LocationEntity.class));
+        List<LocationEntity> locations = List.of(new LocationEntity(), new LocationEntity());
         when(locationRepository.findAllById(ids)).thenReturn(locations);
         when(locationRepository.saveAll(anyList())).thenReturn(locations);
         locationService.bulkDeleteLocations(ids);
@@ -211,6 +246,34 @@ class LocationServiceTest {
         verify(locationRepository).deleteAllById(ids);
         verify(entityCache).remove(CACHE_KEY_PREFIX + "1");
         verify(entityCache).remove(CACHE_KEY_PREFIX + "2");
-        verify(entityCache).remove(CACHE_KEY_ALL);
+        verify(entityCache, never()).remove(CACHE_KEY_ALL);
+    }
+
+    @Test
+    void getLocationsPageLoadsTheIdsAfterTheCursor() {
+        when(locationRepository.findIdsAfter(5, Limit.of(2))).thenReturn(List.of(6, 8));
+        when(locationRepository.findLinkRowsByIdIn(List.of(6, 8))).thenReturn(List.of(row(6, 1), row(8, null)));
+        List<LocationDto> result = locationService.getLocationsPage(5, 2);
+        assertEquals(List.of(6, 8), result.stream().map(LocationDto::getId).toList());
+        verify(locationRepository, never()).findAllLinkRows();
+    }
+
+    @Test
+    void streamAllLocationsFoldsCursorRowsIntoTheSink() {
+        doAnswer(invocation -> {
+            Consumer<LocationLinkRow> action = invocation.getArgument(0);
+            List.of(row(1, 1), row(1, 2), row(2, null)).forEach(action);
+            return null;
+        }).when(linkRowCursor).forEachLocationRow(any());
+        List<LocationDto> streamed = new ArrayList<>();
+        locationService.streamAllLocations(streamed::add);
+        assertEquals(2, streamed.size());
+        assertEquals(TEST_SUNRISE_SUNSET_IDS, streamed.get(0).getSunriseSunsetIds());
+        assertTrue(streamed.get(1).getSunriseSunsetIds().isEmpty());
+        verify(locationRepository, never()).findAllLinkRows();
+    }
+
+    private static LocationLinkRow row(int id, Integer sunriseSunsetId) {
+        return new LocationLinkRow(id, TEST_CITY, TEST_COUNTRY, sunriseSunsetId);
     }
-}
\ No newline at end of file
+}
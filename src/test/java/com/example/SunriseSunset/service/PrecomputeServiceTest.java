@@ -0,0 +1,197 @@
+package com.example.SunriseSunset.service;
+
+import com.example.SunriseSunset.dto.BulkItemResult;
+import com.example.SunriseSunset.dto.SunriseSunsetDto;
+import com.example.SunriseSunset.repository.LocationPoint;
+import com.example.SunriseSunset.repository.LocationRepository;
+import com.example.SunriseSunset.repository.PrecomputeWatermarkStore;
+import com.example.SunriseSunset.repository.PrecomputeWatermarkStore.Watermark;
+import com.example.SunriseSunset.repository.SunriseSunsetRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class PrecomputeServiceTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2024, 6, 21);
+    private static final LocalDate THROUGH = TODAY.plusDays(1);
+
+    @Mock
+    private LocationRepository locationRepository;
+
+    @Mock
+    private SunriseSunsetRepository sunriseSunsetRepository;
+
+    @Mock
+    private SunriseSunsetService sunriseSunsetService;
+
+    @Mock
+    private PrecomputeWatermarkStore watermarkStore;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private PrecomputeService precomputeService;
+    private boolean inTransaction;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation -> {
+            inTransaction = true;
+            try {
+                return invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null);
+            } finally {
+                inTransaction = false;
+            }
+        });
+        when(sunriseSunsetService.bulkCreateSunriseSunsets(anyList())).thenAnswer(invocation ->
+                invocation.<List<SunriseSunsetDto>>getArgument(0).stream()
+                        .map(dto -> BulkItemResult.success(0, dto))
+                        .toList());
+        Clock clock = Clock.fixed(TODAY.atTime(4, 0).toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+        precomputeService = new PrecomputeService(locationRepository, sunriseSunsetRepository, sunriseSunsetService,
+                watermarkStore, transactionTemplate, clock, 2, 2);
+    }
+
+    @Test
+    void missingDaysAreCreatedAtTheLatestCoordinatesBatchByBatch() {
+        when(watermarkStore.lock(PrecomputeService.WATERMARK))
+                .thenReturn(Optional.of(new Watermark(THROUGH, 0)), Optional.of(new Watermark(THROUGH, 0)),
+                        Optional.of(new Watermark(THROUGH, 2)), Optional.of(new Watermark(THROUGH, 2)),
+                        Optional.of(new Watermark(THROUGH, 3)));
+        when(locationRepository.findIdsAfter(eq(0), any(Limit.class))).thenReturn(List.of(1, 2));
+        when(locationRepository.findIdsAfter(eq(2), any(Limit.class))).thenReturn(List.of(3));
+        when(locationRepository.findIdsAfter(eq(3), any(Limit.class))).thenReturn(List.of());
+        // Locations 1 and 2 share their latest coordinates and 1 already has today; 3 has no entries at all.
+        when(sunriseSunsetRepository.findLatestPointsByLocationIdIn(List.of(1, 2))).thenReturn(List.of(
+                new LocationPoint(1, TODAY, 53.9, 27.56), new LocationPoint(2, TODAY.minusDays(30), 53.9, 27.56)));
+        when(sunriseSunsetRepository.findPointsByLocationIdInAndDateBetween(List.of(1, 2), TODAY, THROUGH))
+                .thenReturn(List.of(new LocationPoint(1, TODAY, 53.9, 27.56)));
+
+        precomputeService.precompute();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<SunriseSunsetDto>> created = ArgumentCaptor.forClass(List.class);
+        verify(sunriseSunsetService).bulkCreateSunriseSunsets(created.capture());
+        List<SunriseSunsetDto> dtos = created.getValue();
+        assertEquals(2, dtos.size());
+        assertEquals(THROUGH, dtos.get(0).getDate());
+        assertEquals(List.of(1, 2), dtos.get(0).getLocationIds());
+        assertEquals(53.9, dtos.get(0).getLatitude());
+        assertEquals(TODAY, dtos.get(1).getDate());
+        assertEquals(List.of(2), dtos.get(1).getLocationIds());
+
+        ArgumentCaptor<Watermark> saved = ArgumentCaptor.forClass(Watermark.class);
+        verify(watermarkStore, times(2)).save(eq(PrecomputeService.WATERMARK), saved.capture());
+        assertEquals(List.of(2, 3), saved.getAllValues().stream().map(watermark -> watermark.lastLocationId).toList());
+        verify(sunriseSunsetService).getSeries(List.of(1, 2));
+        verify(sunriseSunsetService).getSeries(List.of(3));
+    }
+
+    @Test
+    void lookupsRunWithNoTransactionOpen() {
+        batchOfTwoLocations(Optional.of(new Watermark(THROUGH, 0)), Optional.of(new Watermark(THROUGH, 0)),
+                Optional.of(new Watermark(THROUGH, 2)));
+        when(sunriseSunsetService.bulkCreateSunriseSunsets(anyList())).thenAnswer(invocation -> {
+            assertFalse(inTransaction);
+            return invocation.<List<SunriseSunsetDto>>getArgument(0).stream()
+                    .map(dto -> BulkItemResult.success(0, dto))
+                    .toList();
+        });
+
+        precomputeService.precompute();
+
+        verify(sunriseSunsetService).bulkCreateSunriseSunsets(anyList());
+    }
+
+    @Test
+    void theWatermarkStopsBeforeTheFirstLocationWithFailedLookups() {
+        batchOfTwoLocations(Optional.of(new Watermark(THROUGH, 0)));
+        when(sunriseSunsetService.bulkCreateSunriseSunsets(anyList())).thenAnswer(invocation -> {
+            List<SunriseSunsetDto> dtos = invocation.getArgument(0);
+            return List.of(BulkItemResult.success(0, dtos.get(0)), BulkItemResult.failure(1, "Upstream unavailable"));
+        });
+
+        precomputeService.precompute();
+
+        ArgumentCaptor<Watermark> saved = ArgumentCaptor.forClass(Watermark.class);
+        verify(watermarkStore).save(eq(PrecomputeService.WATERMARK), saved.capture());
+        assertEquals(1, saved.getValue().lastLocationId);
+        verify(locationRepository, times(1)).findIdsAfter(anyInt(), any(Limit.class));
+    }
+
+    @Test
+    void aWatermarkMovedByAnotherNodeDuringTheLookupsIsKept() {
+        batchOfTwoLocations(Optional.of(new Watermark(THROUGH, 0)), Optional.of(new Watermark(THROUGH, 2)));
+
+        precomputeService.precompute();
+
+        verify(sunriseSunsetService).bulkCreateSunriseSunsets(anyList());
+        verify(watermarkStore, never()).save(any(), any());
+    }
+
+    @Test
+    void aRestartResumesAfterTheWatermarkOfTheSameHorizon() {
+        when(watermarkStore.lock(PrecomputeService.WATERMARK))
+                .thenReturn(Optional.of(new Watermark(THROUGH, 40)));
+        when(locationRepository.findIdsAfter(anyInt(), any(Limit.class))).thenReturn(List.of());
+
+        precomputeService.precompute();
+
+        verify(watermarkStore).createIfMissing(PrecomputeService.WATERMARK, THROUGH);
+        verify(locationRepository).findIdsAfter(eq(40), any(Limit.class));
+        verify(watermarkStore, never()).save(any(), any());
+        verify(sunriseSunsetService, never()).bulkCreateSunriseSunsets(anyList());
+    }
+
+    @Test
+    void aNewHorizonStartsOverFromTheFirstLocation() {
+        when(watermarkStore.lock(PrecomputeService.WATERMARK))
+                .thenReturn(Optional.of(new Watermark(TODAY, 40)));
+        when(locationRepository.findIdsAfter(anyInt(), any(Limit.class))).thenReturn(List.of());
+
+        precomputeService.precompute();
+
+        verify(locationRepository).findIdsAfter(eq(0), any(Limit.class));
+        verify(watermarkStore).save(eq(PrecomputeService.WATERMARK), any(Watermark.class));
+    }
+
+    @Test
+    void nothingRunsWhileAnotherNodeHoldsTheWatermark() {
+        when(watermarkStore.lock(PrecomputeService.WATERMARK)).thenReturn(Optional.empty());
+
+        precomputeService.precompute();
+
+        verify(locationRepository, never()).findIdsAfter(anyInt(), any(Limit.class));
+        verify(sunriseSunsetService, never()).getSeries(anyList());
+    }
+
+    /**Locations 1 and 2 at different coordinates, each missing tomorrow only, and then no more locations.*/
+    @SafeVarargs
+    private void batchOfTwoLocations(Optional<Watermark> watermark, Optional<Watermark>... later) {
+        when(watermarkStore.lock(PrecomputeService.WATERMARK)).thenReturn(watermark, later);
+        when(locationRepository.findIdsAfter(eq(0), any(Limit.class))).thenReturn(List.of(1, 2));
+        when(locationRepository.findIdsAfter(eq(2), any(Limit.class))).thenReturn(List.of());
+        when(sunriseSunsetRepository.findLatestPointsByLocationIdIn(List.of(1, 2))).thenReturn(List.of(
+                new LocationPoint(1, TODAY, 53.9, 27.56), new LocationPoint(2, TODAY, 52.1, 23.7)));
+        when(sunriseSunsetRepository.findPointsByLocationIdInAndDateBetween(List.of(1, 2), TODAY, THROUGH))
+                .thenReturn(List.of(new LocationPoint(1, TODAY, 53.9, 27.56), new LocationPoint(2, TODAY, 52.1, 23.7)));
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.SunriseSunset.service;
+
+import com.example.SunriseSunset.dto.SunriseSunsetModel;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the computed times against almanac sunrise and sunset tables, rounded to the minute and in UTC. They
+ * are not responses recorded from api.sunrise-sunset.org. The tolerance allows for the rounding and for small
+ * differences between solar models. A null reference time marks a day on which the sun does not rise or set.
+ */
+class SolarSunTimesProviderTest {
+
+    private static final Duration TOLERANCE = Duration.ofMinutes(2);
+
+    private final SolarSunTimesProvider provider = new SolarSunTimesProvider();
+
+    @Test
+    void matchesAlmanacReferenceTimes() throws IOException {
+        JsonNode references;
+        try (InputStream in = getClass().getResourceAsStream("/sun-times/almanac-reference-times.json")) {
+            references = new ObjectMapper().readTree(in);
+        }
+        assertTrue(references.size() > 0);
+        for (JsonNode reference : references) {
+            LocalDate date = LocalDate.parse(reference.get("date").asText());
+            SunriseSunsetModel actual = provider.getSunTimes(reference.get("lat").asDouble(),
+                    reference.get("lng").asDouble(), date);
+            String where = reference.get("lat") + "," + reference.get("lng") + " on " + date;
+            assertEquals("OK", actual.getStatus());
+            assertClose(reference.get("sunrise"), actual.getResults().getSunrise(), where);
+            assertClose(reference.get("sunset"), actual.getResults().getSunset(), where);
+        }
+    }
+
+    @Test
+    void polarNightAndPolarDayUseTheApiPlaceholder() {
+        SunriseSunsetModel polarNight = provider.getSunTimes(78.22, 15.65, LocalDate.of(2024, 1, 1));
+        SunriseSunsetModel polarDay = provider.getSunTimes(-77.85, 166.67, LocalDate.of(2024, 1, 1));
+        assertEquals(SunTimesProvider.NO_EVENT, polarNight.getResults().getSunrise());
+        assertEquals(SunTimesProvider.NO_EVENT, polarNight.getResults().getSunset());
+        assertEquals(SunTimesProvider.NO_EVENT, polarDay.getResults().getSunrise());
+        assertEquals(SunTimesProvider.NO_EVENT, polarDay.getResults().getSunset());
+    }
+
+    @Test
+    void outputParsesLikeTheApiResponse() {
+        SunriseSunsetModel model = provider.getSunTimes(53.9, 27.5667, LocalDate.of(2024, 6, 21));
+        OffsetDateTime sunrise = OffsetDateTime.parse(model.getResults().getSunrise());
+        OffsetDateTime sunset = OffsetDateTime.parse(model.getResults().getSunset());
+        assertTrue(model.getResults().getSunrise().endsWith("+00:00"));
+        assertTrue(sunrise.isBefore(sunset));
+    }
+
+    private static void assertClose(JsonNode expected, String actual, String where) {
+        if (expected.isNull()) {
+            assertEquals(SunTimesProvider.NO_EVENT, actual, "Expected no event for " + where);
+            return;
+        }
+        Duration difference = Duration.between(OffsetDateTime.parse(expected.asText()), OffsetDateTime.parse(actual))
+                .abs();
+        assertTrue(difference.compareTo(TOLERANCE) <= 0,
+                "Expected " + expected.asText() + " but computed " + actual + " for " + where);
+    }
+}
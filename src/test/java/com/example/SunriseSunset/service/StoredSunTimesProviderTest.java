@@ -0,0 +1,112 @@
+package com.example.SunriseSunset.service;
+
+import com.example.SunriseSunset.dto.Results;
+import com.example.SunriseSunset.dto.SunriseSunsetModel;
+import com.example.SunriseSunset.repository.SunTimesStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+import java.time.LocalDate;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class StoredSunTimesProviderTest {
+
+    private static final LocalDate TEST_DATE = LocalDate.of(2024, 6, 21);
+    private static final long MINSK_LAT_MICROS = 53_900_000;
+    private static final long MINSK_LNG_MICROS = 27_560_000;
+
+    @Mock
+    private SunTimesProvider upstream;
+
+    @Mock
+    private SunTimesStore store;
+
+    private SimpleMeterRegistry registry;
+    private StoredSunTimesProvider provider;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        registry = new SimpleMeterRegistry();
+        provider = new StoredSunTimesProvider(upstream, store, 100, 0.01, registry);
+        when(store.find(anyLong(), anyLong(), any())).thenReturn(Optional.empty());
+        when(upstream.getSunTimes(anyDouble(), anyDouble(), any())).thenReturn(model("OK"));
+    }
+
+    @Test
+    void nearbyCoordinatesShareOneUpstreamCallAtTheCellCentre() {
+        provider.getSunTimes(53.9012, 27.5598, TEST_DATE);
+        provider.getSunTimes(53.8996, 27.5641, TEST_DATE);
+
+        verify(upstream, times(1)).getSunTimes(53.9, 27.56, TEST_DATE);
+        verify(store).save(eq(MINSK_LAT_MICROS), eq(MINSK_LNG_MICROS), eq(TEST_DATE), any());
+        assertEquals(1.0, lookups("memory"));
+        assertEquals(1.0, lookups("upstream"));
+    }
+
+    @Test
+    void storedResponseIsServedWithoutCallingUpstream() {
+        when(store.find(MINSK_LAT_MICROS, MINSK_LNG_MICROS, TEST_DATE)).thenReturn(Optional.of(model("OK")));
+
+        SunriseSunsetModel result = provider.getSunTimes(53.9, 27.56, TEST_DATE);
+
+        assertEquals("2024-06-21T01:39:45+00:00", result.getResults().getSunrise());
+        verifyNoInteractions(upstream);
+        assertEquals(1.0, lookups("store"));
+    }
+
+    @Test
+    void otherDatesAreLookedUpSeparately() {
+        provider.getSunTimes(53.9, 27.56, TEST_DATE);
+        provider.getSunTimes(53.9, 27.56, TEST_DATE.plusDays(1));
+
+        verify(upstream).getSunTimes(53.9, 27.56, TEST_DATE);
+        verify(upstream).getSunTimes(53.9, 27.56, TEST_DATE.plusDays(1));
+    }
+
+    @Test
+    void failedResponsesAreNeitherStoredNorRemembered() {
+        when(upstream.getSunTimes(anyDouble(), anyDouble(), any())).thenReturn(model("INVALID_REQUEST"));
+
+        provider.getSunTimes(53.9, 27.56, TEST_DATE);
+        provider.getSunTimes(53.9, 27.56, TEST_DATE);
+
+        verify(upstream, times(2)).getSunTimes(53.9, 27.56, TEST_DATE);
+        verify(store, never()).save(anyLong(), anyLong(), any(), any());
+    }
+
+    @Test
+    void unavailableStoreFallsBackToUpstream() {
+        when(store.find(anyLong(), anyLong(), any())).thenThrow(new DataAccessResourceFailureException("down"));
+        doThrow(new DataAccessResourceFailureException("down")).when(store).save(anyLong(), anyLong(), any(), any());
+
+        SunriseSunsetModel result = provider.getSunTimes(53.9, 27.56, TEST_DATE);
+
+        assertEquals("OK", result.getStatus());
+        assertEquals(1.0, lookups("upstream"));
+    }
+
+    private double lookups(String tier) {
+        return registry.get("sun.store.lookups").tag("tier", tier).counter().count();
+    }
+
+    private static SunriseSunsetModel model(String status) {
+        Results results = new Results();
+        results.setSunrise("2024-06-21T01:39:45+00:00");
+        results.setSunset("2024-06-21T16:01:02+00:00");
+        SunriseSunsetModel model = new SunriseSunsetModel();
+        model.setResults(results);
+        model.setStatus(status);
+        return model;
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.SunriseSunset.service;
+
+import com.example.SunriseSunset.cache.CacheTags;
+import com.example.SunriseSunset.cache.InvalidationBus;
+import com.example.SunriseSunset.dto.SunriseSunsetDto;
+import com.example.SunriseSunset.repository.SunriseSunsetPoint;
+import com.example.SunriseSunset.repository.SunriseSunsetRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SunTimesSpatialIndexTest {
+
+    private static final LocalDate DATE = LocalDate.of(2024, 6, 21);
+
+    @Mock
+    private SunriseSunsetRepository sunriseSunsetRepository;
+
+    @Mock
+    private InvalidationBus invalidationBus;
+
+    private SunTimesSpatialIndex spatialIndex;
+    private InvalidationBus.Listener remote;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(sunriseSunsetRepository.findAllPoints()).thenReturn(List.of(
+                new SunriseSunsetPoint(1, 53.9, 27.56, DATE),
+                new SunriseSunsetPoint(2, 52.1, 23.7, DATE.plusDays(1))));
+        spatialIndex = new SunTimesSpatialIndex(sunriseSunsetRepository, invalidationBus, 1.0);
+        ArgumentCaptor<InvalidationBus.Listener> listener = ArgumentCaptor.forClass(InvalidationBus.Listener.class);
+        verify(invalidationBus).subscribe(listener.capture());
+        remote = listener.getValue();
+    }
+
+    @Test
+    void indexIsLoadedOnceOnFirstQuery() {
+        assertArrayEquals(new int[] {1, 2}, spatialIndex.nearest(53.8, 27.5, null, 5));
+        assertArrayEquals(new int[] {2}, spatialIndex.within(50, 20, 53, 25, DATE.plusDays(1), 5));
+        verify(sunriseSunsetRepository, times(1)).findAllPoints();
+    }
+
+    @Test
+    void localWritesAreAppliedWithoutReloading() {
+        spatialIndex.nearest(0, 0, null, 1);
+        spatialIndex.upsert(new SunriseSunsetDto(3, DATE, 53.95, 27.6, null, null, List.of()));
+        spatialIndex.remove(1);
+        assertArrayEquals(new int[] {3, 2}, spatialIndex.nearest(53.9, 27.56, null, 5));
+        verify(sunriseSunsetRepository, times(1)).findAllPoints();
+    }
+
+    @Test
+    void entriesNamedByOtherNodesAreReadAgain() {
+        spatialIndex.nearest(0, 0, null, 1);
+        when(sunriseSunsetRepository.findPointsByIdIn(any()))
+                .thenReturn(List.of(new SunriseSunsetPoint(2, -33.9, 151.2, DATE)));
+        remote.onInvalidation(Set.of(), Set.of(CacheTags.sunriseSunset(1), CacheTags.sunriseSunset(2),
+                CacheTags.location(7)));
+
+        assertArrayEquals(new int[] {2}, spatialIndex.nearest(-33, 151, null, 5));
+        verify(sunriseSunsetRepository).findPointsByIdIn(Set.of(1, 2));
+        verify(sunriseSunsetRepository, times(1)).findAllPoints();
+    }
+
+    @Test
+    void droppingTheListOfAllEntriesReloadsTheIndex() {
+        spatialIndex.nearest(0, 0, null, 1);
+        remote.onInvalidation(Set.of(SunriseSunsetService.CACHE_KEY_ALL), Set.of());
+        spatialIndex.nearest(0, 0, null, 1);
+        remote.onMessagesLost();
+        spatialIndex.nearest(0, 0, null, 1);
+        verify(sunriseSunsetRepository, times(3)).findAllPoints();
+    }
+}
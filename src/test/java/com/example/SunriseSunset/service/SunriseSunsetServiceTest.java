@@ -1,23 +1,43 @@
 package com.example.SunriseSunset.service;
 
+import com.example.SunriseSunset.cache.CacheTags;
+import com.example.SunriseSunset.cache.EntityCache;
+import com.example.SunriseSunset.cache.InvalidationBus;
+import com.example.SunriseSunset.dto.BulkItemResult;
 import com.example.SunriseSunset.dto.SunriseSunsetDto;
 import com.example.SunriseSunset.dto.Results;
 import com.example.SunriseSunset.model.LocationEntity;
 import com.example.SunriseSunset.model.SunriseSunsetEntity;
 import com.example.SunriseSunset.dto.SunriseSunsetModel;
+import com.example.SunriseSunset.repository.LinkRowCursor;
 import com.example.SunriseSunset.repository.LocationRepository;
+import com.example.SunriseSunset.repository.SunriseSunsetLinkRow;
+import com.example.SunriseSunset.repository.SunriseSunsetPoint;
 import com.example.SunriseSunset.repository.SunriseSunsetRepository;
+import com.example.SunriseSunset.repository.SunriseSunsetUpsertRepository;
+import com.example.SunriseSunset.timeseries.SunTimesSeries;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
-import org.springframework.web.client.RestTemplate;
+import org.mockito.Spy;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import java.time.LocalDate;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -40,25 +60,41 @@ class SunriseSunsetServiceTest {
     private static final String TEST_LOCATION_NAME = "TestCity";
 
     @Mock
-    private RestTemplate restTemplate;
+    private SunTimesProvider sunTimesProvider;
 
     @Mock
     private SunriseSunsetRepository sunriseSunsetRepository;
 
+    @Mock
+    private SunriseSunsetUpsertRepository upsertRepository;
+
     @Mock
     private LocationRepository locationRepository;
 
     @Mock
-    private Map<String, Object> entityCache;
+    private LinkRowCursor linkRowCursor;
 
     @Mock
-    private SunriseSunsetDto sunriseSunsetDto;
+    private SunTimesSpatialIndex spatialIndex;
+
+    @Spy
+    private EntityCache entityCache = new EntityCache(1000, EntityCache.collectionWeigher());
 
     @Mock
-    private SunriseSunsetEntity sunriseSunsetEntity;
+    private InvalidationBus invalidationBus;
 
     @Mock
-    private LocationEntity locationEntity;
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private Executor sunTimesExecutor;
+
+    @Mock
+    private SunriseSunsetDto sunriseSunsetDto;
+
+    private final SunriseSunsetEntity sunriseSunsetEntity = new SunriseSunsetEntity();
+
+    private final LocationEntity locationEntity = new LocationEntity();
 
     @Mock
     private SunriseSunsetModel sunriseSunsetModel;
@@ -66,13 +102,15 @@ class SunriseSunsetServiceTest {
     @Mock
     private Results results;
 
+    @Spy
     @InjectMocks
     private SunriseSunsetService sunriseSunsetService;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
-        when(sunriseSunsetEntity.id).thenReturn(1);
+        sunriseSunsetEntity.id = 1;
+        when(sunriseSunsetDto.getId()).thenReturn(1);
         when(sunriseSunsetDto.getLatitude()).thenReturn(TEST_LATITUDE);
         when(sunriseSunsetDto.getLongitude()).thenReturn(TEST_LONGITUDE);
         when(sunriseSunsetDto.getDate()).thenReturn(TEST_DATE);
@@ -80,106 +118,156 @@ class SunriseSunsetServiceTest {
         when(sunriseSunsetModel.getResults()).thenReturn(results);
         when(results.getSunrise()).thenReturn(TEST_SUNRISE);
         when(results.getSunset()).thenReturn(TEST_SUNSET);
-        when(restTemplate.getForObject(anyString(), eq(SunriseSunsetModel.class))).thenReturn(sunriseSunsetModel);
+        when(sunTimesProvider.getSunTimes(anyDouble(), anyDouble(), any(LocalDate.class))).thenReturn(sunriseSunsetModel);
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(sunTimesExecutor).execute(any(Runnable.class));
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
         when(sunriseSunsetRepository.save(any(SunriseSunsetEntity.class))).thenAnswer(invocation -> {
             SunriseSunsetEntity entity = invocation.getArgument(0);
             entity.id = 1;
             return entity;
         });
-        when(sunriseSunsetService.convertToDTO(any(SunriseSunsetEntity.class))).thenReturn(sunriseSunsetDto);
+        doReturn(sunriseSunsetDto).when(sunriseSunsetService).convertToDTO(any(SunriseSunsetEntity.class));
     }
 
     @Test
     void createSunriseSunsetWithLocationIdsSavesAndCaches() {
-        List<LocationEntity> locations = List.of(mock(LocationEntity.class), mock(LocationEntity.class));
-        when(locationRepository.findAllById(anyList())).thenReturn(locations);
+        LocationEntity location = new LocationEntity();
+        location.id = 1;
+        location.name = TEST_LOCATION_NAME;
+        when(locationRepository.findAllById(anyCollection())).thenReturn(List.of(location));
+        when(upsertRepository.upsert(any(SunriseSunsetDto.class))).thenReturn(1);
+        when(sunriseSunsetRepository.findLinkRowsByIdIn(List.of(1))).thenReturn(List.of(row(1, 1), row(1, 2)));
         SunriseSunsetDto result = sunriseSunsetService.createSunriseSunset(sunriseSunsetDto);
         assertNotNull(result);
         assertEquals(1, result.getId());
-        verify(restTemplate).getForObject(anyString(), eq(SunriseSunsetModel.class));
-        verify(sunriseSunsetRepository).save(any(SunriseSunsetEntity.class));
-        verify(entityCache).put(CACHE_KEY_PREFIX + "1", result);
-        verify(entityCache).remove(CACHE_KEY_ALL);
+        assertEquals(TEST_LOCATION_IDS, result.getLocationIds());
+        verify(sunTimesProvider).getSunTimes(anyDouble(), anyDouble(), any(LocalDate.class));
+        ArgumentCaptor<SunriseSunsetDto> upserted = ArgumentCaptor.forClass(SunriseSunsetDto.class);
+        verify(upsertRepository).upsert(upserted.capture());
+        assertEquals(OffsetDateTime.parse(TEST_SUNRISE), upserted.getValue().getSunrise());
+        assertEquals(TEST_LOCATION_IDS, upserted.getValue().getLocationIds());
+        verify(entityCache).invalidateTags(argThat(tags ->
+                tags.contains(CacheTags.dateAndLocationName(TEST_DATE, TEST_LOCATION_NAME))));
+        verify(entityCache).put(eq(CACHE_KEY_PREFIX + "1"), eq(result), anyCollection());
+        verify(entityCache, never()).remove(CACHE_KEY_ALL);
     }
 
     @Test
     void createSunriseSunsetWithoutLocationIdsSavesAndCaches() {
         when(sunriseSunsetDto.getLocationIds()).thenReturn(null);
+        when(upsertRepository.upsert(any(SunriseSunsetDto.class))).thenReturn(1);
+        when(sunriseSunsetRepository.findLinkRowsByIdIn(List.of(1))).thenReturn(List.of(row(1, null)));
         SunriseSunsetDto result = sunriseSunsetService.createSunriseSunset(sunriseSunsetDto);
         assertNotNull(result);
         assertEquals(1, result.getId());
-        verify(restTemplate).getForObject(anyString(), eq(SunriseSunsetModel.class));
-        verify(sunriseSunsetRepository).save(any(SunriseSunsetEntity.class));
-        verify(entityCache).put(CACHE_KEY_PREFIX + "1", result);
-        verify(entityCache).remove(CACHE_KEY_ALL);
+        verify(sunTimesProvider).getSunTimes(anyDouble(), anyDouble(), any(LocalDate.class));
+        verify(upsertRepository).upsert(any(SunriseSunsetDto.class));
+        verify(entityCache).put(eq(CACHE_KEY_PREFIX + "1"), eq(result), anyCollection());
+        verify(entityCache, never()).remove(CACHE_KEY_ALL);
+    }
+
+    @Test
+    void createSunriseSunsetRepeatIsAnsweredFromTheNaturalKeyWithoutCallingUpstream() {
+        when(sunriseSunsetRepository.findIdByDateAndCoordinates(TEST_DATE, TEST_LATITUDE, TEST_LONGITUDE))
+                .thenReturn(Optional.of(1));
+        SunriseSunsetDto stored = new SunriseSunsetDto(1, TEST_DATE, TEST_LATITUDE, TEST_LONGITUDE, null, null,
+                List.of(2, 1, 3));
+        entityCache.put(CACHE_KEY_PREFIX + "1", stored);
+
+        assertSame(stored, sunriseSunsetService.createSunriseSunset(sunriseSunsetDto));
+        verify(sunTimesProvider, never()).getSunTimes(anyDouble(), anyDouble(), any(LocalDate.class));
+        verify(upsertRepository, never()).upsert(any(SunriseSunsetDto.class));
+        verify(upsertRepository, never()).linkAll(any());
+        verify(sunriseSunsetRepository, never()).findLinkRowsByIdIn(any());
+        verify(invalidationBus, never()).publish(any(), any());
+    }
+
+    @Test
+    void createSunriseSunsetOfAStoredKeyOnlyAddsTheMissingLinks() {
+        when(sunriseSunsetRepository.findIdByDateAndCoordinates(TEST_DATE, TEST_LATITUDE, TEST_LONGITUDE))
+                .thenReturn(Optional.of(1));
+        entityCache.put(CACHE_KEY_PREFIX + "1", new SunriseSunsetDto(1, TEST_DATE, TEST_LATITUDE, TEST_LONGITUDE,
+                null, null, List.of(1)));
+        when(upsertRepository.linkAll(Map.of(1, TEST_LOCATION_IDS))).thenReturn(1);
+        when(sunriseSunsetRepository.findLinkRowsByIdIn(List.of(1))).thenReturn(List.of(row(1, 1), row(1, 2)));
+
+        SunriseSunsetDto result = sunriseSunsetService.createSunriseSunset(sunriseSunsetDto);
+
+        assertEquals(TEST_LOCATION_IDS, result.getLocationIds());
+        verify(sunTimesProvider, never()).getSunTimes(anyDouble(), anyDouble(), any(LocalDate.class));
+        verify(upsertRepository, never()).upsert(any(SunriseSunsetDto.class));
+        verify(entityCache).put(eq(CACHE_KEY_PREFIX + "1"), eq(result), anyCollection());
     }
 
     @Test
     void getSunriseSunsetByIdCacheHitReturnsCached() {
-        when(entityCache.containsKey(CACHE_KEY_PREFIX + "1")).thenReturn(true);
-        when(entityCache.get(CACHE_KEY_PREFIX + "1")).thenReturn(sunriseSunsetDto);
+        entityCache.put(CACHE_KEY_PREFIX + "1", sunriseSunsetDto);
         SunriseSunsetDto result = sunriseSunsetService.getSunriseSunsetById(1);
         assertNotNull(result);
         assertEquals(TEST_LATITUDE, result.getLatitude());
-        verify(entityCache).containsKey(CACHE_KEY_PREFIX + "1");
         verify(entityCache).get(CACHE_KEY_PREFIX + "1");
-        verify(sunriseSunsetRepository, never()).findById(anyInt());
+        verify(sunriseSunsetRepository, never()).findLinkRowsByIdIn(any());
     }
 
     @Test
     void getSunriseSunsetByIdCacheMissReturnsAndCaches() {
-        when(sunriseSunsetRepository.findById(1)).thenReturn(Optional.of(sunriseSunsetEntity));
+        when(sunriseSunsetRepository.findLinkRowsByIdIn(List.of(1))).thenReturn(List.of(row(1, 1), row(1, 2)));
         SunriseSunsetDto result = sunriseSunsetService.getSunriseSunsetById(1);
         assertNotNull(result);
         assertEquals(TEST_LATITUDE, result.getLatitude());
-        verify(sunriseSunsetRepository).findById(1);
-        verify(entityCache).put(CACHE_KEY_PREFIX + "1", result);
+        assertEquals(TEST_LOCATION_IDS, result.getLocationIds());
+        verify(sunriseSunsetRepository).findLinkRowsByIdIn(List.of(1));
+        verify(sunriseSunsetRepository, never()).findById(anyInt());
+        assertSame(result, entityCache.get(CACHE_KEY_PREFIX + "1"));
     }
 
     @Test
     void getSunriseSunsetByIdNotFoundReturnsNull() {
-        when(sunriseSunsetRepository.findById(1)).thenReturn(Optional.empty());
+        when(sunriseSunsetRepository.findLinkRowsByIdIn(List.of(1))).thenReturn(List.of());
         SunriseSunsetDto result = sunriseSunsetService.getSunriseSunsetById(1);
         assertNull(result);
-        verify(sunriseSunsetRepository).findById(1);
+        verify(sunriseSunsetRepository).findLinkRowsByIdIn(List.of(1));
     }
 
     @Test
     void getSunriseSunsetsByIdsReturnsListAndCaches() {
         List<Integer> ids = List.of(1, 2);
-        List<SunriseSunsetEntity> entities = List.of(mock(SunriseSunsetEntity.class), mock(SunriseSunsetEntity.class));
-        when(sunriseSunsetRepository.findAllById(ids)).thenReturn(entities);
+        when(sunriseSunsetRepository.findLinkRowsByIdIn(ids)).thenReturn(List.of(row(1, 1), row(1, 2), row(2, null)));
         List<SunriseSunsetDto> result = sunriseSunsetService.getSunriseSunsetsByIds(ids);
         assertNotNull(result);
         assertEquals(2, result.size());
-        verify(sunriseSunsetRepository).findAllById(ids);
-        verify(entityCache).put(CACHE_KEY_PREFIX + "0", sunriseSunsetDto);
-        verify(entityCache).put(CACHE_KEY_PREFIX + "1", sunriseSunsetDto);
+        assertEquals(TEST_LOCATION_IDS, result.get(0).getLocationIds());
+        assertTrue(result.get(1).getLocationIds().isEmpty());
+        verify(sunriseSunsetRepository).findLinkRowsByIdIn(ids);
+        verify(entityCache).put(eq(CACHE_KEY_PREFIX + "1"), any(SunriseSunsetDto.class), anyCollection());
+        verify(entityCache).put(eq(CACHE_KEY_PREFIX + "2"), any(SunriseSunsetDto.class), anyCollection());
     }
 
     @Test
     void getAllSunriseSunsetsCacheHitReturnsCached() {
-        List<SunriseSunsetDto> cachedList = List.of(sunriseSunsetDto);
-        when(entityCache.containsKey(CACHE_KEY_ALL)).thenReturn(true);
-        when(entityCache.get(CACHE_KEY_ALL)).thenReturn(cachedList);
+        when(sunriseSunsetRepository.findAllLinkRows()).thenReturn(List.of(row(1, 1)));
+        sunriseSunsetService.getAllSunriseSunsets();
         List<SunriseSunsetDto> result = sunriseSunsetService.getAllSunriseSunsets();
         assertNotNull(result);
         assertEquals(1, result.size());
-        verify(entityCache).containsKey(CACHE_KEY_ALL);
-        verify(entityCache).get(CACHE_KEY_ALL);
-        verify(sunriseSunsetRepository, never()).findAll();
+        verify(sunriseSunsetRepository, times(1)).findAllLinkRows();
     }
 
     @Test
     void getAllSunriseSunsetsCacheMissReturnsAndCaches() {
-        List<SunriseSunsetEntity> entities = List.of(mock(SunriseSunsetEntity.class));
-        when(sunriseSunsetRepository.findAll()).thenReturn(entities);
+        when(sunriseSunsetRepository.findAllLinkRows()).thenReturn(List.of(row(1, 1), row(1, 2)));
         List<SunriseSunsetDto> result = sunriseSunsetService.getAllSunriseSunsets();
         assertNotNull(result);
         assertEquals(1, result.size());
-        verify(sunriseSunsetRepository).findAll();
-        verify(entityCache).put(CACHE_KEY_ALL, result);
-        verify(entityCache).put(CACHE_KEY_PREFIX + "0", sunriseSunsetDto);
+        assertEquals(TEST_LOCATION_IDS, result.get(0).getLocationIds());
+        verify(sunriseSunsetRepository).findAllLinkRows();
+        verify(sunriseSunsetRepository, never()).findAll();
+        assertThrows(UnsupportedOperationException.class, () -> result.add(sunriseSunsetDto));
+        verify(entityCache).put(eq(CACHE_KEY_PREFIX + "1"), any(SunriseSunsetDto.class), anyCollection());
     }
 
     @Test
@@ -189,10 +277,22 @@ class SunriseSunsetServiceTest {
         SunriseSunsetDto result = sunriseSunsetService.updateSunriseSunset(1, sunriseSunsetDto);
         assertNotNull(result);
         assertEquals(TEST_LATITUDE, result.getLatitude());
-        verify(restTemplate).getForObject(anyString(), eq(SunriseSunsetModel.class));
+        verify(sunTimesProvider).getSunTimes(anyDouble(), anyDouble(), any(LocalDate.class));
         verify(sunriseSunsetRepository).save(any(SunriseSunsetEntity.class));
-        verify(entityCache).put(CACHE_KEY_PREFIX + "1", result);
-        verify(entityCache).remove(CACHE_KEY_ALL);
+        verify(entityCache).put(eq(CACHE_KEY_PREFIX + "1"), eq(result), anyCollection());
+        verify(entityCache, never()).remove(CACHE_KEY_ALL);
+    }
+
+    @Test
+    void createSunriseSunsetUpdatesLoadedListWithoutReload() {
+        when(sunriseSunsetDto.getLocationIds()).thenReturn(null);
+        when(sunriseSunsetRepository.findAllLinkRows()).thenReturn(List.of());
+        when(upsertRepository.upsert(any(SunriseSunsetDto.class))).thenReturn(1);
+        when(sunriseSunsetRepository.findLinkRowsByIdIn(List.of(1))).thenReturn(List.of(row(1, null)));
+        assertTrue(sunriseSunsetService.getAllSunriseSunsets().isEmpty());
+        SunriseSunsetDto created = sunriseSunsetService.createSunriseSunset(sunriseSunsetDto);
+        assertEquals(List.of(created), sunriseSunsetService.getAllSunriseSunsets());
+        verify(sunriseSunsetRepository, times(1)).findAllLinkRows();
     }
 
     @Test
@@ -209,86 +309,272 @@ class SunriseSunsetServiceTest {
         sunriseSunsetService.deleteSunriseSunset(1);
         verify(sunriseSunsetRepository).deleteById(1);
         verify(entityCache).remove(CACHE_KEY_PREFIX + "1");
-        verify(entityCache).remove(CACHE_KEY_ALL);
+        verify(entityCache, never()).remove(CACHE_KEY_ALL);
     }
 
     @Test
     void getSunriseSunsetsByLocationIdCacheHitReturnsCached() {
-        List<SunriseSunsetDto> cachedList = List.of(sunriseSunsetDto);
-        when(entityCache.containsKey(CACHE_KEY_LOCATION + "1")).thenReturn(true);
-        when(entityCache.get(CACHE_KEY_LOCATION + "1")).thenReturn(cachedList);
+        entityCache.put(CACHE_KEY_LOCATION + "1", SunTimesSeries.builder()
+                .add(1, TEST_DATE, TEST_LATITUDE, TEST_LONGITUDE, null, null).link(1).build());
         List<SunriseSunsetDto> result = sunriseSunsetService.getSunriseSunsetsByLocationId(1);
         assertNotNull(result);
         assertEquals(1, result.size());
-        verify(entityCache).containsKey(CACHE_KEY_LOCATION + "1");
         verify(entityCache).get(CACHE_KEY_LOCATION + "1");
-        verify(sunriseSunsetRepository, never()).findByLocationId(anyInt());
+        verify(sunriseSunsetRepository, never()).findLinkRowsByLocationId(anyInt());
     }
 
     @Test
-    void getSunriseSunsetsByLocationIdCacheMissReturnsAndCaches() {
-        List<SunriseSunsetEntity> entities = List.of(mock(SunriseSunsetEntity.class));
-        when(sunriseSunsetRepository.findByLocationId(1)).thenReturn(entities);
+    void getSunriseSunsetsByLocationIdCacheMissCachesOneSeries() {
+        when(sunriseSunsetRepository.findLinkRowsByLocationId(1)).thenReturn(List.of(row(1, 1), row(1, 2)));
         List<SunriseSunsetDto> result = sunriseSunsetService.getSunriseSunsetsByLocationId(1);
         assertNotNull(result);
         assertEquals(1, result.size());
-        verify(sunriseSunsetRepository).findByLocationId(1);
-        verify(entityCache).put(CACHE_KEY_LOCATION + "1", result);
-        verify(entityCache).put(CACHE_KEY_PREFIX + "0", sunriseSunsetDto);
+        assertEquals(TEST_LOCATION_IDS, result.get(0).getLocationIds());
+        assertEquals(OffsetDateTime.parse(TEST_SUNRISE), result.get(0).getSunrise());
+        verify(sunriseSunsetRepository).findLinkRowsByLocationId(1);
+        assertInstanceOf(SunTimesSeries.class, entityCache.get(CACHE_KEY_LOCATION + "1"));
+        verify(entityCache, never()).put(eq(CACHE_KEY_PREFIX + "1"), any(SunriseSunsetDto.class), anyCollection());
+    }
+
+    @Test
+    void getSunriseSunsetsByLocationIdBetweenDatesReadsTheCachedSeries() {
+        when(sunriseSunsetRepository.findLinkRowsByLocationId(1)).thenReturn(List.of(row(1, 1),
+                new SunriseSunsetLinkRow(2, TEST_DATE.plusDays(1), TEST_LATITUDE, TEST_LONGITUDE, null, null, 1)));
+        assertEquals(2, sunriseSunsetService.getSunriseSunsetsByLocationId(1, null, null).size());
+        List<SunriseSunsetDto> result = sunriseSunsetService.getSunriseSunsetsByLocationId(1, TEST_DATE.plusDays(1), null);
+        assertEquals(1, result.size());
+        assertEquals(2, result.get(0).getId());
+        verify(sunriseSunsetRepository).findLinkRowsByLocationId(1);
+    }
+
+    @Test
+    void getSeriesOfSeveralLocationsReadsOnlyTheMissingOnesInOneQuery() {
+        SunTimesSeries cached = SunTimesSeries.builder().add(9, TEST_DATE, TEST_LATITUDE, TEST_LONGITUDE, null, null)
+                .link(3).build();
+        entityCache.put(CACHE_KEY_LOCATION + "3", cached);
+        when(sunriseSunsetRepository.findLinkRowsByLocationIdIn(anyCollection()))
+                .thenReturn(List.of(row(1, 1), row(1, 2), row(4, 2)));
+
+        Map<Integer, SunTimesSeries> result = sunriseSunsetService.getSeries(List.of(3, 2, 1));
+
+        assertEquals(List.of(3, 2, 1), List.copyOf(result.keySet()));
+        assertSame(cached, result.get(3));
+        assertEquals(List.of(1, 4), result.get(2).ids().boxed().toList());
+        assertEquals(List.of(1), result.get(1).ids().boxed().toList());
+        assertEquals(TEST_LOCATION_IDS, result.get(1).all().get(0).getLocationIds());
+        assertSame(result.get(2), entityCache.get(CACHE_KEY_LOCATION + "2"));
+        verify(sunriseSunsetRepository).findLinkRowsByLocationIdIn(Set.of(1, 2));
     }
 
     @Test
     void getSunriseSunsetsByDateAndLocationNameCacheHitReturnsCached() {
         List<SunriseSunsetDto> cachedList = List.of(sunriseSunsetDto);
-        when(entityCache.containsKey(CACHE_KEY_DATE + TEST_DATE + "_Location_" + TEST_LOCATION_NAME)).thenReturn(true);
-        when(entityCache.get(CACHE_KEY_DATE + TEST_DATE + "_Location_" + TEST_LOCATION_NAME)).thenReturn(cachedList);
+        entityCache.put(CACHE_KEY_DATE + TEST_DATE + "_Location_" + TEST_LOCATION_NAME, cachedList);
         List<SunriseSunsetDto> result = sunriseSunsetService.getSunriseSunsetsByDateAndLocationName(TEST_DATE, TEST_LOCATION_NAME);
         assertNotNull(result);
         assertEquals(1, result.size());
-        verify(entityCache).containsKey(CACHE_KEY_DATE + TEST_DATE + "_Location_" + TEST_LOCATION_NAME);
         verify(entityCache).get(CACHE_KEY_DATE + TEST_DATE + "_Location_" + TEST_LOCATION_NAME);
-        verify(sunriseSunsetRepository, never()).findByDateAndLocationName(any(), anyString());
+        verify(sunriseSunsetRepository, never()).findLinkRowsByDateAndLocationName(any(), anyString());
     }
 
     @Test
     void getSunriseSunsetsByDateAndLocationNameCacheMissReturnsAndCaches() {
-        List<SunriseSunsetEntity> entities = List.of(mock(SunriseSunsetEntity.class));
-        when(sunriseSunsetRepository.findByDateAndLocationName(TEST_DATE, TEST_LOCATION_NAME)).thenReturn(entities);
+        when(sunriseSunsetRepository.findLinkRowsByDateAndLocationName(TEST_DATE, TEST_LOCATION_NAME))
+                .thenReturn(List.of(row(1, 1)));
         List<SunriseSunsetDto> result = sunriseSunsetService.getSunriseSunsetsByDateAndLocationName(TEST_DATE, TEST_LOCATION_NAME);
         assertNotNull(result);
         assertEquals(1, result.size());
-        verify(sunriseSunsetRepository).findByDateAndLocationName(TEST_DATE, TEST_LOCATION_NAME);
-        verify(entityCache).put(CACHE_KEY_DATE + TEST_DATE + "_Location_" + TEST_LOCATION_NAME, result);
-        verify(entityCache).put(CACHE_KEY_PREFIX + "0", sunriseSunsetDto);
+        verify(sunriseSunsetRepository).findLinkRowsByDateAndLocationName(TEST_DATE, TEST_LOCATION_NAME);
+        assertSame(result, entityCache.get(CACHE_KEY_DATE + TEST_DATE + "_Location_" + TEST_LOCATION_NAME));
+        verify(entityCache).put(eq(CACHE_KEY_PREFIX + "1"), any(SunriseSunsetDto.class), anyCollection());
     }
 
     @Test
     void bulkCreateSunriseSunsetsSavesAndCaches() {
         List<SunriseSunsetDto> dtos = List.of(sunriseSunsetDto);
-        List<LocationEntity> locations = List.of(mock(LocationEntity.class));
-        when(locationRepository.findAllById(anyList())).thenReturn(locations);
-        List<SunriseSunsetEntity> entities = List.of(mock(SunriseSunsetEntity.class));
-        when(sunriseSunsetRepository.saveAll(anyList())).thenReturn(entities);
-        List<SunriseSunsetDto> result = sunriseSunsetService.bulkCreateSunriseSunsets(dtos);
+        when(upsertRepository.upsertAll(anyList())).thenReturn(List.of(1));
+        when(sunriseSunsetRepository.findLinkRowsByIdIn(List.of(1))).thenReturn(List.of(row(1, 1), row(1, 2)));
+        List<BulkItemResult<SunriseSunsetDto>> result = sunriseSunsetService.bulkCreateSunriseSunsets(dtos);
         assertNotNull(result);
         assertEquals(1, result.size());
-        verify(restTemplate).getForObject(anyString(), eq(SunriseSunsetModel.class));
-        verify(sunriseSunsetRepository).saveAll(anyList());
-        verify(entityCache).put(CACHE_KEY_PREFIX + "0", sunriseSunsetDto);
-        verify(entityCache).remove(CACHE_KEY_ALL);
+        assertTrue(result.get(0).isSuccess());
+        verify(sunTimesProvider).getSunTimes(anyDouble(), anyDouble(), any(LocalDate.class));
+        verify(upsertRepository).upsertAll(anyList());
+        verify(entityCache).put(eq(CACHE_KEY_PREFIX + "1"), eq(result.get(0).getItem()), anyCollection());
+        verify(entityCache, never()).remove(CACHE_KEY_ALL);
+    }
+
+    @Test
+    void bulkCreateSunriseSunsetsReportsFailuresPerItemInInputOrder() {
+        LocalDate badDate = TEST_DATE.plusDays(1);
+        when(sunTimesProvider.getSunTimes(anyDouble(), anyDouble(), eq(badDate)))
+                .thenThrow(new RuntimeException("Failed to fetch sunrise/sunset data: timeout"));
+        when(upsertRepository.upsertAll(anyList())).thenAnswer(invocation -> {
+            List<SunriseSunsetDto> entries = invocation.getArgument(0);
+            List<Integer> ids = new ArrayList<>();
+            for (int i = 0; i < entries.size(); i++) {
+                ids.add(10 + i);
+            }
+            return ids;
+        });
+        when(sunriseSunsetRepository.findLinkRowsByIdIn(List.of(10))).thenReturn(List.of(row(10, 1), row(10, 2)));
+        List<SunriseSunsetDto> dtos = List.of(
+                new SunriseSunsetDto(null, TEST_DATE, TEST_LATITUDE, TEST_LONGITUDE, null, null, List.of(1)),
+                new SunriseSunsetDto(null, badDate, TEST_LATITUDE, TEST_LONGITUDE, null, null, List.of(1)),
+                new SunriseSunsetDto(null, TEST_DATE, TEST_LATITUDE, TEST_LONGITUDE, null, null, List.of(1, 2)));
+
+        List<BulkItemResult<SunriseSunsetDto>> result = sunriseSunsetService.bulkCreateSunriseSunsets(dtos);
+
+        assertEquals(3, result.size());
+        assertTrue(result.get(0).isSuccess());
+        assertFalse(result.get(1).isSuccess());
+        assertEquals(1, result.get(1).getIndex());
+        assertTrue(result.get(1).getError().contains("timeout"));
+        assertTrue(result.get(2).isSuccess());
+        assertEquals(2, result.get(2).getIndex());
+        assertEquals(10, result.get(0).getItem().getId());
+        assertEquals(10, result.get(2).getItem().getId());
+        // Items 0 and 2 share a natural key, so they share one lookup and one entry with the links of both.
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<SunriseSunsetDto>> upserted = ArgumentCaptor.forClass(List.class);
+        verify(upsertRepository).upsertAll(upserted.capture());
+        assertEquals(1, upserted.getValue().size());
+        assertEquals(List.of(1, 2), upserted.getValue().get(0).getLocationIds());
+        verify(sunTimesExecutor, times(2)).execute(any(Runnable.class));
+    }
+
+    @Test
+    void bulkCreateSunriseSunsetsLinksStoredKeysWithoutLookingThemUp() {
+        when(sunriseSunsetRepository.findPointsByDateInAndCoordinatesIn(any(), any(), any())).thenReturn(List.of(
+                new SunriseSunsetPoint(5, TEST_LATITUDE, TEST_LONGITUDE, TEST_DATE),
+                new SunriseSunsetPoint(6, TEST_LATITUDE, TEST_LATITUDE, TEST_DATE)));
+        entityCache.put(CACHE_KEY_PREFIX + "5", new SunriseSunsetDto(5, TEST_DATE, TEST_LATITUDE, TEST_LONGITUDE,
+                null, null, List.of()));
+        when(sunriseSunsetRepository.findLinkRowsByIdIn(List.of(5))).thenReturn(List.of(row(5, 1)));
+        List<SunriseSunsetDto> dtos = List.of(
+                new SunriseSunsetDto(null, TEST_DATE, TEST_LATITUDE, TEST_LONGITUDE, null, null, List.of(1)));
+
+        List<BulkItemResult<SunriseSunsetDto>> result = sunriseSunsetService.bulkCreateSunriseSunsets(dtos);
+
+        assertEquals(5, result.get(0).getItem().getId());
+        assertEquals(List.of(1), result.get(0).getItem().getLocationIds());
+        verify(upsertRepository).linkAll(Map.of(5, List.of(1)));
+        verify(upsertRepository).upsertAll(List.of());
+        verify(sunTimesProvider, never()).getSunTimes(anyDouble(), anyDouble(), any(LocalDate.class));
+    }
+
+    @Test
+    void bulkCreateLooksUpBeforeItsTransactionAndCachesOnlyOnceItCommits() {
+        when(upsertRepository.upsertAll(anyList())).thenReturn(List.of(1));
+        when(sunriseSunsetRepository.findLinkRowsByIdIn(List.of(1))).thenReturn(List.of(row(1, 1), row(1, 2)));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            sunriseSunsetService.bulkCreateSunriseSunsets(List.of(sunriseSunsetDto));
+
+            InOrder order = inOrder(sunTimesProvider, transactionTemplate, upsertRepository);
+            order.verify(sunTimesProvider).getSunTimes(anyDouble(), anyDouble(), any(LocalDate.class));
+            order.verify(transactionTemplate).execute(any());
+            order.verify(upsertRepository).upsertAll(anyList());
+            assertNull(entityCache.get(CACHE_KEY_PREFIX + "1"));
+            verify(invalidationBus, never()).publish(any(), any());
+            verify(spatialIndex, never()).upsertAll(any());
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+            assertInstanceOf(SunriseSunsetDto.class, entityCache.get(CACHE_KEY_PREFIX + "1"));
+            verify(invalidationBus).publish(any(), any());
+            verify(spatialIndex).upsertAll(anyList());
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void writeSunriseSunsetsStoresEntriesSharingAKeyOnceWithAllTheirLinks() {
+        OffsetDateTime sunrise = OffsetDateTime.parse(TEST_SUNRISE);
+        OffsetDateTime sunset = OffsetDateTime.parse(TEST_SUNSET);
+        when(upsertRepository.upsertAll(anyList())).thenReturn(List.of(1));
+        when(sunriseSunsetRepository.findLinkRowsByIdIn(List.of(1))).thenReturn(List.of(row(1, 1), row(1, 2)));
+
+        List<SunriseSunsetDto> stored = sunriseSunsetService.writeSunriseSunsets(List.of(
+                new SunriseSunsetDto(null, TEST_DATE, TEST_LATITUDE, TEST_LONGITUDE, sunrise, sunset, List.of(1)),
+                new SunriseSunsetDto(null, TEST_DATE, TEST_LATITUDE, TEST_LONGITUDE, sunrise, sunset, List.of(2))));
+
+        assertEquals(2, stored.size());
+        assertSame(stored.get(0), stored.get(1));
+        assertEquals(TEST_LOCATION_IDS, stored.get(0).getLocationIds());
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<SunriseSunsetDto>> upserted = ArgumentCaptor.forClass(List.class);
+        verify(upsertRepository).upsertAll(upserted.capture());
+        assertEquals(1, upserted.getValue().size());
+        assertEquals(TEST_LOCATION_IDS, upserted.getValue().get(0).getLocationIds());
+        verify(sunTimesProvider, never()).getSunTimes(anyDouble(), anyDouble(), any(LocalDate.class));
     }
 
     @Test
     void bulkDeleteSunriseSunsetsSuccessfullyDeletesAndClearsCache() {
+        // The service has no bulk delete for entries, so a bulk delete is one deleteSunriseSunset per id.
         List<Integer> ids = List.of(1, 2);
-        List<SunriseSunsetEntity> entities = List.of(mock(SunriseSunsetEntity.class), mock(SunriseSunsetEntity.class));
-        when(sunriseSunsetRepository.findAllById(ids)).thenReturn(entities);
-        when(sunriseSunsetRepository.saveAll(anyList())).thenReturn(entities);
-        verify(sunriseSunsetRepository).findAllById(ids);
-        verify(sunriseSunsetRepository).saveAll(entities);
-        verify(sunriseSunsetRepository).deleteAllById(ids);
+        ids.forEach(sunriseSunsetService::deleteSunriseSunset);
+        verify(sunriseSunsetRepository).deleteById(1);
+        verify(sunriseSunsetRepository).deleteById(2);
         verify(entityCache).remove(CACHE_KEY_PREFIX + "1");
         verify(entityCache).remove(CACHE_KEY_PREFIX + "2");
-        verify(entityCache).remove(CACHE_KEY_ALL);
+        verify(entityCache, never()).remove(CACHE_KEY_ALL);
+    }
+
+    @Test
+    void getSunriseSunsetsPageLoadsTheIdsAfterTheCursor() {
+        when(sunriseSunsetRepository.findIdsAfter(0, Limit.of(100))).thenReturn(List.of(1, 2));
+        when(sunriseSunsetRepository.findLinkRowsByIdIn(List.of(1, 2))).thenReturn(List.of(row(1, 1), row(2, 2)));
+        List<SunriseSunsetDto> result = sunriseSunsetService.getSunriseSunsetsPage(null, 100);
+        assertEquals(List.of(1, 2), result.stream().map(SunriseSunsetDto::getId).toList());
+        verify(sunriseSunsetRepository, never()).findAllLinkRows();
+    }
+
+    @Test
+    void streamAllSunriseSunsetsFoldsCursorRowsIntoTheSink() {
+        doAnswer(invocation -> {
+            Consumer<SunriseSunsetLinkRow> action = invocation.getArgument(0);
+            List.of(row(1, 1), row(1, 2), row(3, null)).forEach(action);
+            return null;
+        }).when(linkRowCursor).forEachSunriseSunsetRow(any());
+        List<SunriseSunsetDto> streamed = new ArrayList<>();
+        sunriseSunsetService.streamAllSunriseSunsets(streamed::add);
+        assertEquals(List.of(1, 3), streamed.stream().map(SunriseSunsetDto::getId).toList());
+        assertEquals(TEST_LOCATION_IDS, streamed.get(0).getLocationIds());
+        assertTrue(streamed.get(1).getLocationIds().isEmpty());
+    }
+
+    @Test
+    void nearestEntriesComeFromTheCacheAndOneQueryForTheRest() {
+        when(spatialIndex.nearest(TEST_LATITUDE, TEST_LONGITUDE, TEST_DATE, 3)).thenReturn(new int[] {3, 1, 2});
+        SunriseSunsetDto cached = new SunriseSunsetDto(1, TEST_DATE, TEST_LATITUDE, TEST_LONGITUDE, null, null, List.of());
+        entityCache.put(CACHE_KEY_PREFIX + "1", cached);
+        when(sunriseSunsetRepository.findLinkRowsByIdIn(List.of(3, 2))).thenReturn(List.of(row(2, null), row(3, 1)));
+
+        List<SunriseSunsetDto> result = sunriseSunsetService.getNearestSunriseSunsets(TEST_LATITUDE, TEST_LONGITUDE,
+                TEST_DATE, 3);
+
+        assertEquals(List.of(3, 1, 2), result.stream().map(SunriseSunsetDto::getId).toList());
+        assertSame(cached, result.get(1));
+        verify(sunriseSunsetRepository).findLinkRowsByIdIn(List.of(3, 2));
+    }
+
+    @Test
+    void writesKeepTheSpatialIndexInStep() {
+        when(upsertRepository.upsert(any(SunriseSunsetDto.class))).thenReturn(1);
+        when(sunriseSunsetRepository.findLinkRowsByIdIn(List.of(1))).thenReturn(List.of(row(1, 1), row(1, 2)));
+        SunriseSunsetDto created = sunriseSunsetService.createSunriseSunset(sunriseSunsetDto);
+        sunriseSunsetService.deleteSunriseSunset(1);
+        sunriseSunsetService.evictIngested(List.of());
+        verify(spatialIndex).upsertAll(List.of(created));
+        verify(spatialIndex).remove(1);
+        verify(spatialIndex).reset();
+    }
+
+    private static SunriseSunsetLinkRow row(int id, Integer locationId) {
+        return new SunriseSunsetLinkRow(id, TEST_DATE, TEST_LATITUDE, TEST_LONGITUDE,
+                OffsetDateTime.parse(TEST_SUNRISE), OffsetDateTime.parse(TEST_SUNSET), locationId);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,88 @@
+package com.example.SunriseSunset.spatial;
+
+import org.junit.jupiter.api.Test;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GridIndexTest {
+
+    private static final int POINTS = 5_000;
+
+    @Test
+    void nearestMatchesABruteForceSearch() {
+        Random random = new Random(42);
+        GridIndex index = new GridIndex(1.0);
+        double[] latitudes = new double[POINTS];
+        double[] longitudes = new double[POINTS];
+        for (int id = 0; id < POINTS; id++) {
+            latitudes[id] = random.nextDouble() * 180 - 90;
+            longitudes[id] = random.nextDouble() * 360 - 180;
+            index.put(id, latitudes[id], longitudes[id], id % 2);
+        }
+        // Includes points next to a pole and next to the antimeridian.
+        double[][] queries = {{53.9, 27.56}, {89.9, 0}, {-89.5, 120}, {10, 179.95}, {-35, -179.9}};
+        for (double[] query : queries) {
+            int[] expected = IntStream.range(0, POINTS)
+                    .filter(id -> id % 2 == 1)
+                    .boxed()
+                    .sorted(Comparator.comparingDouble(id ->
+                            GridIndex.distanceKm(query[0], query[1], latitudes[id], longitudes[id])))
+                    .limit(7)
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            assertArrayEquals(expected, index.nearest(query[0], query[1], 1, 7));
+        }
+    }
+
+    @Test
+    void nearestReturnsWhatThereIsWhenFewerPointsMatch() {
+        GridIndex index = new GridIndex(0.5);
+        index.put(1, 10, 10, 100);
+        index.put(2, -60, -100, 100);
+        index.put(3, 10, 10.1, 101);
+        assertArrayEquals(new int[] {1, 2}, index.nearest(11, 10, 100, 5));
+        assertArrayEquals(new int[] {1, 3, 2}, index.nearest(11, 10, GridIndex.ANY_DAY, 5));
+    }
+
+    @Test
+    void withinHonoursTheBoxTheDayAndTheAntimeridian() {
+        GridIndex index = new GridIndex(1.0);
+        index.put(1, 53.9, 27.56, 7);
+        index.put(2, 52.1, 23.7, 7);
+        index.put(3, 53.9, 27.56, 8);
+        index.put(4, 60, 179.5, 7);
+        index.put(5, 60, -179.5, 7);
+        index.put(6, 60, 170, 7);
+        assertArrayEquals(new int[] {1, 2}, index.within(52, 23, 54, 28, 7, 10));
+        assertArrayEquals(new int[] {1, 2, 3}, index.within(52, 23, 54, 28, GridIndex.ANY_DAY, 10));
+        assertArrayEquals(new int[] {1}, index.within(52, 23, 54, 28, GridIndex.ANY_DAY, 1));
+        assertArrayEquals(new int[] {4, 5}, index.within(59, 179, 61, -179, 7, 10));
+    }
+
+    @Test
+    void putMovesAPointAndRemoveDropsIt() {
+        GridIndex index = new GridIndex(1.0);
+        index.put(1, 10, 10, 0);
+        index.put(2, 10.2, 10.2, 0);
+        index.put(1, -40, 150, 0);
+        assertArrayEquals(new int[] {2}, index.within(9, 9, 11, 11, 0, 10));
+        assertArrayEquals(new int[] {1}, index.within(-41, 149, -39, 151, 0, 10));
+        index.remove(2);
+        index.put(3, 10.5, 10.5, 0);
+        assertEquals(2, index.size());
+        assertArrayEquals(new int[] {3}, index.within(9, 9, 11, 11, 0, 10));
+    }
+
+    @Test
+    void invalidArgumentsAreRejected() {
+        GridIndex index = new GridIndex(1.0);
+        assertThrows(IllegalArgumentException.class, () -> index.put(1, 91, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> index.nearest(0, 181, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> index.nearest(0, 0, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> index.within(10, 0, 5, 1, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new GridIndex(0.01));
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.SunriseSunset.timeseries;
+
+import com.example.SunriseSunset.dto.DayLengthDto;
+import com.example.SunriseSunset.dto.DayLengthSummaryDto;
+import com.example.SunriseSunset.dto.SunriseSunsetDto;
+import org.junit.jupiter.api.Test;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SunTimesSeriesTest {
+
+    private static final LocalDate DAY = LocalDate.of(2024, 6, 21);
+
+    @Test
+    void entriesComeBackByDateThenIdWithTheirLinks() {
+        SunTimesSeries series = SunTimesSeries.builder()
+                .add(1, DAY.plusDays(2), 53.9, 27.56, null, null).link(4)
+                .add(2, DAY, 53.9, 27.56, null, null)
+                .add(3, DAY.plusDays(2), -33.8688, 151.2093, null, null).link(4).link(7)
+                .add(5, DAY.minusYears(60), 0, -0.0000004, null, null).link(9)
+                .build();
+
+        List<SunriseSunsetDto> all = series.all();
+        assertEquals(List.of(5, 2, 1, 3), all.stream().map(SunriseSunsetDto::getId).toList());
+        assertEquals(List.of(9), all.get(0).getLocationIds());
+        assertEquals(List.of(), all.get(1).getLocationIds());
+        assertEquals(List.of(4, 7), all.get(3).getLocationIds());
+        assertEquals(DAY.minusYears(60), all.get(0).getDate());
+        assertEquals(-33.8688, all.get(3).getLatitude());
+        assertEquals(151.2093, all.get(3).getLongitude());
+        assertEquals(-0.0, all.get(0).getLongitude(), 1e-6);
+        assertEquals(4, series.size());
+        assertEquals(4, series.linkedLocationIds().count());
+    }
+
+    @Test
+    void timesKeepTheirInstantInUtcToTheSecond() {
+        OffsetDateTime sunrise = OffsetDateTime.parse("2024-06-21T04:39:45.900+03:00");
+        OffsetDateTime sunset = OffsetDateTime.parse("2024-06-22T00:01:02Z");
+        SunriseSunsetDto dto = SunTimesSeries.builder()
+                .add(1, DAY, 53.9, 27.56, sunrise, sunset)
+                .add(2, DAY, 78.2, 15.6, null, null)
+                .build().all().get(0);
+
+        assertEquals(OffsetDateTime.parse("2024-06-21T01:39:45Z"), dto.getSunrise());
+        assertEquals(sunset, dto.getSunset());
+        assertNull(SunTimesSeries.builder().add(2, DAY, 78.2, 15.6, null, null).build().all().get(0).getSunset());
+    }
+
+    @Test
+    void betweenIncludesBothBoundsAndLeavesNullBoundsOpen() {
+        SunTimesSeries.Builder builder = SunTimesSeries.builder();
+        for (int i = 0; i < 100; i++) {
+            builder.add(i, DAY.plusDays(i / 2), 0, 0, null, null);
+        }
+        SunTimesSeries series = builder.build();
+
+        assertEquals(List.of(10, 11, 12, 13), ids(series.between(DAY.plusDays(5), DAY.plusDays(6))));
+        assertEquals(List.of(96, 97, 98, 99), ids(series.between(DAY.plusDays(48), null)));
+        assertEquals(List.of(0, 1), ids(series.between(null, DAY)));
+        assertEquals(100, series.between(null, null).size());
+        assertTrue(series.between(DAY.plusDays(6), DAY.plusDays(5)).isEmpty());
+        assertTrue(series.between(LocalDate.MAX, null).isEmpty());
+        assertThrows(IndexOutOfBoundsException.class, () -> series.between(DAY, DAY).get(2));
+    }
+
+    @Test
+    void summaryAggregatesTheRangeInOnePass() {
+        SunTimesSeries series = SunTimesSeries.builder()
+                .add(1, DAY.minusDays(1), 53.9, 27.56, utc("2024-06-20T01:40:00"), utc("2024-06-20T18:00:00"))
+                .add(2, DAY, 53.9, 27.56, utc("2024-06-21T01:39:00"), utc("2024-06-21T18:01:00"))
+                .add(3, DAY.plusDays(1), 53.9, 27.56, utc("2024-06-22T01:39:30"), utc("2024-06-22T18:02:00"))
+                .add(4, DAY.plusDays(2), 53.9, 27.56, utc("2024-06-23T01:45:00"), null)
+                .add(5, DAY.plusDays(3), 53.9, 27.56, utc("2024-06-24T01:41:00"), utc("2024-06-24T17:59:00"))
+                .build();
+
+        DayLengthSummaryDto summary = series.summarize(DAY, DAY.plusDays(3));
+        assertEquals(4, summary.getDays());
+        assertEquals(DAY, summary.getFirstDate());
+        assertEquals(DAY.plusDays(3), summary.getLastDate());
+        assertEquals(DAY.plusDays(3), summary.getShortestDay());
+        assertEquals(58_680L, summary.getShortestDayLengthSeconds());
+        assertEquals(DAY.plusDays(1), summary.getLongestDay());
+        assertEquals(58_950L, summary.getLongestDayLengthSeconds());
+        assertEquals((58_920 + 58_950 + 58_680) / 3.0, summary.getAverageDayLengthSeconds(), 1e-9);
+        assertEquals(utc("2024-06-21T01:39:00"), summary.getEarliestSunrise());
+        assertEquals(utc("2024-06-22T18:02:00"), summary.getLatestSunset());
+
+        DayLengthSummaryDto empty = series.summarize(DAY.plusDays(10), null);
+        assertEquals(0, empty.getDays());
+        assertNull(empty.getShortestDay());
+        assertNull(empty.getEarliestSunrise());
+    }
+
+    @Test
+    void dayLengthsFollowTheRangeAndSkipMissingTimes() {
+        SunTimesSeries series = SunTimesSeries.builder()
+                .add(1, DAY, 69.65, 18.96, null, null)
+                .add(2, DAY.plusDays(1), -33.87, 151.21, utc("2024-06-21T20:59:00"), utc("2024-06-22T06:54:00"))
+                .build();
+
+        List<DayLengthDto> dayLengths = series.dayLengthsBetween(DAY, null);
+        assertEquals(2, dayLengths.size());
+        assertNull(dayLengths.get(0).getDayLengthSeconds());
+        assertEquals(35_700L, dayLengths.get(1).getDayLengthSeconds());
+        assertEquals(utc("2024-06-21T20:59:00"), dayLengths.get(1).getSunrise());
+        assertEquals(1, series.dayLengthsBetween(DAY.plusDays(1), DAY.plusDays(1)).size());
+    }
+
+    private static OffsetDateTime utc(String localDateTime) {
+        return OffsetDateTime.parse(localDateTime + "Z");
+    }
+
+    private static List<Integer> ids(List<SunriseSunsetDto> dtos) {
+        return dtos.stream().map(SunriseSunsetDto::getId).toList();
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.SunriseSunset.upstream;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestSchedulerTest {
+
+    private SimpleMeterRegistry registry;
+    private ExecutorService callers;
+    private RequestScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        callers = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (scheduler != null) {
+            scheduler.close();
+        }
+        callers.shutdownNow();
+    }
+
+    @Test
+    void tokenBucketRefillsAtItsRateUpToTheBurst() {
+        AtomicLong ticker = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(2, 3, ticker::get);
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+        long wait = bucket.nanosUntilAvailable();
+        assertTrue(Math.abs(wait - TimeUnit.MILLISECONDS.toNanos(500)) <= 1, "wait was " + wait);
+
+        ticker.addAndGet(TimeUnit.MILLISECONDS.toNanos(400));
+        assertFalse(bucket.tryAcquire());
+        ticker.addAndGet(TimeUnit.MILLISECONDS.toNanos(200));
+        assertTrue(bucket.tryAcquire());
+        ticker.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertEquals(3.0, bucket.getAvailableTokens());
+    }
+
+    @Test
+    void callsAreAdmittedAtTheConfiguredRate() throws Exception {
+        scheduler = scheduler(20, 5, 100, Duration.ofSeconds(10));
+        long start = System.nanoTime();
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            int value = i;
+            results.add(callers.submit(() -> scheduler.execute("key-" + value, () -> value)));
+        }
+        for (int i = 0; i < 25; i++) {
+            assertEquals(i, results.get(i).get(5, TimeUnit.SECONDS));
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMillis >= 900, "20 calls beyond the burst at 20/s took " + elapsedMillis + " ms");
+        assertEquals(25.0, count("dispatched"));
+    }
+
+    @Test
+    void identicalPendingCallsAreDeduplicated() throws Exception {
+        scheduler = scheduler(100, 10, 100, Duration.ofSeconds(10));
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            results.add(callers.submit(() -> scheduler.execute("53.9,27.56,2024-06-21", () -> {
+                calls.incrementAndGet();
+                await(release);
+                return "sun times";
+            })));
+        }
+        while (count("deduplicated") + count("dispatched") < 5) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+        for (Future<String> result : results) {
+            assertEquals("sun times", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, calls.get());
+        assertEquals(4.0, count("deduplicated"));
+    }
+
+    @Test
+    void fullQueueRejectsWithRetryAfter() throws Exception {
+        scheduler = scheduler(1, 1, 2, Duration.ofSeconds(10));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> running = callers.submit(() -> scheduler.execute("first", () -> {
+            started.countDown();
+            await(release);
+            return "first";
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        callers.submit(() -> scheduler.execute("second", () -> "second"));
+        callers.submit(() -> scheduler.execute("third", () -> "third"));
+        while (scheduler.getQueueDepth() < 2) {
+            Thread.sleep(5);
+        }
+
+        UpstreamThrottledException rejected = assertThrows(UpstreamThrottledException.class,
+                () -> scheduler.execute("fourth", () -> "fourth"));
+        assertTrue(rejected.getRetryAfterSeconds() >= 2);
+        assertEquals(1.0, count("queue_full"));
+        release.countDown();
+        assertEquals("first", running.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void callsQueuedPastTheirDeadlineFail() throws Exception {
+        scheduler = scheduler(2, 1, 10, Duration.ofMillis(700));
+        assertEquals("first", scheduler.execute("first", () -> "first"));
+        Future<String> second = callers.submit(() -> scheduler.execute("second", () -> "second"));
+        Future<String> third = callers.submit(() -> scheduler.execute("third", () -> "third"));
+
+        assertEquals("second", second.get(5, TimeUnit.SECONDS));
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> third.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(UpstreamThrottledException.class, failure.getCause());
+        assertEquals(1.0, count("expired"));
+    }
+
+    @Test
+    void callsThatExpiredInTheQueueDoNotSpendATokenWhenTheyAreDropped() throws Exception {
+        AtomicLong ticker = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(1, 1, ticker::get);
+        scheduler = new RequestScheduler("test", bucket, 10, Duration.ofMillis(100), 4, ticker::get, registry);
+        assertEquals("first", scheduler.execute("first", () -> "first"));
+        Future<String> second = callers.submit(() -> scheduler.execute("second", () -> "second"));
+        while (scheduler.getQueueDepth() < 1) {
+            Thread.sleep(5);
+        }
+
+        ticker.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(UpstreamThrottledException.class, failure.getCause());
+        assertEquals(1.0, bucket.getAvailableTokens());
+        assertEquals("third", scheduler.execute("third", () -> "third"));
+        assertEquals(2.0, count("dispatched"));
+    }
+
+    @Test
+    void failuresReachEveryWaitingCaller() {
+        scheduler = scheduler(100, 10, 10, Duration.ofSeconds(10));
+        IllegalStateException failure = assertThrows(IllegalStateException.class,
+                () -> scheduler.execute("key", () -> {
+                    throw new IllegalStateException("upstream said no");
+                }));
+        assertEquals("upstream said no", failure.getMessage());
+    }
+
+    private RequestScheduler scheduler(double rate, int burst, int maxQueueDepth, Duration maxQueueWait) {
+        return new RequestScheduler("test", new TokenBucket(rate, burst, System::nanoTime), maxQueueDepth,
+                maxQueueWait, 4, System::nanoTime, registry);
+    }
+
+    private double count(String outcome) {
+        return registry.get("upstream.scheduler.requests").tag("outcome", outcome).counter().count();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.SunriseSunset.upstream;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpstreamClientTest {
+
+    /**A scripted response: status code, body and delay before answering.*/
+    private record Reply(int status, String body, long delayMillis) {
+    }
+
+    private HttpServer server;
+    private Deque<Reply> replies;
+    private AtomicInteger requests;
+    private List<Duration> sleeps;
+    private AtomicLong ticker;
+    private SimpleMeterRegistry registry;
+    private String url;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        replies = new ConcurrentLinkedDeque<>();
+        requests = new AtomicInteger();
+        sleeps = new ArrayList<>();
+        ticker = new AtomicLong();
+        registry = new SimpleMeterRegistry();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/json", exchange -> {
+            requests.incrementAndGet();
+            Reply reply = replies.isEmpty() ? new Reply(200, "{\"status\":\"OK\"}", 0) : replies.poll();
+            pause(reply.delayMillis());
+            byte[] body = reply.body().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(reply.status(), body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            } catch (IOException ignored) {
+                // the client gave up on a delayed reply
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/json";
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void serverErrorsAreRetriedWithJitteredBackoff() {
+        replies.add(new Reply(503, "", 0));
+        replies.add(new Reply(502, "", 0));
+        UpstreamClient client = client(new CircuitBreaker(10, 10, 0.5, Duration.ofSeconds(30), ticker::get), 4);
+
+        assertEquals("{\"status\":\"OK\"}", client.get(url, String.class));
+        assertEquals(3, requests.get());
+        assertEquals(List.of(Duration.ofMillis(50), Duration.ofMillis(100)), sleeps);
+        assertEquals(2.0, registry.get("upstream.retries").counter().count());
+        assertEquals(1.0, registry.get("upstream.calls").tag("outcome", "success").counter().count());
+        assertEquals(2.0, registry.get("upstream.calls").tag("outcome", "failure").counter().count());
+    }
+
+    @Test
+    void rateLimitedRetriesEachPassTheScheduler() {
+        replies.add(new Reply(429, "", 0));
+        replies.add(new Reply(503, "", 0));
+        UpstreamClient client = client(new CircuitBreaker(10, 10, 0.5, Duration.ofSeconds(30), ticker::get), 4);
+        try (RequestScheduler scheduler = new RequestScheduler("test", new TokenBucket(1000, 1, System::nanoTime),
+                10, Duration.ofSeconds(5), 2, System::nanoTime, registry)) {
+            assertEquals("{\"status\":\"OK\"}", client.get(url, String.class, scheduler));
+        }
+        assertEquals(3, requests.get());
+        assertEquals(3.0, registry.get("upstream.scheduler.requests").tag("outcome", "dispatched").counter().count());
+    }
+
+    @Test
+    void clientErrorsAreNotRetried() {
+        replies.add(new Reply(400, "", 0));
+        UpstreamClient client = client(new CircuitBreaker(10, 1, 0.5, Duration.ofSeconds(30), ticker::get), 4);
+
+        assertThrows(HttpClientErrorException.class, () -> client.get(url, String.class));
+        assertEquals(1, requests.get());
+        assertEquals(CircuitBreaker.State.CLOSED, registryState());
+    }
+
+    @Test
+    void readTimeoutIsRetried() {
+        replies.add(new Reply(200, "late", 1000));
+        UpstreamClient client = client(new CircuitBreaker(10, 10, 0.5, Duration.ofSeconds(30), ticker::get), 2);
+
+        assertEquals("{\"status\":\"OK\"}", client.get(url, String.class));
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    void openCircuitRejectsUntilTrialCallSucceeds() {
+        for (int i = 0; i < 4; i++) {
+            replies.add(new Reply(500, "", 0));
+        }
+        UpstreamClient client = client(new CircuitBreaker(4, 4, 0.5, Duration.ofSeconds(30), ticker::get), 1);
+        for (int i = 0; i < 4; i++) {
+            assertThrows(RuntimeException.class, () -> client.get(url, String.class));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, registryState());
+
+        assertThrows(UpstreamUnavailableException.class, () -> client.get(url, String.class));
+        assertEquals(4, requests.get());
+        assertEquals(1.0, registry.get("upstream.calls").tag("outcome", "circuit_open").counter().count());
+
+        ticker.addAndGet(Duration.ofSeconds(30).toNanos());
+        assertEquals("{\"status\":\"OK\"}", client.get(url, String.class));
+        assertEquals(CircuitBreaker.State.CLOSED, registryState());
+    }
+
+    @Test
+    void fullBulkheadRejectsWithoutCallingUpstream() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        server.removeContext("/json");
+        server.createContext("/json", exchange -> {
+            requests.incrementAndGet();
+            pause(release);
+            exchange.sendResponseHeaders(200, 2);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write("{}".getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        UpstreamClient client = new UpstreamClient("test", restTemplate(5000),
+                new CircuitBreaker(10, 10, 0.5, Duration.ofSeconds(30), ticker::get),
+                new Bulkhead(1, Duration.ofMillis(50)),
+                new RetryPolicy(3, Duration.ofMillis(100), Duration.ofSeconds(1), () -> 0.5),
+                sleeps::add, registry);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> first = executor.submit(() -> client.get(url, String.class));
+            while (requests.get() == 0) {
+                Thread.sleep(5);
+            }
+            assertThrows(UpstreamUnavailableException.class, () -> client.get(url, String.class));
+            assertEquals(1.0, registry.get("upstream.calls").tag("outcome", "bulkhead_full").counter().count());
+            assertEquals(0.0, registry.get("upstream.bulkhead.available").gauge().value());
+            release.countDown();
+            assertEquals("{}", first.get(5, TimeUnit.SECONDS));
+            assertEquals(1, requests.get());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void backoffIsCappedAtTheMaximumDelay() {
+        RetryPolicy policy = new RetryPolicy(10, Duration.ofMillis(100), Duration.ofMillis(400), () -> 0.999);
+        assertTrue(policy.delayBefore(1).toMillis() < 100);
+        assertTrue(policy.delayBefore(3).toMillis() < 400);
+        assertTrue(policy.delayBefore(8).toMillis() < 400);
+        assertTrue(policy.delayBefore(60).toMillis() < 400);
+    }
+
+    private UpstreamClient client(CircuitBreaker circuitBreaker, int maxAttempts) {
+        return new UpstreamClient("test", restTemplate(200), circuitBreaker, new Bulkhead(4, Duration.ZERO),
+                new RetryPolicy(maxAttempts, Duration.ofMillis(100), Duration.ofSeconds(1), () -> 0.5),
+                sleeps::add, registry);
+    }
+
+    private CircuitBreaker.State registryState() {
+        return CircuitBreaker.State.values()[(int) registry.get("upstream.circuit.state").gauge().value()];
+    }
+
+    private static RestTemplate restTemplate(int readTimeoutMillis) {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(1000);
+        requestFactory.setReadTimeout(readTimeoutMillis);
+        return new RestTemplate(requestFactory);
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void pause(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}